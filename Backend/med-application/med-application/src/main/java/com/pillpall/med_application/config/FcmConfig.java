@@ -4,9 +4,11 @@ import com.google.auth.oauth2.GoogleCredentials;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
 
+import com.pillpall.med_application.notifications.FcmTransport;
+import com.pillpall.med_application.notifications.FirebaseFcmTransport;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import jakarta.annotation.PostConstruct;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 
@@ -16,13 +18,11 @@ import java.io.InputStream;
 @Configuration
 public class FcmConfig {
 
-    //Configuration de Firbase Cloud Messaging
+    //Configuration de Firbase Cloud Messaging. Firebase n'est initialisé que pour son transport ; un test qui
+    //veut un autre transport (factice, tests de charge) le déclare en @Primary ou en @MockBean
 
-    @Value("${app.fcm.credentialsPath}")
-    private String credentialsPath;
-
-    @PostConstruct
-    public void init() throws Exception {
+    @Bean
+    public FcmTransport firebaseFcmTransport(@Value("${app.fcm.credentialsPath}") String credentialsPath) throws Exception {
         if (FirebaseApp.getApps().isEmpty()) {
             Resource resource = new ClassPathResource(credentialsPath.replace("classpath:", ""));
 
@@ -34,5 +34,6 @@ public class FcmConfig {
                 System.out.println(" Firebase initialized successfully from: " + credentialsPath);
             }
         }
+        return new FirebaseFcmTransport();
     }
-}
\ No newline at end of file
+}
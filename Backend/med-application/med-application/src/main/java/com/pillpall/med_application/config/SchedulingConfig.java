@@ -1,7 +1,23 @@
 package com.pillpall.med_application.config;
 
 import net.javacrumbs.shedlock.spring.annotation.EnableSchedulerLock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration; import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 @Configuration @EnableScheduling @EnableSchedulerLock(defaultLockAtMostFor = "PT30S")
-public class SchedulingConfig { }
+public class SchedulingConfig {
+
+    // Pool dédié aux tâches @Scheduled (un seul thread par défaut) : un envoi lent ou un job ShedLock
+    // ne retarde plus le tick de rappels, l'outbox ni la matérialisation des prises
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(@Value("${app.scheduling.poolSize:4}") int poolSize) {
+        var scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix("scheduling-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(10);
+        return scheduler;
+    }
+}
@@ -0,0 +1,40 @@
+package com.pillpall.med_application.config;
+
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.stat.HibernateMetrics;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class SecondLevelCacheConfig {
+
+    // Cache de second niveau (JCache / Caffeine) pour les données de référence annotées @Cache,
+    // régions et expirations dans hibernate-cache.conf
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCache() {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.USE_QUERY_CACHE, true);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, ConfigSettings.SIMPLE_FACTORY_NAME);
+            properties.put(ConfigSettings.PROVIDER, CaffeineCachingProvider.class.getName());
+            properties.put(ConfigSettings.CONFIG_URI, "hibernate-cache.conf");
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+            // Compteurs de succès / échecs par région, sans le journal de métriques de chaque session
+            properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+            properties.put(AvailableSettings.LOG_SESSION_METRICS, false);
+        };
+    }
+
+    // hibernate.second.level.cache.requests{region, result=hit|miss}, hibernate.query.cache.requests... dans /actuator/metrics
+    @Bean
+    public MeterBinder hibernateMetrics(EntityManagerFactory entityManagerFactory) {
+        return registry -> HibernateMetrics.monitor(registry, entityManagerFactory.unwrap(SessionFactory.class),
+                "entityManagerFactory");
+    }
+}
@@ -13,11 +13,16 @@ public class ShedLockConfig {
 
     @Bean
     public LockProvider lockProvider(DataSource dataSource) {
-        return new JdbcTemplateLockProvider(
-                JdbcTemplateLockProvider.Configuration.builder()
-                        .withJdbcTemplate(new JdbcTemplate(dataSource))
-                        .usingDbTime() // Utilise le temps de la base de données
-                        .build()
-        );
+        return lockProvider(dataSource, null);
     }
-}
\ No newline at end of file
+
+    // lockedBy : identité écrite dans locked_by (nom d'hôte par défaut). ShedLock ne prolonge un verrou
+    // que pour cette identité : un bail propre à une instance (ReminderPartitions) passe la sienne
+    public static LockProvider lockProvider(DataSource dataSource, String lockedBy) {
+        var builder = JdbcTemplateLockProvider.Configuration.builder()
+                .withJdbcTemplate(new JdbcTemplate(dataSource))
+                .usingDbTime(); // Utilise le temps de la base de données
+        if (lockedBy != null) builder.withLockedByValue(lockedBy);
+        return new JdbcTemplateLockProvider(builder.build());
+    }
+}
@@ -24,6 +24,7 @@ public class AdminController {
     private final PatientProfileRepository patientProfileRepository;
     private final RoleRepository roleRepository;
     private final SpecialtyRepository specialtyRepository;
+    private final ReferenceDataCache referenceDataCache;
 
 
     //Dashboard pour des statistiques
@@ -41,6 +42,13 @@ public class AdminController {
         return ResponseEntity.ok(stats);
     }
 
+    //Succès et échecs du cache des données de référence (spécialités, rôles, médecins), par région
+
+    @GetMapping("/cache/stats")
+    public Map<String, ReferenceDataCache.RegionStats> getCacheStats() {
+        return referenceDataCache.statistics();
+    }
+
     //EndpointS pour gérer les médecins
 
     //Consulter la liste des médecins
@@ -71,6 +79,7 @@ public class AdminController {
         doctor.getUser().setEmail(req.getEmail());
         doctor.setSpecialty(req.getSpecialty());  // Maintenant Specialty object, assume req a specialtyId ou name – adapte
         doctorRepository.save(doctor);
+        referenceDataCache.evictDoctor(doctor.getId());
         return ResponseEntity.ok(Map.of("message", "Doctor updated"));
     }
 
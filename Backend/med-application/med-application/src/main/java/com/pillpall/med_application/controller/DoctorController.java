@@ -1,7 +1,7 @@
 package com.pillpall.med_application.controller;
 
-import com.pillpall.med_application.intakes.IntakeEvent;
 import com.pillpall.med_application.intakes.IntakeEventRepository;
+import com.pillpall.med_application.intakes.IntakeHistoryService;
 import com.pillpall.med_application.ml.AnomalyDetectionRepository;
 import com.pillpall.med_application.ml.PatientAdherence;
 import com.pillpall.med_application.ml.PatientAdherenceRepository;
@@ -11,9 +11,11 @@ import com.pillpall.med_application.prescriptions.PrescriptionRepository;
 import com.pillpall.med_application.users.*;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.Duration;
 import java.time.Instant;
@@ -29,7 +31,7 @@ import java.util.stream.Collectors;
 public class DoctorController {
     private final DoctorProfileRepository doctorRepository;
     private final PrescriptionRepository prescriptionRepository;
-    private final IntakeEventRepository intakeEventRepository;
+    private final IntakeHistoryService intakeHistoryService;
     private final PatientAdherenceRepository adherenceRepository;
     private final UserRepository userRepository;
     private final AnomalyDetectionRepository anomalyDetectionRepository;
@@ -83,37 +85,63 @@ public class DoctorController {
         return ResponseEntity.ok(stats);
     }
 
-    //Les observances par patient
+    //Les observances par patient : en entier comme avant sans limit ni cursor ; du plus récent au plus ancien par pages
+    //avec limit ou cursor (en-tête Next-Cursor) ; en flux avec stream=true
 
     @GetMapping("/patients/{patientId}/observance")
     public ResponseEntity<?> getPatientObservance(
             @AuthenticationPrincipal String email,
             @PathVariable Long patientId,
-            @RequestParam(defaultValue = "7") int days){
+            @RequestParam(defaultValue = "7") int days,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit){
 
-        var user = userRepository.findByEmail(email).orElseThrow();
-        var doctor = doctorRepository.findByUserId(user.getId()).orElseThrow();
-
-        // Vérifier que le patient appartient au docteur
-        if (!prescriptionRepository.existsByDoctorIdAndPatientId(doctor.getId(), patientId)) {
+        if (!isDoctorOf(email, patientId)) {
             return ResponseEntity.status(403).body("Patient not under your care");
         }
+        if (cursor == null && limit == null) {
+            return ResponseEntity.ok(intakeHistoryService.all(patientId, days).stream()
+                    .map(DoctorController::toObservance).toList());
+        }
 
-        Instant startDate = Instant.now().minus(Duration.ofDays(days));
+        IntakeHistoryService.HistoryPage page;
+        try {
+            page = intakeHistoryService.page(patientId, days, cursor, limit);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        var response = ResponseEntity.ok();
+        if (page.getNext() != null) response.header(IntakeHistoryService.NEXT_CURSOR_HEADER, page.getNext());
+        return response.body(page.getItems().stream().map(DoctorController::toObservance).toList());
+    }
+
+    @GetMapping(value = "/patients/{patientId}/observance", params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamPatientObservance(
+            @AuthenticationPrincipal String email,
+            @PathVariable Long patientId,
+            @RequestParam(defaultValue = "7") int days){
 
-        List<IntakeEvent> events = intakeEventRepository
-                .findByPrescriptionPatientIdAndScheduledAtAfter(patientId, startDate);
+        if (!isDoctorOf(email, patientId)) {
+            return ResponseEntity.status(403).build();
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                .body(intakeHistoryService.stream(patientId, days, DoctorController::toObservance));
+    }
 
-        List<ObservanceData> observanceData = events.stream()
-                .map(event -> new ObservanceData(
-                        event.getScheduledAt(),
-                        event.getStatus().name(),
-                        event.getConfirmedAt(),
-                        event.getPrescription().getMedicationName()
-                ))
-                .collect(Collectors.toList());
+    // Vérifier que le patient appartient au docteur
+    private boolean isDoctorOf(String email, Long patientId) {
+        var user = userRepository.findByEmail(email).orElseThrow();
+        var doctor = doctorRepository.findByUserId(user.getId()).orElseThrow();
+        return prescriptionRepository.existsByDoctorIdAndPatientId(doctor.getId(), patientId);
+    }
 
-        return ResponseEntity.ok(observanceData);
+    private static ObservanceData toObservance(IntakeEventRepository.HistoryView event) {
+        return new ObservanceData(
+                event.getScheduledAt(),
+                event.getStatus().name(),
+                event.getConfirmedAt(),
+                event.getMedicationName()
+        );
     }
 
 
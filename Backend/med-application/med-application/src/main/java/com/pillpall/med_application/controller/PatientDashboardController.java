@@ -1,9 +1,10 @@
 package com.pillpall.med_application.controller;
 
+import com.pillpall.med_application.intakes.IntakeCalendarService;
 import com.pillpall.med_application.intakes.IntakeEvent;
 import com.pillpall.med_application.intakes.IntakeEventRepository;
+import com.pillpall.med_application.intakes.IntakeHistoryService;
 import com.pillpall.med_application.ml.MlServiceClient;
-import com.pillpall.med_application.prescriptions.Prescription;
 import com.pillpall.med_application.prescriptions.PrescriptionRepository;
 import com.pillpall.med_application.service.AnalyticsService;
 import com.pillpall.med_application.users.PatientProfileRepository;
@@ -13,13 +14,14 @@ import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.Instant;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -33,6 +35,8 @@ public class PatientDashboardController {
     private final PatientProfileRepository patientProfileRepository;
     private final PrescriptionRepository prescriptionRepository;
     private final IntakeEventRepository intakeEventRepository;
+    private final IntakeHistoryService intakeHistoryService;
+    private final IntakeCalendarService intakeCalendarService;
     private final AnalyticsService analyticsService;
     private final MlServiceClient mlServiceClient;
     private static final Logger log = LoggerFactory.getLogger(PatientDashboardController.class);
@@ -42,11 +46,8 @@ public class PatientDashboardController {
         var user = userRepository.findByEmail(email).orElseThrow();
         var patient = patientProfileRepository.findByUserId(user.getId()).orElseThrow();
 
-        // Générer les événements d'observance pour les prescriptions actives
-        generateIntakeEvents(patient.getId());
-
         Map<String, Object> dashboard = new HashMap<>();
-        dashboard.put("stats", analyticsService.calculatePatientStats(patient.getId()));
+        dashboard.put("stats", analyticsService.calculatePatientStats(patient.getId(), ZoneId.of(user.getTimezone())));
         dashboard.put("upcomingMedications", getUpcomingMedications(patient.getId()));
         dashboard.put("recommendations", getRecommendations(patient.getId()));
         dashboard.put("activePrescriptions", getActivePrescriptions(patient.getId()));
@@ -60,7 +61,6 @@ public class PatientDashboardController {
     public ResponseEntity<?> getUpcomingMedications(@AuthenticationPrincipal String email) {
         var user = userRepository.findByEmail(email).orElseThrow();
         var patient = patientProfileRepository.findByUserId(user.getId()).orElseThrow();
-        generateIntakeEvents(patient.getId());
         return ResponseEntity.ok(getUpcomingMedications(patient.getId()));
     }
 
@@ -73,115 +73,107 @@ public class PatientDashboardController {
         return ResponseEntity.ok(getActivePrescriptions(patient.getId()));
     }
 
-    //L'historique des prises
+    //Le calendrier des prises, jours locaux from à to inclus (par défaut les 30 prochains jours), calculé depuis
+    //les règles de récurrence : les prises déjà écrites y portent leur statut, les autres sont PLANNED
 
-    @GetMapping("/history")
-    public ResponseEntity<?> getIntakeHistory(@AuthenticationPrincipal String email,
-                                              @RequestParam(defaultValue = "7") int days) {
+    @GetMapping("/calendar")
+    public ResponseEntity<?> getCalendar(@AuthenticationPrincipal String email,
+                                         @RequestParam(required = false) LocalDate from,
+                                         @RequestParam(required = false) LocalDate to) {
         var user = userRepository.findByEmail(email).orElseThrow();
         var patient = patientProfileRepository.findByUserId(user.getId()).orElseThrow();
+        ZoneId zone = ZoneId.of(user.getTimezone());
+        LocalDate start = from == null ? LocalDate.now(zone) : from;
+        LocalDate end = to == null ? start.plusDays(29) : to;
+        try {
+            return ResponseEntity.ok(intakeCalendarService.calendar(patient.getId(), zone, start, end));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
 
-        Instant startDate = Instant.now().minus(java.time.Duration.ofDays(days));
-        List<IntakeEvent> events = intakeEventRepository
-                .findByPrescriptionPatientIdAndScheduledAtAfter(patient.getId(), startDate);
+    //L'historique des prises : en entier comme avant sans limit ni cursor ; du plus récent au plus ancien par pages
+    //avec limit ou cursor (jeton de la suivante dans l'en-tête Next-Cursor) ; en flux avec stream=true
 
-        List<IntakeHistory> history = events.stream()
-                .map(event -> new IntakeHistory(
-                        event.getScheduledAt(),
-                        event.getStatus().name(),
-                        event.getConfirmedAt(),
-                        event.getPrescription().getMedicationName(),
-                        event.getPrescription().getDosage()
-                ))
-                .collect(Collectors.toList());
+    @GetMapping("/history")
+    public ResponseEntity<?> getIntakeHistory(@AuthenticationPrincipal String email,
+                                              @RequestParam(defaultValue = "7") int days,
+                                              @RequestParam(required = false) String cursor,
+                                              @RequestParam(required = false) Integer limit) {
+        var user = userRepository.findByEmail(email).orElseThrow();
+        var patient = patientProfileRepository.findByUserId(user.getId()).orElseThrow();
+        if (cursor == null && limit == null) {
+            return ResponseEntity.ok(intakeHistoryService.all(patient.getId(), days).stream()
+                    .map(PatientDashboardController::toHistory).toList());
+        }
 
-        return ResponseEntity.ok(history);
+        IntakeHistoryService.HistoryPage page;
+        try {
+            page = intakeHistoryService.page(patient.getId(), days, cursor, limit);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        var response = ResponseEntity.ok();
+        if (page.getNext() != null) response.header(IntakeHistoryService.NEXT_CURSOR_HEADER, page.getNext());
+        return response.body(page.getItems().stream().map(PatientDashboardController::toHistory).toList());
     }
 
-    private void generateIntakeEvents(Long patientId) {
-        log.info("Generating intake events for patientId: {}", patientId);
-        List<Prescription> prescriptions = prescriptionRepository.findByPatientIdOrderByCreatedAtDesc(patientId)
-                .stream()
-                .filter(p -> !p.getEndDate().isBefore(LocalDate.now()))
-                .collect(Collectors.toList());
-
-        Instant now = Instant.now();
-        Instant next24Hours = now.plus(java.time.Duration.ofHours(24));
+    @GetMapping(value = "/history", params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamIntakeHistory(@AuthenticationPrincipal String email,
+                                                                     @RequestParam(defaultValue = "7") int days) {
+        var user = userRepository.findByEmail(email).orElseThrow();
+        var patient = patientProfileRepository.findByUserId(user.getId()).orElseThrow();
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                .body(intakeHistoryService.stream(patient.getId(), days, PatientDashboardController::toHistory));
+    }
 
-        for (Prescription prescription : prescriptions) {
-            LocalDate startDate = prescription.getStartDate();
-            LocalDate endDate = prescription.getEndDate();
-            LocalDate today = LocalDate.now();
-
-            // Générer des événements pour aujourd'hui et demain si dans la période active
-            for (LocalDate date = today; date.isBefore(endDate.plusDays(1)) && date.isAfter(startDate.minusDays(1)); date = date.plusDays(1)) {
-                for (var doseTime : prescription.getDoseTimes()) {
-                    int hour = doseTime.getHour();
-                    int minute = doseTime.getMinute();
-                    // Vérifier si l'heure et la minute sont valides
-                    if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
-                        log.warn("Invalid doseTime for prescriptionId: {}, hour: {}, minute: {}",
-                                prescription.getId(), hour, minute);
-                        continue;
-                    }
-                    LocalDateTime scheduledDateTime = LocalDateTime.of(date,
-                            java.time.LocalTime.of(hour, minute));
-                    Instant scheduledAt = scheduledDateTime.atZone(ZoneId.systemDefault()).toInstant();
-
-                    // Vérifier si l'événement existe déjà
-                    boolean eventExists = intakeEventRepository
-                            .findByPrescriptionIdAndScheduledAt(prescription.getId(), scheduledAt)
-                            .isPresent();
-
-                    if (!eventExists && scheduledAt.isAfter(now) && scheduledAt.isBefore(next24Hours)) {
-                        IntakeEvent event = new IntakeEvent();
-                        event.setPrescription(prescription);
-                        event.setScheduledAt(scheduledAt);
-                        event.setStatus(IntakeEvent.Status.PENDING);
-                        intakeEventRepository.save(event);
-                        log.info("Created intake event for prescriptionId: {}, scheduledAt: {}",
-                                prescription.getId(), scheduledAt);
-                    }
-                }
-            }
-        }
+    private static IntakeHistory toHistory(IntakeEventRepository.HistoryView event) {
+        return new IntakeHistory(
+                event.getScheduledAt(),
+                event.getStatus().name(),
+                event.getConfirmedAt(),
+                event.getMedicationName(),
+                event.getDosage()
+        );
     }
 
     private List<MedicationAlert> getUpcomingMedications(Long patientId) {
         Instant now = Instant.now();
         Instant next24Hours = now.plus(java.time.Duration.ofHours(24));
 
-        List<IntakeEvent> upcomingEvents = intakeEventRepository
-                .findByPrescriptionPatientIdAndScheduledAtBetweenAndStatus(
-                        patientId, now, next24Hours, IntakeEvent.Status.PENDING);
-
-        return upcomingEvents.stream()
+        return intakeEventRepository.findUpcoming(patientId, now, next24Hours)
+                .stream()
                 .map(event -> new MedicationAlert(
                         event.getId(),
-                        event.getPrescription().getMedicationName(),
-                        event.getPrescription().getDosage(),
+                        event.getMedicationName(),
+                        event.getDosage(),
                         event.getScheduledAt(),
-                        event.getPrescription().getDoctor().getUser().getFullName()
+                        event.getDoctorName()
                 ))
-                .sorted((a, b) -> a.getScheduledTime().compareTo(b.getScheduledTime()))
                 .collect(Collectors.toList());
     }
 
+    // Deux requêtes quel que soit le nombre de prescriptions : la liste, puis tous leurs horaires
     private List<PrescriptionInfo> getActivePrescriptions(Long patientId) {
-        return prescriptionRepository.findByPatientIdOrderByCreatedAtDesc(patientId)
+        var prescriptions = prescriptionRepository.findActiveViews(patientId, LocalDate.now());
+        if (prescriptions.isEmpty()) return List.of();
+
+        Map<Long, List<PrescriptionInfo.HM>> doseTimes = prescriptionRepository
+                .findDoseTimes(prescriptions.stream().map(PrescriptionRepository.ActivePrescriptionView::getId).toList())
                 .stream()
-                .filter(p -> !p.getEndDate().isBefore(LocalDate.now()))
+                .collect(Collectors.groupingBy(PrescriptionRepository.DoseTimeView::getPrescriptionId,
+                        Collectors.mapping(dt -> new PrescriptionInfo.HM(dt.getHour(), dt.getMinute()), Collectors.toList())));
+
+        return prescriptions.stream()
                 .map(p -> new PrescriptionInfo(
                         p.getId(),
                         p.getMedicationName(),
                         p.getDosage(),
                         p.getStartDate(),
                         p.getEndDate(),
-                        p.getDoctor().getUser().getFullName(),
-                        p.getDoctor().getSpecialty(),
-                        p.getDoseTimes().stream()
-                                .map(dt -> new PrescriptionInfo.HM(dt.getHour(), dt.getMinute()))
-                                .collect(Collectors.toList())
+                        p.getDoctorName(),
+                        p.getSpecialtyId() == null ? null : new Specialty(p.getSpecialtyId(), p.getSpecialtyName()),
+                        doseTimes.getOrDefault(p.getId(), List.of())
                 ))
                 .collect(Collectors.toList());
     }
@@ -6,8 +6,7 @@ import com.itextpdf.layout.Document;
 import com.itextpdf.layout.element.Paragraph;
 import com.itextpdf.layout.element.Table;
 import com.itextpdf.layout.properties.TextAlignment;
-import com.pillpall.med_application.intakes.IntakeEvent;
-import com.pillpall.med_application.intakes.IntakeEventRepository;
+import com.pillpall.med_application.intakes.PatientDailyAdherenceRepository;
 import com.pillpall.med_application.ml.Anomaly;
 import com.pillpall.med_application.ml.AnomalyDetectionRepository;
 import com.pillpall.med_application.ml.PatientAdherenceRepository;
@@ -44,7 +43,7 @@ public class ReportController {
     private final UserRepository userRepository;
     private final DoctorProfileRepository doctorRepository;
     private final PrescriptionRepository prescriptionRepository;
-    private final IntakeEventRepository intakeEventRepository;
+    private final PatientDailyAdherenceRepository dailyAdherenceRepository;
     private final PatientAdherenceRepository adherenceRepository;
     private final AnomalyDetectionRepository anomalyDetectionRepository;
     private final PatientProfileRepository patientProfileRepository;
@@ -98,14 +97,12 @@ public class ReportController {
                     : Collections.emptyList();
             report.put("prescriptions", prescriptionDTOs);
 
-            // Bilan observance
-            List<IntakeEvent> events = intakeEventRepository.findByPrescriptionPatientIdAndScheduledAtBetween(patientId, start, end);
-            double adherenceRate = events != null && !events.isEmpty()
-                    ? (double) events.stream().filter(e -> e.getStatus() == IntakeEvent.Status.CONFIRMED).count() / events.size()
+            // Bilan observance : une ligne d'agrégat par jour de la période (jours locaux du patient)
+            var adherence = dailyAdherenceRepository.summarizeBetween(patientId, from, to);
+            double adherenceRate = adherence.getScheduled() > 0
+                    ? (double) adherence.getConfirmed() / adherence.getScheduled()
                     : 0.0;
-            long missedDoses = events != null
-                    ? events.stream().filter(e -> e.getStatus() == IntakeEvent.Status.MISSED).count()
-                    : 0L;
+            long missedDoses = adherence.getMissed();
             report.put("adherenceRate", adherenceRate);
             report.put("missedDoses", missedDoses);
 
@@ -200,13 +197,11 @@ public class ReportController {
             }
             document.add(prescriptionTable);
 
-            List<IntakeEvent> events = intakeEventRepository.findByPrescriptionPatientIdAndScheduledAtBetween(patientId, start, end);
-            double adherenceRate = events != null && !events.isEmpty()
-                    ? (double) events.stream().filter(e -> e.getStatus() == IntakeEvent.Status.CONFIRMED).count() / events.size()
+            var adherence = dailyAdherenceRepository.summarizeBetween(patientId, from, to);
+            double adherenceRate = adherence.getScheduled() > 0
+                    ? (double) adherence.getConfirmed() / adherence.getScheduled()
                     : 0.0;
-            long missedDoses = events != null
-                    ? events.stream().filter(e -> e.getStatus() == IntakeEvent.Status.MISSED).count()
-                    : 0L;
+            long missedDoses = adherence.getMissed();
             document.add(new Paragraph("Observance").setFontSize(14).setBold().setMarginTop(10));
             document.add(new Paragraph("Taux d'observance: " + String.format("%.2f%%", adherenceRate * 100)));
             document.add(new Paragraph("Doses manquées: " + missedDoses));
@@ -1,5 +1,6 @@
 package com.pillpall.med_application.controller;
 
+import com.pillpall.med_application.users.ReferenceDataCache;
 import com.pillpall.med_application.users.Specialty;
 import com.pillpall.med_application.users.SpecialtyRepository;
 import jakarta.validation.constraints.NotBlank;
@@ -17,6 +18,7 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class SpecialtyController {
     private final SpecialtyRepository repository;
+    private final ReferenceDataCache referenceDataCache;
 
     // Endpoint non sécurisé pour l'inscription
     @GetMapping("/public")
@@ -37,6 +39,7 @@ public class SpecialtyController {
     public ResponseEntity<?> add(@RequestBody SpecialtyReq req) {
         var specialty = Specialty.builder().name(req.getName()).build();
         repository.save(specialty);
+        referenceDataCache.evictSpecialties();
         return ResponseEntity.ok(specialty.getId());
     }
 
@@ -46,6 +49,7 @@ public class SpecialtyController {
         var specialty = repository.findById(id).orElseThrow();
         specialty.setName(req.getName());
         repository.save(specialty);
+        referenceDataCache.evictSpecialties();
         return ResponseEntity.ok(specialty.getId());
     }
 
@@ -0,0 +1,28 @@
+package com.pillpall.med_application.idempotency;
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.Instant;
+
+@Entity @Table(name="idempotency_keys", uniqueConstraints = {
+        @UniqueConstraint(name="uk_idempotency_keys_owner_key", columnNames={"owner", "idem_key"})
+}, indexes = {
+        @Index(name="idx_idempotency_keys_created", columnList="created_at")
+})
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class IdempotencyKey {
+    //Requête déjà reçue avec un en-tête Idempotency-Key : la réponse est rejouée telle quelle aux doublons.
+    //response_status reste null tant que la première requête est en cours ; une réservation plus ancienne que le bail
+    //(noeud arrêté pendant le traitement) est reprise par la requête suivante
+
+    @Id @GeneratedValue(strategy=GenerationType.IDENTITY) private Long id;
+    @Column(nullable=false) private String owner;
+    @Column(name="idem_key", nullable=false) private String idemKey;
+    // Empreinte de l'opération et du corps : une clé réutilisée pour une autre requête est refusée
+    @Column(nullable=false) private String fingerprint;
+    @Column(name="response_status") private Integer responseStatus;
+    @Column(name="content_type") private String contentType;
+    @Column(name="response_body", columnDefinition="text") private String responseBody;
+    @Column(name="created_at", nullable=false) private Instant createdAt;
+    // Début du traitement en cours ; sert aussi de jeton : seul le détenteur actuel enregistre ou libère la clé
+    @Column(name="claimed_at", nullable=false) private Instant claimedAt;
+}
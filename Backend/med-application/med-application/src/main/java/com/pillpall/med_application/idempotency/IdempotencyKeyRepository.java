@@ -0,0 +1,44 @@
+package com.pillpall.med_application.idempotency;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Optional;
+
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, Long> {
+
+    // Réserve la clé : 1 pour la première requête, 0 pour un doublon (même concurrent, grâce à la contrainte unique)
+    @Modifying
+    @Query(value = "INSERT INTO idempotency_keys (owner, idem_key, fingerprint, created_at, claimed_at) " +
+            "VALUES (:owner, :key, :fingerprint, :at, :at) ON CONFLICT DO NOTHING", nativeQuery = true)
+    int claim(@Param("owner") String owner, @Param("key") String key, @Param("fingerprint") String fingerprint,
+              @Param("at") Instant at);
+
+    // Reprise d'une réservation sans réponse dont le bail a expiré : 1 pour une seule des requêtes concurrentes
+    // (la ligne est verrouillée par l'UPDATE, la condition est réévaluée après l'attente)
+    @Modifying
+    @Query("UPDATE IdempotencyKey k SET k.claimedAt = :at WHERE k.owner = :owner AND k.idemKey = :key " +
+            "AND k.fingerprint = :fingerprint AND k.responseStatus IS NULL AND k.claimedAt < :expiredBefore")
+    int takeOver(@Param("owner") String owner, @Param("key") String key, @Param("fingerprint") String fingerprint,
+                 @Param("at") Instant at, @Param("expiredBefore") Instant expiredBefore);
+
+    Optional<IdempotencyKey> findByOwnerAndIdemKey(String owner, String idemKey);
+
+    @Modifying
+    @Query("UPDATE IdempotencyKey k SET k.responseStatus = :status, k.contentType = :contentType, k.responseBody = :body " +
+            "WHERE k.owner = :owner AND k.idemKey = :key AND k.claimedAt = :claimedAt")
+    int complete(@Param("owner") String owner, @Param("key") String key, @Param("claimedAt") Instant claimedAt,
+                 @Param("status") int status, @Param("contentType") String contentType, @Param("body") String body);
+
+    @Modifying
+    @Query("DELETE FROM IdempotencyKey k WHERE k.owner = :owner AND k.idemKey = :key AND k.claimedAt = :claimedAt " +
+            "AND k.responseStatus IS NULL")
+    int release(@Param("owner") String owner, @Param("key") String key, @Param("claimedAt") Instant claimedAt);
+
+    @Modifying
+    @Query("DELETE FROM IdempotencyKey k WHERE k.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") Instant before);
+}
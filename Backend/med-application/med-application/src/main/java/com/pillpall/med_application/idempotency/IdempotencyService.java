@@ -0,0 +1,125 @@
+package com.pillpall.med_application.idempotency;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+
+@Service
+@RequiredArgsConstructor
+public class IdempotencyService {
+
+    //En-tête Idempotency-Key : la première requête réserve la clé (transaction courte, validée avant le traitement),
+    //s'exécute puis enregistre sa réponse ; les doublons reçoivent la réponse enregistrée sans rien rejouer.
+    //Sans en-tête, la requête est traitée normalement. Une réservation restée sans réponse au-delà du bail
+    //(noeud arrêté pendant le traitement) est reprise par le doublon suivant au lieu de bloquer la clé jusqu'à la purge
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+
+    private final IdempotencyKeyRepository keys;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.idempotency.ttlHours:24}") int ttlHours;
+    // Durée maximale du traitement d'une requête
+    @Value("${app.idempotency.leaseSeconds:60}") long leaseSeconds;
+
+    public ResponseEntity<?> execute(String key, String owner, String operation, Object request,
+                                     Supplier<ResponseEntity<?>> action) {
+        if (key == null || key.isBlank()) return action.get();
+
+        var tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        String fingerprint = fingerprint(operation, request);
+
+        // Précision de la colonne : l'instant est relu tel quel par complete / release
+        Instant claimedAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        Boolean claimed = tx.execute(status -> keys.claim(owner, key, fingerprint, claimedAt) == 1
+                || keys.takeOver(owner, key, fingerprint, claimedAt, claimedAt.minusSeconds(leaseSeconds)) == 1);
+        if (!Boolean.TRUE.equals(claimed)) return replay(owner, key, fingerprint);
+
+        ResponseEntity<?> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            // Échec : la clé est libérée pour que le client puisse réessayer
+            tx.executeWithoutResult(status -> keys.release(owner, key, claimedAt));
+            throw e;
+        }
+        if (response.getStatusCode().is5xxServerError()) {
+            tx.executeWithoutResult(status -> keys.release(owner, key, claimedAt));
+            return response;
+        }
+
+        // Un corps texte est rejoué en text/plain, le reste en JSON, comme la réponse d'origine
+        Object body = response.getBody();
+        String contentType = body instanceof String ? MediaType.TEXT_PLAIN_VALUE : MediaType.APPLICATION_JSON_VALUE;
+        String stored = body == null ? null : body instanceof String s ? s : toJson(body);
+        tx.executeWithoutResult(status -> keys.complete(owner, key, claimedAt, response.getStatusCode().value(), contentType, stored));
+        return response;
+    }
+
+    private ResponseEntity<?> replay(String owner, String key, String fingerprint) {
+        var existing = keys.findByOwnerAndIdemKey(owner, key).orElse(null);
+        if (existing == null) {
+            // Clé libérée entre-temps (échec de la première requête) : le client peut réessayer
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Request with this Idempotency-Key failed, retry");
+        }
+        if (!existing.getFingerprint().equals(fingerprint)) {
+            return ResponseEntity.unprocessableEntity().body("Idempotency-Key already used for a different request");
+        }
+        if (existing.getResponseStatus() == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Request with this Idempotency-Key is in progress");
+        }
+        var replayed = ResponseEntity.status(existing.getResponseStatus()).header("Idempotent-Replayed", "true");
+        if (existing.getResponseBody() == null) return replayed.build();
+        return replayed.contentType(MediaType.parseMediaType(existing.getContentType())).body(existing.getResponseBody());
+    }
+
+    @Scheduled(cron = "0 20 * * * *")
+    @SchedulerLock(name = "idempotencyPurge", lockAtMostFor = "PT5M")
+    public void purge() {
+        var tx = new TransactionTemplate(transactionManager);
+        Integer n = tx.execute(status -> keys.deleteCreatedBefore(Instant.now().minus(Duration.ofHours(ttlHours))));
+        if (n != null && n > 0) log.info("Purged {} idempotency keys", n);
+    }
+
+    private String fingerprint(String operation, Object request) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(operation.getBytes(StandardCharsets.UTF_8));
+            digest.update(toJson(request).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize " + value.getClass().getSimpleName(), e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.pillpall.med_application.intakes;
+
+import com.pillpall.med_application.users.PatientProfileRepository;
+import com.pillpall.med_application.users.PatientProfileRepository.PatientZoneView;
+import lombok.RequiredArgsConstructor;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Component
+@RequiredArgsConstructor
+public class AdherenceReconciler {
+
+    //Recalcul nocturne de patient_daily_adherence depuis les prises, sur les derniers jours et l'horizon
+    //matérialisé : corrige les écarts laissés par une course entre écritures, une écriture SQL hors application
+    //ou un changement de fuseau du patient. Par tranche de patients, une transaction : lignes d'agrégat
+    //verrouillées, prises relues, seules les lignes fausses réécrites
+
+    private static final Logger log = LoggerFactory.getLogger(AdherenceReconciler.class);
+
+    private final PatientProfileRepository patients;
+    private final IntakeEventRepository intakes;
+    private final PatientDailyAdherenceRepository dailyAdherence;
+    private final AdherenceRollup rollup;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.adherence.reconcileDays:35}") int reconcileDays;
+    @Value("${app.adherence.reconcileChunkSize:200}") int chunkSize;
+    @Value("${app.intakes.horizonDays:14}") int horizonDays;
+
+    @Scheduled(cron = "${app.adherence.reconcileCron:0 30 2 * * *}")
+    @SchedulerLock(name = "adherenceReconcile", lockAtMostFor = "PT30M")
+    public void run() {
+        int fixed = reconcile(LocalDate.now(ZoneOffset.UTC));
+        if (fixed > 0) log.warn("Adherence rollup: {} daily rows corrected", fixed);
+    }
+
+    // Jours locaux de today - reconcileDays à today + horizonDays + 1. Renvoie le nombre de lignes corrigées
+    public int reconcile(LocalDate today) {
+        LocalDate from = today.minusDays(reconcileDays);
+        LocalDate to = today.plusDays(horizonDays + 1);
+        // Un jour de marge de part et d'autre : un jour local déborde du jour UTC de 14 h au plus
+        Instant fromAt = from.minusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        Instant toAt = to.plusDays(2).atStartOfDay(ZoneOffset.UTC).toInstant();
+
+        var tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        int fixed = 0;
+        long afterId = 0;
+        while (true) {
+            List<PatientZoneView> chunk = patients.findZonesAfter(afterId, PageRequest.of(0, chunkSize));
+            if (chunk.isEmpty()) break;
+            Integer n = tx.execute(status -> reconcile(chunk.stream().map(PatientZoneView::getPatientId).toList(),
+                    from, to, fromAt, toAt));
+            fixed += n == null ? 0 : n;
+            afterId = chunk.get(chunk.size() - 1).getPatientId();
+        }
+        return fixed;
+    }
+
+    private int reconcile(List<Long> patientIds, LocalDate from, LocalDate to, Instant fromAt, Instant toAt) {
+        // Verrou d'abord : un écart appliqué par une autre transaction attend la correction et s'y ajoute ensuite
+        Map<Long, Map<LocalDate, long[]>> stored = new HashMap<>();
+        for (var a : dailyAdherence.lockRange(patientIds, from, to)) {
+            stored.computeIfAbsent(a.getPatientId(), id -> new HashMap<>()).put(a.getLocalDate(),
+                    new long[]{a.getScheduled(), a.getConfirmed(), a.getMissed(), a.getDelayMinutes()});
+        }
+        var expected = new AdherenceRollup.Changes();
+        for (var row : intakes.findRollupRowsForPatients(patientIds, fromAt, toAt)) expected.row(row, 1);
+
+        var fixes = new AdherenceRollup.Changes();
+        int[] fixed = {0};
+        expected.byDay().forEach((patientId, days) -> days.forEach((day, values) -> {
+            if (day.isBefore(from) || day.isAfter(to)) return;
+            var storedDays = stored.get(patientId);
+            long[] current = storedDays == null ? null : storedDays.remove(day);
+            if (!Arrays.equals(values, current == null ? new long[4] : current)) {
+                fixes.set(patientId, day, values);
+                fixed[0]++;
+            }
+        }));
+        // Lignes sans aucune prise restante
+        stored.forEach((patientId, days) -> days.forEach((day, current) -> {
+            if (!Arrays.equals(current, new long[4])) {
+                fixes.set(patientId, day, new long[4]);
+                fixed[0]++;
+            }
+        }));
+        rollup.overwrite(fixes);
+        return fixed[0];
+    }
+}
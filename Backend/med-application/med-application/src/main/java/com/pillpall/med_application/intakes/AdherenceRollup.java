@@ -0,0 +1,127 @@
+package com.pillpall.med_application.intakes;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Repository
+@RequiredArgsConstructor
+public class AdherenceRollup {
+
+    //Tenue à jour de patient_daily_adherence dans la transaction de chaque écriture de prises : écarts additifs
+    //(scheduled + n, ...) qui commutent entre transactions concurrentes. À appeler après l'écriture des prises,
+    //pour verrouiller toujours les prises avant les lignes d'agrégat. Le statut précédent d'une prise confirmée
+    //vient d'une lecture faite sous le verrou de la ligne. Les rares écarts restants (suppression pendant une
+    //confirmation) sont corrigés par AdherenceReconciler
+
+    private final JdbcTemplate jdbc;
+
+    // Écarts par patient puis par jour, triés : les lignes d'agrégat sont verrouillées toujours dans le même ordre
+    public static class Changes {
+        // patientId -> jour local -> {scheduled, confirmed, missed, delayMinutes}
+        private final Map<Long, Map<LocalDate, long[]>> byDay = new TreeMap<>();
+
+        public Changes scheduled(Long patientId, ZoneId zone, Instant scheduledAt, int n) {
+            at(patientId, zone, scheduledAt)[0] += n;
+            return this;
+        }
+
+        // Prise PENDING passée en MISSED
+        public Changes missed(Long patientId, ZoneId zone, Instant scheduledAt) {
+            at(patientId, zone, scheduledAt)[2]++;
+            return this;
+        }
+
+        // Prise confirmée depuis PENDING ou MISSED
+        public Changes confirmed(Long patientId, ZoneId zone, Instant scheduledAt, Instant confirmedAt,
+                                 IntakeEvent.Status previous) {
+            long[] day = at(patientId, zone, scheduledAt);
+            day[1]++;
+            if (previous == IntakeEvent.Status.MISSED) day[2]--;
+            if (confirmedAt != null) day[3] += Duration.between(scheduledAt, confirmedAt).toMinutes();
+            return this;
+        }
+
+        // Contribution d'une prise existante, ajoutée (sign = 1) ou retirée (sign = -1)
+        public Changes row(Long patientId, ZoneId zone, Instant scheduledAt, IntakeEvent.Status status,
+                           Instant confirmedAt, int sign) {
+            long[] day = at(patientId, zone, scheduledAt);
+            day[0] += sign;
+            if (status == IntakeEvent.Status.CONFIRMED) {
+                day[1] += sign;
+                if (confirmedAt != null) day[3] += sign * Duration.between(scheduledAt, confirmedAt).toMinutes();
+            } else if (status == IntakeEvent.Status.MISSED) {
+                day[2] += sign;
+            }
+            return this;
+        }
+
+        public Changes row(IntakeEventRepository.RollupRowView r, int sign) {
+            return row(r.getPatientId(), ZoneId.of(r.getTimezone()), r.getScheduledAt(), r.getStatus(), r.getConfirmedAt(), sign);
+        }
+
+        // Valeurs attendues d'une ligne (réconciliation)
+        void set(Long patientId, LocalDate day, long[] values) {
+            byDay.computeIfAbsent(patientId, id -> new TreeMap<>()).put(day, values);
+        }
+
+        public boolean isEmpty() {
+            return byDay.isEmpty();
+        }
+
+        Map<Long, Map<LocalDate, long[]>> byDay() {
+            return byDay;
+        }
+
+        private long[] at(Long patientId, ZoneId zone, Instant scheduledAt) {
+            return byDay.computeIfAbsent(patientId, id -> new TreeMap<>())
+                    .computeIfAbsent(LocalDate.ofInstant(scheduledAt, zone), d -> new long[4]);
+        }
+    }
+
+    // Deux lots : création des lignes manquantes (sans effet si elles existent), puis un UPDATE additif par ligne
+    public void apply(Changes changes) {
+        List<Object[]> keys = new ArrayList<>();
+        List<Object[]> deltas = new ArrayList<>();
+        changes.byDay().forEach((patientId, days) -> days.forEach((day, d) -> {
+            if (d[0] == 0 && d[1] == 0 && d[2] == 0 && d[3] == 0) return;
+            keys.add(new Object[]{patientId, Date.valueOf(day)});
+            deltas.add(new Object[]{d[0], d[1], d[2], d[3], patientId, Date.valueOf(day)});
+        }));
+        if (keys.isEmpty()) return;
+        jdbc.batchUpdate("INSERT INTO patient_daily_adherence (patient_id, local_date, scheduled, confirmed, missed, delay_minutes) " +
+                "VALUES (?, ?, 0, 0, 0, 0) ON CONFLICT DO NOTHING", keys);
+        jdbc.batchUpdate("UPDATE patient_daily_adherence SET scheduled = scheduled + ?, confirmed = confirmed + ?, " +
+                "missed = missed + ?, delay_minutes = delay_minutes + ? WHERE patient_id = ? AND local_date = ?", deltas);
+    }
+
+    // Réconciliation : valeurs absolues, les lignes existantes étant déjà verrouillées par l'appelant
+    void overwrite(Changes expected) {
+        List<Object[]> rows = new ArrayList<>();
+        expected.byDay().forEach((patientId, days) -> days.forEach((day, d) ->
+                rows.add(new Object[]{d[0], d[1], d[2], d[3], patientId, Date.valueOf(day)})));
+        if (rows.isEmpty()) return;
+        int[][] updated = jdbc.batchUpdate("UPDATE patient_daily_adherence SET scheduled = ?, confirmed = ?, missed = ?, " +
+                        "delay_minutes = ? WHERE patient_id = ? AND local_date = ?",
+                rows, rows.size(), (ps, r) -> {
+                    for (int i = 0; i < r.length; i++) ps.setObject(i + 1, r[i]);
+                });
+        List<Object[]> missing = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            if (updated[0][i] == 0) missing.add(rows.get(i));
+        }
+        if (missing.isEmpty()) return;
+        jdbc.batchUpdate("INSERT INTO patient_daily_adherence (scheduled, confirmed, missed, delay_minutes, patient_id, local_date) " +
+                "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING", missing);
+    }
+}
@@ -0,0 +1,82 @@
+package com.pillpall.med_application.intakes;
+
+import com.pillpall.med_application.intakes.IntakeEventRepository.CalendarRowView;
+import com.pillpall.med_application.prescriptions.DoseSchedule;
+import com.pillpall.med_application.prescriptions.PrescriptionRepository;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+public class IntakeCalendarService {
+
+    //Calendrier des prises d'un patient calculé depuis les règles de récurrence, donc aussi au-delà de l'horizon
+    //écrit en base (IntakeMaterializer). Une prise qui a une ligne en prend l'id et le statut ; les autres sont PLANNED
+
+    public static final String PLANNED = "PLANNED";
+
+    private final PrescriptionRepository prescriptions;
+    private final IntakeEventRepository intakes;
+
+    @Value("${app.calendar.maxDays:92}") int maxDays;
+
+    // Jours locaux from à to inclus, dans le fuseau du patient ; trois requêtes quel que soit le nombre de prises
+    @Transactional(readOnly = true)
+    public List<CalendarDose> calendar(Long patientId, ZoneId zone, LocalDate from, LocalDate to) {
+        if (to.isBefore(from) || ChronoUnit.DAYS.between(from, to) >= maxDays) {
+            throw new IllegalArgumentException("Calendar range must cover 1 to " + maxDays + " days");
+        }
+        Instant start = from.atStartOfDay(zone).toInstant();
+        Instant end = to.plusDays(1).atStartOfDay(zone).toInstant();
+
+        var schedules = prescriptions.findScheduleViews(patientId, from, to);
+        if (schedules.isEmpty()) return List.of();
+        Map<Long, List<LocalTime>> times = prescriptions
+                .findDoseTimes(schedules.stream().map(PrescriptionRepository.ScheduleView::getId).toList())
+                .stream()
+                .collect(Collectors.groupingBy(PrescriptionRepository.DoseTimeView::getPrescriptionId,
+                        Collectors.mapping(dt -> LocalTime.of(dt.getHour(), dt.getMinute()), Collectors.toList())));
+        Map<Long, Map<Instant, CalendarRowView>> rows = intakes.findCalendarRows(patientId, start, end).stream()
+                .collect(Collectors.groupingBy(CalendarRowView::getPrescriptionId,
+                        Collectors.toMap(CalendarRowView::getScheduledAt, r -> r, (a, b) -> a, HashMap::new)));
+
+        List<CalendarDose> doses = new ArrayList<>();
+        for (var p : schedules) {
+            var written = rows.getOrDefault(p.getId(), new HashMap<>());
+            var cursor = DoseSchedule.of(p.getStartDate(), p.getEndDate(), times.getOrDefault(p.getId(), List.of()),
+                    p.getRecurrence(), zone).occurrences(start, end);
+            while (cursor.next()) {
+                Instant at = Instant.ofEpochSecond(cursor.epochSecond());
+                doses.add(dose(p, at, written.remove(at)));
+            }
+            // Prises écrites hors de la règle actuelle (confirmées avant une modification) : elles restent visibles
+            for (var row : written.values()) doses.add(dose(p, row.getScheduledAt(), row));
+        }
+        doses.sort(Comparator.comparing(CalendarDose::getScheduledAt).thenComparing(CalendarDose::getPrescriptionId));
+        return doses;
+    }
+
+    private static CalendarDose dose(PrescriptionRepository.ScheduleView p, Instant at, CalendarRowView row) {
+        return new CalendarDose(p.getId(), p.getMedicationName(), p.getDosage(), at,
+                row == null ? null : row.getId(), row == null ? PLANNED : row.getStatus().name());
+    }
+
+    @Data
+    public static class CalendarDose {
+        private final Long prescriptionId;
+        private final String medication;
+        private final String dosage;
+        private final Instant scheduledAt;
+        // null tant que la prise n'est pas écrite en base
+        private final Long eventId;
+        private final String status;
+    }
+}
@@ -1,18 +1,52 @@
 package com.pillpall.med_application.intakes;
+import com.pillpall.med_application.idempotency.IdempotencyService;
+import com.pillpall.med_application.users.PatientProfileRepository;
+import com.pillpall.med_application.users.UserRepository;
 import jakarta.validation.constraints.NotBlank; import lombok.Data; import lombok.RequiredArgsConstructor;
-import org.springframework.http.ResponseEntity; import org.springframework.web.bind.annotation.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity; import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import java.time.Instant;
+import java.util.List;
 
 @RestController @RequestMapping("/intakes") @RequiredArgsConstructor
 public class IntakeController {
 
     //Controleur de prise de Médicaments afin de confirmer que le patient a pris son médicament
     private final IntakeService service;
+    private final UserRepository users;
+    private final PatientProfileRepository patients;
+    private final IdempotencyService idempotency;
 
+    @Value("${app.intakes.confirmBatchMax:500}") int confirmBatchMax;
+
+    //Un double appui ou une nouvelle tentative avec le même Idempotency-Key reçoit la première réponse
     @PostMapping("/{id}/confirm")
-    public ResponseEntity<?> confirm(@PathVariable Long id, @RequestBody ConfirmReq req) {
-        var ev = service.confirm(id, req.getNotes());
-        return ResponseEntity.ok(ev.getStatus().name());
+    public ResponseEntity<?> confirm(@AuthenticationPrincipal String email, @PathVariable Long id,
+                                     @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                     @RequestBody ConfirmReq req) {
+        return idempotency.execute(idempotencyKey, email, "POST /intakes/" + id + "/confirm", req, () -> {
+            var ev = service.confirm(id, req.getNotes());
+            return ResponseEntity.ok(ev.getStatus().name());
+        });
+    }
+
+    //Confirmations accumulées hors ligne par l'application, rejouées en une seule requête
+    @PostMapping("/confirm-batch")
+    public ResponseEntity<?> confirmBatch(@AuthenticationPrincipal String email, @RequestBody List<ConfirmItem> items) {
+        if (items.size() > confirmBatchMax) {
+            return ResponseEntity.badRequest().body("At most " + confirmBatchMax + " confirmations per batch");
+        }
+        var user = users.findByEmail(email).orElseThrow();
+        var p = patients.findByUserId(user.getId()).orElseThrow();
+        return ResponseEntity.ok(service.confirmBatch(p.getId(), items));
     }
 
     @Data public static class ConfirmReq { @NotBlank private String notes; }
+
+    // confirmedAt : heure de prise saisie sur le téléphone (null = maintenant)
+    @Data public static class ConfirmItem { private Long intakeId; private Instant confirmedAt; private String notes; }
+
+    // CONFIRMED, ALREADY_CONFIRMED ou NOT_FOUND (prise inconnue ou d'un autre patient)
+    @Data public static class ConfirmResult { private final Long intakeId; private final String result; }
 }
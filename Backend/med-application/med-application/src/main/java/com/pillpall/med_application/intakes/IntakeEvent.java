@@ -4,13 +4,22 @@ import jakarta.persistence.*;
 import lombok.*;
 import java.time.Instant;
 
-@Entity @Table(name="intake_events")
+// Le schéma est géré par Flyway (db/migration), y compris les index partiels des prises PENDING
+@Entity @Table(name="intake_events", indexes = {
+        @Index(name="idx_intake_events_prescription_version", columnList="prescription_id, change_version")
+}, uniqueConstraints = {
+        // Une seule prise par prescription et par heure prévue : les insertions concurrentes sont idempotentes
+        @UniqueConstraint(name="uk_intake_events_prescription_scheduled", columnNames={"prescription_id", "scheduled_at"})
+})
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
 public class IntakeEvent {
 
     //La prise a trois état et le système marque l'heure de prise
     public enum Status { PENDING, CONFIRMED, MISSED }
 
+    //Avancement des rappels : 4 rappels FCM puis l'escalade vers les contacts
+    public enum ReminderStage { NEW, REMINDED_1, REMINDED_2, REMINDED_3, REMINDED_4, ESCALATED }
+
     @Id @GeneratedValue(strategy=GenerationType.IDENTITY) private Long id;
     @ManyToOne @JoinColumn(name="prescription_id", nullable=false)
     private Prescription prescription;
@@ -19,4 +28,19 @@ public class IntakeEvent {
     @Enumerated(EnumType.STRING) @Column(nullable=false) private Status status = Status.PENDING;
     private Instant confirmedAt;
     @Column(columnDefinition="text") private String notes;
-}
\ No newline at end of file
+
+    @Builder.Default
+    @Enumerated(EnumType.STRING) @Column(name="reminder_stage") private ReminderStage reminderStage = ReminderStage.NEW;
+    // Prochaine action de rappel due (null une fois l'escalade faite)
+    @Column(name="next_action_at") private Instant nextActionAt;
+    // Version de changement (ChangeVersions) : renouvelée à chaque écriture visible par l'application
+    @Column(name="change_version") private Long changeVersion;
+    // Verrou optimiste : les UPDATE ensemblistes incrémentent aussi cette colonne
+    @Version @Column(nullable=false, columnDefinition="bigint default 0") private long version;
+
+    @PrePersist
+    protected void onCreate() {
+        if (reminderStage == null) reminderStage = ReminderStage.NEW;
+        if (nextActionAt == null && reminderStage == ReminderStage.NEW) nextActionAt = scheduledAt;
+    }
+}
@@ -1,8 +1,15 @@
 package com.pillpall.med_application.intakes;
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+
 import java.time.Instant;
 import java.util.*;
+import java.util.stream.Stream;
 
 public interface IntakeEventRepository extends JpaRepository<IntakeEvent, Long> {
     List<IntakeEvent> findByStatusAndScheduledAtBetween(IntakeEvent.Status status, Instant from, Instant to);
@@ -12,13 +19,243 @@ public interface IntakeEventRepository extends JpaRepository<IntakeEvent, Long>
 
     List<IntakeEvent> findByPrescriptionPatientId(Long patientId);
 
-    List<IntakeEvent> findByPrescriptionPatientIdAndStatus(Long patientId, IntakeEvent.Status status);
-
-    List<IntakeEvent> findByPrescriptionPatientIdAndScheduledAtBetween(Long patientId, Instant todayStart, Instant tomorrowStart);
-
-    void deleteByPrescriptionId(Long id);
+    // Suppression ensembliste (les tentatives et le registre d'escalade sont supprimés avant par l'appelant)
+    @Modifying
+    @Query("DELETE FROM IntakeEvent e WHERE e.prescription.id = :prescriptionId")
+    int deleteByPrescriptionId(@Param("prescriptionId") Long prescriptionId);
     List<IntakeEvent> findByPrescriptionPatientIdAndScheduledAtAfter(Long patientId, Instant startDate);
-    List<IntakeEvent> findByPrescriptionPatientIdAndScheduledAtBetweenAndStatus(
-            Long patientId, Instant start, Instant end, IntakeEvent.Status status);
     Optional<IntakeEvent> findByPrescriptionIdAndScheduledAt(Long prescriptionId, Instant scheduledAt);
+
+    // Chargement léger pour la roue de rappels : uniquement l'id et l'heure prévue.
+    // Les requêtes sur les seules prises PENDING écrivent le statut en littéral : l'index partiel
+    // (db/migration/V3) n'est utilisable que si le prédicat figure tel quel dans la requête
+    @Query("SELECT e.id AS id, e.scheduledAt AS scheduledAt FROM IntakeEvent e " +
+            "WHERE e.status = com.pillpall.med_application.intakes.IntakeEvent.Status.PENDING " +
+            "AND e.scheduledAt >= :from AND e.scheduledAt < :to")
+    List<ScheduleView> findPendingScheduleBetween(@Param("from") Instant from, @Param("to") Instant to);
+
+    // Prises écrites depuis une version de changement : les ids IDENTITY ne sont pas validés dans l'ordre
+    @Query("SELECT e.id AS id, e.scheduledAt AS scheduledAt FROM IntakeEvent e " +
+            "WHERE e.status = com.pillpall.med_application.intakes.IntakeEvent.Status.PENDING " +
+            "AND e.changeVersion > :since AND e.scheduledAt >= :from AND e.scheduledAt < :to")
+    List<ScheduleView> findPendingScheduleChangedSince(@Param("since") long since,
+                                                       @Param("from") Instant from, @Param("to") Instant to);
+
+    // Tick de rappels : une seule requête sur l'index partiel (next_action_at) des prises PENDING, sans charger
+    // les entités, limitée aux partitions (patient_id mod N) détenues par ce noeud
+    @Query("SELECT e.id AS id, pa.id AS patientId, e.scheduledAt AS scheduledAt, e.reminderStage AS reminderStage, " +
+            "p.medicationName AS medicationName, u.deviceToken AS deviceToken " +
+            "FROM IntakeEvent e JOIN e.prescription p JOIN p.patient pa JOIN pa.user u " +
+            "WHERE e.status = com.pillpall.med_application.intakes.IntakeEvent.Status.PENDING " +
+            "AND e.nextActionAt <= :now AND MOD(pa.id, :partitions) IN :parts")
+    List<DueReminderView> findDueReminders(@Param("now") Instant now,
+                                           @Param("partitions") long partitions, @Param("parts") Collection<Long> parts);
+
+    @Query("SELECT e.id AS id, pa.id AS patientId, e.scheduledAt AS scheduledAt, e.reminderStage AS reminderStage, " +
+            "p.medicationName AS medicationName, u.deviceToken AS deviceToken " +
+            "FROM IntakeEvent e JOIN e.prescription p JOIN p.patient pa JOIN pa.user u " +
+            "WHERE e.id = :id AND e.status = com.pillpall.med_application.intakes.IntakeEvent.Status.PENDING " +
+            "AND e.nextActionAt <= :now")
+    Optional<DueReminderView> findDueReminder(@Param("id") Long id, @Param("now") Instant now);
+
+    // Prises dues d'un patient : la roue regroupe les prises co-planifiées dans un seul rappel
+    @Query("SELECT e.id AS id, pa.id AS patientId, e.scheduledAt AS scheduledAt, e.reminderStage AS reminderStage, " +
+            "p.medicationName AS medicationName, u.deviceToken AS deviceToken " +
+            "FROM IntakeEvent e JOIN e.prescription p JOIN p.patient pa JOIN pa.user u " +
+            "WHERE pa.id = :patientId AND e.status = com.pillpall.med_application.intakes.IntakeEvent.Status.PENDING " +
+            "AND e.nextActionAt <= :now")
+    List<DueReminderView> findDuePatientReminders(@Param("patientId") Long patientId, @Param("now") Instant now);
+
+    // Compare-and-set de l'étape : 0 si un autre noeud l'a déjà avancée ou si la prise n'est plus PENDING
+    @Modifying
+    @Query("UPDATE IntakeEvent e SET e.reminderStage = :to, e.nextActionAt = :nextActionAt, e.version = e.version + 1 " +
+            "WHERE e.id = :id AND e.reminderStage = :from AND e.status = :status")
+    int advanceReminderStage(@Param("id") Long id, @Param("status") IntakeEvent.Status status,
+                             @Param("from") IntakeEvent.ReminderStage from,
+                             @Param("to") IntakeEvent.ReminderStage to, @Param("nextActionAt") Instant nextActionAt);
+
+    // Passage en MISSED par tranches : uniquement les ids, verrouillés ; les lignes déjà verrouillées
+    // (confirmation en cours) sont sautées et reprises au tick suivant. Seules les prises déjà escaladées sont
+    // prises : le rappel et l'escalade ne lisent que les prises PENDING, une prise passée en MISSED avant son
+    // étape ESCALATED (roue en retard, partition en cours de reprise) perdrait l'alerte aux proches
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT e.id FROM IntakeEvent e WHERE e.status = com.pillpall.med_application.intakes.IntakeEvent.Status.PENDING " +
+            "AND e.reminderStage = com.pillpall.med_application.intakes.IntakeEvent.ReminderStage.ESCALATED " +
+            "AND e.scheduledAt < :before AND e.id > :afterId ORDER BY e.id")
+    List<Long> lockPendingIdsScheduledBefore(@Param("before") Instant before, @Param("afterId") Long afterId, Pageable page);
+
+    @Modifying
+    @Query("UPDATE IntakeEvent e SET e.status = :to, e.nextActionAt = NULL, e.version = e.version + 1, " +
+            "e.changeVersion = function('nextval', 'change_version_seq') WHERE e.id IN :ids AND e.status = :from")
+    int updateStatus(@Param("ids") Collection<Long> ids, @Param("from") IntakeEvent.Status from,
+                     @Param("to") IntakeEvent.Status to);
+
+    // Prises futures d'une prescription modifiée, comparées au nouveau plan
+    @Query("SELECT e.id AS id, e.scheduledAt AS scheduledAt FROM IntakeEvent e " +
+            "WHERE e.prescription.id = :prescriptionId AND e.status = :status AND e.scheduledAt >= :from")
+    List<ScheduleView> findScheduleByPrescriptionFrom(@Param("prescriptionId") Long prescriptionId,
+                                                      @Param("status") IntakeEvent.Status status, @Param("from") Instant from);
+
+    // Seules les prises encore dans l'état attendu sont supprimées : l'historique (CONFIRMED/MISSED) n'est pas touché
+    @Modifying
+    @Query("DELETE FROM IntakeEvent e WHERE e.id IN :ids AND e.status = :status")
+    int deleteByIdsAndStatus(@Param("ids") Collection<Long> ids, @Param("status") IntakeEvent.Status status);
+
+    // Confirmation groupée : les prises demandées qui appartiennent au patient, verrouillées dans l'ordre des ids.
+    // Seules les lignes de intake_events sont verrouillées (l'appartenance passe par une sous-requête) ; le passage
+    // en MISSED saute ces lignes et les reprend au tick suivant
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e.id FROM IntakeEvent e WHERE e.id IN :ids AND e.prescription.id IN " +
+            "(SELECT p.id FROM Prescription p WHERE p.patient.id = :patientId) ORDER BY e.id")
+    List<Long> lockOwnedIds(@Param("ids") Collection<Long> ids, @Param("patientId") Long patientId);
+
+    // Puis leur statut, relu après le verrou, et de quoi tenir l'agrégat d'observance
+    @Query("SELECT e.id AS id, e.status AS status, e.scheduledAt AS scheduledAt, u.timezone AS timezone " +
+            "FROM IntakeEvent e JOIN e.prescription p JOIN p.patient pa JOIN pa.user u " +
+            "WHERE e.id IN :ids AND pa.id = :patientId")
+    List<OwnedStatusView> findOwnedStatuses(@Param("ids") Collection<Long> ids, @Param("patientId") Long patientId);
+
+    // Synchronisation incrémentale : prises du patient écrites depuis le curseur, dans l'ordre des versions
+    @Query("SELECT e.id AS id, p.id AS prescriptionId, e.scheduledAt AS scheduledAt, e.status AS status, " +
+            "e.confirmedAt AS confirmedAt, e.notes AS notes, e.changeVersion AS changeVersion " +
+            "FROM IntakeEvent e JOIN e.prescription p " +
+            "WHERE p.patient.id = :patientId AND e.changeVersion > :since ORDER BY e.changeVersion")
+    List<IntakeChangeView> findChangedSince(@Param("patientId") Long patientId, @Param("since") long since, Pageable page);
+
+    // Agrégat d'observance (AdherenceRollup) : patient, fuseau et état des prises touchées par une écriture
+    @Query("SELECT pa.id AS patientId, u.timezone AS timezone, e.scheduledAt AS scheduledAt, e.status AS status, " +
+            "e.confirmedAt AS confirmedAt FROM IntakeEvent e JOIN e.prescription p JOIN p.patient pa JOIN pa.user u " +
+            "WHERE e.id IN :ids")
+    List<RollupRowView> findRollupRows(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT pa.id AS patientId, u.timezone AS timezone, e.scheduledAt AS scheduledAt, e.status AS status, " +
+            "e.confirmedAt AS confirmedAt FROM IntakeEvent e JOIN e.prescription p JOIN p.patient pa JOIN pa.user u " +
+            "WHERE p.id = :prescriptionId")
+    List<RollupRowView> findRollupRowsByPrescription(@Param("prescriptionId") Long prescriptionId);
+
+    // Réconciliation : toutes les prises d'une tranche de patients sur la fenêtre recalculée
+    @Query("SELECT pa.id AS patientId, u.timezone AS timezone, e.scheduledAt AS scheduledAt, e.status AS status, " +
+            "e.confirmedAt AS confirmedAt FROM IntakeEvent e JOIN e.prescription p JOIN p.patient pa JOIN pa.user u " +
+            "WHERE pa.id IN :patientIds AND e.scheduledAt >= :from AND e.scheduledAt < :to")
+    List<RollupRowView> findRollupRowsForPatients(@Param("patientIds") Collection<Long> patientIds,
+                                                  @Param("from") Instant from, @Param("to") Instant to);
+
+    // Heures déjà écrites d'une prescription : seules les nouvelles prises comptent dans l'agrégat
+    @Query("SELECT e.scheduledAt FROM IntakeEvent e WHERE e.prescription.id = :prescriptionId " +
+            "AND e.scheduledAt BETWEEN :from AND :to")
+    List<Instant> findScheduledAtByPrescriptionBetween(@Param("prescriptionId") Long prescriptionId,
+                                                      @Param("from") Instant from, @Param("to") Instant to);
+
+    // Historique d'un patient par keyset sur (scheduled_at, id), du plus récent au plus ancien : chaque page
+    // reprend strictement après la dernière ligne de la précédente, sans OFFSET
+    @Query("SELECT e.id AS id, e.scheduledAt AS scheduledAt, e.status AS status, e.confirmedAt AS confirmedAt, " +
+            "p.medicationName AS medicationName, p.dosage AS dosage " +
+            "FROM IntakeEvent e JOIN e.prescription p " +
+            "WHERE p.patient.id = :patientId AND e.scheduledAt >= :from " +
+            "AND (e.scheduledAt, e.id) < (:beforeAt, :beforeId) " +
+            "ORDER BY e.scheduledAt DESC, e.id DESC")
+    List<HistoryView> findHistoryPage(@Param("patientId") Long patientId, @Param("from") Instant from,
+                                      @Param("beforeAt") Instant beforeAt, @Param("beforeId") Long beforeId, Pageable page);
+
+    // Fenêtre entière, dans l'ordre chronologique : réponse historique des clients qui ne paginent pas
+    @Query("SELECT e.id AS id, e.scheduledAt AS scheduledAt, e.status AS status, e.confirmedAt AS confirmedAt, " +
+            "p.medicationName AS medicationName, p.dosage AS dosage " +
+            "FROM IntakeEvent e JOIN e.prescription p " +
+            "WHERE p.patient.id = :patientId AND e.scheduledAt >= :from " +
+            "ORDER BY e.scheduledAt, e.id")
+    List<HistoryView> findHistory(@Param("patientId") Long patientId, @Param("from") Instant from);
+
+    // Prochaines prises du tableau de bord : les colonnes affichées en une seule requête, sans charger
+    // la prescription, le médecin et ses rôles (associations EAGER) ligne par ligne
+    @Query("SELECT e.id AS id, p.medicationName AS medicationName, p.dosage AS dosage, e.scheduledAt AS scheduledAt, " +
+            "u.fullName AS doctorName " +
+            "FROM IntakeEvent e JOIN e.prescription p JOIN p.doctor d JOIN d.user u " +
+            "WHERE p.patient.id = :patientId " +
+            "AND e.status = com.pillpall.med_application.intakes.IntakeEvent.Status.PENDING " +
+            "AND e.scheduledAt BETWEEN :from AND :to " +
+            "ORDER BY e.scheduledAt, e.id")
+    List<UpcomingView> findUpcoming(@Param("patientId") Long patientId, @Param("from") Instant from, @Param("to") Instant to);
+
+    // Calendrier : prises écrites sur la période, fusionnées avec celles calculées depuis les règles
+    @Query("SELECT e.id AS id, p.id AS prescriptionId, e.scheduledAt AS scheduledAt, e.status AS status " +
+            "FROM IntakeEvent e JOIN e.prescription p " +
+            "WHERE p.patient.id = :patientId AND e.scheduledAt >= :from AND e.scheduledAt < :to")
+    List<CalendarRowView> findCalendarRows(@Param("patientId") Long patientId,
+                                           @Param("from") Instant from, @Param("to") Instant to);
+
+    // Même historique en flux : curseur JDBC vers l'avant, lu par paquets (à consommer dans une transaction)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT e.id AS id, e.scheduledAt AS scheduledAt, e.status AS status, e.confirmedAt AS confirmedAt, " +
+            "p.medicationName AS medicationName, p.dosage AS dosage " +
+            "FROM IntakeEvent e JOIN e.prescription p " +
+            "WHERE p.patient.id = :patientId AND e.scheduledAt >= :from " +
+            "ORDER BY e.scheduledAt DESC, e.id DESC")
+    Stream<HistoryView> streamHistory(@Param("patientId") Long patientId, @Param("from") Instant from);
+
+    interface HistoryView {
+        Long getId();
+        Instant getScheduledAt();
+        IntakeEvent.Status getStatus();
+        Instant getConfirmedAt();
+        String getMedicationName();
+        String getDosage();
+    }
+
+    interface UpcomingView {
+        Long getId();
+        String getMedicationName();
+        String getDosage();
+        Instant getScheduledAt();
+        String getDoctorName();
+    }
+
+    interface CalendarRowView {
+        Long getId();
+        Long getPrescriptionId();
+        Instant getScheduledAt();
+        IntakeEvent.Status getStatus();
+    }
+
+    interface IntakeChangeView {
+        Long getId();
+        Long getPrescriptionId();
+        Instant getScheduledAt();
+        IntakeEvent.Status getStatus();
+        Instant getConfirmedAt();
+        String getNotes();
+        Long getChangeVersion();
+    }
+
+    interface OwnedStatusView {
+        Long getId();
+        IntakeEvent.Status getStatus();
+        Instant getScheduledAt();
+        String getTimezone();
+    }
+
+    interface RollupRowView {
+        Long getPatientId();
+        String getTimezone();
+        Instant getScheduledAt();
+        IntakeEvent.Status getStatus();
+        Instant getConfirmedAt();
+    }
+
+    interface ScheduleView {
+        Long getId();
+        Instant getScheduledAt();
+    }
+
+    interface DueReminderView {
+        Long getId();
+        Long getPatientId();
+        Instant getScheduledAt();
+        IntakeEvent.ReminderStage getReminderStage();
+        String getMedicationName();
+        String getDeviceToken();
+    }
 }
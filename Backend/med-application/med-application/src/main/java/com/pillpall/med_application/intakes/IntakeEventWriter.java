@@ -0,0 +1,81 @@
+package com.pillpall.med_application.intakes;
+
+import com.pillpall.med_application.sync.ChangeVersions;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class IntakeEventWriter {
+
+    //Insertion en masse des prises planifiées. IntakeEvent est en IDENTITY, ce qui désactive le batch Hibernate :
+    //on passe par un batch JDBC (une requête par lot, réécrite en INSERT multi-lignes avec reWriteBatchedInserts)
+
+    private final JdbcTemplate jdbc;
+
+    @Value("${app.intakes.insertBatchSize:1000}") int batchSize;
+
+    // Même état initial que IntakeEvent.onCreate : PENDING, étape NEW, prochaine action à l'heure prévue.
+    // Idempotent : une prise déjà écrite (job d'horizon, autre noeud) est ignorée grâce à la contrainte unique.
+    // Renvoie le nombre de prises réellement insérées, sans les doublons ignorés
+    public int insertPending(Long prescriptionId, List<Instant> scheduledAt) {
+        if (scheduledAt.isEmpty()) return 0;
+        long floor = jdbc.queryForObject("SELECT " + ChangeVersions.NEXT, Long.class);
+        int[][] counts = jdbc.batchUpdate(
+                "INSERT INTO intake_events (prescription_id, scheduled_at, status, reminder_stage, next_action_at, change_version) " +
+                        "VALUES (?, ?, ?, ?, ?, " + ChangeVersions.NEXT + ") ON CONFLICT DO NOTHING",
+                scheduledAt, batchSize, (ps, at) -> {
+                    OffsetDateTime ts = at.atOffset(ZoneOffset.UTC);
+                    ps.setLong(1, prescriptionId);
+                    ps.setObject(2, ts);
+                    ps.setString(3, IntakeEvent.Status.PENDING.name());
+                    ps.setString(4, IntakeEvent.ReminderStage.NEW.name());
+                    ps.setObject(5, ts);
+                });
+        int written = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                if (count == Statement.SUCCESS_NO_INFO) return countInsertedSince(prescriptionId, floor, scheduledAt);
+                written += count;
+            }
+        }
+        return written;
+    }
+
+    // Lot réécrit en INSERT multi-lignes (reWriteBatchedInserts) : le pilote ne donne pas le compte par ligne.
+    // Les prises insérées par cet appel sont celles de la prescription dont la version suit la borne prise avant
+    // l'INSERT (une prise existante de la plage modifiée au même moment serait comptée en plus)
+    private int countInsertedSince(Long prescriptionId, long floor, List<Instant> scheduledAt) {
+        var first = scheduledAt.stream().min(Instant::compareTo).orElseThrow().atOffset(ZoneOffset.UTC);
+        var last = scheduledAt.stream().max(Instant::compareTo).orElseThrow().atOffset(ZoneOffset.UTC);
+        return jdbc.queryForObject("SELECT COUNT(*) FROM intake_events WHERE prescription_id = ? AND change_version > ? " +
+                "AND scheduled_at >= ? AND scheduled_at <= ?", Integer.class, prescriptionId, floor, first, last);
+    }
+
+    // Confirmations groupées : un seul UPDATE préparé, exécuté en lot (un aller-retour), chaque ligne avec
+    // son heure de prise effective (confirmedAt, par id). Une prise confirmée entre-temps n'est pas réécrite (compte 0)
+    public int[] confirm(List<IntakeController.ConfirmItem> items, Map<Long, Instant> confirmedAt) {
+        if (items.isEmpty()) return new int[0];
+        int[][] counts = jdbc.batchUpdate(
+                "UPDATE intake_events SET status = ?, confirmed_at = ?, notes = ?, next_action_at = NULL, version = version + 1, " +
+                        "change_version = " + ChangeVersions.NEXT + " " +
+                        "WHERE id = ? AND status <> ?",
+                items, items.size(), (ps, item) -> {
+                    ps.setString(1, IntakeEvent.Status.CONFIRMED.name());
+                    ps.setObject(2, confirmedAt.get(item.getIntakeId()).atOffset(ZoneOffset.UTC));
+                    ps.setString(3, item.getNotes());
+                    ps.setLong(4, item.getIntakeId());
+                    ps.setString(5, IntakeEvent.Status.CONFIRMED.name());
+                });
+        return counts[0];
+    }
+}
@@ -0,0 +1,120 @@
+package com.pillpall.med_application.intakes;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pillpall.med_application.intakes.IntakeEventRepository.HistoryView;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+@Service
+@RequiredArgsConstructor
+public class IntakeHistoryService {
+
+    //Historique des prises d'un patient (écran patient et observance côté médecin) : par pages keyset avec un
+    //jeton de continuation, en flux JSON écrit au fil du curseur, ou en entier pour les clients qui ne paginent pas
+
+    // En-tête portant le jeton de la page suivante (absent sur la dernière page)
+    public static final String NEXT_CURSOR_HEADER = "Next-Cursor";
+
+    // Borne haute de la première page : au-delà de toute prise planifiée
+    private static final Instant FIRST_PAGE_BEFORE = Instant.parse("9999-12-31T00:00:00Z");
+
+    private final IntakeEventRepository intakes;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.history.pageSize:500}") int pageSize;
+
+    // Le jeton porte le début de la fenêtre : les pages suivantes ne glissent pas avec l'heure courante
+    @Transactional(readOnly = true)
+    public HistoryPage page(Long patientId, int days, String cursor, Integer limit) {
+        int size = limit == null || limit <= 0 || limit > pageSize ? pageSize : limit;
+        Cursor position = cursor == null || cursor.isBlank()
+                ? new Cursor(Instant.now().minus(Duration.ofDays(days)), FIRST_PAGE_BEFORE, Long.MAX_VALUE)
+                : Cursor.decode(cursor);
+
+        var items = intakes.findHistoryPage(patientId, position.getFrom(), position.getBeforeAt(), position.getBeforeId(),
+                PageRequest.of(0, size));
+        String next = null;
+        if (items.size() == size) {
+            var last = items.get(items.size() - 1);
+            next = new Cursor(position.getFrom(), last.getScheduledAt(), last.getId()).encode();
+        }
+        return new HistoryPage(items, next);
+    }
+
+    // Réponse d'avant la pagination : toute la fenêtre en une liste, sans jeton
+    @Transactional(readOnly = true)
+    public List<HistoryView> all(Long patientId, int days) {
+        return intakes.findHistory(patientId, Instant.now().minus(Duration.ofDays(days)));
+    }
+
+    // Écrit un tableau JSON élément par élément pendant la lecture : la mémoire ne dépend pas du nombre de prises.
+    // Le corps est écrit après le retour du contrôleur, dans sa propre transaction en lecture seule
+    public StreamingResponseBody stream(Long patientId, int days, Function<HistoryView, ?> mapper) {
+        Instant from = Instant.now().minus(Duration.ofDays(days));
+        return out -> {
+            var tx = new TransactionTemplate(transactionManager);
+            tx.setReadOnly(true);
+            tx.executeWithoutResult(status -> {
+                try (var rows = intakes.streamHistory(patientId, from);
+                     var json = objectMapper.createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+                    json.writeStartArray();
+                    for (var it = rows.iterator(); it.hasNext(); ) {
+                        json.writeObject(mapper.apply(it.next()));
+                    }
+                    json.writeEndArray();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        };
+    }
+
+    @Data
+    public static class HistoryPage {
+        private final List<HistoryView> items;
+        // null sur la dernière page
+        private final String next;
+    }
+
+    // Jeton opaque : début de fenêtre, puis (scheduled_at, id) de la dernière ligne renvoyée
+    @Data
+    static class Cursor {
+        private final Instant from;
+        private final Instant beforeAt;
+        private final Long beforeId;
+
+        String encode() {
+            String raw = from + "," + beforeAt + "," + beforeId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String token) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(",");
+                if (parts.length != 3) throw new IllegalArgumentException("Invalid history cursor");
+                return new Cursor(Instant.parse(parts[0]), Instant.parse(parts[1]), Long.parseLong(parts[2]));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid history cursor", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.pillpall.med_application.intakes;
+
+import com.pillpall.med_application.notifications.ReminderPartitions;
+import com.pillpall.med_application.prescriptions.Prescription;
+import com.pillpall.med_application.prescriptions.PrescriptionRepository;
+import com.pillpall.med_application.sync.SyncTombstoneRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+public class IntakeMaterializer {
+
+    //Horizon glissant : seules les prises des N prochains jours de chaque prescription en cours existent en base.
+    //Le job étend l'horizon chaque heure, partition par partition (mêmes partitions patient que les rappels)
+
+    private static final Logger log = LoggerFactory.getLogger(IntakeMaterializer.class);
+
+    private final PrescriptionRepository prescriptions;
+    private final IntakeEventRepository intakes;
+    private final IntakePlanner planner;
+    private final IntakeEventWriter writer;
+    private final AdherenceRollup rollup;
+    private final ReminderPartitions partitions;
+    private final SyncTombstoneRepository tombstones;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.intakes.horizonDays:14}") int horizonDays;
+    @Value("${app.intakes.materializeChunkSize:500}") int chunkSize;
+
+    // Dernier jour à planifier pour une prescription : aujourd'hui + N dans le fuseau du patient, borné par la fin
+    LocalDate horizon(Prescription p) {
+        LocalDate today = LocalDate.now(ZoneId.of(p.getPatient().getUser().getTimezone()));
+        LocalDate horizon = today.plusDays(horizonDays);
+        return horizon.isAfter(p.getEndDate()) ? p.getEndDate() : horizon;
+    }
+
+    // Écrit les jours manquants entre materializedUntil et l'horizon. À appeler dans la transaction de l'appelant,
+    // la prescription verrouillée ou tout juste créée
+    public int materialize(Prescription p) {
+        LocalDate to = horizon(p);
+        LocalDate from = p.getMaterializedUntil() == null ? p.getStartDate() : p.getMaterializedUntil().plusDays(1);
+        if (from.isAfter(to)) return 0;
+
+        int written = insert(p, planner.plan(p, from, to));
+        p.setMaterializedUntil(to);
+        return written;
+    }
+
+    // Prescription modifiée : les prises PENDING à venir sont comparées au nouveau plan jusqu'à l'horizon.
+    // Seules celles qui disparaissent sont supprimées et seules les nouvelles heures sont insérées ;
+    // le passé et les prises déjà confirmées ou manquées restent tels quels. Renvoie le nombre de lignes touchées
+    public int reschedule(Prescription p) {
+        Instant now = Instant.now();
+        LocalDate to = horizon(p);
+        LocalDate today = LocalDate.now(ZoneId.of(p.getPatient().getUser().getTimezone()));
+        Set<Instant> planned = planner.plan(p, today, to).stream()
+                .filter(at -> !at.isBefore(now))
+                .collect(Collectors.toCollection(TreeSet::new));
+        p.setMaterializedUntil(to);
+
+        Map<Long, Instant> stale = new LinkedHashMap<>();
+        for (var e : intakes.findScheduleByPrescriptionFrom(p.getId(), IntakeEvent.Status.PENDING, now)) {
+            if (!planned.remove(e.getScheduledAt())) stale.put(e.getId(), e.getScheduledAt());
+        }
+        if (!stale.isEmpty()) {
+            List<Long> ids = List.copyOf(stale.keySet());
+            tombstones.recordIntakes(ids, IntakeEvent.Status.PENDING.name(), now);
+            // Une prise confirmée entre-temps reste en base : l'agrégat ne retire que les prises supprimées
+            if (intakes.deleteByIdsAndStatus(ids, IntakeEvent.Status.PENDING) < ids.size()) {
+                intakes.findAllById(ids).forEach(e -> stale.remove(e.getId()));
+            }
+            ZoneId zone = ZoneId.of(p.getPatient().getUser().getTimezone());
+            var changes = new AdherenceRollup.Changes();
+            for (Instant at : stale.values()) changes.scheduled(p.getPatient().getId(), zone, at, -1);
+            rollup.apply(changes);
+        }
+        return stale.size() + insert(p, List.copyOf(planned));
+    }
+
+    // Insertion des prises planifiées et agrégat d'observance. La prescription est verrouillée (ou non encore
+    // visible) : les heures déjà écrites sont exactement celles que l'INSERT ignorerait
+    private int insert(Prescription p, List<Instant> planned) {
+        if (planned.isEmpty()) return 0;
+        var existing = Set.copyOf(intakes.findScheduledAtByPrescriptionBetween(p.getId(),
+                planned.get(0), planned.get(planned.size() - 1)));
+        List<Instant> fresh = existing.isEmpty() ? planned : planned.stream().filter(at -> !existing.contains(at)).toList();
+        int written = writer.insertPending(p.getId(), fresh);
+
+        ZoneId zone = ZoneId.of(p.getPatient().getUser().getTimezone());
+        var changes = new AdherenceRollup.Changes();
+        for (Instant at : fresh) changes.scheduled(p.getPatient().getId(), zone, at, 1);
+        rollup.apply(changes);
+        return written;
+    }
+
+    // Les fuseaux vont de UTC-12 à UTC+14 : la sélection prend un jour de marge, materialize() tranche
+    // avec la date locale. Chaque tranche est sa propre transaction
+    @Scheduled(cron = "${app.intakes.materializeCron:0 5 * * * *}")
+    public void extendHorizons() {
+        var parts = partitions.owned().stream().map(Integer::longValue).toList();
+        if (parts.isEmpty()) return;
+        LocalDate utcToday = LocalDate.now(ZoneOffset.UTC);
+
+        var tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        long afterId = 0;
+        int[] written = {0};
+        while (true) {
+            final long from = afterId;
+            Long last = tx.execute(status -> {
+                var batch = prescriptions.lockToMaterialize(utcToday.minusDays(1), utcToday.plusDays(horizonDays + 1),
+                        partitions.count(), parts, from, PageRequest.of(0, chunkSize));
+                for (var p : batch) written[0] += materialize(p);
+                return batch.isEmpty() ? null : batch.get(batch.size() - 1).getId();
+            });
+            if (last == null) break;
+            afterId = last;
+        }
+        if (written[0] > 0) log.info("Materialized {} intake events", written[0]);
+    }
+}
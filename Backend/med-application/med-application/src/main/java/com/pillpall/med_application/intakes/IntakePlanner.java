@@ -0,0 +1,19 @@
+package com.pillpall.med_application.intakes;
+
+import com.pillpall.med_application.prescriptions.DoseSchedule;
+import com.pillpall.med_application.prescriptions.Prescription;
+import org.springframework.stereotype.Component;
+
+import java.time.*;
+import java.util.List;
+
+@Component
+public class IntakePlanner {
+
+    //Calcule les heures de prise d'une prescription (règle de récurrence appliquée aux DoseTime) dans le fuseau
+    //du patient, sans rien écrire
+
+    public List<Instant> plan(Prescription p, LocalDate from, LocalDate to) {
+        return DoseSchedule.of(p).list(from, to);
+    }
+}
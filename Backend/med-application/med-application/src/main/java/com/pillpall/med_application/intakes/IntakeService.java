@@ -1,19 +1,106 @@
 package com.pillpall.med_application.intakes;
 
+import com.pillpall.med_application.notifications.ReminderWheel;
+import com.pillpall.med_application.sync.ChangeVersions;
 import lombok.RequiredArgsConstructor;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service; import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.time.Instant;
+import java.time.ZoneId;
+import java.util.*;
 
 @Service @RequiredArgsConstructor
 public class IntakeService {
     private final IntakeEventRepository repo;
+    private final ReminderWheel reminderWheel;
+    private final IntakeEventWriter writer;
+    private final ChangeVersions versions;
+    private final AdherenceRollup rollup;
+    private final PlatformTransactionManager transactionManager;
 
-    @Transactional
+    static final int CONFIRM_ATTEMPTS = 3;
+
+    // Verrou optimiste : si le tick a modifié la prise entre-temps (étape de rappel, MISSED), la confirmation
+    // est relue et réappliquée au lieu d'écraser l'autre écriture. Une prise déjà confirmée n'est pas réécrite.
+    // La prise est écrite (flush) avant l'agrégat d'observance, dans le même ordre de verrous que le passage en MISSED
     public IntakeEvent confirm(Long intakeId, String notes) {
-        var ev = repo.findById(intakeId).orElseThrow();
-        ev.setStatus(IntakeEvent.Status.CONFIRMED);
-        ev.setConfirmedAt(Instant.now());
-        ev.setNotes(notes);
-        return ev;
+        var tx = new TransactionTemplate(transactionManager);
+        IntakeEvent confirmed;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                confirmed = tx.execute(status -> {
+                    var ev = repo.findById(intakeId).orElseThrow();
+                    if (ev.getStatus() == IntakeEvent.Status.CONFIRMED) return ev;
+                    var previous = ev.getStatus();
+                    ev.setStatus(IntakeEvent.Status.CONFIRMED);
+                    ev.setConfirmedAt(Instant.now());
+                    ev.setNotes(notes);
+                    ev.setNextActionAt(null);
+                    ev.setChangeVersion(versions.next());
+                    repo.flush();
+                    var patient = ev.getPrescription().getPatient();
+                    rollup.apply(new AdherenceRollup.Changes().confirmed(patient.getId(),
+                            ZoneId.of(patient.getUser().getTimezone()), ev.getScheduledAt(), ev.getConfirmedAt(), previous));
+                    return ev;
+                });
+                break;
+            } catch (ObjectOptimisticLockingFailureException e) {
+                if (attempt >= CONFIRM_ATTEMPTS) throw e;
+            }
+        }
+        reminderWheel.cancel(intakeId);
+        return confirmed;
+    }
+
+    // Prises du patient verrouillées puis relues (le statut précédent reste exact face au passage en MISSED),
+    // et un seul UPDATE en lot. L'heure envoyée par le téléphone est conservée (analyse des retards après une
+    // période hors ligne), sauf si elle est dans le futur. Les notes sont facultatives,
+    // comme pour la confirmation unitaire. Résultats dans l'ordre de la requête ; un id répété n'est appliqué qu'une fois
+    @Transactional
+    public List<IntakeController.ConfirmResult> confirmBatch(Long patientId, List<IntakeController.ConfirmItem> items) {
+        Instant now = Instant.now();
+        Map<Long, IntakeEventRepository.OwnedStatusView> owned = new HashMap<>();
+        var ids = items.stream().map(IntakeController.ConfirmItem::getIntakeId).filter(Objects::nonNull).distinct().toList();
+        if (!ids.isEmpty()) {
+            var locked = repo.lockOwnedIds(ids, patientId);
+            if (!locked.isEmpty()) repo.findOwnedStatuses(locked, patientId).forEach(v -> owned.put(v.getId(), v));
+        }
+
+        Map<Long, String> results = new HashMap<>();
+        Map<Long, Instant> confirmedAt = new HashMap<>();
+        List<IntakeController.ConfirmItem> toApply = new ArrayList<>();
+        for (var item : items) {
+            Long id = item.getIntakeId();
+            if (id == null || results.containsKey(id)) continue;
+            var view = owned.get(id);
+            if (view == null) results.put(id, "NOT_FOUND");
+            else if (view.getStatus() == IntakeEvent.Status.CONFIRMED) results.put(id, "ALREADY_CONFIRMED");
+            else {
+                var at = item.getConfirmedAt();
+                confirmedAt.put(id, at == null || at.isAfter(now) ? now : at);
+                toApply.add(item);
+                results.put(id, "CONFIRMED");
+            }
+        }
+
+        int[] counts = writer.confirm(toApply, confirmedAt);
+        var changes = new AdherenceRollup.Changes();
+        for (int i = 0; i < toApply.size(); i++) {
+            Long id = toApply.get(i).getIntakeId();
+            if (counts[i] == 0) results.put(id, "ALREADY_CONFIRMED");
+            else {
+                var view = owned.get(id);
+                changes.confirmed(patientId, ZoneId.of(view.getTimezone()), view.getScheduledAt(), confirmedAt.get(id),
+                        view.getStatus());
+            }
+            reminderWheel.cancel(id);
+        }
+        rollup.apply(changes);
+        return items.stream()
+                .map(item -> new IntakeController.ConfirmResult(item.getIntakeId(),
+                        results.getOrDefault(item.getIntakeId(), "NOT_FOUND")))
+                .toList();
     }
 }
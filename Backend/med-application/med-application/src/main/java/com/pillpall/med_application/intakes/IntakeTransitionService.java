@@ -0,0 +1,55 @@
+package com.pillpall.med_application.intakes;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+public class IntakeTransitionService {
+
+    //Transitions d'état en masse : UPDATE ensemblistes par tranches d'ids, sans charger les entités
+
+    private final IntakeEventRepository intakes;
+    private final AdherenceRollup rollup;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.intakes.transitionChunkSize:1000}") int chunkSize;
+
+    // Passe en MISSED toutes les prises PENDING escaladées prévues avant la date donnée ; chaque tranche est
+    // sa propre transaction (verrous courts même après une panne), agrégat d'observance compris.
+    // Renvoie le nombre de prises modifiées ; l'escalade ne dépend pas de ce passage (étapes de rappel)
+    public int markMissedScheduledBefore(Instant before) {
+        var tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        int missed = 0;
+        long afterId = 0;
+        while (true) {
+            final long from = afterId;
+            List<Long> chunk = tx.execute(status -> {
+                var ids = intakes.lockPendingIdsScheduledBefore(before, from, PageRequest.of(0, chunkSize));
+                if (ids.isEmpty()) return ids;
+                var changes = new AdherenceRollup.Changes();
+                for (var row : intakes.findRollupRows(ids)) {
+                    changes.missed(row.getPatientId(), ZoneId.of(row.getTimezone()), row.getScheduledAt());
+                }
+                intakes.updateStatus(ids, IntakeEvent.Status.PENDING, IntakeEvent.Status.MISSED);
+                rollup.apply(changes);
+                return ids;
+            });
+            if (chunk == null || chunk.isEmpty()) break;
+            missed += chunk.size();
+            afterId = chunk.get(chunk.size() - 1);
+        }
+        return missed;
+    }
+}
@@ -0,0 +1,27 @@
+package com.pillpall.med_application.intakes;
+import jakarta.persistence.*;
+import lombok.*;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+@Entity @Table(name="patient_daily_adherence")
+@IdClass(PatientDailyAdherence.Key.class)
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class PatientDailyAdherence {
+    //Comptes des prises d'un patient sur un jour de son fuseau. Écrit uniquement en SQL (AdherenceRollup) :
+    //l'entité sert aux lectures des statistiques
+
+    @Id @Column(name="patient_id") private Long patientId;
+    @Id @Column(name="local_date") private LocalDate localDate;
+    @Column(nullable=false) private int scheduled;
+    @Column(nullable=false) private int confirmed;
+    @Column(nullable=false) private int missed;
+    // Somme des retards des prises confirmées, en minutes
+    @Column(name="delay_minutes", nullable=false) private long delayMinutes;
+
+    @Data @NoArgsConstructor @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long patientId;
+        private LocalDate localDate;
+    }
+}
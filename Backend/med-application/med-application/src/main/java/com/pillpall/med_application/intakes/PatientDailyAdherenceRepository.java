@@ -0,0 +1,58 @@
+package com.pillpall.med_application.intakes;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface PatientDailyAdherenceRepository extends JpaRepository<PatientDailyAdherence, PatientDailyAdherence.Key> {
+
+    // Observance d'un patient sur une période (jours locaux inclus) et retard moyen sur tout l'historique,
+    // en une requête sur la clé primaire : une ligne par jour au lieu d'une par prise
+    @Query("SELECT COALESCE(SUM(CASE WHEN a.localDate BETWEEN :from AND :to THEN a.scheduled ELSE 0 END), 0) AS scheduled, " +
+            "COALESCE(SUM(CASE WHEN a.localDate BETWEEN :from AND :to THEN a.confirmed ELSE 0 END), 0) AS confirmed, " +
+            "COALESCE(SUM(CASE WHEN a.localDate BETWEEN :from AND :to THEN a.missed ELSE 0 END), 0) AS missed, " +
+            "COALESCE(SUM(a.confirmed), 0) AS confirmedTotal, COALESCE(SUM(a.delayMinutes), 0) AS delayMinutesTotal " +
+            "FROM PatientDailyAdherence a WHERE a.patientId = :patientId")
+    SummaryView summarize(@Param("patientId") Long patientId, @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // Même période sans l'historique : seules les lignes de la période sont lues
+    @Query("SELECT COALESCE(SUM(a.scheduled), 0) AS scheduled, COALESCE(SUM(a.confirmed), 0) AS confirmed, " +
+            "COALESCE(SUM(a.missed), 0) AS missed, COALESCE(SUM(a.confirmed), 0) AS confirmedTotal, " +
+            "COALESCE(SUM(a.delayMinutes), 0) AS delayMinutesTotal " +
+            "FROM PatientDailyAdherence a WHERE a.patientId = :patientId AND a.localDate BETWEEN :from AND :to")
+    SummaryView summarizeBetween(@Param("patientId") Long patientId, @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // Résumé quotidien d'une tranche de patients du même fuseau
+    List<PatientDailyAdherence> findByPatientIdInAndLocalDate(Collection<Long> patientIds, LocalDate localDate);
+
+    // Réconciliation : les lignes de la fenêtre sont verrouillées avant le recomptage des prises, les écarts
+    // appliqués entre-temps par d'autres transactions attendent la fin de la correction
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT a FROM PatientDailyAdherence a WHERE a.patientId IN :patientIds AND a.localDate BETWEEN :from AND :to " +
+            "ORDER BY a.patientId, a.localDate")
+    List<PatientDailyAdherence> lockRange(@Param("patientIds") Collection<Long> patientIds,
+                                          @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    interface SummaryView {
+        long getScheduled();
+        long getConfirmed();
+        long getMissed();
+        long getConfirmedTotal();
+        long getDelayMinutesTotal();
+
+        // Aucune prise sur la période : observance parfaite
+        default double adherenceRate() {
+            return getScheduled() == 0 ? 1.0 : (double) getConfirmed() / getScheduled();
+        }
+
+        default double averageDelay() {
+            return getConfirmedTotal() == 0 ? 0.0 : (double) getDelayMinutesTotal() / getConfirmedTotal();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.pillpall.med_application.ml;
 
 import com.pillpall.med_application.intakes.IntakeEvent;
 import com.pillpall.med_application.intakes.IntakeEventRepository;
+import com.pillpall.med_application.intakes.PatientDailyAdherenceRepository;
 import com.pillpall.med_application.prescriptions.PrescriptionRepository;
 import com.pillpall.med_application.users.PatientProfile;
 import com.pillpall.med_application.users.PatientProfileRepository;
@@ -12,6 +13,8 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -24,6 +27,7 @@ public class MlIntegrationService {
 
     private final MlServiceClient mlClient;
     private final IntakeEventRepository intakeEventRepository;
+    private final PatientDailyAdherenceRepository dailyAdherenceRepository;
     private final PrescriptionRepository prescriptionRepository;
     private final PatientAdherenceRepository adherenceRepository;
     private final PatientProfileRepository patientProfileRepository;
@@ -91,16 +95,16 @@ public class MlIntegrationService {
         List<PatientAdherence> adherenceData = new ArrayList<>();
 
         for (PatientProfile patient : patients) {
-            double adherenceRate = calculateAdherenceRate(patient.getId());
-            int missedDoses = countMissedDosesLastWeek(patient.getId());
-            double averageDelay = calculateAverageDelay(patient.getId());
+            // Agrégat quotidien : 7 derniers jours locaux et retard moyen en une requête, sans relire les prises
+            LocalDate today = LocalDate.now(ZoneId.of(patient.getUser().getTimezone()));
+            var week = dailyAdherenceRepository.summarize(patient.getId(), today.minusDays(6), today);
             int totalPrescriptions = prescriptionRepository.countByPatientId(patient.getId());
 
             PatientAdherence data = PatientAdherence.builder()
                     .patientId(patient.getId())
-                    .adherenceRate(adherenceRate)
-                    .missedDoses(missedDoses)
-                    .averageDelay(averageDelay)
+                    .adherenceRate(week.adherenceRate())
+                    .missedDoses((int) week.getMissed())
+                    .averageDelay(week.averageDelay())
                     .totalPrescriptions(totalPrescriptions)
                     .build();
 
@@ -110,45 +114,6 @@ public class MlIntegrationService {
         return adherenceData;
     }
 
-    // MÉTHODES DE CALCUL IMPLÉMENTÉES
-    private double calculateAdherenceRate(Long patientId) {
-        Instant oneWeekAgo = Instant.now().minus(Duration.ofDays(7));
-        List<IntakeEvent> recentEvents = intakeEventRepository
-                .findByPrescriptionPatientIdAndScheduledAtAfter(patientId, oneWeekAgo);
-
-        if (recentEvents.isEmpty()) return 1.0;
-
-        long total = recentEvents.size();
-        long taken = recentEvents.stream()
-                .filter(e -> e.getStatus() == IntakeEvent.Status.CONFIRMED)
-                .count();
-
-        return (double) taken / total;
-    }
-
-    private int countMissedDosesLastWeek(Long patientId) {
-        Instant oneWeekAgo = Instant.now().minus(Duration.ofDays(7));
-        return (int) intakeEventRepository
-                .findByPrescriptionPatientIdAndScheduledAtAfter(patientId, oneWeekAgo)
-                .stream()
-                .filter(e -> e.getStatus() == IntakeEvent.Status.MISSED)
-                .count();
-    }
-
-    private double calculateAverageDelay(Long patientId) {
-        List<IntakeEvent> confirmedEvents = intakeEventRepository
-                .findByPrescriptionPatientIdAndStatus(patientId, IntakeEvent.Status.CONFIRMED);
-
-        if (confirmedEvents.isEmpty()) return 0.0;
-
-        double totalDelay = confirmedEvents.stream()
-                .filter(e -> e.getConfirmedAt() != null)
-                .mapToDouble(e -> Duration.between(e.getScheduledAt(), e.getConfirmedAt()).toMinutes())
-                .sum();
-
-        return totalDelay / confirmedEvents.size();
-    }
-
     private void saveRiskPrediction(Long patientId, Map<String, Object> prediction) {
         // Implémentation de la sauvegarde des prédictions
         RiskPrediction riskPrediction = RiskPrediction.builder()
@@ -0,0 +1,105 @@
+package com.pillpall.med_application.notifications;
+
+import com.pillpall.med_application.intakes.PatientDailyAdherenceRepository;
+import com.pillpall.med_application.users.PatientProfileRepository;
+import com.pillpall.med_application.users.PatientProfileRepository.PushTargetView;
+import lombok.RequiredArgsConstructor;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Component
+@RequiredArgsConstructor
+public class DailySummaryJob {
+
+    // Résumé quotidien envoyé à tous les patients, fuseau par fuseau, à l'heure locale du soir.
+    // Par tranche de patients : les lignes du jour dans l'agrégat d'observance, puis un envoi FCM par lots.
+    // Chaque patient garde le jour de son dernier résumé : une exécution retardée, sautée (verrou) ou en échec
+    // est rattrapée au passage suivant, tant que le retard reste sous catchUpHours. Le jour est marqué avant
+    // la soumission et effacé si FcmBatchDispatcher abandonne le push (saturation) : il repart au passage suivant
+
+    private static final Logger log = LoggerFactory.getLogger(DailySummaryJob.class);
+
+    private final PatientProfileRepository patients;
+    private final PatientDailyAdherenceRepository dailyAdherence;
+    private final FcmBatchDispatcher fcmDispatcher;
+
+    @Value("${app.notifications.dailySummary.localTime:20:00}") String localTime;
+    @Value("${app.notifications.dailySummary.chunkSize:1000}") int chunkSize;
+    // Au-delà, un résumé manqué n'est plus envoyé : le lendemain matin il n'a plus d'intérêt
+    @Value("${app.notifications.dailySummary.catchUpHours:6}") long catchUpHours;
+
+    // Pas du cron : couvre les fuseaux décalés d'une demi-heure ou d'un quart d'heure
+    @Scheduled(cron = "0 */15 * * * *")
+    @SchedulerLock(name="dailySummary", lockAtMostFor = "PT10M", lockAtLeastFor="PT1M")
+    public void run() {
+        run(Instant.now());
+    }
+
+    void run(Instant now) {
+        for (String timezone : patients.findPushTimezones()) {
+            ZoneId zone;
+            try {
+                zone = ZoneId.of(timezone);
+            } catch (DateTimeException e) {
+                log.warn("Skipping daily summary for invalid timezone {}", timezone);
+                continue;
+            }
+            LocalDate day = dueDay(now, zone);
+            if (day != null) send(timezone, day);
+        }
+    }
+
+    // Jour local dont le résumé est dû : le dernier dont l'heure configurée est passée, s'il l'est depuis
+    // moins de catchUpHours ; null sinon
+    LocalDate dueDay(Instant now, ZoneId zone) {
+        LocalDate today = now.atZone(zone).toLocalDate();
+        LocalTime at = LocalTime.parse(localTime);
+        LocalDate day = now.isBefore(today.atTime(at).atZone(zone).toInstant()) ? today.minusDays(1) : today;
+        Instant due = day.atTime(at).atZone(zone).toInstant();
+        return now.isBefore(due.plus(Duration.ofHours(catchUpHours))) ? day : null;
+    }
+
+    private void send(String timezone, LocalDate day) {
+        long afterId = 0;
+        int sent = 0;
+        while (true) {
+            List<PushTargetView> chunk = patients.findSummaryTargets(timezone, day, afterId, PageRequest.of(0, chunkSize));
+            if (chunk.isEmpty()) break;
+
+            Map<Long, long[]> counts = new HashMap<>(); // patientId -> {pris, oubliés}
+            for (var a : dailyAdherence.findByPatientIdInAndLocalDate(chunk.stream().map(PushTargetView::getPatientId).toList(), day)) {
+                counts.put(a.getPatientId(), new long[]{a.getConfirmed(), a.getMissed()});
+            }
+            patients.markSummarySent(chunk.stream().map(PushTargetView::getPatientId).toList(), day);
+            for (var target : chunk) {
+                var pair = counts.getOrDefault(target.getPatientId(), new long[2]);
+                fcmDispatcher.submit(null, message(target.getDeviceToken(), pair[0], pair[1]),
+                        () -> patients.unmarkSummarySent(target.getPatientId(), day));
+            }
+            sent += chunk.size();
+            afterId = chunk.get(chunk.size() - 1).getPatientId();
+        }
+        log.info("Daily summary queued for {} patients in {}", sent, timezone);
+    }
+
+    static FcmMessage message(String token, long taken, long missed) {
+        return new FcmMessage(token, "📊 Résumé quotidien", summaryText(taken, missed), Map.of("intakeId", "daily_summary"));
+    }
+
+    static String summaryText(long taken, long missed) {
+        return String.format(
+                " Résumé du jour: %d prises effectuées, %d oubliées. Taux d'observance: %.1f%%",
+                taken, missed, (taken + missed > 0 ? (double) taken / (taken + missed) * 100 : 100)
+        );
+    }
+}
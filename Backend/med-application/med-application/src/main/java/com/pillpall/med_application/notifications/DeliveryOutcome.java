@@ -0,0 +1,5 @@
+package com.pillpall.med_application.notifications;
+
+// Résultat d'un envoi, quel que soit le canal : un échec temporaire (4xx, réseau, saturation) est réessayé
+// par l'outbox, un échec définitif (adresse ou numéro refusé) ne l'est pas
+public enum DeliveryOutcome { SENT, TRANSIENT_FAILURE, PERMANENT_FAILURE }
@@ -1,19 +1,150 @@
 package com.pillpall.med_application.notifications;
 
-import org.springframework.mail.SimpleMailMessage; import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.stereotype.Component; import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.*;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.RequiredArgsConstructor;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 @Component @RequiredArgsConstructor
 public class EmailGateway {
 
-    //Pour les émails des contacts du patient
-    private final JavaMailSender mail;
+    //Pour les émails des contacts du patient.
+    //Les connexions SMTP restent ouvertes dans un petit pool : un lot de messages part sur une seule session
+    //au lieu d'une poignée de main TLS par message
+
+    private static final Logger log = LoggerFactory.getLogger(EmailGateway.class);
+
+    private final JavaMailSenderImpl mail;
+
+    @Value("${app.mail.poolSize:4}") int poolSize;
+
+    private BlockingQueue<Transport> idle;
+
+    public DeliveryOutcome send(String to, String subject, String text) {
+        return sendAll(List.of(new EmailMessage(to, subject, text))).get(0);
+    }
+
+    // Envoie le lot sur une connexion du pool ; renvoie un résultat par message, dans l'ordre
+    public List<DeliveryOutcome> sendAll(List<EmailMessage> messages) {
+        List<DeliveryOutcome> results = new ArrayList<>(messages.size());
+        Transport transport;
+        try {
+            transport = borrow();
+        } catch (MessagingException e) {
+            // Serveur injoignable : tout le lot est à retenter
+            log.warn("SMTP connection failed: {}", e.getMessage());
+            return new ArrayList<>(Collections.nCopies(messages.size(), DeliveryOutcome.TRANSIENT_FAILURE));
+        }
+        try {
+            for (EmailMessage m : messages) {
+                if (transport == null) {
+                    results.add(DeliveryOutcome.TRANSIENT_FAILURE);
+                    continue;
+                }
+                try {
+                    MimeMessage mime = toMime(m);
+                    transport.sendMessage(mime, mime.getAllRecipients());
+                    results.add(DeliveryOutcome.SENT);
+                } catch (MessagingException e) {
+                    results.add(classify(e));
+                    log.warn("Email to {} failed: {}", m.getTo(), e.getMessage());
+                    // Connexion perdue en cours de lot : une seule nouvelle tentative de connexion
+                    if (!transport.isConnected()) {
+                        close(transport);
+                        transport = reconnect();
+                    }
+                }
+            }
+        } finally {
+            if (transport != null) release(transport);
+        }
+        return results;
+    }
+
+    @PreDestroy
+    synchronized void stop() {
+        if (idle == null) return;
+        Transport t;
+        while ((t = idle.poll()) != null) close(t);
+    }
+
+    // 5xx : adresse ou message refusé, inutile de réessayer ; 4xx, coupure réseau, timeout : temporaire
+    static DeliveryOutcome classify(MessagingException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SMTPAddressFailedException a) return a.getReturnCode() >= 500 ? DeliveryOutcome.PERMANENT_FAILURE : DeliveryOutcome.TRANSIENT_FAILURE;
+            if (t instanceof SMTPSendFailedException s) return s.getReturnCode() >= 500 ? DeliveryOutcome.PERMANENT_FAILURE : DeliveryOutcome.TRANSIENT_FAILURE;
+            if (t instanceof AddressException) return DeliveryOutcome.PERMANENT_FAILURE;
+            if (t instanceof SendFailedException f && f.getInvalidAddresses() != null && f.getInvalidAddresses().length > 0) {
+                return DeliveryOutcome.PERMANENT_FAILURE;
+            }
+        }
+        return DeliveryOutcome.TRANSIENT_FAILURE;
+    }
+
+    private MimeMessage toMime(EmailMessage m) throws MessagingException {
+        MimeMessage mime = mail.createMimeMessage();
+        var helper = new MimeMessageHelper(mime, StandardCharsets.UTF_8.name());
+        helper.setTo(m.getTo());
+        helper.setSubject(m.getSubject());
+        helper.setText(m.getText());
+        mime.saveChanges();
+        return mime;
+    }
+
+    private Transport borrow() throws MessagingException {
+        Transport t;
+        while ((t = pool().poll()) != null) {
+            if (t.isConnected()) return t; // NOOP : le serveur a pu fermer une connexion inactive
+            close(t);
+        }
+        return connect();
+    }
+
+    private Transport reconnect() {
+        try {
+            return connect();
+        } catch (MessagingException e) {
+            log.warn("SMTP reconnection failed: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private Transport connect() throws MessagingException {
+        Transport t = mail.getSession().getTransport(mail.getProtocol() != null ? mail.getProtocol() : "smtp");
+        t.connect(mail.getHost(), mail.getPort(), mail.getUsername(), mail.getPassword());
+        return t;
+    }
+
+    private void release(Transport t) {
+        if (!t.isConnected() || !pool().offer(t)) close(t);
+    }
+
+    private synchronized BlockingQueue<Transport> pool() {
+        if (idle == null) idle = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        return idle;
+    }
 
-    public boolean send(String to, String subject, String text) {
+    private static void close(Transport t) {
         try {
-            var m = new SimpleMailMessage();
-            m.setTo(to); m.setSubject(subject); m.setText(text);
-            mail.send(m); return true;
-        } catch (Exception e) { return false; }
+            t.close();
+        } catch (MessagingException ignored) {
+            // connexion déjà perdue
+        }
     }
 }
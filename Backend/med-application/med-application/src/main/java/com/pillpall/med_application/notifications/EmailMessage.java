@@ -0,0 +1,13 @@
+package com.pillpall.med_application.notifications;
+
+import lombok.Data;
+
+@Data
+public class EmailMessage {
+
+    //Email d'alerte à un contact, envoyé par lots sur une connexion SMTP du pool
+
+    private final String to;
+    private final String subject;
+    private final String text;
+}
@@ -0,0 +1,163 @@
+package com.pillpall.med_application.notifications;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+@Component
+@RequiredArgsConstructor
+public class EscalationDigester {
+
+    // Regroupe les alertes email / SMS destinées à un même contact : la première part tout de suite,
+    // celles qui arrivent ensuite dans la fenêtre sont fusionnées en un seul message à la fin de la fenêtre.
+    // Chaque alerte reçoit le résultat de l'envoi qui l'a portée (pipeline saturé : échec temporaire, l'outbox réessaie).
+    // Les fenêtres ne vivent qu'en mémoire : une alerte mise en attente garde sa tentative PENDING en base avec une
+    // échéance après la fin de la fenêtre. Si le noeud s'arrête avant le récapitulatif, OutboxWorker la renvoie.
+
+    private final EmailGateway email;
+    private final SmsGateway sms;
+    private final NotificationPipeline pipeline;
+    private final MeterRegistry meterRegistry;
+    private final NotificationAttemptRepository attempts;
+
+    @Value("${app.notifications.escalation.digestWindowMinutes:5}") long windowMinutes;
+    @Value("${app.mail.batchSize:50}") int emailBatchSize;
+    // Marge laissée au récapitulatif après la fin de la fenêtre avant que l'outbox ne reprenne l'alerte
+    @Value("${app.notifications.outbox.leaseSeconds:600}") long recoverySeconds;
+
+    private final Map<Key, Window> windows = new HashMap<>();
+    private final List<Digest> ready = new ArrayList<>();
+
+    // attemptId : tentative portée par l'alerte (null = alerte sans suivi)
+    public void submit(NotificationChannel channel, String recipient, String subject, String text,
+                       Long attemptId, Consumer<DeliveryOutcome> onResult) {
+        Instant windowEnd = add(new Key(channel, recipient), new Alert(subject, text, onResult));
+        if (windowEnd != null && attemptId != null) {
+            attempts.markRetry(attemptId, "digest", windowEnd.plusSeconds(recoverySeconds));
+        }
+    }
+
+    // Renvoie la fin de la fenêtre quand l'alerte y est mise en attente, null si elle part tout de suite
+    private synchronized Instant add(Key key, Alert alert) {
+        var window = windows.get(key);
+        if (window == null) {
+            windows.put(key, new Window(Instant.now().plus(Duration.ofMinutes(windowMinutes))));
+            ready.add(new Digest(key, List.of(alert)));
+            return null;
+        }
+        window.getPending().add(alert);
+        return window.getEnd();
+    }
+
+    // Envois effectués (doublons d'escalade, alertes fusionnées dans un récapitulatif)
+    public void suppressed(NotificationChannel channel, String reason, int count) {
+        if (count > 0) meterRegistry.counter("notifications.escalation.suppressed",
+                "channel", channel.name(), "reason", reason).increment(count);
+    }
+
+    @Scheduled(fixedDelayString = "${app.notifications.escalation.flushMillis:1000}")
+    public void flush() {
+        send(collect(false));
+    }
+
+    @PreDestroy
+    void stop() {
+        send(collect(true));
+    }
+
+    private synchronized List<Digest> collect(boolean all) {
+        Instant now = Instant.now();
+        for (var it = windows.entrySet().iterator(); it.hasNext(); ) {
+            var e = it.next();
+            var window = e.getValue();
+            if (!all && window.getEnd().isAfter(now)) continue;
+            if (window.getPending().isEmpty()) {
+                it.remove();
+                continue;
+            }
+            // Le récapitulatif rouvre une fenêtre : un contact très sollicité reçoit au plus un message par fenêtre
+            ready.add(new Digest(e.getKey(), List.copyOf(window.getPending())));
+            suppressed(e.getKey().getChannel(), "digest", window.getPending().size() - 1);
+            window.getPending().clear();
+            window.setEnd(now.plus(Duration.ofMinutes(windowMinutes)));
+        }
+        var out = List.copyOf(ready);
+        ready.clear();
+        return out;
+    }
+
+    private void send(List<Digest> digests) {
+        List<Digest> emails = digests.stream().filter(d -> d.getKey().getChannel() == NotificationChannel.EMAIL).toList();
+        for (int i = 0; i < emails.size(); i += emailBatchSize) {
+            var batch = emails.subList(i, Math.min(i + emailBatchSize, emails.size()));
+            execute(NotificationChannel.EMAIL, batch, () -> {
+                var outcomes = email.sendAll(batch.stream()
+                        .map(d -> new EmailMessage(d.getKey().getRecipient(), d.subject(), d.text("\n\n")))
+                        .toList());
+                for (int j = 0; j < batch.size(); j++) batch.get(j).complete(outcomes.get(j));
+            });
+        }
+        digests.stream().filter(d -> d.getKey().getChannel() == NotificationChannel.SMS).forEach(d ->
+                execute(NotificationChannel.SMS, List.of(d), () -> d.complete(sms.send(d.getKey().getRecipient(), d.text(" | ")))));
+    }
+
+    private void execute(NotificationChannel channel, List<Digest> digests, Runnable send) {
+        try {
+            pipeline.execute(channel, send);
+        } catch (RejectedExecutionException e) {
+            digests.forEach(d -> d.complete(DeliveryOutcome.TRANSIENT_FAILURE));
+        }
+    }
+
+    @Data
+    private static class Key {
+        private final NotificationChannel channel;
+        private final String recipient;
+    }
+
+    @Data
+    private static class Alert {
+        private final String subject;
+        private final String text;
+        private final Consumer<DeliveryOutcome> onResult;
+    }
+
+    @Data
+    private static class Window {
+        private Instant end;
+        private final List<Alert> pending = new ArrayList<>();
+
+        Window(Instant end) {
+            this.end = end;
+        }
+    }
+
+    @Data
+    private static class Digest {
+        private final Key key;
+        private final List<Alert> alerts;
+
+        String subject() {
+            var first = alerts.get(0).getSubject();
+            return alerts.size() == 1 ? first : first + " (" + alerts.size() + " alertes)";
+        }
+
+        String text(String separator) {
+            return String.join(separator, alerts.stream().map(Alert::getText).toList());
+        }
+
+        void complete(DeliveryOutcome outcome) {
+            alerts.forEach(a -> a.getOnResult().accept(outcome));
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.pillpall.med_application.notifications;
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.Instant;
+
+@Entity @Table(name="escalation_ledger", uniqueConstraints = {
+        @UniqueConstraint(name="uk_escalation_ledger_event_channel", columnNames={"intake_event_id", "channel"})
+})
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class EscalationLedger {
+    //Trace des escalades faites : au plus une par prise et par canal, garantie par la contrainte unique
+
+    @Id @GeneratedValue(strategy=GenerationType.IDENTITY) private Long id;
+    @Column(name="intake_event_id", nullable=false) private Long intakeEventId;
+    @Column(nullable=false) private String channel; // EMAIL, SMS
+    @Column(nullable=false) private Instant escalatedAt;
+}
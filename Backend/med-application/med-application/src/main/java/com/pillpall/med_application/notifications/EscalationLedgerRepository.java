@@ -0,0 +1,25 @@
+package com.pillpall.med_application.notifications;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+
+public interface EscalationLedgerRepository extends JpaRepository<EscalationLedger, Long> {
+
+    // Réserve l'escalade (prise, canal) : renvoie 1 si elle est nouvelle, 0 si elle a déjà eu lieu.
+    // ON CONFLICT DO NOTHING sur la contrainte unique : atomique entre noeuds concurrents, et sans violation
+    // de contrainte qui annulerait la transaction du tick
+    @Modifying
+    @Query(value = "INSERT INTO escalation_ledger (intake_event_id, channel, escalated_at) " +
+            "VALUES (:eventId, :channel, :at) ON CONFLICT DO NOTHING",
+            nativeQuery = true)
+    int claim(@Param("eventId") Long eventId, @Param("channel") String channel, @Param("at") Instant at);
+
+    @Modifying
+    @Query("DELETE FROM EscalationLedger l WHERE l.intakeEventId IN " +
+            "(SELECT e.id FROM IntakeEvent e WHERE e.prescription.id = :prescriptionId)")
+    int deleteByPrescriptionId(@Param("prescriptionId") Long prescriptionId);
+}
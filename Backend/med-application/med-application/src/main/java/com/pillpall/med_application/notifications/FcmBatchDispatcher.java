@@ -0,0 +1,131 @@
+package com.pillpall.med_application.notifications;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+
+@Component
+@RequiredArgsConstructor
+public class FcmBatchDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(FcmBatchDispatcher.class);
+
+    // Regroupe les push dus pendant une courte fenêtre et les envoie par lots (sendEach, 500 max),
+    // puis reporte chaque réponse sur sa NotificationAttempt. Quand le pipeline FCM est saturé, les push
+    // suivis repassent par l'outbox au lieu de bloquer
+
+    private final FcmGateway gateway;
+    private final NotificationAttemptRepository attempts;
+    private final NotificationPipeline pipeline;
+
+    @Value("${app.fcm.batchWindowMillis:200}") long windowMillis;
+    @Value("${app.notifications.pipeline.queueCapacity:1000}") int queueCapacity;
+    @Value("${app.notifications.pipeline.offerTimeoutMillis:2000}") long offerTimeoutMillis;
+    @Value("${app.notifications.outbox.retryBaseSeconds:30}") long retryBaseSeconds;
+
+    private BlockingQueue<Pending> queue;
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    void start() {
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "fcm-batch");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        // Les messages encore en file partent avant l'arrêt du pipeline
+        flusher.shutdown();
+        flusher.awaitTermination(5, TimeUnit.SECONDS);
+        flush();
+    }
+
+    // attemptId peut être null pour un push sans suivi (ex: résumé quotidien).
+    // Attend au plus offerTimeoutMillis quand la file est pleine : à appeler hors transaction
+    public void submit(Long attemptId, FcmMessage message) {
+        submit(attemptId, message, null);
+    }
+
+    // onDropped : appelé si un push sans suivi est abandonné par saturation (à la soumission ou au vidage du lot)
+    public void submit(Long attemptId, FcmMessage message, Runnable onDropped) {
+        var pending = new Pending(attemptId, message, onDropped);
+        try {
+            if (!queue.offer(pending, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                spill(List.of(pending));
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing FCM message", e);
+        }
+        // Un lot complet part sans attendre la fin de la fenêtre
+        if (queue.size() >= FcmGateway.MAX_BATCH && !flusher.isShutdown()) flusher.execute(this::flush);
+    }
+
+    // Chaque lot est envoyé par le canal FCM du pipeline (concurrence bornée)
+    void flush() {
+        while (true) {
+            List<Pending> batch = new ArrayList<>(FcmGateway.MAX_BATCH);
+            if (queue.drainTo(batch, FcmGateway.MAX_BATCH) == 0) return;
+            try {
+                pipeline.execute(NotificationChannel.FCM, () -> send(batch));
+            } catch (RejectedExecutionException e) {
+                spill(batch);
+            }
+        }
+    }
+
+    // Push refusés par saturation : les tentatives suivies redeviennent réclamables par OutboxWorker
+    // après un délai ; les push sans suivi sont abandonnés et leur émetteur prévenu (onDropped)
+    private void spill(List<Pending> batch) {
+        List<Long> ids = batch.stream().map(Pending::getAttemptId).filter(Objects::nonNull).toList();
+        log.warn("FCM pipeline saturated: {} pushes deferred, {} dropped", ids.size(), batch.size() - ids.size());
+        Instant retryAfter = Instant.now().plusSeconds(retryBaseSeconds);
+        for (Long id : ids) attempts.markRetry(id, "backpressure", retryAfter);
+        for (var pending : batch) {
+            if (pending.getAttemptId() != null || pending.getOnDropped() == null) continue;
+            try {
+                pending.getOnDropped().run();
+            } catch (RuntimeException e) {
+                log.error("Dropped FCM push callback failed", e);
+            }
+        }
+    }
+
+    private void send(List<Pending> batch) {
+        var results = gateway.sendAll(batch.stream().map(Pending::getMessage).toList());
+
+        List<Long> sent = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Long attemptId = batch.get(i).getAttemptId();
+            if (attemptId == null) continue;
+            var r = results.get(i);
+            if (r.isSuccess()) sent.add(attemptId);
+            else attempts.markFailed(attemptId, r.getError() != null ? r.getError() : "fail");
+        }
+        if (!sent.isEmpty()) attempts.markSent(sent, "sent");
+    }
+
+    @Data
+    private static class Pending {
+        private final Long attemptId;
+        private final FcmMessage message;
+        private final Runnable onDropped;
+    }
+}
@@ -1,19 +1,49 @@
 package com.pillpall.med_application.notifications;
 
-import com.google.firebase.messaging.*;
+import com.pillpall.med_application.users.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
-@Component
+import java.util.*;
+
+@Component @RequiredArgsConstructor
 public class FcmGateway {
+
+    // Limite de l'API sendEach de Firebase
+    public static final int MAX_BATCH = 500;
+    private static final Logger log = LoggerFactory.getLogger(FcmGateway.class);
+
+    private final FcmTransport transport;
+    private final UserRepository users;
+
     public boolean sendToToken(String token, String title, String body, String intakeId) {
-        try {
-            var message = Message.builder()
-                    .setToken(token)
-                    .putData("intakeId", intakeId)
-                    .setNotification(Notification.builder().setTitle(title).setBody(body).build())
-                    .build();
-            FirebaseMessaging.getInstance().send(message);
-            return true;
-        } catch (Exception e) { return false; }
+        var message = new FcmMessage(token, title, body, Map.of("intakeId", intakeId));
+        return sendAll(List.of(message)).get(0).isSuccess();
+    }
+
+    // Envoi par lots de 500 ; renvoie une réponse par message, dans l'ordre. Un lot en erreur (réseau, quota)
+    // fait échouer ses seuls messages ; les jetons refusés définitivement sont effacés des utilisateurs
+    public List<FcmTransport.Result> sendAll(List<FcmMessage> messages) {
+        List<FcmTransport.Result> results = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i += MAX_BATCH) {
+            var chunk = messages.subList(i, Math.min(i + MAX_BATCH, messages.size()));
+            try {
+                results.addAll(transport.sendEach(chunk));
+            } catch (Exception e) {
+                results.addAll(Collections.nCopies(chunk.size(), FcmTransport.Result.failed(e.getMessage())));
+            }
+        }
+
+        Set<String> invalid = new HashSet<>();
+        for (int i = 0; i < messages.size(); i++) {
+            if (results.get(i).isTokenInvalid()) invalid.add(messages.get(i).getToken());
+        }
+        if (!invalid.isEmpty()) {
+            log.info("Clearing {} invalid FCM device tokens", invalid.size());
+            users.clearDeviceTokens(invalid);
+        }
+        return results;
     }
 }
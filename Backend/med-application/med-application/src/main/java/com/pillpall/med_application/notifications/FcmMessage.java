@@ -0,0 +1,23 @@
+package com.pillpall.med_application.notifications;
+
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+public class FcmMessage {
+
+    //Message push indépendant du SDK Firebase, pour pouvoir brancher un transport de test
+
+    private final String token;
+    private final String title;
+    private final String body;
+    private final Map<String, String> data;
+
+    // Rappel de prise : intakeIds porte toutes les prises regroupées (confirmables ensemble),
+    // intakeId reste la première pour les versions de l'app qui ne lisent que celui-ci
+    public static FcmMessage reminder(String token, String title, String body, Long intakeId, String intakeIds) {
+        String ids = intakeIds != null ? intakeIds : String.valueOf(intakeId);
+        return new FcmMessage(token, title, body, Map.of("intakeId", String.valueOf(intakeId), "intakeIds", ids));
+    }
+}
@@ -0,0 +1,24 @@
+package com.pillpall.med_application.notifications;
+
+import lombok.Data;
+
+import java.util.List;
+
+public interface FcmTransport {
+
+    // Envoie un lot (au plus FcmGateway.MAX_BATCH messages) ; une réponse par message, dans le même ordre
+    List<Result> sendEach(List<FcmMessage> messages) throws Exception;
+
+    @Data
+    class Result {
+        private final boolean success;
+        private final String messageId;
+        private final String error;
+        // Jeton refusé définitivement : inutile de le réessayer, FcmGateway l'efface
+        private final boolean tokenInvalid;
+
+        public static Result ok(String messageId) { return new Result(true, messageId, null, false); }
+        public static Result failed(String error) { return new Result(false, null, error, false); }
+        public static Result invalidToken(String error) { return new Result(false, null, error, true); }
+    }
+}
@@ -0,0 +1,38 @@
+package com.pillpall.med_application.notifications;
+
+import com.google.firebase.messaging.*;
+
+import java.util.List;
+import java.util.Set;
+
+public class FirebaseFcmTransport implements FcmTransport {
+
+    //Transport par défaut : API batch de Firebase (sendEach), une seule requête HTTP/2 par lot.
+    //Déclaré par FcmConfig ; remplacé dans les tests par un FcmTransport @Primary ou un @MockBean
+
+    // Jeton expiré ou d'une autre application Firebase : l'erreur se répétera à chaque envoi
+    private static final Set<MessagingErrorCode> INVALID_TOKEN =
+            Set.of(MessagingErrorCode.UNREGISTERED, MessagingErrorCode.SENDER_ID_MISMATCH);
+
+    @Override
+    public List<Result> sendEach(List<FcmMessage> messages) throws FirebaseMessagingException {
+        var batch = messages.stream().map(this::toMessage).toList();
+        BatchResponse response = FirebaseMessaging.getInstance().sendEach(batch);
+        return response.getResponses().stream().map(this::toResult).toList();
+    }
+
+    private Result toResult(SendResponse r) {
+        if (r.isSuccessful()) return Result.ok(r.getMessageId());
+        var e = r.getException();
+        if (e == null) return Result.failed("fail");
+        return INVALID_TOKEN.contains(e.getMessagingErrorCode()) ? Result.invalidToken(e.getMessage()) : Result.failed(e.getMessage());
+    }
+
+    private Message toMessage(FcmMessage m) {
+        var builder = Message.builder()
+                .setToken(m.getToken())
+                .setNotification(Notification.builder().setTitle(m.getTitle()).setBody(m.getBody()).build());
+        if (m.getData() != null) builder.putAllData(m.getData());
+        return builder.build();
+    }
+}
@@ -4,16 +4,33 @@ import jakarta.persistence.*;
 import lombok.*;
 import java.time.Instant;
 
-@Entity @Table(name="notification_attempts")
+// Le schéma est géré par Flyway (db/migration), y compris l'index partiel de l'outbox
+@Entity @Table(name="notification_attempts", indexes = {
+        @Index(name="idx_notification_attempts_intake_event", columnList="intake_event_id")
+})
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
 public class NotificationAttempt {
     //Capter les notifications : est ce que le patient répond aprés la notification ou auùon a envoyé à ses contacts
 
+    //Cycle d'envoi : PENDING tant que l'envoi n'a pas abouti, puis SENT ou FAILED (null pour les anciennes lignes)
+    public enum Status { PENDING, SENT, FAILED }
+
     @Id @GeneratedValue(strategy=GenerationType.IDENTITY) private Long id;
-    @ManyToOne @JoinColumn(name="intake_event_id", nullable=false)
+    // Pas de clé étrangère : intake_events est partitionnée (clé primaire (id, scheduled_at))
+    @ManyToOne @JoinColumn(name="intake_event_id", nullable=false, foreignKey=@ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private IntakeEvent intakeEvent;
     @Column(nullable=false) private String channel; // FCM, EMAIL, SMS
     @Column(nullable=false) private Instant attemptAt = Instant.now();
     @Column(nullable=false) private boolean success;
     @Column(columnDefinition="text") private String details;
-}
\ No newline at end of file
+
+    // Outbox : contenu du message et prochaine tentative autorisée (null = non réclamable par les workers)
+    @Enumerated(EnumType.STRING) private Status status;
+    @Column(name="retry_after") private Instant retryAfter;
+    @Builder.Default @Column(columnDefinition="integer default 0") private int retries = 0;
+    private String recipient; // token FCM, email ou téléphone
+    private String title;
+    @Column(columnDefinition="text") private String body;
+    // Push regroupé : ids des prises portées par ce message, séparés par des virgules (null = la seule intakeEvent)
+    @Column(name="intake_ids", columnDefinition="text") private String intakeIds;
+}
@@ -1,7 +1,76 @@
 package com.pillpall.med_application.notifications;
 
-import org.springframework.data.jpa.repository.*; import java.util.List;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.*; import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.Instant;
+import java.util.Collection; import java.util.List;
 
 public interface NotificationAttemptRepository extends JpaRepository<NotificationAttempt, Long> {
     List<NotificationAttempt> findByIntakeEventId(Long intakeEventId);
-}
\ No newline at end of file
+
+    // Ce dont un worker outbox a besoin pour envoyer, sans charger la prise ni la prescription
+    interface OutboxView {
+        Long getId();
+        Long getIntakeEventId();
+        String getChannel();
+        String getRecipient();
+        String getTitle();
+        String getBody();
+        String getIntakeIds();
+        int getRetries();
+    }
+
+    // Report des réponses d'un envoi groupé sur les tentatives correspondantes
+    @Transactional
+    @Modifying
+    @Query("UPDATE NotificationAttempt a SET a.success = true, a.details = :details, " +
+            "a.status = com.pillpall.med_application.notifications.NotificationAttempt.Status.SENT, a.retryAfter = NULL " +
+            "WHERE a.id IN :ids")
+    int markSent(@Param("ids") Collection<Long> ids, @Param("details") String details);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE NotificationAttempt a SET a.success = false, a.details = :details, " +
+            "a.status = com.pillpall.med_application.notifications.NotificationAttempt.Status.FAILED, a.retryAfter = NULL " +
+            "WHERE a.id = :id")
+    int markFailed(@Param("id") Long id, @Param("details") String details);
+
+    // Échec temporaire : la ligne reste PENDING et redevient réclamable à retryAfter
+    @Transactional
+    @Modifying
+    @Query("UPDATE NotificationAttempt a SET a.details = :details, a.retryAfter = :retryAfter WHERE a.id = :id")
+    int markRetry(@Param("id") Long id, @Param("details") String details, @Param("retryAfter") Instant retryAfter);
+
+    // SELECT ... FOR UPDATE SKIP LOCKED : plusieurs noeuds vident l'outbox sans se bloquer.
+    // Statut PENDING en littéral pour l'index partiel de l'outbox (db/migration/V3)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT a.id FROM NotificationAttempt a " +
+            "WHERE a.status = com.pillpall.med_application.notifications.NotificationAttempt.Status.PENDING " +
+            "AND a.channel = :channel AND a.retryAfter <= :now ORDER BY a.retryAfter")
+    List<Long> lockOutbox(@Param("channel") String channel, @Param("now") Instant now, Pageable page);
+
+    // Bail sur les lignes réclamées : si le worker tombe, elles reviennent d'elles-mêmes à l'échéance du bail
+    @Modifying
+    @Query("UPDATE NotificationAttempt a SET a.retryAfter = :leaseUntil, a.retries = a.retries + 1, a.attemptAt = :now " +
+            "WHERE a.id IN :ids")
+    int lease(@Param("ids") Collection<Long> ids, @Param("now") Instant now, @Param("leaseUntil") Instant leaseUntil);
+
+    // Lignes réclamées mais non envoyées (pipeline saturé) : de nouveau réclamables, sans compter de tentative
+    @Transactional
+    @Modifying
+    @Query("UPDATE NotificationAttempt a SET a.retryAfter = :now, a.retries = a.retries - 1 WHERE a.id IN :ids")
+    int release(@Param("ids") Collection<Long> ids, @Param("now") Instant now);
+
+    @Query("SELECT a.id AS id, a.intakeEvent.id AS intakeEventId, a.channel AS channel, a.recipient AS recipient, " +
+            "a.title AS title, a.body AS body, a.intakeIds AS intakeIds, a.retries AS retries FROM NotificationAttempt a WHERE a.id IN :ids ORDER BY a.id")
+    List<OutboxView> findOutbox(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("DELETE FROM NotificationAttempt a WHERE a.intakeEvent.id IN " +
+            "(SELECT e.id FROM IntakeEvent e WHERE e.prescription.id = :prescriptionId)")
+    int deleteByPrescriptionId(@Param("prescriptionId") Long prescriptionId);
+}
@@ -0,0 +1,3 @@
+package com.pillpall.med_application.notifications;
+
+public enum NotificationChannel { FCM, EMAIL, SMS }
@@ -0,0 +1,99 @@
+package com.pillpall.med_application.notifications;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component
+@RequiredArgsConstructor
+public class NotificationPipeline {
+
+    // Une file bornée et un nombre limité d'envois simultanés par canal (FCM, EMAIL, SMS).
+    // Quand la file d'un canal est pleine, l'appelant attend une place (backpressure) au plus offerTimeoutMillis,
+    // puis l'envoi est refusé : les appelants sont souvent des threads du planificateur, qui ne doivent pas rester
+    // bloqués derrière un fournisseur lent. Les envois refusés repassent par l'outbox ou échouent en temporaire.
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationPipeline.class);
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.notifications.pipeline.queueCapacity:1000}") int queueCapacity;
+    @Value("${app.notifications.pipeline.fcmConcurrency:4}") int fcmConcurrency;
+    @Value("${app.notifications.pipeline.emailConcurrency:4}") int emailConcurrency;
+    @Value("${app.notifications.pipeline.smsConcurrency:2}") int smsConcurrency;
+    @Value("${app.notifications.pipeline.offerTimeoutMillis:2000}") long offerTimeoutMillis;
+
+    private final Map<NotificationChannel, ThreadPoolExecutor> executors = new EnumMap<>(NotificationChannel.class);
+
+    @PostConstruct
+    void start() {
+        executors.put(NotificationChannel.FCM, newExecutor(NotificationChannel.FCM, fcmConcurrency));
+        executors.put(NotificationChannel.EMAIL, newExecutor(NotificationChannel.EMAIL, emailConcurrency));
+        executors.put(NotificationChannel.SMS, newExecutor(NotificationChannel.SMS, smsConcurrency));
+
+        executors.forEach((channel, executor) -> {
+            Gauge.builder("notifications.queue.depth", executor, e -> e.getQueue().size())
+                    .tag("channel", channel.name()).register(meterRegistry);
+            Gauge.builder("notifications.inflight", executor, ThreadPoolExecutor::getActiveCount)
+                    .tag("channel", channel.name()).register(meterRegistry);
+        });
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        for (var executor : executors.values()) executor.shutdown();
+        for (var executor : executors.values()) executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    // Attend au plus offerTimeoutMillis une place dans la file du canal, sinon RejectedExecutionException ;
+    // à appeler hors transaction
+    public void execute(NotificationChannel channel, Runnable send) {
+        executors.get(channel).execute(() -> {
+            try {
+                send.run();
+            } catch (Exception e) {
+                log.error("{} notification failed", channel, e);
+            }
+        });
+    }
+
+    // Envois que le canal peut démarrer tout de suite (threads libres moins la file en attente)
+    public int idleWorkers(NotificationChannel channel) {
+        var executor = executors.get(channel);
+        return Math.max(0, executor.getMaximumPoolSize() - executor.getActiveCount() - executor.getQueue().size());
+    }
+
+    // JDK 17 : threads plateforme ; en JDK 21 seule la fabrique de threads change (Thread.ofVirtual())
+    private ThreadPoolExecutor newExecutor(NotificationChannel channel, int concurrency) {
+        var counter = new AtomicInteger();
+        ThreadFactory threads = r -> {
+            var t = new Thread(r, "notify-" + channel.name().toLowerCase() + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        RejectedExecutionHandler waitForRoom = (task, executor) -> {
+            if (executor.isShutdown()) throw new RejectedExecutionException(channel + " pipeline stopped");
+            try {
+                if (executor.getQueue().offer(task, offerTimeoutMillis, TimeUnit.MILLISECONDS)) return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
+            }
+            meterRegistry.counter("notifications.rejected", "channel", channel.name()).increment();
+            throw new RejectedExecutionException(channel + " pipeline saturated");
+        };
+        return new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threads, waitForRoom);
+    }
+}
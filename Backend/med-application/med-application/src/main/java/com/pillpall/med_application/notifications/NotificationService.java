@@ -1,18 +1,17 @@
 package com.pillpall.med_application.notifications;
 
 import com.pillpall.med_application.intakes.IntakeEvent;
-import com.pillpall.med_application.intakes.IntakeEventRepository;
+import com.pillpall.med_application.intakes.PatientDailyAdherenceRepository;
 import com.pillpall.med_application.users.Contact;
 import com.pillpall.med_application.users.ContactRepository;
 import com.pillpall.med_application.users.PatientProfile;
 import com.pillpall.med_application.users.PatientProfileRepository;
 import lombok.RequiredArgsConstructor;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.Duration;
-import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 
@@ -27,9 +26,10 @@ public class NotificationService {
     private final SmsGateway smsGateway;
     private final ContactRepository contactRepository;
     private final PatientProfileRepository patientProfileRepository;
-    private final IntakeEventRepository intakeEventRepository;
+    private final PatientDailyAdherenceRepository dailyAdherenceRepository;
+    private final NotificationPipeline pipeline;
+    private final FcmBatchDispatcher fcmDispatcher;
 
-    @Async
     public void sendIntakeReminder(IntakeEvent event) {
         PatientProfile patient = event.getPrescription().getPatient();
         String medicationName = event.getPrescription().getMedicationName();
@@ -40,12 +40,12 @@ public class NotificationService {
         String body = String.format("Il est %s - temps de prendre: %s", formattedTime, medicationName);
 
         // Notification FCM
-        if (patient.getUser().getDeviceToken() != null) {
-            fcmGateway.sendToToken(patient.getUser().getDeviceToken(), title, body, event.getId().toString());
+        String token = patient.getUser().getDeviceToken();
+        if (token != null) {
+            pipeline.execute(NotificationChannel.FCM, () -> fcmGateway.sendToToken(token, title, body, event.getId().toString()));
         }
     }
 
-    @Async
     public void escalateMissedIntake(IntakeEvent event) {
         PatientProfile patient = event.getPrescription().getPatient();
         String medicationName = event.getPrescription().getMedicationName();
@@ -63,34 +63,33 @@ public class NotificationService {
 
         for (Contact contact : contacts) {
             if (contact.getEmail() != null && !contact.getEmail().isBlank()) {
-                emailGateway.send(contact.getEmail(), subject, message);
+                String to = contact.getEmail();
+                pipeline.execute(NotificationChannel.EMAIL, () -> emailGateway.send(to, subject, message));
             }
             if (contact.getPhone() != null && !contact.getPhone().isBlank()) {
-                smsGateway.send(contact.getPhone(), message);
+                String to = contact.getPhone();
+                pipeline.execute(NotificationChannel.SMS, () -> smsGateway.send(to, message));
             }
         }
     }
 
-    @Async
-    @Transactional
+    // Résumé d'un seul patient (le job quotidien traite tous les patients par tranches) :
+    // journée locale du patient, comptes lus dans l'agrégat d'observance
+    @Transactional(readOnly = true)
     public void sendDailySummary(Long patientId) {
         PatientProfile patient = patientProfileRepository.findById(patientId).orElseThrow();
-        Instant todayStart = Instant.now().truncatedTo(java.time.temporal.ChronoUnit.DAYS);
-        Instant tomorrowStart = todayStart.plus(Duration.ofDays(1));
+        ZoneId zone = ZoneId.of(patient.getUser().getTimezone());
+        LocalDate today = LocalDate.now(zone);
 
-        List<IntakeEvent> todayEvents = intakeEventRepository
-                .findByPrescriptionPatientIdAndScheduledAtBetween(patientId, todayStart, tomorrowStart);
-
-        long missed = todayEvents.stream().filter(e -> e.getStatus() == IntakeEvent.Status.MISSED).count();
-        long taken = todayEvents.stream().filter(e -> e.getStatus() == IntakeEvent.Status.CONFIRMED).count();
-
-        String summary = String.format(
-                " Résumé du jour: %d prises effectuées, %d oubliées. Taux d'observance: %.1f%%",
-                taken, missed, (taken + missed > 0 ? (double) taken / (taken + missed) * 100 : 100)
-        );
+        long taken = 0, missed = 0;
+        for (var a : dailyAdherenceRepository.findByPatientIdInAndLocalDate(List.of(patientId), today)) {
+            taken = a.getConfirmed();
+            missed = a.getMissed();
+        }
 
-        if (patient.getUser().getDeviceToken() != null) {
-            fcmGateway.sendToToken(patient.getUser().getDeviceToken(), "📊 Résumé quotidien", summary, "daily_summary");
+        String token = patient.getUser().getDeviceToken();
+        if (token != null) {
+            fcmDispatcher.submit(null, DailySummaryJob.message(token, taken, missed));
         }
     }
 }
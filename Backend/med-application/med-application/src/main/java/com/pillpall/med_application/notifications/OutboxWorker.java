@@ -0,0 +1,124 @@
+package com.pillpall.med_application.notifications;
+
+import com.pillpall.med_application.notifications.NotificationAttemptRepository.OutboxView;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+@Component
+@RequiredArgsConstructor
+public class OutboxWorker {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxWorker.class);
+
+    // Vide l'outbox des tentatives PENDING sur chaque noeud : réclamation courte en base (SKIP LOCKED + bail),
+    // envoi par lots hors transaction, puis SENT / FAILED ou nouvelle tentative avec backoff exponentiel.
+    // Un lot n'est réclamé que si le pipeline peut le démarrer tout de suite : le thread du planificateur
+    // ne fait que réclamer, et les lignes ne vieillissent pas en file pendant leur bail. Un lot dont le bail
+    // a expiré avant l'envoi est abandonné (un autre noeud a pu le réclamer).
+    // Actif même sans app.notifications.outbox.enabled : seules les lignes ayant une échéance (retryAfter) sont
+    // réclamées, c'est-à-dire les envois repoussés par saturation et les alertes en attente de récapitulatif
+
+    private final NotificationAttemptRepository attempts;
+    private final NotificationPipeline pipeline;
+    private final FcmGateway fcm;
+    private final EscalationDigester digester;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.notifications.outbox.batchSize:500}") int batchSize;
+    // Le bail doit couvrir la fenêtre de regroupement des alertes (EscalationDigester)
+    @Value("${app.notifications.outbox.leaseSeconds:600}") long leaseSeconds;
+    @Value("${app.notifications.outbox.maxRetries:5}") int maxRetries;
+    @Value("${app.notifications.outbox.retryBaseSeconds:30}") long retryBaseSeconds;
+
+    @Scheduled(fixedDelayString = "${app.notifications.outbox.pollMillis:1000}")
+    public void drain() {
+        for (var channel : NotificationChannel.values()) {
+            for (int idle = pipeline.idleWorkers(channel); idle > 0; idle--) {
+                var claim = claim(channel);
+                if (claim.getRows().isEmpty()) break;
+                try {
+                    pipeline.execute(channel, () -> deliver(channel, claim));
+                } catch (RejectedExecutionException e) {
+                    attempts.release(claim.getRows().stream().map(OutboxView::getId).toList(), Instant.now());
+                    break;
+                }
+                if (claim.getRows().size() < batchSize) break;
+            }
+        }
+    }
+
+    Claim claim(NotificationChannel channel) {
+        Instant now = Instant.now();
+        Instant leaseUntil = now.plusSeconds(leaseSeconds);
+        List<OutboxView> claimed = new TransactionTemplate(transactionManager).execute(status -> {
+            var ids = attempts.lockOutbox(channel.name(), now, PageRequest.of(0, batchSize));
+            if (ids.isEmpty()) return List.of();
+            attempts.lease(ids, now, leaseUntil);
+            return attempts.findOutbox(ids);
+        });
+        return new Claim(claimed != null ? claimed : List.of(), leaseUntil);
+    }
+
+    void deliver(NotificationChannel channel, Claim claim) {
+        if (!Instant.now().isBefore(claim.getLeaseUntil())) {
+            log.warn("Outbox lease expired before delivery: {} {} attempts left for the next claim", claim.getRows().size(), channel);
+            return;
+        }
+        var batch = claim.getRows();
+        List<Long> sent = new ArrayList<>();
+        switch (channel) {
+            case FCM -> {
+                var results = fcm.sendAll(batch.stream()
+                        .map(a -> FcmMessage.reminder(a.getRecipient(), a.getTitle(), a.getBody(),
+                                a.getIntakeEventId(), a.getIntakeIds()))
+                        .toList());
+                for (int i = 0; i < batch.size(); i++) {
+                    var r = results.get(i);
+                    if (r.isSuccess()) sent.add(batch.get(i).getId());
+                    else retryOrFail(batch.get(i), r.getError() != null ? r.getError() : "fail");
+                }
+            }
+            // Les alertes passent par le regroupement par contact ; chaque ligne reçoit le résultat de son envoi
+            case EMAIL, SMS -> batch.forEach(a -> digester.submit(channel, a.getRecipient(), a.getTitle(), a.getBody(), a.getId(),
+                    outcome -> {
+                        switch (outcome) {
+                            case SENT -> attempts.markSent(List.of(a.getId()), "sent");
+                            case PERMANENT_FAILURE -> attempts.markFailed(a.getId(), "permanent_failure");
+                            case TRANSIENT_FAILURE -> retryOrFail(a, "transient_failure");
+                        }
+                    }));
+        }
+        if (!sent.isEmpty()) attempts.markSent(sent, "sent");
+    }
+
+    // retries compte déjà la tentative en cours (incrémenté au bail)
+    private void retryOrFail(OutboxView a, String error) {
+        int tried = a.getRetries();
+        if (tried >= maxRetries) {
+            attempts.markFailed(a.getId(), error);
+        } else {
+            long delay = retryBaseSeconds << Math.min(tried - 1, 16);
+            attempts.markRetry(a.getId(), error, Instant.now().plus(Duration.ofSeconds(delay)));
+        }
+    }
+
+    @Data
+    static class Claim {
+        private final List<OutboxView> rows;
+        private final Instant leaseUntil;
+    }
+}
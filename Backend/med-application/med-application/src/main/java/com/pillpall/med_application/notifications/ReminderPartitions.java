@@ -0,0 +1,142 @@
+package com.pillpall.med_application.notifications;
+
+import com.pillpall.med_application.config.ShedLockConfig;
+import jakarta.annotation.PreDestroy;
+import net.javacrumbs.shedlock.core.LockConfiguration;
+import net.javacrumbs.shedlock.core.LockProvider;
+import net.javacrumbs.shedlock.core.SimpleLock;
+import net.javacrumbs.shedlock.support.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+public class ReminderPartitions {
+
+    // Découpe le travail de rappel en N partitions (patient_id mod N) réparties entre les noeuds actifs.
+    // Chaque noeud publie un battement (verrou reminderNode-<uuid>) et détient sa part des baux reminderPartition-i
+    // dans la table ShedLock ; quand un noeud arrive ou part, la part équitable change et les baux se redistribuent.
+    // locked_by porte l'uuid du noeud (pas seulement le nom d'hôte) : deux noeuds d'un même hôte, ou un noeud
+    // redémarré, ne peuvent pas prolonger un bail qu'ils n'ont pas pris.
+
+    private static final Logger log = LoggerFactory.getLogger(ReminderPartitions.class);
+    private static final String NODE_PREFIX = "reminderNode-";
+    private static final String PARTITION_PREFIX = "reminderPartition-";
+    private static final String LOCK_TABLE = "shedlock";
+
+    private final JdbcTemplate jdbc;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final LockProvider lockProvider;
+
+    @Value("${app.notifications.partitions.count:16}") int count;
+    @Value("${app.notifications.partitions.leaseSeconds:60}") long leaseSeconds;
+
+    private final Map<Integer, SimpleLock> owned = new ConcurrentHashMap<>();
+    private SimpleLock heartbeat;
+
+    public ReminderPartitions(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+        this.lockProvider = ShedLockConfig.lockProvider(jdbc.getDataSource(), Utils.getHostname() + "/" + nodeId);
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public Set<Integer> owned() {
+        return Set.copyOf(owned.keySet());
+    }
+
+    public boolean owns(Long patientId) {
+        return owned.containsKey((int) Math.floorMod(patientId, (long) count));
+    }
+
+    @Scheduled(fixedDelayString = "${app.notifications.partitions.rebalanceMillis:15000}")
+    public synchronized void rebalance() {
+        Duration lease = Duration.ofSeconds(leaseSeconds);
+        heartbeat = renew(heartbeat, NODE_PREFIX + nodeId, lease);
+        if (heartbeat == null) {
+            // Sans battement les autres noeuds ne nous comptent pas : on ne garde rien
+            releaseAll();
+            return;
+        }
+        int nodes = liveNodes(lease);
+        int share = (count + nodes - 1) / nodes;
+
+        // Un bail qui n'a pas pu être prolongé (pause, base lente) est peut-être déjà repris ailleurs
+        for (var it = owned.entrySet().iterator(); it.hasNext(); ) {
+            var e = it.next();
+            var renewed = e.getValue().extend(lease, Duration.ZERO);
+            if (renewed.isPresent()) e.setValue(renewed.get()); else it.remove();
+        }
+
+        // Excédent rendu pour les noeuds qui viennent d'arriver
+        while (owned.size() > share) {
+            int p = Collections.max(owned.keySet());
+            owned.remove(p).unlock();
+        }
+
+        // Partitions libres prises jusqu'à la part équitable, chaque noeud partant d'un point différent
+        int start = Math.floorMod(nodeId.hashCode(), count);
+        for (int i = 0; i < count && owned.size() < share; i++) {
+            int p = (start + i) % count;
+            if (owned.containsKey(p)) continue;
+            lockProvider.lock(config(PARTITION_PREFIX + p, lease)).ifPresent(l -> owned.put(p, l));
+        }
+        log.debug("Node {} owns reminder partitions {} ({} live nodes)", nodeId, new TreeSet<>(owned.keySet()), nodes);
+    }
+
+    // Départ propre : les baux sont libérés tout de suite au lieu d'expirer
+    @PreDestroy
+    public synchronized void stop() {
+        releaseAll();
+        if (heartbeat != null) heartbeat.unlock();
+        heartbeat = null;
+    }
+
+    private void releaseAll() {
+        owned.values().forEach(SimpleLock::unlock);
+        owned.clear();
+    }
+
+    private SimpleLock renew(SimpleLock lock, String name, Duration lease) {
+        if (lock != null) {
+            var renewed = lock.extend(lease, Duration.ZERO);
+            if (renewed.isPresent()) return renewed.get();
+        }
+        return lockProvider.lock(config(name, lease)).orElse(null);
+    }
+
+    // Les dates comparées viennent toutes de la base (usingDbTime) : l'heure de la base est déduite
+    // de notre propre battement, sans fonction de date propre au dialecte ni dépendance à l'horloge locale
+    private int liveNodes(Duration lease) {
+        Map<String, Timestamp> beats = new HashMap<>();
+        jdbc.query("SELECT name, lock_until FROM " + LOCK_TABLE + " WHERE name LIKE ?",
+                rs -> { beats.put(rs.getString(1), rs.getTimestamp(2)); }, NODE_PREFIX + "%");
+        Timestamp mine = beats.get(NODE_PREFIX + nodeId);
+        if (mine == null) return 1;
+        long dbNow = mine.getTime() - lease.toMillis();
+
+        int live = 0;
+        for (var e : beats.entrySet()) {
+            long until = e.getValue().getTime();
+            if (until > dbNow) live++;
+            // Les battements des noeuds arrêtés depuis longtemps sont purgés
+            else if (until < dbNow - Duration.ofHours(1).toMillis()) jdbc.update("DELETE FROM " + LOCK_TABLE + " WHERE name = ?", e.getKey());
+        }
+        return Math.max(1, live);
+    }
+
+    private static LockConfiguration config(String name, Duration lease) {
+        return new LockConfiguration(Instant.now(), name, lease, Duration.ZERO);
+    }
+}
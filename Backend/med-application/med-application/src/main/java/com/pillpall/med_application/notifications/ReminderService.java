@@ -2,83 +2,239 @@ package com.pillpall.med_application.notifications;
 
 import com.pillpall.med_application.intakes.IntakeEvent;
 import com.pillpall.med_application.intakes.IntakeEventRepository;
+import com.pillpall.med_application.intakes.IntakeEventRepository.DueReminderView;
+import com.pillpall.med_application.intakes.IntakeTransitionService;
 import com.pillpall.med_application.users.ContactRepository;
 import lombok.RequiredArgsConstructor;
 import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
-import org.springframework.stereotype.Service; import org.springframework.transaction.annotation.Transactional;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service @RequiredArgsConstructor
 public class ReminderService {
 
-    // Fixation de temps de renvoi des fcm
+    // Fixation de temps de renvoi des fcm : à 0, 15, 30 et 45 minutes après l'heure prévue
+    static final long[] REMINDER_OFFSETS_MINUTES = {0, 15, 30, 45};
+    private static final Logger log = LoggerFactory.getLogger(ReminderService.class);
 
     private final IntakeEventRepository intakes;
     private final NotificationAttemptRepository attempts;
-    private final FcmGateway fcm; private final EmailGateway email; private final SmsGateway sms;
+    private final FcmBatchDispatcher fcmDispatcher;
     private final ContactRepository contacts;
+    private final IntakeTransitionService transitions;
+    private final PlatformTransactionManager transactionManager;
+    private final ReminderPartitions partitions;
+    private final EscalationLedgerRepository ledger;
+    private final EscalationDigester digester;
 
     @Value("${app.notifications.intakeWindowMinutes}") int intakeWindowMinutes;
+    @Value("${app.notifications.outbox.enabled:false}") boolean outboxEnabled;
+    @Value("${app.notifications.coalesceMinutes:5}") int coalesceMinutes;
 
+    // Les rappels sont déclenchés à l'instant exact par ReminderWheel ; le tick rattrape ce qui est dû
+    // (une seule requête sur next_action_at) pour les partitions détenues par ce noeud : chaque réplique
+    // traite sa part, sans leader unique. Les envois ne partent qu'après le commit, hors transaction
     @Scheduled(fixedDelay = 60000) // chaque minute
-    @SchedulerLock(name="reminderTick", lockAtMostFor = "PT30S", lockAtLeastFor="PT10S")
-    @Transactional
     public void processReminders() {
+        var parts = partitions.owned().stream().map(Integer::longValue).toList();
+        if (parts.isEmpty()) return;
         Instant now = Instant.now();
 
-        var toMiss = intakes.findByStatusAndScheduledAtBefore(IntakeEvent.Status.PENDING, now.minusSeconds(intakeWindowMinutes*60L));
-        for (var ev : toMiss) ev.setStatus(IntakeEvent.Status.MISSED);
+        dispatch(new TransactionTemplate(transactionManager).execute(status -> {
+            var out = new Outgoing();
+            advanceAll(intakes.findDueReminders(now, partitions.count(), parts), now, out);
+            return out;
+        }));
+    }
+
+    // Passage en MISSED des prises hors fenêtre : UPDATE ensembliste, un seul noeud suffit. Une prise n'y passe
+    // qu'une fois escaladée par le propriétaire de sa partition (processReminders / fire), quel que soit l'ordre des jobs
+    @Scheduled(fixedDelay = 60000)
+    @SchedulerLock(name="reminderMissed", lockAtMostFor = "PT30S", lockAtLeastFor="PT10S")
+    public void markMissed() {
+        int missed = transitions.markMissedScheduledBefore(Instant.now().minusSeconds(intakeWindowMinutes*60L));
+        if (missed > 0) log.info("Marked {} intake events as MISSED", missed);
+    }
+
+    // La roue de chaque noeud connaît toutes les prises ; seul le propriétaire de la partition envoie.
+    // Les autres prises dues du patient partent avec celle-ci ; leurs propres timers ne trouveront plus rien
+    public void fire(Long intakeId) {
+        dispatch(new TransactionTemplate(transactionManager).execute(status -> {
+            var out = new Outgoing();
+            Instant now = Instant.now();
+            intakes.findDueReminder(intakeId, now)
+                    .filter(due -> partitions.owns(due.getPatientId()))
+                    .ifPresent(due -> advanceAll(intakes.findDuePatientReminders(due.getPatientId(), now), now, out));
+            return out;
+        }));
+    }
 
-        var pending = intakes.findByStatusAndScheduledAtBetween(IntakeEvent.Status.PENDING, now.minusSeconds(3600), now);
-        for (var ev : pending) {
-            var countFcm = attempts.findByIntakeEventId(ev.getId()).stream().filter(a->a.getChannel().equals("FCM")).count();
-            long minutesSince = Duration.between(ev.getScheduledAt(), now).toMinutes();
+    private void dispatch(Outgoing out) {
+        if (out != null) out.sends.forEach(Runnable::run);
+    }
 
-            if ((minutesSince>=0 && countFcm==0) || (minutesSince>=15 && countFcm==1) ||
-                    (minutesSince>=30 && countFcm==2) || (minutesSince>=45 && countFcm==3)) {
-                boolean ok = sendFcm(ev);
-                logAttempt(ev, "FCM", ok, ok ? "sent" : "fail");
+    // Les envois à faire après le commit sont ajoutés à out. Les rappels FCM rapprochés d'un même patient
+    // partent dans un seul push, avec une seule tentative
+    private void advanceAll(List<DueReminderView> dues, Instant now, Outgoing out) {
+        Map<Long, List<DueReminderView>> reminders = new LinkedHashMap<>();
+        for (var due : dues) {
+            var next = advance(due, now);
+            if (next == null) continue;
+            if (next == IntakeEvent.ReminderStage.ESCALATED) {
+                escalate(intakes.getReferenceById(due.getId()), due, out);
+            } else {
+                reminders.computeIfAbsent(due.getPatientId(), k -> new ArrayList<>()).add(due);
             }
+        }
+        reminders.values().forEach(patientReminders -> coalesce(patientReminders).forEach(group -> sendFcm(group, out)));
+    }
 
-            if (minutesSince >= intakeWindowMinutes && countFcm >= 4) {
-                escalate(ev);
+    // Groupes de prises prévues moins de coalesceMinutes après la première prise du groupe : 08:04 et 08:06
+    // partent ensemble, quel que soit le découpage de l'horloge
+    List<List<DueReminderView>> coalesce(List<DueReminderView> reminders) {
+        List<List<DueReminderView>> groups = new ArrayList<>();
+        Instant groupEnd = null;
+        for (var due : reminders.stream().sorted(Comparator.comparing(DueReminderView::getScheduledAt)).toList()) {
+            if (groupEnd == null || !due.getScheduledAt().isBefore(groupEnd)) {
+                groups.add(new ArrayList<>());
+                groupEnd = due.getScheduledAt().plus(Duration.ofMinutes(coalesceMinutes));
             }
+            groups.get(groups.size() - 1).add(due);
         }
+        return groups;
     }
 
-    private boolean sendFcm(IntakeEvent ev) {
-        var patient = ev.getPrescription().getPatient().getUser();
-        if (patient.getDeviceToken()==null || patient.getDeviceToken().isBlank()) return false;
-        String title = "Rappel de prise";
-        String body = "Il est temps de prendre: " + ev.getPrescription().getMedicationName();
-        return fcm.sendToToken(patient.getDeviceToken(), title, body, String.valueOf(ev.getId()));
+    // Compare-and-set : seul celui (roue, tick ou autre noeud) qui avance l'étape envoie.
+    // L'étape et la tentative sont écrites dans la même transaction. Renvoie l'étape atteinte, null sinon
+    private IntakeEvent.ReminderStage advance(DueReminderView due, Instant now) {
+        var stage = due.getReminderStage();
+        if (stage == IntakeEvent.ReminderStage.ESCALATED) return null;
+        var next = targetStage(due.getScheduledAt(), stage, now);
+
+        if (intakes.advanceReminderStage(due.getId(), IntakeEvent.Status.PENDING, stage, next,
+                nextActionAt(due.getScheduledAt(), next)) == 0) return null;
+        return next;
+    }
+
+    // Étape suivante, ou la plus avancée dont l'heure est déjà passée : après une interruption (redémarrage,
+    // ticks sautés), les rappels en retard ne partent pas l'un après l'autre, et une prise déjà hors fenêtre
+    // passe directement à l'escalade, sans « Il est temps de prendre »
+    IntakeEvent.ReminderStage targetStage(Instant scheduledAt, IntakeEvent.ReminderStage stage, Instant now) {
+        var target = IntakeEvent.ReminderStage.values()[stage.ordinal() + 1];
+        for (Instant at = nextActionAt(scheduledAt, target); at != null && !at.isAfter(now); at = nextActionAt(scheduledAt, target)) {
+            target = IntakeEvent.ReminderStage.values()[target.ordinal() + 1];
+        }
+        return target;
     }
 
-    private void escalate(IntakeEvent ev) {
-        var patient = ev.getPrescription().getPatient();
-        for (var c : contacts.findByPatientId(patient.getId())) {
-            if (c.getEmail()!=null && !c.getEmail().isBlank()) {
-                boolean ok = email.send(c.getEmail(), "Alerte patient",
-                        "Aucune confirmation après 60 minutes pour: "+ev.getPrescription().getMedicationName());
-                logAttempt(ev, "EMAIL", ok, ok ? "sent" : "fail");
+    // Échéance de l'action suivante une fois l'étape atteinte
+    Instant nextActionAt(Instant scheduledAt, IntakeEvent.ReminderStage reached) {
+        int sent = reached.ordinal();
+        if (sent < REMINDER_OFFSETS_MINUTES.length) return scheduledAt.plus(Duration.ofMinutes(REMINDER_OFFSETS_MINUTES[sent]));
+        if (reached == IntakeEvent.ReminderStage.REMINDED_4) return scheduledAt.plus(Duration.ofMinutes(intakeWindowMinutes));
+        return null;
+    }
+
+    // Le push part dans le prochain lot FCM une fois la transaction validée ; la réponse est reportée sur la tentative.
+    // La tentative est rattachée à la première prise, toutes les prises du groupe sont dans intakeIds
+    private void sendFcm(List<DueReminderView> group, Outgoing out) {
+        var first = group.get(0);
+        var ev = intakes.getReferenceById(first.getId());
+        if (first.getDeviceToken()==null || first.getDeviceToken().isBlank()) {
+            logAttempt(ev, NotificationChannel.FCM, false, "fail");
+            return;
+        }
+        String medications = group.stream().map(DueReminderView::getMedicationName).collect(Collectors.joining(", "));
+        String intakeIds = group.stream().map(d -> String.valueOf(d.getId())).collect(Collectors.joining(","));
+        enqueue(ev, NotificationChannel.FCM, first.getDeviceToken(), "Rappel de prise",
+                "Il est temps de prendre: " + medications, intakeIds, out);
+    }
+
+    // Au plus une escalade par prise et par canal (registre à contrainte unique), même si l'étape est rejouée.
+    // Email et SMS passent par EscalationDigester : les alertes rapprochées vers un même contact sont regroupées
+    private void escalate(IntakeEvent ev, DueReminderView due, Outgoing out) {
+        var patientContacts = contacts.findByPatientId(due.getPatientId());
+        boolean byEmail = patientContacts.stream().anyMatch(c -> c.getEmail()!=null && !c.getEmail().isBlank())
+                && claimEscalation(due.getId(), NotificationChannel.EMAIL);
+        boolean bySms = patientContacts.stream().anyMatch(c -> c.getPhone()!=null && !c.getPhone().isBlank())
+                && claimEscalation(due.getId(), NotificationChannel.SMS);
+
+        for (var c : patientContacts) {
+            if (byEmail && c.getEmail()!=null && !c.getEmail().isBlank()) {
+                enqueue(ev, NotificationChannel.EMAIL, c.getEmail(), "Alerte patient",
+                        "Aucune confirmation après "+intakeWindowMinutes+" minutes pour: "+due.getMedicationName(), null, out);
             }
-            if (c.getPhone()!=null && !c.getPhone().isBlank()) {
-                boolean ok = sms.send(c.getPhone(), "Alerte: pas de confirmation de prise pour "+ev.getPrescription().getMedicationName());
-                logAttempt(ev, "SMS", ok, ok ? "sent" : "fail");
+            if (bySms && c.getPhone()!=null && !c.getPhone().isBlank()) {
+                enqueue(ev, NotificationChannel.SMS, c.getPhone(), null,
+                        "Alerte: pas de confirmation de prise pour "+due.getMedicationName(), null, out);
             }
         }
     }
 
-    private void logAttempt(IntakeEvent ev, String channel, boolean success, String details) {
+    private boolean claimEscalation(Long intakeId, NotificationChannel channel) {
+        if (ledger.claim(intakeId, channel.name(), Instant.now()) == 1) return true;
+        digester.suppressed(channel, "duplicate", 1);
+        return false;
+    }
+
+    // La tentative PENDING est écrite dans la transaction du tick. En mode outbox, OutboxWorker la réclame
+    // et l'envoie ; sinon l'envoi direct est ajouté à out et part après le commit
+    private void enqueue(IntakeEvent ev, NotificationChannel channel, String recipient, String title, String body,
+                         String intakeIds, Outgoing out) {
+        var attempt = attempts.save(NotificationAttempt.builder()
+                .intakeEvent(ev)
+                .channel(channel.name())
+                .success(false)
+                .details("queued")
+                .attemptAt(Instant.now())
+                .status(NotificationAttempt.Status.PENDING)
+                .retryAfter(outboxEnabled ? Instant.now() : null)
+                .recipient(recipient)
+                .title(title)
+                .body(body)
+                .intakeIds(intakeIds)
+                .build());
+        if (outboxEnabled) return;
+
+        Long id = attempt.getId();
+        switch (channel) {
+            case FCM -> out.sends.add(() -> fcmDispatcher.submit(id,
+                    FcmMessage.reminder(recipient, title, body, ev.getId(), intakeIds)));
+            case EMAIL, SMS -> out.sends.add(() -> digester.submit(channel, recipient, title, body, id, outcome -> record(id, outcome)));
+        }
+    }
+
+    private void record(Long attemptId, DeliveryOutcome outcome) {
+        if (outcome == DeliveryOutcome.SENT) attempts.markSent(List.of(attemptId), "sent");
+        else attempts.markFailed(attemptId, outcome.name().toLowerCase());
+    }
+
+    private void logAttempt(IntakeEvent ev, NotificationChannel channel, boolean success, String details) {
         attempts.save(NotificationAttempt.builder()
                 .intakeEvent(ev)
-                .channel(channel)
+                .channel(channel.name())
                 .success(success)
                 .details(details)
                 .attemptAt(Instant.now())
+                .status(success ? NotificationAttempt.Status.SENT : NotificationAttempt.Status.FAILED)
                 .build());
     }
+
+    // Envois préparés dans la transaction, exécutés après le commit
+    private static class Outgoing {
+        private final List<Runnable> sends = new ArrayList<>();
+    }
 }
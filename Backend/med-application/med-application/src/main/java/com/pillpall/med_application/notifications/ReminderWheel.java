@@ -0,0 +1,124 @@
+package com.pillpall.med_application.notifications;
+
+import com.pillpall.med_application.intakes.IntakeEventRepository;
+import com.pillpall.med_application.sync.ChangeVersionMarkRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Component
+@RequiredArgsConstructor
+public class ReminderWheel {
+
+    // Charge les prises PENDING des prochaines heures dans une roue temporelle
+    // et déclenche chaque rappel / escalade à son instant exact
+
+    private static final Logger log = LoggerFactory.getLogger(ReminderWheel.class);
+
+    private final IntakeEventRepository intakes;
+    private final ReminderService reminders;
+    private final ChangeVersionMarkRepository marks;
+
+    @Value("${app.notifications.intakeWindowMinutes}") int intakeWindowMinutes;
+    @Value("${app.notifications.wheel.horizonHours:6}") int horizonHours;
+    @Value("${app.notifications.wheel.workers:4}") int workers;
+    @Value("${app.sync.safetyLagSeconds:60}") long safetyLagSeconds;
+
+    private final Map<Long, List<TimingWheel.Timeout>> timers = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+    private TimingWheel wheel;
+    private Instant loadedUntil;
+    private long loadedVersion;
+
+    @PostConstruct
+    void start() {
+        executor = Executors.newFixedThreadPool(workers, r -> {
+            var t = new Thread(r, "reminder-fire");
+            t.setDaemon(true);
+            return t;
+        });
+        wheel = new TimingWheel(1000, Clock.systemUTC(), executor);
+        wheel.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        wheel.stop();
+        executor.shutdown();
+    }
+
+    // Rechargement incrémental : prises écrites depuis le dernier passage + extension de l'horizon.
+    // Le point de reprise est une version de changement, comme pour la synchronisation : il ne dépasse pas le
+    // repère de séquence d'il y a safetyLagSeconds, lu avant les requêtes, si bien qu'une transaction lente qui
+    // valide une version plus basse après une plus haute est relue au passage suivant (les doublons sont ignorés)
+    @Scheduled(fixedDelayString = "${app.notifications.wheel.reloadMillis:60000}")
+    public synchronized void reload() {
+        Instant now = Instant.now();
+        Instant windowStart = now.minus(Duration.ofMinutes(intakeWindowMinutes));
+        Instant horizon = now.plus(Duration.ofHours(horizonHours));
+        Long settled = marks.versionAt(now.minusSeconds(safetyLagSeconds));
+
+        if (loadedUntil == null) {
+            intakes.findPendingScheduleBetween(windowStart, horizon)
+                    .forEach(v -> track(v.getId(), v.getScheduledAt(), now));
+        } else {
+            intakes.findPendingScheduleChangedSince(loadedVersion, windowStart, loadedUntil)
+                    .forEach(v -> track(v.getId(), v.getScheduledAt(), now));
+            intakes.findPendingScheduleBetween(loadedUntil, horizon)
+                    .forEach(v -> track(v.getId(), v.getScheduledAt(), now));
+        }
+        if (settled != null) loadedVersion = Math.max(loadedVersion, settled);
+        loadedUntil = horizon;
+        log.debug("Reminder wheel loaded until {} ({} timers)", loadedUntil, wheel.size());
+    }
+
+    // Annule en O(1) tous les timers restants d'une prise (confirmation)
+    public void cancel(Long intakeId) {
+        var handles = timers.remove(intakeId);
+        if (handles != null) handles.forEach(TimingWheel.Timeout::cancel);
+    }
+
+    private void track(Long intakeId, Instant scheduledAt, Instant now) {
+        if (timers.containsKey(intakeId)) return;
+        List<TimingWheel.Timeout> handles = new ArrayList<>(ReminderService.REMINDER_OFFSETS_MINUTES.length + 1);
+
+        // Les échéances déjà passées (redémarrage, prise créée en retard) sont rattrapées par un seul envoi immédiat
+        boolean catchUp = false;
+        for (long offset : ReminderService.REMINDER_OFFSETS_MINUTES) {
+            Instant at = scheduledAt.plus(Duration.ofMinutes(offset));
+            if (at.isAfter(now)) handles.add(wheel.schedule(at, () -> fire(intakeId, false)));
+            else catchUp = true;
+        }
+        if (catchUp) handles.add(wheel.schedule(now, () -> fire(intakeId, false)));
+
+        Instant escalationAt = scheduledAt.plus(Duration.ofMinutes(intakeWindowMinutes));
+        handles.add(wheel.schedule(escalationAt, () -> fire(intakeId, true)));
+
+        timers.put(intakeId, handles);
+        if (!escalationAt.isAfter(now)) timers.remove(intakeId);
+    }
+
+    private void fire(Long intakeId, boolean escalation) {
+        try {
+            if (escalation) timers.remove(intakeId);
+            reminders.fire(intakeId);
+        } catch (Exception e) {
+            log.error("Reminder timer failed for intake {}", intakeId, e);
+        }
+    }
+}
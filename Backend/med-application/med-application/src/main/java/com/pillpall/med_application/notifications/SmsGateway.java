@@ -1,6 +1,6 @@
 package com.pillpall.med_application.notifications;
 
-import com.twilio.Twilio; import com.twilio.rest.api.v2010.account.Message;
+import com.twilio.Twilio; import com.twilio.exception.ApiException; import com.twilio.rest.api.v2010.account.Message;
 import org.springframework.beans.factory.annotation.Value; import org.springframework.stereotype.Component;
 import jakarta.annotation.PostConstruct;
 
@@ -14,11 +14,21 @@ public class SmsGateway {
 
     @PostConstruct public void init(){ Twilio.init(sid, token); }
 
-    public boolean send(String to, String text) {
+    public DeliveryOutcome send(String to, String text) {
         try {
             Message.creator(new com.twilio.type.PhoneNumber(to),
                     new com.twilio.type.PhoneNumber(from), text).create();
-            return true;
-        } catch (Exception e) { return false; }
+            return DeliveryOutcome.SENT;
+        } catch (Exception e) { return classify(e); }
+    }
+
+    // 4xx de l'API Twilio (numéro invalide, destinataire bloqué) : définitif, sauf 429 (limite de débit) ;
+    // 5xx, réseau : temporaire
+    static DeliveryOutcome classify(Exception e) {
+        if (e instanceof ApiException a && a.getStatusCode() != null) {
+            int status = a.getStatusCode();
+            if (status >= 400 && status < 500 && status != 429) return DeliveryOutcome.PERMANENT_FAILURE;
+        }
+        return DeliveryOutcome.TRANSIENT_FAILURE;
     }
 }
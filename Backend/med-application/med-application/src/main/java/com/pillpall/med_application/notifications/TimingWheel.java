@@ -0,0 +1,194 @@
+package com.pillpall.med_application.notifications;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Roue temporelle hiérarchique (4 niveaux de 64 cases).
+ * Le niveau 0 avance d'une case par tick, chaque niveau supérieur couvre 64 fois le précédent :
+ * avec un tick d'une seconde on couvre ~194 jours sans jamais parcourir les timers en attente.
+ * Planifier et annuler sont en O(1) ; les timers échus sont exécutés sur l'executor fourni.
+ */
+public class TimingWheel {
+
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+
+    private final long tickMillis;
+    private final Clock clock;
+    private final Executor executor;
+    private final Bucket[][] wheels = new Bucket[LEVELS][SLOTS];
+    private final Bucket overflow = new Bucket();
+    private long currentTick;
+    private int pending;
+    private Thread worker;
+    private volatile boolean running;
+
+    public TimingWheel(long tickMillis, Clock clock, Executor executor) {
+        this.tickMillis = tickMillis;
+        this.clock = clock;
+        this.executor = executor;
+        for (int l = 0; l < LEVELS; l++) {
+            for (int s = 0; s < SLOTS; s++) wheels[l][s] = new Bucket();
+        }
+        this.currentTick = clock.millis() / tickMillis;
+    }
+
+    public synchronized Timeout schedule(Instant deadline, Runnable task) {
+        // Arrondi au tick supérieur : un timer ne part jamais avant son échéance
+        long deadlineTick = Math.floorDiv(deadline.toEpochMilli() + tickMillis - 1, tickMillis);
+        var timeout = new Timeout(this, deadlineTick, task);
+        if (deadlineTick <= currentTick) {
+            executor.execute(task);
+            return timeout;
+        }
+        place(timeout);
+        pending++;
+        return timeout;
+    }
+
+    public synchronized int size() {
+        return pending;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        worker = new Thread(this::run, "reminder-wheel");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void stop() {
+        running = false;
+        Thread t;
+        synchronized (this) { t = worker; }
+        if (t != null) t.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            advanceTo(clock.millis());
+            long sleep = tickMillis - Math.floorMod(clock.millis(), tickMillis);
+            try {
+                Thread.sleep(Math.max(1, sleep));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** Fait avancer la roue jusqu'à l'instant donné et exécute les timers échus. */
+    void advanceTo(long nowMillis) {
+        List<Runnable> expired = new ArrayList<>();
+        synchronized (this) {
+            long target = nowMillis / tickMillis;
+            while (currentTick < target) {
+                currentTick++;
+                cascade();
+                wheels[0][(int) (currentTick & MASK)].drainTo(expired);
+            }
+            pending -= expired.size();
+        }
+        for (Runnable task : expired) executor.execute(task);
+    }
+
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            // On ne redescend le niveau supérieur que lorsque le niveau courant a fait un tour complet
+            if (((currentTick >>> (SLOT_BITS * (level - 1))) & MASK) != 0) return;
+            int slot = (int) ((currentTick >>> (SLOT_BITS * level)) & MASK);
+            wheels[level][slot].forEach(this::replace);
+            if (level == LEVELS - 1) overflow.forEach(this::replace);
+        }
+    }
+
+    private void replace(Timeout t) {
+        if (t.deadlineTick <= currentTick) {
+            wheels[0][(int) (currentTick & MASK)].add(t);
+        } else {
+            place(t);
+        }
+    }
+
+    private void place(Timeout t) {
+        long delta = t.deadlineTick - currentTick;
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < (1L << (SLOT_BITS * (level + 1)))) {
+                int slot = (int) ((t.deadlineTick >>> (SLOT_BITS * level)) & MASK);
+                wheels[level][slot].add(t);
+                return;
+            }
+        }
+        overflow.add(t);
+    }
+
+    private synchronized boolean cancel(Timeout t) {
+        if (t.bucket == null) return false;
+        t.bucket.remove(t);
+        pending--;
+        return true;
+    }
+
+    /** Poignée d'un timer planifié, annulable en O(1). */
+    public static final class Timeout {
+        private final TimingWheel wheel;
+        private final long deadlineTick;
+        private final Runnable task;
+        private Bucket bucket;
+        private Timeout prev, next;
+
+        private Timeout(TimingWheel wheel, long deadlineTick, Runnable task) {
+            this.wheel = wheel;
+            this.deadlineTick = deadlineTick;
+            this.task = task;
+        }
+
+        public boolean cancel() {
+            return wheel.cancel(this);
+        }
+    }
+
+    /** Liste doublement chaînée intrusive : ajout et retrait en O(1). */
+    private static final class Bucket {
+        private Timeout head;
+
+        void add(Timeout t) {
+            t.bucket = this;
+            t.prev = null;
+            t.next = head;
+            if (head != null) head.prev = t;
+            head = t;
+        }
+
+        void remove(Timeout t) {
+            if (t.prev != null) t.prev.next = t.next; else head = t.next;
+            if (t.next != null) t.next.prev = t.prev;
+            t.bucket = null;
+            t.prev = t.next = null;
+        }
+
+        void drainTo(List<Runnable> out) {
+            forEach(t -> out.add(t.task));
+        }
+
+        /** Vide la case en passant chaque timer au consommateur (qui peut le replacer ailleurs). */
+        void forEach(java.util.function.Consumer<Timeout> action) {
+            Timeout t = head;
+            head = null;
+            while (t != null) {
+                Timeout n = t.next;
+                t.bucket = null;
+                t.prev = t.next = null;
+                action.accept(t);
+                t = n;
+            }
+        }
+    }
+}
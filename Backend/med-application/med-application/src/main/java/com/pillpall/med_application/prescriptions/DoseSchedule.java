@@ -0,0 +1,233 @@
+package com.pillpall.med_application.prescriptions;
+
+import java.time.*;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public final class DoseSchedule {
+
+    //Forme compilée d'une prescription (dates, heures de prise, règle de récurrence) dans le fuseau du patient.
+    //Les prises sont calculées à la demande par un curseur qui n'alloue rien par prise : une heure locale tombée
+    //dans le trou du passage à l'heure d'été est décalée d'autant, une heure ambiguë prend le premier passage
+    //(mêmes instants que ZonedDateTime.of)
+
+    private static final long SECONDS_PER_DAY = 86_400;
+
+    private final ZoneId zone;
+    private final long startDay;
+    private final long endDay;
+    // Secondes depuis minuit, triées
+    private final int[] times;
+    private final RecurrenceRule.Kind kind;
+    private final long intervalSeconds;
+    private final int weekdayMask;
+    private final int taperDays;
+
+    private DoseSchedule(ZoneId zone, LocalDate start, LocalDate end, int[] times, RecurrenceRule rule) {
+        this.zone = zone;
+        this.startDay = start.toEpochDay();
+        this.endDay = end.toEpochDay();
+        this.times = times;
+        this.kind = RecurrenceRule.kindOf(rule);
+        this.intervalSeconds = rule == null || rule.getIntervalHours() == null ? 0 : rule.getIntervalHours() * 3600L;
+        this.weekdayMask = rule == null || rule.getWeekdayMask() == null ? RecurrenceRule.ALL_DAYS : rule.getWeekdayMask();
+        this.taperDays = rule == null || rule.getTaperDays() == null ? 0 : rule.getTaperDays();
+    }
+
+    public static DoseSchedule of(Prescription p) {
+        return of(p.getStartDate(), p.getEndDate(),
+                p.getDoseTimes().stream().map(dt -> LocalTime.of(dt.getHour(), dt.getMinute())).toList(),
+                p.getRecurrence(), ZoneId.of(p.getPatient().getUser().getTimezone()));
+    }
+
+    public static DoseSchedule of(LocalDate start, LocalDate end, Collection<LocalTime> times, RecurrenceRule rule, ZoneId zone) {
+        int[] seconds = times.stream().mapToInt(LocalTime::toSecondOfDay).sorted().distinct().toArray();
+        if (rule != null) rule.validate(seconds.length);
+        return new DoseSchedule(zone, start, end, seconds, rule);
+    }
+
+    // Prises dont l'instant est dans [from, to)
+    public Cursor occurrences(Instant from, Instant to) {
+        var cursor = new Cursor();
+        cursor.reset(from.getEpochSecond(), to.getEpochSecond());
+        return cursor;
+    }
+
+    // Prises des jours locaux from à to inclus
+    public Cursor occurrences(LocalDate from, LocalDate to) {
+        return occurrences(from.atStartOfDay(zone).toInstant(), to.plusDays(1).atStartOfDay(zone).toInstant());
+    }
+
+    public List<Instant> list(LocalDate from, LocalDate to) {
+        var cursor = occurrences(from, to);
+        List<Instant> planned = new ArrayList<>();
+        while (cursor.next()) planned.add(Instant.ofEpochSecond(cursor.epochSecond()));
+        return planned;
+    }
+
+    // Jours : 0 = lundi (le 1970-01-01 était un jeudi)
+    private boolean allowed(long day) {
+        return (weekdayMask & 1 << Math.floorMod(day + 3, 7)) != 0;
+    }
+
+    // Nombre de prises du jour après dégression : la dernière heure disparaît tous les taperDays jours
+    private int dosesOn(long day) {
+        if (day < startDay || day > endDay || !allowed(day)) return 0;
+        if (taperDays == 0) return times.length;
+        return (int) Math.max(1, times.length - (day - startDay) / taperDays);
+    }
+
+    // Parcours des prises, réutilisable avec reset() : seul le passage d'une transition de fuseau interroge ZoneRules
+    public final class Cursor {
+        private final OffsetWindow offsets = new OffsetWindow(zone);
+        private long from;
+        private long to;
+        private long current;
+        // DAILY_TIMES : jour courant, prises du jour, index de la prochaine ; dernier jour à parcourir
+        private long day;
+        private int doses;
+        private int index;
+        private long lastDay;
+        // EVERY_N_HOURS : prochaine prise candidate
+        private long next;
+
+        public void reset(long fromEpochSecond, long toEpochSecond) {
+            from = fromEpochSecond;
+            to = toEpochSecond;
+            if (times.length == 0) {
+                day = lastDay = 0;
+                doses = index = 0;
+                next = Long.MAX_VALUE;
+                return;
+            }
+            if (kind == RecurrenceRule.Kind.EVERY_N_HOURS) {
+                long anchor = offsets.toUtc(startDay * SECONDS_PER_DAY + times[0]);
+                long steps = from <= anchor ? 0 : -Math.floorDiv(anchor - from, intervalSeconds);
+                next = anchor + steps * intervalSeconds;
+            } else {
+                // Un jour de marge de part et d'autre : les instants sont filtrés ensuite
+                day = Math.max(startDay, offsets.localDay(from) - 1);
+                lastDay = Math.min(endDay, offsets.localDay(to) + 1);
+                doses = dosesOn(day);
+                index = 0;
+            }
+        }
+
+        public boolean next() {
+            return kind == RecurrenceRule.Kind.EVERY_N_HOURS ? nextInterval() : nextDaily();
+        }
+
+        public long epochSecond() {
+            return current;
+        }
+
+        private boolean nextDaily() {
+            while (day <= lastDay) {
+                if (index < doses) {
+                    long at = offsets.toUtc(day * SECONDS_PER_DAY + times[index++]);
+                    if (at >= from && at < to) {
+                        current = at;
+                        return true;
+                    }
+                } else {
+                    day++;
+                    doses = dosesOn(day);
+                    index = 0;
+                }
+            }
+            return false;
+        }
+
+        private boolean nextInterval() {
+            while (next < to) {
+                long at = next;
+                next += intervalSeconds;
+                long localDay = offsets.localDay(at);
+                if (localDay > endDay) {
+                    next = Long.MAX_VALUE;
+                    return false;
+                }
+                if (allowed(localDay)) {
+                    current = at;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Décalage UTC constant sur [lower, upper), avec ceux des transitions qui bornent l'intervalle
+    private static final class OffsetWindow {
+        private final ZoneId zone;
+        private final ZoneRules rules;
+        private long lower = Long.MAX_VALUE;
+        private long upper = Long.MIN_VALUE;
+        private int offset;
+        private int offsetBefore;
+        private int offsetAfter;
+
+        OffsetWindow(ZoneId zone) {
+            this.zone = zone;
+            this.rules = zone.getRules();
+        }
+
+        long localDay(long utc) {
+            return Math.floorDiv(utc + offsetAt(utc), SECONDS_PER_DAY);
+        }
+
+        int offsetAt(long utc) {
+            if (utc < lower || utc >= upper) move(utc);
+            return offset;
+        }
+
+        // Instant d'une heure locale (secondes locales depuis l'epoch), résolue comme ZonedDateTime.of
+        long toUtc(long local) {
+            if (lower > upper) move(local);
+            for (int attempt = 0; attempt < 4; attempt++) {
+                long utc = local - offset;
+                if (utc < lower) {
+                    long before = local - offsetBefore;
+                    if (before < lower) {
+                        move(before);
+                        continue;
+                    }
+                    // Trou à la transition lower : décalé d'autant, soit l'ancien décalage
+                    return before;
+                }
+                if (utc >= upper) {
+                    long after = local - offsetAfter;
+                    if (after >= upper) {
+                        move(after);
+                        continue;
+                    }
+                    // Trou à la transition upper
+                    return utc;
+                }
+                // Chevauchement avec l'intervalle précédent : le premier passage l'emporte
+                long before = local - offsetBefore;
+                return before < lower ? before : utc;
+            }
+            return LocalDateTime.ofEpochSecond(local, 0, ZoneOffset.UTC).atZone(zone).toEpochSecond();
+        }
+
+        private void move(long utc) {
+            if (rules.isFixedOffset()) {
+                offset = offsetBefore = offsetAfter = rules.getOffset(Instant.EPOCH).getTotalSeconds();
+                lower = Long.MIN_VALUE;
+                upper = Long.MAX_VALUE;
+                return;
+            }
+            Instant at = Instant.ofEpochSecond(utc);
+            offset = rules.getOffset(at).getTotalSeconds();
+            ZoneOffsetTransition previous = rules.previousTransition(at.plusSeconds(1));
+            ZoneOffsetTransition following = rules.nextTransition(at);
+            lower = previous == null ? Long.MIN_VALUE : previous.toEpochSecond();
+            offsetBefore = previous == null ? offset : previous.getOffsetBefore().getTotalSeconds();
+            upper = following == null ? Long.MAX_VALUE : following.toEpochSecond();
+            offsetAfter = following == null ? offset : following.getOffsetAfter().getTotalSeconds();
+        }
+    }
+}
@@ -8,7 +8,9 @@ import java.time.Instant;
 import java.time.LocalDate;
 import java.util.List;
 
-@Entity @Table(name="prescriptions")
+@Entity @Table(name="prescriptions", indexes = {
+        @Index(name="idx_prescriptions_patient_version", columnList="patient_id, change_version")
+})
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
 public class Prescription {
 
@@ -21,7 +23,16 @@ public class Prescription {
     @Column(nullable=false) private LocalDate endDate;
     @OneToMany(mappedBy="prescription", cascade=CascadeType.ALL, orphanRemoval=true)
     private List<DoseTime> doseTimes;
+    // Récurrence appliquée aux doseTimes ; null : chaque heure, tous les jours
+    @Embedded
+    private RecurrenceRule recurrence;
     @Column(name = "created_at", nullable = false)
     private Instant createdAt = Instant.now();
+    // Dernier jour (fuseau du patient) dont les prises sont déjà écrites ; null tant que rien n'est planifié
+    @Column(name = "materialized_until")
+    private LocalDate materializedUntil;
+    // Version de changement (ChangeVersions) pour la synchronisation incrémentale
+    @Column(name = "change_version")
+    private Long changeVersion;
 
 }
@@ -1,5 +1,6 @@
 package com.pillpall.med_application.prescriptions;
 
+import com.pillpall.med_application.idempotency.IdempotencyService;
 import com.pillpall.med_application.service.OcrService;
 import com.pillpall.med_application.users.*;
 import jakarta.transaction.Transactional;
@@ -11,10 +12,12 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.DayOfWeek;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @RestController
@@ -27,11 +30,19 @@ public class PrescriptionController {
     private final DoctorProfileRepository doctors;
     private final PrescriptionRepository prescriptions;
     private final OcrService ocrService;
+    private final IdempotencyService idempotency;
 
     //L'ajout d'une prescription manuellement
 
     @PostMapping
-    public ResponseEntity<?> create(@AuthenticationPrincipal String email, @RequestBody CreatePrescription req) {
+    public ResponseEntity<?> create(@AuthenticationPrincipal String email,
+                                    @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                    @RequestBody CreatePrescription req) {
+        // Une nouvelle tentative avec le même Idempotency-Key ne crée pas une seconde prescription
+        return idempotency.execute(idempotencyKey, email, "POST /prescriptions", req, () -> createPrescription(email, req));
+    }
+
+    private ResponseEntity<?> createPrescription(String email, CreatePrescription req) {
         var user = users.findByEmail(email).orElseThrow();
         var doctor = doctors.findByUserId(user.getId()).orElseThrow();
         var patient = patients.findById(req.getPatientId()).orElseThrow();
@@ -41,6 +52,14 @@ public class PrescriptionController {
             return ResponseEntity.badRequest().body("Patient not under your care");
         }
 
+        RecurrenceRule recurrence;
+        try {
+            recurrence = req.recurrenceRule();
+            if (recurrence != null) recurrence.validate(req.getDoseTimes().size());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+
         var p = Prescription.builder()
                 .patient(patient)
                 .doctor(doctor)
@@ -48,6 +67,7 @@ public class PrescriptionController {
                 .dosage(req.getDosage())
                 .startDate(req.getStartDate())
                 .endDate(req.getEndDate())
+                .recurrence(recurrence)
                 .createdAt(Instant.now())
                 .build();
 
@@ -76,6 +96,12 @@ public class PrescriptionController {
     ) {
         var user = users.findByEmail(email).orElseThrow();
         var doctor = doctors.findByUserId(user.getId()).orElseThrow();
+        try {
+            var recurrence = req.recurrenceRule();
+            if (recurrence != null) recurrence.validate(req.getDoseTimes().size());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
         var updated = service.update(id, req, doctor);
         return ResponseEntity.ok(new PrescriptionDTO(
                 updated.getId(),
@@ -187,6 +213,28 @@ public class PrescriptionController {
         @NotNull private LocalDate endDate;
         @NotNull private List<HM> doseTimes;
         @Data public static class HM { @Min(0) @Max(23) private int hour; @Min(0) @Max(59) private int minute; }
+        // Absente : chaque heure de doseTimes, tous les jours
+        private Recurrence recurrence;
+
+        @Data
+        public static class Recurrence {
+            private RecurrenceRule.Kind kind;
+            private Integer intervalHours;
+            // Vide ou absent : tous les jours
+            private Set<DayOfWeek> weekdays;
+            private Integer taperDays;
+        }
+
+        RecurrenceRule recurrenceRule() {
+            if (recurrence == null) return null;
+            return RecurrenceRule.builder()
+                    .kind(recurrence.getKind())
+                    .intervalHours(recurrence.getIntervalHours())
+                    .weekdayMask(recurrence.getWeekdays() == null || recurrence.getWeekdays().isEmpty()
+                            ? null : RecurrenceRule.weekdayMask(recurrence.getWeekdays()))
+                    .taperDays(recurrence.getTaperDays())
+                    .build();
+        }
     }
 
 }
@@ -1,6 +1,9 @@
 package com.pillpall.med_application.prescriptions;
 
 import com.pillpall.med_application.users.PatientProfile;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.*;
 
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -10,7 +13,9 @@ import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface PrescriptionRepository extends JpaRepository<Prescription, Long> {
@@ -41,6 +46,29 @@ public interface PrescriptionRepository extends JpaRepository<Prescription, Long
     @Query("SELECT p FROM Prescription p WHERE p.patient.id = :patientId ORDER BY p.createdAt DESC")
     List<Prescription> findByPatientIdOrderByCreatedAtDesc(@Param("patientId") Long patientId);
 
+    // Prescriptions en cours du tableau de bord patient : colonnes affichées, médecin et spécialité en jointure.
+    // Les horaires de prise viennent de findDoseTimes, en une requête pour toute la liste
+    @Query("SELECT p.id AS id, p.medicationName AS medicationName, p.dosage AS dosage, p.startDate AS startDate, " +
+            "p.endDate AS endDate, u.fullName AS doctorName, s.id AS specialtyId, s.name AS specialtyName " +
+            "FROM Prescription p JOIN p.doctor d JOIN d.user u LEFT JOIN d.specialty s " +
+            "WHERE p.patient.id = :patientId AND p.endDate >= :today ORDER BY p.createdAt DESC")
+    List<ActivePrescriptionView> findActiveViews(@Param("patientId") Long patientId, @Param("today") LocalDate today);
+
+    @Query("SELECT COUNT(p) FROM Prescription p WHERE p.patient.id = :patientId AND p.endDate >= :today")
+    long countActiveByPatientId(@Param("patientId") Long patientId, @Param("today") LocalDate today);
+
+    @Query("SELECT dt.prescription.id AS prescriptionId, dt.hour AS hour, dt.minute AS minute " +
+            "FROM DoseTime dt WHERE dt.prescription.id IN :prescriptionIds ORDER BY dt.id")
+    List<DoseTimeView> findDoseTimes(@Param("prescriptionIds") Collection<Long> prescriptionIds);
+
+    // Calendrier : prescriptions qui recouvrent la période, avec leur règle de récurrence (heures via findDoseTimes)
+    @Query("SELECT p.id AS id, p.medicationName AS medicationName, p.dosage AS dosage, p.startDate AS startDate, " +
+            "p.endDate AS endDate, p.recurrence.kind AS recurrenceKind, p.recurrence.intervalHours AS intervalHours, " +
+            "p.recurrence.weekdayMask AS weekdayMask, p.recurrence.taperDays AS taperDays " +
+            "FROM Prescription p WHERE p.patient.id = :patientId AND p.startDate <= :to AND p.endDate >= :from")
+    List<ScheduleView> findScheduleViews(@Param("patientId") Long patientId,
+                                         @Param("from") LocalDate from, @Param("to") LocalDate to);
+
     @Query("SELECT p FROM Prescription p WHERE p.doctor.id = :doctorId ORDER BY p.createdAt DESC")
     List<Prescription> findByDoctorIdOrderByCreatedAtDesc(@Param("doctorId") Long doctorId);
 
@@ -49,4 +77,61 @@ public interface PrescriptionRepository extends JpaRepository<Prescription, Long
 
     @Query("SELECT p FROM Prescription p WHERE p.patient.id = :patientId AND p.startDate <= :date AND p.endDate >= :date")
     List<Prescription> findByPatientIdAndDate(@Param("patientId") Long patientId, @Param("date") LocalDate date);
-}
\ No newline at end of file
+
+    // Prescriptions encore en cours dont l'horizon planifié est en retard, pour les partitions de ce noeud.
+    // Les lignes verrouillées (modification en cours) sont sautées et reprises au passage suivant
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT p FROM Prescription p WHERE p.id > :afterId AND p.endDate >= :today " +
+            "AND (p.materializedUntil IS NULL OR (p.materializedUntil < :horizon AND p.materializedUntil < p.endDate)) " +
+            "AND MOD(p.patient.id, :partitions) IN :parts ORDER BY p.id")
+    List<Prescription> lockToMaterialize(@Param("today") LocalDate today, @Param("horizon") LocalDate horizon,
+                                         @Param("partitions") long partitions, @Param("parts") Collection<Long> parts,
+                                         @Param("afterId") Long afterId, Pageable page);
+
+    // Synchronisation incrémentale : prescriptions du patient écrites depuis le curseur
+    @Query("SELECT p FROM Prescription p WHERE p.patient.id = :patientId AND p.changeVersion > :since ORDER BY p.changeVersion")
+    List<Prescription> findChangedSince(@Param("patientId") Long patientId, @Param("since") long since, Pageable page);
+
+    // Heures de prise des prescriptions d'une page, en une requête (déjà dans le contexte de persistance : initialise
+    // leur collection). Le JOIN FETCH ne va pas dans la requête paginée, que Hibernate paginerait alors en mémoire
+    @Query("SELECT DISTINCT p FROM Prescription p LEFT JOIN FETCH p.doseTimes WHERE p IN :page")
+    List<Prescription> fetchDoseTimes(@Param("page") Collection<Prescription> page);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Prescription p WHERE p.id = :id")
+    Optional<Prescription> findByIdForUpdate(@Param("id") Long id);
+
+    interface ActivePrescriptionView {
+        Long getId();
+        String getMedicationName();
+        String getDosage();
+        LocalDate getStartDate();
+        LocalDate getEndDate();
+        String getDoctorName();
+        Long getSpecialtyId();
+        String getSpecialtyName();
+    }
+
+    interface ScheduleView {
+        Long getId();
+        String getMedicationName();
+        String getDosage();
+        LocalDate getStartDate();
+        LocalDate getEndDate();
+        RecurrenceRule.Kind getRecurrenceKind();
+        Integer getIntervalHours();
+        Integer getWeekdayMask();
+        Integer getTaperDays();
+
+        default RecurrenceRule getRecurrence() {
+            return new RecurrenceRule(getRecurrenceKind(), getIntervalHours(), getWeekdayMask(), getTaperDays());
+        }
+    }
+
+    interface DoseTimeView {
+        Long getPrescriptionId();
+        int getHour();
+        int getMinute();
+    }
+}
@@ -1,14 +1,21 @@
 package com.pillpall.med_application.prescriptions;
 
-import com.pillpall.med_application.intakes.IntakeEvent;
+import com.pillpall.med_application.intakes.AdherenceRollup;
 import com.pillpall.med_application.intakes.IntakeEventRepository;
+import com.pillpall.med_application.intakes.IntakeMaterializer;
+import com.pillpall.med_application.notifications.EscalationLedgerRepository;
+import com.pillpall.med_application.notifications.NotificationAttemptRepository;
+import com.pillpall.med_application.sync.ChangeVersions;
+import com.pillpall.med_application.sync.SyncTombstoneRepository;
 import com.pillpall.med_application.users.DoctorProfile;
 import com.pillpall.med_application.users.PatientProfile;
 import com.pillpall.med_application.users.PatientProfileRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service; import org.springframework.transaction.annotation.Transactional;
-import java.time.*;
+import java.time.Instant;
+import java.time.LocalTime;
 import java.util.List;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 @Service @RequiredArgsConstructor
@@ -17,32 +24,27 @@ public class PrescriptionService {
     private final IntakeEventRepository intakes;
     private final PatientProfileRepository patients;
     private final IntakeEventRepository intakeEvents;
+    private final IntakeMaterializer materializer;
+    private final NotificationAttemptRepository attempts;
+    private final EscalationLedgerRepository escalations;
+    private final ChangeVersions versions;
+    private final SyncTombstoneRepository tombstones;
+    private final AdherenceRollup rollup;
 
     @Transactional
     public Prescription createAndPlan(Prescription p, PatientProfile patient) {
         p.setPatient(patient);
+        p.setChangeVersion(versions.next());
         Prescription saved = prescriptions.save(p);
-        generateEvents(saved);
+        // Seuls les prochains jours sont écrits ; IntakeMaterializer prolonge ensuite l'horizon
+        materializer.materialize(saved);
         return saved;
     }
 
-    @Transactional
-    public void generateEvents(Prescription p) {
-        ZoneId tz = ZoneId.of(p.getPatient().getUser().getTimezone());
-        for (LocalDate d = p.getStartDate(); !d.isAfter(p.getEndDate()); d = d.plusDays(1)) {
-            for (DoseTime dt : p.getDoseTimes()) {
-                ZonedDateTime zdt = ZonedDateTime.of(d, LocalTime.of(dt.getHour(), dt.getMinute()), tz);
-                intakes.save(IntakeEvent.builder()
-                        .prescription(p)
-                        .scheduledAt(zdt.toInstant())
-                        .status(IntakeEvent.Status.PENDING)
-                        .build());
-            }
-        }
-    }
     @Transactional
     public Prescription update(Long id, PrescriptionController.CreatePrescription req, DoctorProfile doctor) {
-        Prescription prescription = prescriptions.findById(id)
+        // Verrou de ligne : le job d'horizon ne prolonge pas une prescription en cours de modification
+        Prescription prescription = prescriptions.findByIdForUpdate(id)
                 .orElseThrow(() -> new IllegalArgumentException("Prescription not found"));
         if (!prescription.getDoctor().equals(doctor)) {
             throw new IllegalStateException("Not your prescription");
@@ -53,10 +55,15 @@ public class PrescriptionService {
             throw new IllegalStateException("Patient not under your care");
         }
 
+        // Planning avant modification : un changement de nom ou de dosage ne touche pas aux prises
+        var previousSchedule = schedule(prescription);
+
         prescription.setMedicationName(req.getMedicationName());
         prescription.setDosage(req.getDosage());
         prescription.setStartDate(req.getStartDate());
         prescription.setEndDate(req.getEndDate());
+        prescription.setRecurrence(req.recurrenceRule());
+        prescription.setChangeVersion(versions.next());
 
         // Supprimer les anciens doseTimes
 
@@ -75,7 +82,18 @@ public class PrescriptionService {
                 .collect(Collectors.toList());
         prescription.getDoseTimes().addAll(newDoseTimes);
 
-        return prescriptions.save(prescription);
+        // Seul l'écart entre les prises futures et le nouveau planning est appliqué
+        Prescription saved = prescriptions.save(prescription);
+        if (!previousSchedule.equals(schedule(saved))) materializer.reschedule(saved);
+        return saved;
+    }
+
+    // Dates, heures de prise (l'ordre des DoseTime n'importe pas) et récurrence (absente = règle vide)
+    private static List<Object> schedule(Prescription p) {
+        return List.of(p.getStartDate(), p.getEndDate(), p.getDoseTimes().stream()
+                .map(dt -> LocalTime.of(dt.getHour(), dt.getMinute()))
+                .collect(Collectors.toCollection(TreeSet::new)),
+                p.getRecurrence() == null ? new RecurrenceRule() : p.getRecurrence());
     }
     @Transactional
     public void delete(Long id, DoctorProfile doctor) {
@@ -84,9 +102,18 @@ public class PrescriptionService {
         if (!prescription.getDoctor().equals(doctor)) {
             throw new IllegalStateException("Not your prescription");
         }
-        // Supprimer explicitement les intakeEvents si cascade n'est pas utilisé
+        // Suppressions ensemblistes, des lignes qui référencent les prises jusqu'aux prises elles-mêmes
 
+        Instant now = Instant.now();
+        tombstones.recordPrescriptionIntakes(id, now);
+        tombstones.recordPrescription(id, now);
+        attempts.deleteByPrescriptionId(id);
+        escalations.deleteByPrescriptionId(id);
+        // Les prises supprimées sortent aussi de l'agrégat d'observance
+        var changes = new AdherenceRollup.Changes();
+        intakeEvents.findRollupRowsByPrescription(id).forEach(r -> changes.row(r, -1));
         intakeEvents.deleteByPrescriptionId(id);
+        rollup.apply(changes);
         prescriptions.delete(prescription);
     }
 }
@@ -0,0 +1,71 @@
+package com.pillpall.med_application.prescriptions;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.DayOfWeek;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+@Embeddable
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder @EqualsAndHashCode
+public class RecurrenceRule {
+
+    //Règle de récurrence compacte (dans l'esprit de RRULE) appliquée aux DoseTime entre startDate et endDate.
+    //Toutes les colonnes nulles (prescriptions antérieures) : chaque DoseTime, tous les jours
+
+    public enum Kind { DAILY_TIMES, EVERY_N_HOURS }
+
+    // Jours autorisés quand aucun n'est précisé
+    public static final int ALL_DAYS = 0x7F;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "recurrence_kind", length = 16)
+    private Kind kind;
+    // EVERY_N_HOURS : intervalle en heures écoulées depuis l'unique DoseTime du premier jour
+    @Column(name = "recurrence_interval_hours")
+    private Integer intervalHours;
+    // Jours autorisés, bit 0 = lundi ... bit 6 = dimanche ; null = tous les jours
+    @Column(name = "recurrence_weekdays")
+    private Integer weekdayMask;
+    // DAILY_TIMES, dégression : tous les N jours la dernière prise de la journée disparaît (il en reste au moins une)
+    @Column(name = "recurrence_taper_days")
+    private Integer taperDays;
+
+    public static Kind kindOf(RecurrenceRule rule) {
+        return rule == null || rule.kind == null ? Kind.DAILY_TIMES : rule.kind;
+    }
+
+    public static int weekdayMask(Collection<DayOfWeek> days) {
+        int mask = 0;
+        for (DayOfWeek d : days) mask |= 1 << (d.getValue() - 1);
+        return mask;
+    }
+
+    public Set<DayOfWeek> weekdays() {
+        Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+        int mask = weekdayMask == null ? ALL_DAYS : weekdayMask;
+        for (DayOfWeek d : DayOfWeek.values()) {
+            if ((mask & 1 << (d.getValue() - 1)) != 0) days.add(d);
+        }
+        return days;
+    }
+
+    // Cohérence de la règle avec le nombre d'heures de prise ; IllegalArgumentException sinon
+    public void validate(int doseTimes) {
+        if (weekdayMask != null && (weekdayMask & ALL_DAYS) == 0) {
+            throw new IllegalArgumentException("Recurrence needs at least one weekday");
+        }
+        if (kindOf(this) == Kind.EVERY_N_HOURS) {
+            if (intervalHours == null || intervalHours < 1 || intervalHours > 168) {
+                throw new IllegalArgumentException("Recurrence interval must be between 1 and 168 hours");
+            }
+            if (doseTimes != 1) throw new IllegalArgumentException("An hourly recurrence starts from exactly one dose time");
+            if (taperDays != null) throw new IllegalArgumentException("Tapering applies to daily dose times only");
+        } else {
+            if (intervalHours != null) throw new IllegalArgumentException("Interval applies to hourly recurrences only");
+            if (taperDays != null && taperDays < 1) throw new IllegalArgumentException("Taper step must be at least one day");
+        }
+    }
+}
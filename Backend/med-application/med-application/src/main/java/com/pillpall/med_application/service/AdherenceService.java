@@ -1,7 +1,6 @@
 package com.pillpall.med_application.service;
 
-import com.pillpall.med_application.intakes.IntakeEvent;
-import com.pillpall.med_application.intakes.IntakeEventRepository;
+import com.pillpall.med_application.intakes.PatientDailyAdherenceRepository;
 import com.pillpall.med_application.ml.PatientAdherence;
 import com.pillpall.med_application.ml.PatientAdherenceRepository;
 import com.pillpall.med_application.prescriptions.PrescriptionRepository;
@@ -11,8 +10,6 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.Duration;
-import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.List;
@@ -20,63 +17,32 @@ import java.util.List;
 @Service
 @RequiredArgsConstructor
 public class AdherenceService {
-    private final IntakeEventRepository intakeEventRepository;
+    private final PatientDailyAdherenceRepository dailyAdherenceRepository;
     private final PrescriptionRepository prescriptionRepository;
     private final PatientAdherenceRepository adherenceRepository;
     private final PatientProfileRepository patientProfileRepository;
 
-    public double calculateAdherenceRate(Long patientId) {
-        Instant oneWeekAgo = Instant.now().minus(Duration.ofDays(7));
-
-        List<IntakeEvent> recentEvents = intakeEventRepository
-                .findByPrescriptionPatientIdAndScheduledAtAfter(patientId, oneWeekAgo);
-
-        if (recentEvents.isEmpty()) return 1.0; // Aucun événement = parfait adherence
-
-        long totalDoses = recentEvents.size();
-        long takenDoses = recentEvents.stream()
-                .filter(e -> e.getStatus() == IntakeEvent.Status.CONFIRMED)
-                .count();
-
-        return (double) takenDoses / totalDoses;
-    }
-
-    public int countMissedDosesLastWeek(Long patientId) {
-        Instant oneWeekAgo = Instant.now().minus(Duration.ofDays(7));
-
-        return (int) intakeEventRepository
-                .findByPrescriptionPatientIdAndScheduledAtAfter(patientId, oneWeekAgo)
-                .stream()
-                .filter(e -> e.getStatus() == IntakeEvent.Status.MISSED)
-                .count();
-    }
-
-    public double calculateAverageDelay(Long patientId) {
-        List<IntakeEvent> confirmedEvents = intakeEventRepository
-                .findByPrescriptionPatientIdAndStatus(patientId, IntakeEvent.Status.CONFIRMED);
-
-        if (confirmedEvents.isEmpty()) return 0.0;
-
-        double totalDelay = confirmedEvents.stream()
-                .filter(e -> e.getConfirmedAt() != null)
-                .mapToDouble(e -> Duration.between(e.getScheduledAt(), e.getConfirmedAt()).toMinutes())
-                .sum();
-
-        return totalDelay / confirmedEvents.size();
+    // Observance des 7 derniers jours locaux du patient (aujourd'hui compris) et retard moyen sur tout
+    // l'historique, lus dans l'agrégat quotidien en une requête
+    public PatientDailyAdherenceRepository.SummaryView lastWeek(PatientProfile patient) {
+        LocalDate today = LocalDate.now(ZoneId.of(patient.getUser().getTimezone()));
+        return dailyAdherenceRepository.summarize(patient.getId(), today.minusDays(6), today);
     }
 
     @Transactional
     public PatientAdherence calculateAndSaveAdherence(Long patientId) {
-        double adherenceRate = calculateAdherenceRate(patientId);
-        int missedDoses = countMissedDosesLastWeek(patientId);
-        double averageDelay = calculateAverageDelay(patientId);
-        int totalPrescriptions = prescriptionRepository.countByPatientId(patientId);
+        return calculateAndSaveAdherence(patientProfileRepository.findById(patientId).orElseThrow());
+    }
+
+    private PatientAdherence calculateAndSaveAdherence(PatientProfile patient) {
+        var week = lastWeek(patient);
+        int totalPrescriptions = prescriptionRepository.countByPatientId(patient.getId());
 
         PatientAdherence adherence = PatientAdherence.builder()
-                .patientId(patientId)
-                .adherenceRate(adherenceRate)
-                .missedDoses(missedDoses)
-                .averageDelay(averageDelay)
+                .patientId(patient.getId())
+                .adherenceRate(week.adherenceRate())
+                .missedDoses((int) week.getMissed())
+                .averageDelay(week.averageDelay())
                 .totalPrescriptions(totalPrescriptions)
                 .build();
 
@@ -88,7 +54,7 @@ public class AdherenceService {
         List<PatientProfile> patients = patientProfileRepository.findAll();
 
         for (PatientProfile patient : patients) {
-            calculateAndSaveAdherence(patient.getId());
+            calculateAndSaveAdherence(patient);
         }
     }
 }
\ No newline at end of file
@@ -1,7 +1,6 @@
 package com.pillpall.med_application.service;
 
-import com.pillpall.med_application.intakes.IntakeEvent;
-import com.pillpall.med_application.intakes.IntakeEventRepository;
+import com.pillpall.med_application.intakes.PatientDailyAdherenceRepository;
 import com.pillpall.med_application.ml.PatientAdherence;
 import com.pillpall.med_application.ml.PatientAdherenceRepository;
 import com.pillpall.med_application.prescriptions.PrescriptionRepository;
@@ -9,12 +8,11 @@ import com.pillpall.med_application.users.PatientProfileRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -23,7 +21,7 @@ import java.util.Optional;
 public class AnalyticsService {
 
     private final PrescriptionRepository prescriptionRepository;
-    private final IntakeEventRepository intakeEventRepository;
+    private final PatientDailyAdherenceRepository dailyAdherenceRepository;
     private final PatientAdherenceRepository adherenceRepository;
     private final PatientProfileRepository patientProfileRepository;
 
@@ -44,32 +42,23 @@ public class AnalyticsService {
         return stats;
     }
 
-    public Map<String, Object> calculatePatientStats(Long patientId) {
+    // Semaine écoulée lue dans l'agrégat quotidien : 7 jours locaux du patient, aujourd'hui compris
+    public Map<String, Object> calculatePatientStats(Long patientId, ZoneId zone) {
         Map<String, Object> stats = new HashMap<>();
 
-        Instant oneWeekAgo = Instant.now().minus(7, ChronoUnit.DAYS);
+        LocalDate today = LocalDate.now(zone);
+        var week = dailyAdherenceRepository.summarizeBetween(patientId, today.minusDays(6), today);
 
-        List<IntakeEvent> recentEvents = intakeEventRepository
-                .findByPrescriptionPatientIdAndScheduledAtAfter(patientId, oneWeekAgo);
-
-        long total = recentEvents.size();
-        long confirmed = recentEvents.stream()
-                .filter(e -> e.getStatus() == IntakeEvent.Status.CONFIRMED)
-                .count();
-        long missed = recentEvents.stream()
-                .filter(e -> e.getStatus() == IntakeEvent.Status.MISSED)
-                .count();
+        long total = week.getScheduled();
+        long confirmed = week.getConfirmed();
 
         stats.put("totalDosesLastWeek", total);
         stats.put("takenDosesLastWeek", confirmed);
-        stats.put("missedDosesLastWeek", missed);
+        stats.put("missedDosesLastWeek", week.getMissed());
         stats.put("adherenceRateLastWeek", total > 0 ? (double) confirmed / total * 100 : 100.0);
 
         // Médicaments actifs
-        long activePrescriptions = prescriptionRepository.findByPatientIdOrderByCreatedAtDesc(patientId)
-                .stream()
-                .filter(p -> !p.getEndDate().isBefore(LocalDate.now()))
-                .count();
+        long activePrescriptions = prescriptionRepository.countActiveByPatientId(patientId, LocalDate.now());
         stats.put("activePrescriptions", activePrescriptions);
 
         return stats;
@@ -0,0 +1,104 @@
+package com.pillpall.med_application.storage;
+
+import lombok.RequiredArgsConstructor;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.*;
+
+@Component
+@RequiredArgsConstructor
+public class PartitionManager {
+
+    //Partitions mensuelles (Postgres) des tables qui grossissent sans fin : crée à l'avance les mois à venir
+    //et détache les mois trop anciens (la table détachée reste en base pour l'archivage).
+    //La conversion des tables existantes est faite une fois par db/postgres/partition_intake_tables.sql ;
+    //tant qu'une table n'est pas partitionnée (ou sur H2 en test), rien n'est fait
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionManager.class);
+
+    // Table partitionnée -> colonne de partitionnement
+    static final Map<String, String> TABLES = Map.of(
+            "intake_events", "scheduled_at",
+            "notification_attempts", "attempt_at");
+
+    private final JdbcTemplate jdbc;
+
+    @Value("${app.partitions.monthsAhead:3}") int monthsAhead;
+    @Value("${app.partitions.retentionMonths:24}") int retentionMonths;
+
+    // Au démarrage puis toutes les 6 heures, un seul noeud
+    @Scheduled(fixedDelayString = "${app.partitions.checkMillis:21600000}")
+    @SchedulerLock(name = "partitionMaintenance", lockAtMostFor = "PT10M")
+    public void maintain() {
+        if (!isPostgres()) return;
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+
+        for (var table : TABLES.keySet()) {
+            if (!isPartitioned(table)) continue;
+            Set<String> existing = new HashSet<>(jdbc.queryForList(
+                    "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                            "JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = ?", String.class, table));
+
+            for (var month : missing(table, existing, current, monthsAhead)) {
+                try {
+                    jdbc.execute("CREATE TABLE IF NOT EXISTS " + partitionName(table, month) + " PARTITION OF " + table +
+                            " FOR VALUES FROM ('" + month.atDay(1) + " 00:00:00+00') TO ('" + month.plusMonths(1).atDay(1) + " 00:00:00+00')");
+                    log.info("Created partition {}", partitionName(table, month));
+                } catch (DataAccessException e) {
+                    // Typiquement : des lignes de ce mois sont déjà dans la partition par défaut
+                    log.error("Cannot create partition {}", partitionName(table, month), e);
+                }
+            }
+            for (var partition : expired(table, existing, current, retentionMonths)) {
+                jdbc.execute("ALTER TABLE " + table + " DETACH PARTITION " + partition);
+                log.info("Detached partition {}", partition);
+            }
+        }
+    }
+
+    static String partitionName(String table, YearMonth month) {
+        return String.format("%s_p%04d_%02d", table, month.getYear(), month.getMonthValue());
+    }
+
+    // Mois courant et suivants qui n'ont pas encore leur partition
+    static List<YearMonth> missing(String table, Set<String> existing, YearMonth current, int monthsAhead) {
+        List<YearMonth> months = new ArrayList<>();
+        for (int i = 0; i <= monthsAhead; i++) {
+            if (!existing.contains(partitionName(table, current.plusMonths(i)))) months.add(current.plusMonths(i));
+        }
+        return months;
+    }
+
+    // Partitions mensuelles plus anciennes que la rétention (la partition par défaut n'est jamais détachée)
+    static List<String> expired(String table, Set<String> existing, YearMonth current, int retentionMonths) {
+        YearMonth oldestKept = current.minusMonths(retentionMonths);
+        String prefix = table + "_p";
+        return existing.stream()
+                .filter(name -> name.startsWith(prefix) && name.length() == prefix.length() + 7)
+                .filter(name -> YearMonth.of(Integer.parseInt(name.substring(prefix.length(), prefix.length() + 4)),
+                        Integer.parseInt(name.substring(prefix.length() + 5))).isBefore(oldestKept))
+                .sorted()
+                .toList();
+    }
+
+    private boolean isPostgres() {
+        return Boolean.TRUE.equals(jdbc.execute((ConnectionCallback<Boolean>) c ->
+                c.getMetaData().getDatabaseProductName().equals("PostgreSQL")));
+    }
+
+    private boolean isPartitioned(String table) {
+        return Boolean.TRUE.equals(jdbc.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table pt JOIN pg_class c ON c.oid = pt.partrelid WHERE c.relname = ?)",
+                Boolean.class, table));
+    }
+}
@@ -0,0 +1,16 @@
+package com.pillpall.med_application.sync;
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.Instant;
+
+@Entity @Table(name="change_version_marks", indexes = {
+        @Index(name="idx_change_version_marks_marked_at", columnList="marked_at")
+})
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class ChangeVersionMark {
+    //Repère de la séquence change_version_seq : toute version inférieure a été prise avant markedAt.
+    //Une fois la marge de sécurité écoulée, les transactions qui les portent sont validées ou annulées
+
+    @Id @Column(name="version") private Long version;
+    @Column(name="marked_at", nullable=false) private Instant markedAt;
+}
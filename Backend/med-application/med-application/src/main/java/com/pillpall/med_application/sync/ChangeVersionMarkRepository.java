@@ -0,0 +1,27 @@
+package com.pillpall.med_application.sync;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+public interface ChangeVersionMarkRepository extends JpaRepository<ChangeVersionMark, Long> {
+
+    // La version du repère est prise dans la séquence elle-même, au moment de l'écriture
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO change_version_marks (version, marked_at) VALUES (" + ChangeVersions.NEXT + ", :at)",
+            nativeQuery = true)
+    int mark(@Param("at") Instant at);
+
+    // Plus haute version dont toutes les inférieures ont été prises au plus tard à :at (null : aucun repère)
+    @Query("SELECT MAX(m.version) FROM ChangeVersionMark m WHERE m.markedAt <= :at")
+    Long versionAt(@Param("at") Instant at);
+
+    @Modifying
+    @Query("DELETE FROM ChangeVersionMark m WHERE m.version < :version")
+    int deleteBefore(@Param("version") long version);
+}
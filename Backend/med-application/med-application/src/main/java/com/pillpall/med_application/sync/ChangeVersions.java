@@ -0,0 +1,22 @@
+package com.pillpall.med_application.sync;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+public class ChangeVersions {
+
+    //Version de changement globale et croissante (une séquence) portée par les prescriptions, les prises et
+    //les traces de suppression. Les écritures en masse l'affectent en SQL (NEXT), les écritures d'entités via next()
+
+    public static final String SEQUENCE = "change_version_seq";
+    public static final String NEXT = "nextval('" + SEQUENCE + "')";
+
+    private final JdbcTemplate jdbc;
+
+    public long next() {
+        return jdbc.queryForObject("SELECT " + NEXT, Long.class);
+    }
+}
@@ -0,0 +1,86 @@
+package com.pillpall.med_application.sync;
+
+import com.pillpall.med_application.intakes.IntakeEvent;
+import com.pillpall.med_application.prescriptions.RecurrenceRule;
+import com.pillpall.med_application.users.PatientProfileRepository;
+import com.pillpall.med_application.users.UserRepository;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/patient")
+@RequiredArgsConstructor
+public class SyncController {
+
+    //Synchronisation incrémentale de l'application : seules les lignes créées, modifiées ou supprimées
+    //depuis le curseur sont renvoyées, avec le nouveau curseur (since=0 pour la première synchronisation)
+
+    private final UserRepository userRepository;
+    private final PatientProfileRepository patientProfileRepository;
+    private final SyncService syncService;
+
+    @GetMapping("/sync")
+    public ResponseEntity<?> sync(@AuthenticationPrincipal String email,
+                                  @RequestParam(defaultValue = "0") long since,
+                                  @RequestParam(required = false) Integer limit) {
+        var user = userRepository.findByEmail(email).orElseThrow();
+        var patient = patientProfileRepository.findByUserId(user.getId()).orElseThrow();
+        return ResponseEntity.ok(syncService.changesSince(patient.getId(), since, limit));
+    }
+
+    // hasMore : rappeler immédiatement avec cursor pour la page suivante.
+    // resync : curseur plus ancien que la rétention des suppressions, effacer les données locales et rappeler avec since=0
+    @Data
+    public static class SyncResponse {
+        private final long cursor;
+        private final boolean hasMore;
+        private final boolean resync;
+        private final List<PrescriptionChange> prescriptions;
+        private final List<IntakeChange> intakes;
+        private final List<Deletion> deleted;
+    }
+
+    @Data
+    public static class PrescriptionChange {
+        private final Long id;
+        private final String medicationName;
+        private final String dosage;
+        private final LocalDate startDate;
+        private final LocalDate endDate;
+        private final List<HM> doseTimes;
+        // Règle appliquée aux doseTimes (null : tous les jours) : le client calcule ses prises au-delà de l'horizon
+        private final RecurrenceRule recurrence;
+        private final long version;
+
+        @Data
+        public static class HM {
+            private final int hour;
+            private final int minute;
+        }
+    }
+
+    @Data
+    public static class IntakeChange {
+        private final Long id;
+        private final Long prescriptionId;
+        private final Instant scheduledAt;
+        private final IntakeEvent.Status status;
+        private final Instant confirmedAt;
+        private final String notes;
+        private final long version;
+    }
+
+    @Data
+    public static class Deletion {
+        private final SyncTombstone.EntityType type;
+        private final Long id;
+        private final long version;
+    }
+}
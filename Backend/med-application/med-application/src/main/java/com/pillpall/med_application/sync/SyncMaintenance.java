@@ -0,0 +1,54 @@
+package com.pillpall.med_application.sync;
+
+import lombok.RequiredArgsConstructor;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+
+@Component
+@RequiredArgsConstructor
+public class SyncMaintenance {
+
+    //Repères de la séquence des versions (curseur sûr de SyncService) et rétention des traces de suppression.
+    //Un téléphone dont le curseur est plus ancien que la rétention repart d'une synchronisation complète
+
+    private static final Logger log = LoggerFactory.getLogger(SyncMaintenance.class);
+
+    private final ChangeVersionMarkRepository marks;
+    private final SyncTombstoneRepository tombstones;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.sync.tombstoneRetentionDays:90}") long retentionDays;
+
+    @Scheduled(fixedDelayString = "${app.sync.markMillis:5000}")
+    @SchedulerLock(name = "changeVersionMark", lockAtMostFor = "PT1M")
+    public void mark() {
+        marks.mark(Instant.now());
+    }
+
+    @Scheduled(cron = "0 40 3 * * *")
+    @SchedulerLock(name = "syncTombstonePurge", lockAtMostFor = "PT30M")
+    public void purge() {
+        purge(Instant.now());
+    }
+
+    // Le repère le plus récent au-delà de la rétention est gardé : il sert de limite aux curseurs trop anciens
+    void purge(Instant now) {
+        Long horizon = marks.versionAt(now.minus(Duration.ofDays(retentionDays)));
+        if (horizon == null) return;
+        var tx = new TransactionTemplate(transactionManager);
+        Integer n = tx.execute(status -> {
+            marks.deleteBefore(horizon);
+            return tombstones.deleteThrough(horizon);
+        });
+        if (n != null && n > 0) log.info("Purged {} sync tombstones up to version {}", n, horizon);
+    }
+}
@@ -0,0 +1,98 @@
+package com.pillpall.med_application.sync;
+
+import com.pillpall.med_application.intakes.IntakeEventRepository;
+import com.pillpall.med_application.intakes.IntakeEventRepository.IntakeChangeView;
+import com.pillpall.med_application.prescriptions.Prescription;
+import com.pillpall.med_application.prescriptions.PrescriptionRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+@Service
+@RequiredArgsConstructor
+public class SyncService {
+
+    private final PrescriptionRepository prescriptions;
+    private final IntakeEventRepository intakes;
+    private final SyncTombstoneRepository tombstones;
+    private final ChangeVersionMarkRepository marks;
+
+    @Value("${app.sync.pageSize:500}") int pageSize;
+    // Durée maximale d'une transaction qui écrit des versions : au-delà, une version prise est validée ou annulée
+    @Value("${app.sync.safetyLagSeconds:60}") long safetyLagSeconds;
+    @Value("${app.sync.tombstoneRetentionDays:90}") long retentionDays;
+
+    // Trois lectures indexées (patient, version) d'au plus une page chacune. Si une source remplit sa page,
+    // le curseur s'arrête à sa dernière version et les autres sources sont coupées au même point :
+    // aucune version n'est sautée entre deux pages.
+    // Les versions sont prises avant la validation : une transaction lente peut valider une version plus petite
+    // qu'une autre déjà lue. Le curseur ne dépasse donc pas le repère de séquence d'il y a safetyLagSeconds ;
+    // les lignes plus récentes sont renvoyées tout de même, et de nouveau à la synchronisation suivante
+    @Transactional(readOnly = true)
+    public SyncController.SyncResponse changesSince(Long patientId, long since, Integer limit) {
+        return changesSince(patientId, since, limit, Instant.now());
+    }
+
+    @Transactional(readOnly = true)
+    SyncController.SyncResponse changesSince(Long patientId, long since, Integer limit, Instant now) {
+        // Traces de suppression peut-être purgées depuis ce curseur : le téléphone repart de zéro
+        Long retained = marks.versionAt(now.minus(Duration.ofDays(retentionDays)));
+        if (since > 0 && retained != null && since < retained) {
+            return new SyncController.SyncResponse(0, true, true, List.of(), List.of(), List.of());
+        }
+
+        int size = limit == null || limit <= 0 || limit > pageSize ? pageSize : limit;
+        var page = PageRequest.of(0, size);
+
+        var changedPrescriptions = prescriptions.findChangedSince(patientId, since, page);
+        if (!changedPrescriptions.isEmpty()) prescriptions.fetchDoseTimes(changedPrescriptions);
+        var changedIntakes = intakes.findChangedSince(patientId, since, page);
+        var deletions = tombstones.findChangedSince(patientId, since, page);
+
+        long prescriptionsLast = last(changedPrescriptions, Prescription::getChangeVersion);
+        long intakesLast = last(changedIntakes, IntakeChangeView::getChangeVersion);
+        long deletionsLast = last(deletions, SyncTombstone::getChangeVersion);
+
+        long pageEnd = Long.MAX_VALUE;
+        if (changedPrescriptions.size() == size) pageEnd = Math.min(pageEnd, prescriptionsLast);
+        if (changedIntakes.size() == size) pageEnd = Math.min(pageEnd, intakesLast);
+        if (deletions.size() == size) pageEnd = Math.min(pageEnd, deletionsLast);
+        boolean hasMore = pageEnd != Long.MAX_VALUE;
+        if (!hasMore) pageEnd = Math.max(since, Math.max(prescriptionsLast, Math.max(intakesLast, deletionsLast)));
+        final long upTo = pageEnd;
+
+        // Curseur sûr : pas au-delà du repère ; la page suivante attendra que le repère avance
+        Long safe = marks.versionAt(now.minusSeconds(safetyLagSeconds));
+        long cursor = Math.max(since, Math.min(upTo, safe == null ? 0 : safe));
+        if (cursor < upTo) hasMore = false;
+
+        return new SyncController.SyncResponse(cursor, hasMore, false,
+                changedPrescriptions.stream().filter(p -> p.getChangeVersion() <= upTo)
+                        .map(p -> new SyncController.PrescriptionChange(p.getId(), p.getMedicationName(), p.getDosage(),
+                                p.getStartDate(), p.getEndDate(),
+                                p.getDoseTimes().stream()
+                                        .map(dt -> new SyncController.PrescriptionChange.HM(dt.getHour(), dt.getMinute()))
+                                        .toList(),
+                                p.getRecurrence(),
+                                p.getChangeVersion()))
+                        .toList(),
+                changedIntakes.stream().filter(e -> e.getChangeVersion() <= upTo)
+                        .map(e -> new SyncController.IntakeChange(e.getId(), e.getPrescriptionId(), e.getScheduledAt(),
+                                e.getStatus(), e.getConfirmedAt(), e.getNotes(), e.getChangeVersion()))
+                        .toList(),
+                deletions.stream().filter(t -> t.getChangeVersion() <= upTo)
+                        .map(t -> new SyncController.Deletion(t.getEntityType(), t.getEntityId(), t.getChangeVersion()))
+                        .toList());
+    }
+
+    private static <T> long last(List<T> rows, ToLongFunction<T> version) {
+        return rows.isEmpty() ? 0 : version.applyAsLong(rows.get(rows.size() - 1));
+    }
+}
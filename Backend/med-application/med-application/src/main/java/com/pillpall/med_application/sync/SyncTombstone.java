@@ -0,0 +1,24 @@
+package com.pillpall.med_application.sync;
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.Instant;
+
+@Entity @Table(name="sync_tombstones", indexes = {
+        @Index(name="idx_sync_tombstones_patient_version", columnList="patient_id, change_version")
+})
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class SyncTombstone {
+    //Trace d'une ligne supprimée, pour que la synchronisation incrémentale la retire aussi côté téléphone.
+    //La clé est la version de changement elle-même : la séquence change_version_seq est déclarée ici
+
+    public enum EntityType { PRESCRIPTION, INTAKE }
+
+    @Id
+    @SequenceGenerator(name="change_version", sequenceName=ChangeVersions.SEQUENCE, allocationSize=1)
+    @GeneratedValue(strategy=GenerationType.SEQUENCE, generator="change_version")
+    @Column(name="change_version") private Long changeVersion;
+    @Enumerated(EnumType.STRING) @Column(name="entity_type", nullable=false) private EntityType entityType;
+    @Column(name="entity_id", nullable=false) private Long entityId;
+    @Column(name="patient_id", nullable=false) private Long patientId;
+    @Column(name="deleted_at", nullable=false) private Instant deletedAt;
+}
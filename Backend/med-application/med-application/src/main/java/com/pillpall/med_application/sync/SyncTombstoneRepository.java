@@ -0,0 +1,43 @@
+package com.pillpall.med_application.sync;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface SyncTombstoneRepository extends JpaRepository<SyncTombstone, Long> {
+
+    // Traces écrites juste avant les DELETE ensemblistes, dans la même transaction
+    @Modifying
+    @Query(value = "INSERT INTO sync_tombstones (change_version, entity_type, entity_id, patient_id, deleted_at) " +
+            "SELECT " + ChangeVersions.NEXT + ", 'INTAKE', e.id, p.patient_id, :at " +
+            "FROM intake_events e JOIN prescriptions p ON p.id = e.prescription_id " +
+            "WHERE e.id IN :ids AND e.status = :status", nativeQuery = true)
+    int recordIntakes(@Param("ids") Collection<Long> ids, @Param("status") String status, @Param("at") Instant at);
+
+    @Modifying
+    @Query(value = "INSERT INTO sync_tombstones (change_version, entity_type, entity_id, patient_id, deleted_at) " +
+            "SELECT " + ChangeVersions.NEXT + ", 'INTAKE', e.id, p.patient_id, :at " +
+            "FROM intake_events e JOIN prescriptions p ON p.id = e.prescription_id " +
+            "WHERE p.id = :prescriptionId", nativeQuery = true)
+    int recordPrescriptionIntakes(@Param("prescriptionId") Long prescriptionId, @Param("at") Instant at);
+
+    @Modifying
+    @Query(value = "INSERT INTO sync_tombstones (change_version, entity_type, entity_id, patient_id, deleted_at) " +
+            "SELECT " + ChangeVersions.NEXT + ", 'PRESCRIPTION', p.id, p.patient_id, :at " +
+            "FROM prescriptions p WHERE p.id = :prescriptionId", nativeQuery = true)
+    int recordPrescription(@Param("prescriptionId") Long prescriptionId, @Param("at") Instant at);
+
+    @Query("SELECT t FROM SyncTombstone t WHERE t.patientId = :patientId AND t.changeVersion > :since ORDER BY t.changeVersion")
+    List<SyncTombstone> findChangedSince(@Param("patientId") Long patientId, @Param("since") long since, Pageable page);
+
+    // Rétention : les traces jusqu'à cette version sont supprimées (clé primaire, une plage)
+    @Modifying
+    @Query("DELETE FROM SyncTombstone t WHERE t.changeVersion <= :version")
+    int deleteThrough(@Param("version") long version);
+}
@@ -1,8 +1,11 @@
 package com.pillpall.med_application.users;
 
 import jakarta.persistence.*; import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity @Table(name="doctor_profiles")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = ReferenceDataCache.DOCTORS)
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
 public class DoctorProfile {
     @Id @GeneratedValue(strategy=GenerationType.IDENTITY) private Long id;
@@ -1,11 +1,25 @@
 package com.pillpall.med_application.users;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.*;
 
 import java.util.List;
 import java.util.Optional;
 
 public interface DoctorProfileRepository extends JpaRepository<DoctorProfile, Long> {
+    // Résolution du médecin connecté, faite par chaque endpoint médecin
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = ReferenceDataCache.DOCTOR_QUERIES)
+    })
     @Query("SELECT d FROM DoctorProfile d WHERE d.user.id = :userId")
     Optional<DoctorProfile> findByUserId(Long userId);
+
+    // Annuaire public des médecins et liste de l'administrateur
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = ReferenceDataCache.DOCTOR_QUERIES)
+    })
+    List<DoctorProfile> findAll();
 }
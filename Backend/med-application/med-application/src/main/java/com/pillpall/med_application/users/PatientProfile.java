@@ -13,6 +13,8 @@ public class PatientProfile {
     @OneToOne @JoinColumn(name="user_id", nullable=false, unique=true)
     private User user;
     private LocalDate birthDate;
+    // Jour local du dernier résumé quotidien mis en file (DailySummaryJob)
+    @Column(name="last_summary_date") private LocalDate lastSummaryDate;
 
     @ManyToMany
     @JoinTable(name = "patient_doctors",
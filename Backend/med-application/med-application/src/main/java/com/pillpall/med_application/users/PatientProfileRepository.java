@@ -1,8 +1,12 @@
 package com.pillpall.med_application.users;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -10,4 +14,41 @@ public interface PatientProfileRepository extends JpaRepository<PatientProfile,
     Optional<PatientProfile> findByUserId(Long userId);
     @Query("SELECT p FROM PatientProfile p JOIN p.doctors d WHERE d.id = :doctorId")
     List<PatientProfile> findByDoctorId(@Param("doctorId") Long doctorId);
+
+    // Fuseaux des patients joignables par push : le résumé quotidien part à l'heure locale de chacun
+    @Query("SELECT DISTINCT u.timezone FROM PatientProfile p JOIN p.user u WHERE u.deviceToken IS NOT NULL")
+    List<String> findPushTimezones();
+
+    // Patients du fuseau qui n'ont pas encore reçu le résumé de ce jour
+    @Query("SELECT p.id AS patientId, u.deviceToken AS deviceToken FROM PatientProfile p JOIN p.user u " +
+            "WHERE u.timezone = :timezone AND u.deviceToken IS NOT NULL AND p.id > :afterId " +
+            "AND (p.lastSummaryDate IS NULL OR p.lastSummaryDate < :day) ORDER BY p.id")
+    List<PushTargetView> findSummaryTargets(@Param("timezone") String timezone, @Param("day") LocalDate day,
+                                            @Param("afterId") Long afterId, Pageable page);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE PatientProfile p SET p.lastSummaryDate = :day WHERE p.id IN :ids")
+    int markSummarySent(@Param("ids") Collection<Long> ids, @Param("day") LocalDate day);
+
+    // Résumé abandonné avant l'envoi (saturation FCM) : le jour redevient dû et part au passage suivant
+    @Transactional
+    @Modifying
+    @Query("UPDATE PatientProfile p SET p.lastSummaryDate = NULL WHERE p.id = :id AND p.lastSummaryDate = :day")
+    int unmarkSummarySent(@Param("id") Long id, @Param("day") LocalDate day);
+
+    // Tous les patients par tranches (keyset sur l'id), avec leur fuseau
+    @Query("SELECT p.id AS patientId, u.timezone AS timezone FROM PatientProfile p JOIN p.user u " +
+            "WHERE p.id > :afterId ORDER BY p.id")
+    List<PatientZoneView> findZonesAfter(@Param("afterId") Long afterId, Pageable page);
+
+    interface PatientZoneView {
+        Long getPatientId();
+        String getTimezone();
+    }
+
+    interface PushTargetView {
+        Long getPatientId();
+        String getDeviceToken();
+    }
 }
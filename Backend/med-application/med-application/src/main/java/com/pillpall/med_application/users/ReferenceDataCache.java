@@ -0,0 +1,79 @@
+package com.pillpall.med_application.users;
+
+import jakarta.persistence.EntityManagerFactory;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Component
+@RequiredArgsConstructor
+public class ReferenceDataCache {
+
+    //Données de référence (spécialités, rôles, médecins) gardées dans le cache de second niveau Hibernate.
+    //Les régions sont définies dans hibernate-cache.conf : un nom absent de ce fichier fait échouer le démarrage
+
+    public static final String SPECIALTIES = "specialties";
+    public static final String ROLES = "roles";
+    public static final String USER_ROLES = "user_roles";
+    public static final String DOCTORS = "doctors";
+    // Résultats de requêtes (listes d'ids) ; invalidés par Hibernate à chaque écriture sur leurs tables
+    public static final String SPECIALTY_QUERIES = "specialty_queries";
+    public static final String ROLE_QUERIES = "role_queries";
+    public static final String DOCTOR_QUERIES = "doctor_queries";
+
+    private static final List<String> REGIONS = List.of(
+            SPECIALTIES, ROLES, USER_ROLES, DOCTORS, SPECIALTY_QUERIES, ROLE_QUERIES, DOCTOR_QUERIES);
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    // Hibernate met déjà à jour le cache de ce noeud pour ses propres écritures ; l'éviction explicite vide
+    // aussi les listes en cache, et couvre les modifications faites hors de l'entité (SQL, autre noeud après expiration)
+    public void evictSpecialties() {
+        var cache = sessionFactory().getCache();
+        cache.evictEntityData(Specialty.class);
+        cache.evictQueryRegion(SPECIALTY_QUERIES);
+    }
+
+    public void evictDoctor(Long doctorId) {
+        var cache = sessionFactory().getCache();
+        cache.evictEntityData(DoctorProfile.class, doctorId);
+        cache.evictQueryRegion(DOCTOR_QUERIES);
+    }
+
+    // Succès, échecs et écritures par région depuis le démarrage
+    public Map<String, RegionStats> statistics() {
+        var statistics = sessionFactory().getStatistics();
+        Map<String, RegionStats> regions = new LinkedHashMap<>();
+        for (String region : REGIONS) {
+            CacheRegionStatistics stats = region.endsWith("_queries")
+                    ? statistics.getQueryRegionStatistics(region)
+                    : statistics.getDomainDataRegionStatistics(region);
+            if (stats != null) {
+                regions.put(region, new RegionStats(stats.getHitCount(), stats.getMissCount(), stats.getPutCount()));
+            }
+        }
+        return regions;
+    }
+
+    private SessionFactory sessionFactory() {
+        return entityManagerFactory.unwrap(SessionFactory.class);
+    }
+
+    @Data
+    public static class RegionStats {
+        private final long hits;
+        private final long misses;
+        private final long puts;
+
+        public double getHitRatio() {
+            long requests = hits + misses;
+            return requests == 0 ? 0.0 : (double) hits / requests;
+        }
+    }
+}
@@ -2,8 +2,11 @@ package com.pillpall.med_application.users;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity @Table(name="roles")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = ReferenceDataCache.ROLES)
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor
 public class Role {
     @Id @GeneratedValue(strategy=GenerationType.IDENTITY) private Long id;
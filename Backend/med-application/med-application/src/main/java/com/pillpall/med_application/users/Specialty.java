@@ -2,9 +2,12 @@ package com.pillpall.med_application.users;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
 @Table(name="specialties")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = ReferenceDataCache.SPECIALTIES)
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
 public class Specialty {
 
@@ -1,6 +1,18 @@
 package com.pillpall.med_application.users;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import java.util.List;
 
 public interface SpecialtyRepository extends JpaRepository<Specialty, Long> {
-}
\ No newline at end of file
+
+    // Liste publique (inscription) et liste de l'administrateur
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = ReferenceDataCache.SPECIALTY_QUERIES)
+    })
+    List<Specialty> findAll();
+}
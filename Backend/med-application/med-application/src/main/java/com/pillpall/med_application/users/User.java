@@ -1,6 +1,8 @@
 package com.pillpall.med_application.users;
 
 import jakarta.persistence.*; import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.time.Instant; import java.util.Set;
 
 @Entity @Table(name="users")
@@ -16,6 +18,8 @@ public class User {
     @Column(nullable=false) private boolean enabled = true;
     @Column(name="created_at" , nullable = false) private Instant createdAt = Instant.now();
 
+    // Relus à chaque requête authentifiée (JwtAuthFilter) : la collection est en cache, pas l'utilisateur
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = ReferenceDataCache.USER_ROLES)
     @ManyToMany(fetch=FetchType.EAGER)
     @JoinTable(name="user_roles", joinColumns=@JoinColumn(name="user_id"),
             inverseJoinColumns=@JoinColumn(name="role_id"))
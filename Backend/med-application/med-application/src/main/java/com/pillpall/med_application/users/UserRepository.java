@@ -1,9 +1,20 @@
 package com.pillpall.med_application.users;
 
 import org.springframework.data.jpa.repository.*; import java.util.Optional;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
 
     Object countByEnabledTrue();
+
+    // Jetons FCM rejetés définitivement par Firebase (application désinstallée, jeton d'un autre projet) :
+    // plus aucun push ne leur est adressé jusqu'au prochain enregistrement de l'appareil
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.deviceToken = NULL WHERE u.deviceToken IN :tokens")
+    int clearDeviceTokens(@Param("tokens") Collection<String> tokens);
 }
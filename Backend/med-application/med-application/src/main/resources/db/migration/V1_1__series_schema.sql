@@ -0,0 +1,59 @@
+-- Colonnes, tables et séquence ajoutées aux entités depuis le schéma de V1 (rappels persistés, outbox,
+-- escalades, idempotence, synchronisation incrémentale, horizon de planification). Une base de production est
+-- marquée en version 1 et reçoit ce script ; une base de développement déjà mise à jour par ddl-auto a une partie
+-- de ces objets, d'où les IF NOT EXISTS. Les index des grosses tables sont créés sans verrou dans V3
+
+create sequence if not exists change_version_seq start with 1 increment by 1;
+
+-- Rappels (ReminderService, ReminderWheel) et verrou optimiste des prises
+alter table intake_events add column if not exists reminder_stage varchar(255)
+    check (reminder_stage in ('NEW','REMINDED_1','REMINDED_2','REMINDED_3','REMINDED_4','ESCALATED'));
+alter table intake_events add column if not exists next_action_at timestamp(6) with time zone;
+alter table intake_events add column if not exists version bigint default 0 not null;
+-- Synchronisation incrémentale (sync.ChangeVersions) ; les lignes existantes sont numérotées par V2
+alter table intake_events add column if not exists change_version bigint;
+alter table prescriptions add column if not exists change_version bigint;
+-- Horizon des prises déjà écrites (IntakeMaterializer)
+alter table prescriptions add column if not exists materialized_until date;
+
+-- Outbox des notifications (OutboxWorker)
+alter table notification_attempts add column if not exists status varchar(255) check (status in ('PENDING','SENT','FAILED'));
+alter table notification_attempts add column if not exists retry_after timestamp(6) with time zone;
+alter table notification_attempts add column if not exists retries integer default 0;
+alter table notification_attempts add column if not exists title varchar(255);
+alter table notification_attempts add column if not exists body text;
+alter table notification_attempts add column if not exists recipient varchar(255);
+alter table notification_attempts add column if not exists intake_ids text;
+
+create table if not exists escalation_ledger (
+    escalated_at timestamp(6) with time zone not null,
+    id bigint generated by default as identity,
+    intake_event_id bigint not null,
+    channel varchar(255) not null,
+    primary key (id),
+    constraint uk_escalation_ledger_event_channel unique (intake_event_id, channel)
+);
+
+create table if not exists idempotency_keys (
+    response_status integer,
+    created_at timestamp(6) with time zone not null,
+    id bigint generated by default as identity,
+    content_type varchar(255),
+    fingerprint varchar(255) not null,
+    idem_key varchar(255) not null,
+    owner varchar(255) not null,
+    response_body text,
+    primary key (id),
+    constraint uk_idempotency_keys_owner_key unique (owner, idem_key)
+);
+create index if not exists idx_idempotency_keys_created on idempotency_keys (created_at);
+
+create table if not exists sync_tombstones (
+    change_version bigint not null,
+    deleted_at timestamp(6) with time zone not null,
+    entity_id bigint not null,
+    patient_id bigint not null,
+    entity_type varchar(255) not null check (entity_type in ('PRESCRIPTION','INTAKE')),
+    primary key (change_version)
+);
+create index if not exists idx_sync_tombstones_patient_version on sync_tombstones (patient_id, change_version);
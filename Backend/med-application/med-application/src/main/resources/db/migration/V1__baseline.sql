@@ -0,0 +1,201 @@
+-- Schéma tel que ddl-auto=update le créait avant Flyway, avec les entités de l'époque. Les bases existantes ne
+-- rejouent pas ce script : spring.flyway.baseline-on-migrate les marque en version 1 et seules les migrations
+-- suivantes s'appliquent. Tout ce qui a été ajouté depuis va donc dans les migrations suivantes (V1_1 et après).
+
+create table anomalies (
+    resolved boolean,
+    detected_at timestamp(6) with time zone not null,
+    id bigint generated by default as identity,
+    patient_id bigint not null,
+    resolved_at timestamp(6) with time zone,
+    description TEXT,
+    severity varchar(255) not null,
+    type varchar(255) not null,
+    primary key (id)
+);
+
+create table contacts (
+    id bigint generated by default as identity,
+    patient_id bigint not null,
+    email varchar(255),
+    name varchar(255) not null,
+    phone varchar(255),
+    primary key (id)
+);
+
+create table doctor_profiles (
+    id bigint generated by default as identity,
+    specialty_id bigint,
+    user_id bigint not null unique,
+    primary key (id)
+);
+
+create table dose_times (
+    hour integer not null,
+    minute integer not null,
+    id bigint generated by default as identity,
+    prescription_id bigint not null,
+    primary key (id)
+);
+
+create table intake_events (
+    confirmed_at timestamp(6) with time zone,
+    id bigint generated by default as identity,
+    prescription_id bigint not null,
+    scheduled_at timestamp(6) with time zone not null,
+    notes text,
+    status varchar(255) not null check (status in ('PENDING','CONFIRMED','MISSED')),
+    primary key (id)
+);
+
+create table notification_attempts (
+    success boolean not null,
+    attempt_at timestamp(6) with time zone not null,
+    id bigint generated by default as identity,
+    intake_event_id bigint not null,
+    channel varchar(255) not null,
+    details text,
+    primary key (id)
+);
+
+create table patient_adherence (
+    adherence_rate float(53) not null,
+    average_delay float(53),
+    calculation_date date not null,
+    missed_doses integer not null,
+    total_prescriptions integer not null,
+    id bigint generated by default as identity,
+    patient_id bigint not null,
+    segment varchar(255),
+    primary key (id)
+);
+
+create table patient_doctors (
+    doctor_id bigint not null,
+    patient_id bigint not null,
+    primary key (doctor_id, patient_id)
+);
+
+create table patient_profiles (
+    birth_date date,
+    id bigint generated by default as identity,
+    user_id bigint not null unique,
+    primary key (id)
+);
+
+create table prescriptions (
+    end_date date not null,
+    start_date date not null,
+    created_at timestamp(6) with time zone not null,
+    doctor_id bigint not null,
+    id bigint generated by default as identity,
+    patient_id bigint not null,
+    dosage varchar(255),
+    medication_name varchar(255) not null,
+    primary key (id)
+);
+
+create table risk_predictions (
+    confidence float(53) not null,
+    prediction_date date not null,
+    risk_score float(53) not null,
+    will_miss boolean not null,
+    id bigint generated by default as identity,
+    patient_id bigint not null,
+    primary key (id)
+);
+
+create table roles (
+    id bigint generated by default as identity,
+    name varchar(255) not null unique,
+    primary key (id)
+);
+
+create table specialties (
+    id bigint generated by default as identity,
+    name varchar(255) not null unique,
+    primary key (id)
+);
+
+create table user_roles (
+    role_id bigint not null,
+    user_id bigint not null,
+    primary key (role_id, user_id)
+);
+
+create table users (
+    enabled boolean not null,
+    created_at timestamp(6) with time zone not null,
+    id bigint generated by default as identity,
+    device_token varchar(255),
+    email varchar(255) not null unique,
+    full_name varchar(255) not null,
+    password varchar(255) not null,
+    timezone varchar(255) not null,
+    primary key (id)
+);
+
+alter table if exists contacts
+   add constraint FK25vtkghcrq5p99usmjq0r5s1m
+   foreign key (patient_id)
+   references patient_profiles;
+
+alter table if exists doctor_profiles
+   add constraint FK9j8uwaq3c6a5j4d67g91uadcx
+   foreign key (specialty_id)
+   references specialties;
+
+alter table if exists doctor_profiles
+   add constraint FKhrpk2q09sjwf9en18301dioyr
+   foreign key (user_id)
+   references users;
+
+alter table if exists dose_times
+   add constraint FKbes8tqg03uqhk70ol9hrf53q6
+   foreign key (prescription_id)
+   references prescriptions;
+
+alter table if exists intake_events
+   add constraint FKljpl459wguovu48kmr3g0v8b7
+   foreign key (prescription_id)
+   references prescriptions;
+
+alter table if exists notification_attempts
+   add constraint FK4r4v1uiow6v9ary5encb2sb81
+   foreign key (intake_event_id)
+   references intake_events;
+
+alter table if exists patient_doctors
+   add constraint FKfqfx9uw35oltaqxknglfaei4u
+   foreign key (doctor_id)
+   references doctor_profiles;
+
+alter table if exists patient_doctors
+   add constraint FKbygell9f71bsf0sspiawayksx
+   foreign key (patient_id)
+   references patient_profiles;
+
+alter table if exists patient_profiles
+   add constraint FK48bdvcabhgaa1bqphn9jijwn2
+   foreign key (user_id)
+   references users;
+
+alter table if exists prescriptions
+   add constraint FKvvyaody4khe49e79fl0mvdld
+   foreign key (doctor_id)
+   references doctor_profiles;
+
+alter table if exists prescriptions
+   add constraint FKmb7dpu4sc1i967oxc8molt4ri
+   foreign key (patient_id)
+   references patient_profiles;
+
+alter table if exists user_roles
+   add constraint FKh8ciramu9cc9q3qcqiv4ue8a6
+   foreign key (role_id)
+   references roles;
+
+alter table if exists user_roles
+   add constraint FKhfh9dx7w3ubf1co1vdev94g3f
+   foreign key (user_id)
+   references users;
@@ -0,0 +1,50 @@
+-- Table de ShedLock (jobs planifiés à un seul noeud), jusqu'ici créée à la main
+create table if not exists shedlock (
+    name varchar(64) not null,
+    lock_until timestamp(3) not null,
+    locked_at timestamp(3) not null,
+    locked_by varchar(255) not null,
+    primary key (name)
+);
+
+-- Prises créées avant reminder_stage / next_action_at (remplace ReminderService.initReminderState au démarrage)
+update intake_events
+set reminder_stage = 'NEW', next_action_at = scheduled_at, version = version + 1
+where status = 'PENDING' and reminder_stage is null;
+
+-- Lignes écrites avant change_version : elles partent à la première synchronisation
+-- (remplace SyncService.initChangeVersions au démarrage)
+update prescriptions set change_version = nextval('change_version_seq') where change_version is null;
+update intake_events set change_version = nextval('change_version_seq'), version = version + 1
+where change_version is null;
+
+-- Doublons (prescription, heure prévue) écrits avant la contrainte unique : ddl-auto n'a pas pu l'ajouter.
+-- On garde la prise la plus avancée (CONFIRMED, puis MISSED, puis la plus ancienne), les tentatives
+-- sont rattachées à celle-ci et les clients apprennent la suppression des autres par la synchronisation
+create temporary table intake_event_duplicates on commit drop as
+select id, keep_id, prescription_id from (
+    select id, prescription_id, first_value(id) over (
+        partition by prescription_id, scheduled_at
+        order by case status when 'CONFIRMED' then 0 when 'MISSED' then 1 else 2 end, id) as keep_id
+    from intake_events
+) ranked
+where id <> keep_id;
+
+update notification_attempts a set intake_event_id = d.keep_id
+from intake_event_duplicates d where a.intake_event_id = d.id;
+
+delete from escalation_ledger l using intake_event_duplicates d where l.intake_event_id = d.id;
+
+insert into sync_tombstones (change_version, entity_type, entity_id, patient_id, deleted_at)
+select nextval('change_version_seq'), 'INTAKE', d.id, p.patient_id, now()
+from intake_event_duplicates d join prescriptions p on p.id = d.prescription_id;
+
+delete from intake_events e using intake_event_duplicates d where e.id = d.id;
+
+do $$
+begin
+    if not exists (select 1 from pg_constraint where conname = 'uk_intake_events_prescription_scheduled') then
+        alter table intake_events
+            add constraint uk_intake_events_prescription_scheduled unique (prescription_id, scheduled_at);
+    end if;
+end $$;
@@ -0,0 +1,36 @@
+-- Index des requêtes chaudes. Les requêtes qui ne lisent que les prises PENDING (tick de rappels, roue,
+-- passage en MISSED) ou les tentatives PENDING (outbox) écrivent le statut en littéral : les index partiels
+-- ne contiennent que ces lignes et ne grossissent pas avec l'historique.
+-- Construits en CONCURRENTLY hors transaction (V3__hot_query_indexes.sql.conf) : les tables déjà remplies d'une
+-- base reprise restent lisibles et écrivables pendant la construction. Un index interrompu reste INVALID :
+-- le supprimer avant de relancer la migration. CONCURRENTLY ne s'applique pas aux tables partitionnées ;
+-- db/postgres/partition_intake_tables.sql passe après les migrations et recrée ses index sur toutes les partitions.
+
+-- Tick et roue de rappels : prochaine action due des prises PENDING (remplace (status, next_action_at))
+drop index concurrently if exists idx_intake_events_next_action;
+create index concurrently if not exists idx_intake_events_pending_next_action on intake_events (next_action_at) where status = 'PENDING';
+
+-- Chargement de la roue et passage en MISSED : prises PENDING par heure prévue
+create index concurrently if not exists idx_intake_events_pending_scheduled on intake_events (scheduled_at) where status = 'PENDING';
+
+-- Synchronisation incrémentale : lignes d'une prescription / d'un patient modifiées depuis une version
+create index concurrently if not exists idx_intake_events_prescription_version on intake_events (prescription_id, change_version);
+create index concurrently if not exists idx_prescriptions_patient_version on prescriptions (patient_id, change_version);
+
+-- Outbox : seules les tentatives PENDING sont réclamées, par canal et échéance (remplace (status, channel, retry_after))
+drop index concurrently if exists idx_notification_attempts_outbox;
+create index concurrently if not exists idx_notification_attempts_outbox on notification_attempts (channel, retry_after) where status = 'PENDING';
+
+-- Tentatives d'une prise (historique, suppression d'une prescription)
+create index concurrently if not exists idx_notification_attempts_intake_event on notification_attempts (intake_event_id);
+
+-- Anomalies non résolues d'un patient (liste du médecin) et anomalies d'une période (rapports)
+create index concurrently if not exists idx_anomalies_patient_unresolved on anomalies (patient_id) where resolved = false;
+create index concurrently if not exists idx_anomalies_patient_detected on anomalies (patient_id, detected_at);
+
+-- Dernière adhérence calculée d'un patient
+create index concurrently if not exists idx_patient_adherence_patient_date on patient_adherence (patient_id, calculation_date);
+
+-- Clés étrangères lues à chaque escalade et à chaque planification (Postgres ne les indexe pas)
+create index concurrently if not exists idx_contacts_patient on contacts (patient_id);
+create index concurrently if not exists idx_dose_times_prescription on dose_times (prescription_id);
@@ -0,0 +1,9 @@
+-- Règle de récurrence des prescriptions (prescriptions.RecurrenceRule). Colonnes nulles : chaque heure de
+-- dose_times tous les jours, le comportement des prescriptions existantes
+alter table prescriptions add column recurrence_kind varchar(16);
+alter table prescriptions add column recurrence_interval_hours integer;
+alter table prescriptions add column recurrence_weekdays integer;
+alter table prescriptions add column recurrence_taper_days integer;
+
+alter table prescriptions add constraint ck_prescriptions_recurrence_kind
+    check (recurrence_kind in ('DAILY_TIMES', 'EVERY_N_HOURS'));
@@ -0,0 +1,27 @@
+-- Agrégat d'observance par patient et par jour local du patient (intakes.PatientDailyAdherence).
+-- Tenu à jour par les écritures de prises (AdherenceRollup), recalculé chaque nuit sur une fenêtre
+-- glissante (AdherenceReconciler). Les statistiques lisent ces lignes au lieu des prises
+create table patient_daily_adherence (
+    patient_id bigint not null,
+    local_date date not null,
+    scheduled integer not null default 0,
+    confirmed integer not null default 0,
+    missed integer not null default 0,
+    -- Somme des retards (minutes, tronquées comme Duration.toMinutes) des prises confirmées
+    delay_minutes bigint not null default 0,
+    primary key (patient_id, local_date)
+);
+
+-- Historique existant, dans le fuseau actuel de chaque patient
+insert into patient_daily_adherence (patient_id, local_date, scheduled, confirmed, missed, delay_minutes)
+select p.patient_id, (e.scheduled_at at time zone u.timezone)::date,
+       count(*),
+       count(*) filter (where e.status = 'CONFIRMED'),
+       count(*) filter (where e.status = 'MISSED'),
+       coalesce(sum(trunc(extract(epoch from e.confirmed_at - e.scheduled_at) / 60))
+                filter (where e.status = 'CONFIRMED'), 0)
+from intake_events e
+join prescriptions p on p.id = e.prescription_id
+join patient_profiles pp on pp.id = p.patient_id
+join users u on u.id = pp.user_id
+group by p.patient_id, (e.scheduled_at at time zone u.timezone)::date;
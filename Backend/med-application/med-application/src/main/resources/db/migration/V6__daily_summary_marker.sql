@@ -0,0 +1,3 @@
+-- Jour local du dernier résumé quotidien envoyé à chaque patient : DailySummaryJob rattrape un résumé
+-- en retard (exécution décalée, verrou tenu ailleurs, échec) au lieu de dépendre d'un passage dans le créneau
+alter table patient_profiles add column last_summary_date date;
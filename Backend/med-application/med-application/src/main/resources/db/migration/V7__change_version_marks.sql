@@ -0,0 +1,8 @@
+-- Repères de la séquence change_version_seq (sync.ChangeVersionMark), écrits toutes les quelques secondes :
+-- SyncService n'avance pas un curseur au-delà d'une version dont la transaction peut être encore en cours,
+-- et la rétention des traces de suppression (SyncMaintenance) s'arrête au repère d'il y a 90 jours
+create table change_version_marks (
+    version bigint primary key,
+    marked_at timestamp(6) with time zone not null
+);
+create index idx_change_version_marks_marked_at on change_version_marks (marked_at);
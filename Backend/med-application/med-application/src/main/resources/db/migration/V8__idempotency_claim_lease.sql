@@ -0,0 +1,5 @@
+-- Début du traitement de la requête qui détient la clé (idempotency.IdempotencyKey) : une réservation restée
+-- sans réponse au-delà du bail (noeud arrêté en cours de traitement) est reprise par la requête suivante
+alter table idempotency_keys add column claimed_at timestamp(6) with time zone;
+update idempotency_keys set claimed_at = created_at;
+alter table idempotency_keys alter column claimed_at set not null;
@@ -0,0 +1,79 @@
+-- Conversion unique de intake_events et notification_attempts en tables partitionnées par mois (Postgres 13+).
+-- Optionnelle, hors Flyway : à lancer après les migrations de db/migration, application arrêtée ; tout se fait
+-- dans une transaction. PartitionManager crée ensuite les mois à venir et détache les plus anciens.
+--
+-- Postgres exige la colonne de partitionnement dans toute contrainte unique : les clés primaires deviennent
+-- (id, scheduled_at) et (id, attempt_at), et la clé étrangère notification_attempts -> intake_events disparaît
+-- (les suppressions de l'application retirent déjà les tentatives avant les prises).
+
+BEGIN;
+
+DO $$
+DECLARE fk record;
+BEGIN
+    FOR fk IN SELECT conname, conrelid::regclass AS tbl FROM pg_constraint
+              WHERE contype = 'f' AND confrelid = 'intake_events'::regclass LOOP
+        EXECUTE format('ALTER TABLE %s DROP CONSTRAINT %I', fk.tbl, fk.conname);
+    END LOOP;
+END $$;
+
+-- Une partition par mois de first_month à last_month inclus, nommée <table>_pAAAA_MM comme dans PartitionManager
+CREATE FUNCTION pg_temp.create_monthly_partitions(tbl text, first_month date, last_month date) RETURNS void AS $$
+DECLARE m date := date_trunc('month', first_month);
+BEGIN
+    WHILE m <= last_month LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                       tbl || '_p' || to_char(m, 'YYYY_MM'), tbl,
+                       m::timestamp AT TIME ZONE 'UTC', (m + interval '1 month')::timestamp AT TIME ZONE 'UTC');
+        m := m + interval '1 month';
+    END LOOP;
+END $$ LANGUAGE plpgsql;
+
+-- intake_events, partitionnée sur scheduled_at
+ALTER TABLE intake_events RENAME TO intake_events_old;
+ALTER TABLE intake_events_old DROP CONSTRAINT IF EXISTS uk_intake_events_prescription_scheduled;
+DROP INDEX IF EXISTS idx_intake_events_pending_next_action;
+DROP INDEX IF EXISTS idx_intake_events_pending_scheduled;
+DROP INDEX IF EXISTS idx_intake_events_prescription_version;
+
+CREATE TABLE intake_events (LIKE intake_events_old INCLUDING DEFAULTS) PARTITION BY RANGE (scheduled_at);
+CREATE SEQUENCE intake_events_part_id_seq OWNED BY intake_events.id;
+ALTER TABLE intake_events ALTER COLUMN id SET DEFAULT nextval('intake_events_part_id_seq');
+ALTER TABLE intake_events ADD PRIMARY KEY (id, scheduled_at);
+ALTER TABLE intake_events ADD CONSTRAINT uk_intake_events_prescription_scheduled UNIQUE (prescription_id, scheduled_at);
+ALTER TABLE intake_events ADD CONSTRAINT fk_intake_events_prescription FOREIGN KEY (prescription_id) REFERENCES prescriptions (id);
+CREATE INDEX idx_intake_events_pending_next_action ON intake_events (next_action_at) WHERE status = 'PENDING';
+CREATE INDEX idx_intake_events_pending_scheduled ON intake_events (scheduled_at) WHERE status = 'PENDING';
+CREATE INDEX idx_intake_events_prescription_version ON intake_events (prescription_id, change_version);
+
+SELECT pg_temp.create_monthly_partitions('intake_events',
+        LEAST(COALESCE((SELECT min(scheduled_at) FROM intake_events_old), now()), now())::date,
+        GREATEST(COALESCE((SELECT max(scheduled_at) FROM intake_events_old), now()), now() + interval '3 months')::date);
+CREATE TABLE intake_events_default PARTITION OF intake_events DEFAULT;
+
+INSERT INTO intake_events SELECT * FROM intake_events_old;
+SELECT setval('intake_events_part_id_seq', COALESCE((SELECT max(id) FROM intake_events), 0) + 1, false);
+DROP TABLE intake_events_old;
+
+-- notification_attempts, partitionnée sur attempt_at
+ALTER TABLE notification_attempts RENAME TO notification_attempts_old;
+DROP INDEX IF EXISTS idx_notification_attempts_outbox;
+DROP INDEX IF EXISTS idx_notification_attempts_intake_event;
+
+CREATE TABLE notification_attempts (LIKE notification_attempts_old INCLUDING DEFAULTS) PARTITION BY RANGE (attempt_at);
+CREATE SEQUENCE notification_attempts_part_id_seq OWNED BY notification_attempts.id;
+ALTER TABLE notification_attempts ALTER COLUMN id SET DEFAULT nextval('notification_attempts_part_id_seq');
+ALTER TABLE notification_attempts ADD PRIMARY KEY (id, attempt_at);
+CREATE INDEX idx_notification_attempts_outbox ON notification_attempts (channel, retry_after) WHERE status = 'PENDING';
+CREATE INDEX idx_notification_attempts_intake_event ON notification_attempts (intake_event_id);
+
+SELECT pg_temp.create_monthly_partitions('notification_attempts',
+        LEAST(COALESCE((SELECT min(attempt_at) FROM notification_attempts_old), now()), now())::date,
+        (now() + interval '3 months')::date);
+CREATE TABLE notification_attempts_default PARTITION OF notification_attempts DEFAULT;
+
+INSERT INTO notification_attempts SELECT * FROM notification_attempts_old;
+SELECT setval('notification_attempts_part_id_seq', COALESCE((SELECT max(id) FROM notification_attempts), 0) + 1, false);
+DROP TABLE notification_attempts_old;
+
+COMMIT;
@@ -0,0 +1,68 @@
+package com.pillpall.med_application;
+
+import com.pillpall.med_application.prescriptions.DoseTime;
+import com.pillpall.med_application.prescriptions.Prescription;
+import com.pillpall.med_application.prescriptions.PrescriptionRepository;
+import com.pillpall.med_application.users.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Set;
+
+// Socle des tests JPA : H2 en mode PostgreSQL avec le schéma créé par Hibernate, une base par contexte Spring
+// (les contextes restent en cache entre classes), et les entités de départ communes aux tests de service.
+// Les helpers passent par les repositories : ils rejoignent la transaction du test s'il y en a une,
+// sinon chacun valide la sienne
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:${random.uuid};MODE=PostgreSQL;NON_KEYWORDS=HOUR,MINUTE",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+public abstract class JpaTestSupport {
+
+    protected static final ZoneId ZONE = ZoneId.of("Europe/Paris");
+
+    @Autowired protected UserRepository users;
+    @Autowired protected PatientProfileRepository patients;
+    @Autowired protected DoctorProfileRepository doctors;
+    @Autowired protected PrescriptionRepository prescriptions;
+
+    protected User user(String email, Set<Role> roles) {
+        var u = new User();
+        u.setEmail(email);
+        u.setPassword("x");
+        u.setFullName(email);
+        u.setTimezone(ZONE.getId());
+        u.setRoles(roles);
+        return users.save(u);
+    }
+
+    protected User user(String email) {
+        return user(email, Set.of());
+    }
+
+    protected PatientProfile patient(String email) {
+        return patients.save(PatientProfile.builder().user(user(email)).build());
+    }
+
+    protected DoctorProfile doctor(String email) {
+        return doctors.save(DoctorProfile.builder().user(user(email)).build());
+    }
+
+    // Prescription non enregistrée, sans heure de prise : à compléter (doseAt, récurrence...) avant save
+    protected Prescription prescription(PatientProfile patient, DoctorProfile doctor, String medication,
+                                        LocalDate start, LocalDate end) {
+        return Prescription.builder().patient(patient).doctor(doctor).medicationName(medication)
+                .startDate(start).endDate(end).createdAt(Instant.now()).doseTimes(new ArrayList<>()).build();
+    }
+
+    protected static Prescription doseAt(Prescription p, int hour, int minute) {
+        p.getDoseTimes().add(DoseTime.builder().prescription(p).hour(hour).minute(minute).build());
+        return p;
+    }
+}
@@ -0,0 +1,141 @@
+package com.pillpall.med_application.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pillpall.med_application.JpaTestSupport;
+import com.pillpall.med_application.intakes.IntakeEventRepository;
+import com.pillpall.med_application.intakes.IntakeEventWriter;
+import com.pillpall.med_application.intakes.IntakeHistoryService;
+import com.pillpall.med_application.users.*;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Import({IntakeEventWriter.class, IntakeHistoryService.class, ObjectMapper.class})
+class PatientDashboardControllerTest extends JpaTestSupport {
+
+    private static final String PATIENT_EMAIL = "patient@pillpall.test";
+
+    @Autowired TestEntityManager em;
+    @Autowired EntityManagerFactory entityManagerFactory;
+    @Autowired IntakeEventRepository intakes;
+    @Autowired IntakeEventWriter writer;
+    @Autowired IntakeHistoryService history;
+
+    private PatientDashboardController controller;
+    private Statistics statistics;
+    private final Instant now = Instant.now();
+
+    @BeforeEach
+    void setUp() {
+        controller = new PatientDashboardController(users, patients, prescriptions, intakes, history, null, null, null);
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        var role = new Role();
+        role.setName("ROLE_DOCTOR");
+        em.persist(role);
+        var patient = patient(PATIENT_EMAIL);
+
+        // Trois médecins de spécialités différentes, deux prescriptions chacun (l'une terminée) :
+        // l'ancien parcours entité chargeait médecin, utilisateur et rôles pour chacun
+        for (int d = 0; d < 3; d++) {
+            var specialty = Specialty.builder().name("Spécialité " + d).build();
+            em.persist(specialty);
+            var doctor = doctors.save(DoctorProfile.builder().user(user("docteur" + d + "@pillpall.test", Set.of(role)))
+                    .specialty(specialty).build());
+
+            for (int k = 0; k < 2; k++) {
+                var p = prescription(patient, doctor, "Médicament " + d + k, LocalDate.now().minusDays(10),
+                        k == 0 ? LocalDate.now().plusDays(10) : LocalDate.now().minusDays(1));
+                p.setDosage("1 cp");
+                p.setCreatedAt(now.minusSeconds(d * 10L + k));
+                prescriptions.saveAndFlush(doseAt(doseAt(p, 8, 0), 20, 30));
+                // Quatre prises dans les 24 h, une au-delà
+                int offset = d * 2 + k;
+                writer.insertPending(p.getId(), IntStream.of(1, 5, 9, 13, 30)
+                        .mapToObj(h -> now.plus(Duration.ofHours(h)).plus(Duration.ofMinutes(offset))).toList());
+            }
+        }
+        em.flush();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void upcomingMedicationsAreReadInOneQuery() {
+        long lookups = lookupStatements();
+
+        em.clear();
+        statistics.clear();
+        var alerts = (List<PatientDashboardController.MedicationAlert>) controller.getUpcomingMedications(PATIENT_EMAIL).getBody();
+
+        assertEquals(lookups + 1, statistics.getPrepareStatementCount());
+        assertEquals(24, alerts.size());
+        for (int i = 1; i < alerts.size(); i++) {
+            assertFalse(alerts.get(i).getScheduledTime().isBefore(alerts.get(i - 1).getScheduledTime()));
+        }
+        assertEquals("docteur0@pillpall.test", alerts.get(0).getPrescribedBy());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void activePrescriptionsAreReadInTwoQueries() {
+        long lookups = lookupStatements();
+
+        em.clear();
+        statistics.clear();
+        var active = (List<PatientDashboardController.PrescriptionInfo>) controller.getActivePrescriptions(PATIENT_EMAIL).getBody();
+
+        assertEquals(lookups + 2, statistics.getPrepareStatementCount());
+        assertEquals(List.of("Médicament 00", "Médicament 10", "Médicament 20"),
+                active.stream().map(PatientDashboardController.PrescriptionInfo::getMedication).toList());
+        var first = active.get(0);
+        assertEquals("docteur0@pillpall.test", first.getDoctorName());
+        assertEquals("Spécialité 0", first.getSpecialty().getName());
+        assertEquals(List.of(new PatientDashboardController.PrescriptionInfo.HM(8, 0),
+                new PatientDashboardController.PrescriptionInfo.HM(20, 30)), first.getDoseTimes());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void historyStaysWholeUnlessTheClientAsksForPages() {
+        // Sans limit ni cursor : toute la fenêtre, dans l'ordre chronologique, sans en-tête de continuation
+        var whole = controller.getIntakeHistory(PATIENT_EMAIL, 7, null, null);
+        var all = (List<PatientDashboardController.IntakeHistory>) whole.getBody();
+        assertEquals(30, all.size());
+        assertNull(whole.getHeaders().getFirst(IntakeHistoryService.NEXT_CURSOR_HEADER));
+        for (int i = 1; i < all.size(); i++) {
+            assertFalse(all.get(i).getScheduledTime().isBefore(all.get(i - 1).getScheduledTime()));
+        }
+
+        // Avec limit : une page et son jeton, puis le reste avec cursor seul
+        var first = controller.getIntakeHistory(PATIENT_EMAIL, 7, null, 20);
+        String next = first.getHeaders().getFirst(IntakeHistoryService.NEXT_CURSOR_HEADER);
+        assertEquals(20, ((List<?>) first.getBody()).size());
+        assertNotNull(next);
+        var rest = controller.getIntakeHistory(PATIENT_EMAIL, 7, next, null);
+        assertEquals(10, ((List<?>) rest.getBody()).size());
+        assertNull(rest.getHeaders().getFirst(IntakeHistoryService.NEXT_CURSOR_HEADER));
+    }
+
+    // Requêtes de résolution du patient connecté, communes à tous les endpoints
+    private long lookupStatements() {
+        em.clear();
+        statistics.clear();
+        var user = users.findByEmail(PATIENT_EMAIL).orElseThrow();
+        patients.findByUserId(user.getId()).orElseThrow();
+        return statistics.getPrepareStatementCount();
+    }
+}
@@ -0,0 +1,124 @@
+package com.pillpall.med_application.idempotency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pillpall.med_application.JpaTestSupport;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Import({IdempotencyService.class, ObjectMapper.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // chaque étape valide sa propre transaction, comme en production
+class IdempotencyServiceTest extends JpaTestSupport {
+
+    @Autowired IdempotencyService idempotency;
+    @Autowired JdbcTemplate jdbc;
+
+    private final AtomicInteger executions = new AtomicInteger();
+
+    private ResponseEntity<?> confirm() {
+        executions.incrementAndGet();
+        return ResponseEntity.ok("CONFIRMED");
+    }
+
+    @Test
+    void retriesWithTheSameKeyReplayTheFirstResponse() {
+        var req = Map.of("notes", "pris");
+        var first = idempotency.execute("k-1", "patient@pillpall.test", "POST /intakes/1/confirm", req, this::confirm);
+        var retry = idempotency.execute("k-1", "patient@pillpall.test", "POST /intakes/1/confirm", req, this::confirm);
+
+        assertEquals(1, executions.get());
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertEquals(first.getBody(), retry.getBody());
+        assertEquals(MediaType.TEXT_PLAIN, retry.getHeaders().getContentType());
+
+        // Même clé pour une autre requête : refusée sans exécution
+        var other = idempotency.execute("k-1", "patient@pillpall.test", "POST /intakes/2/confirm", req, this::confirm);
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, other.getStatusCode());
+        // Les clés sont propres à chaque utilisateur
+        idempotency.execute("k-1", "autre@pillpall.test", "POST /intakes/1/confirm", req, this::confirm);
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void failedRequestReleasesItsKey() {
+        var req = Map.of("notes", "pris");
+        assertThrows(IllegalStateException.class, () -> idempotency.execute("k-2", "patient@pillpall.test",
+                "POST /intakes/1/confirm", req, () -> { throw new IllegalStateException("db down"); }));
+
+        var retry = idempotency.execute("k-2", "patient@pillpall.test", "POST /intakes/1/confirm", req, this::confirm);
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void claimLeftByAStoppedNodeIsTakenOverAfterTheLease() {
+        var req = Map.of("notes", "pris");
+        // Le noeud s'arrête pendant le traitement : ni réponse enregistrée ni clé libérée
+        assertThrows(AssertionError.class, () -> idempotency.execute("k-3", "patient@pillpall.test",
+                "POST /intakes/1/confirm", req, () -> { throw new AssertionError("node stopped"); }));
+
+        var during = idempotency.execute("k-3", "patient@pillpall.test", "POST /intakes/1/confirm", req, this::confirm);
+        assertEquals(HttpStatus.CONFLICT, during.getStatusCode());
+        assertEquals(0, executions.get());
+
+        // Bail expiré : le doublon suivant reprend la clé, puis sa réponse est rejouée
+        jdbc.update("UPDATE idempotency_keys SET claimed_at = ? WHERE idem_key = 'k-3'",
+                Instant.now().minus(Duration.ofMinutes(10)).atOffset(ZoneOffset.UTC));
+        var retry = idempotency.execute("k-3", "patient@pillpall.test", "POST /intakes/1/confirm", req, this::confirm);
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        var replay = idempotency.execute("k-3", "patient@pillpall.test", "POST /intakes/1/confirm", req, this::confirm);
+        assertEquals("true", replay.getHeaders().getFirst("Idempotent-Replayed"));
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void concurrentRequestsWithTheSameKeyRunOnce() throws Exception {
+        var req = Map.of("notes", "pris");
+        int clients = 8;
+        var start = new CountDownLatch(1);
+        var pool = Executors.newFixedThreadPool(clients);
+        List<Future<ResponseEntity<?>>> responses = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            responses.add(pool.submit(() -> {
+                start.await();
+                return idempotency.execute("k-4", "patient@pillpall.test", "POST /intakes/1/confirm", req, () -> {
+                    try { Thread.sleep(300); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+                    return confirm();
+                });
+            }));
+        }
+        start.countDown();
+        List<HttpStatusCode> statuses = new ArrayList<>();
+        for (var r : responses) statuses.add(r.get(10, TimeUnit.SECONDS).getStatusCode());
+        pool.shutdown();
+
+        // Une seule exécution ; les autres voient la clé en cours
+        assertEquals(1, executions.get());
+        assertEquals(1, statuses.stream().filter(st -> st.equals(HttpStatus.OK)).count());
+        assertEquals(clients - 1, statuses.stream().filter(st -> st.equals(HttpStatus.CONFLICT)).count());
+        var replay = idempotency.execute("k-4", "patient@pillpall.test", "POST /intakes/1/confirm", req, this::confirm);
+        assertEquals(HttpStatus.OK, replay.getStatusCode());
+        assertEquals(1, executions.get());
+    }
+}
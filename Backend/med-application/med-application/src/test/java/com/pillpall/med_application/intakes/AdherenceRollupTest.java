@@ -0,0 +1,145 @@
+package com.pillpall.med_application.intakes;
+
+import com.pillpall.med_application.JpaTestSupport;
+import com.pillpall.med_application.notifications.EscalationLedgerRepository;
+import com.pillpall.med_application.notifications.NotificationAttemptRepository;
+import com.pillpall.med_application.notifications.ReminderPartitions;
+import com.pillpall.med_application.notifications.ReminderWheel;
+import com.pillpall.med_application.prescriptions.PrescriptionService;
+import com.pillpall.med_application.sync.ChangeVersions;
+import com.pillpall.med_application.sync.SyncTombstoneRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.*;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+@Import({AdherenceRollup.class, AdherenceReconciler.class, IntakeTransitionService.class, IntakeEventWriter.class,
+        ChangeVersions.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // chaque écriture valide sa propre transaction, comme en production
+class AdherenceRollupTest extends JpaTestSupport {
+
+    @Autowired AdherenceRollup rollup;
+    @Autowired AdherenceReconciler reconciler;
+    @Autowired IntakeTransitionService transitions;
+    @Autowired IntakeEventWriter writer;
+    @Autowired ChangeVersions versions;
+    @Autowired IntakeEventRepository intakes;
+    @Autowired PatientDailyAdherenceRepository dailyAdherence;
+    @Autowired SyncTombstoneRepository tombstones;
+    @Autowired NotificationAttemptRepository attempts;
+    @Autowired EscalationLedgerRepository escalations;
+    @Autowired JdbcTemplate jdbc;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate tx;
+    private IntakeService intakeService;
+    private IntakeMaterializer materializer;
+    private PrescriptionService prescriptionService;
+    private final LocalDate today = LocalDate.now(ZONE);
+
+    @BeforeEach
+    void setUp() {
+        tx = new TransactionTemplate(transactionManager);
+        intakeService = new IntakeService(intakes, mock(ReminderWheel.class), writer, versions, rollup, transactionManager);
+        materializer = new IntakeMaterializer(prescriptions, intakes, new IntakePlanner(), writer, rollup,
+                mock(ReminderPartitions.class), tombstones, transactionManager);
+        materializer.horizonDays = 14;
+        prescriptionService = new PrescriptionService(prescriptions, intakes, patients, intakes, materializer, attempts,
+                escalations, versions, tombstones, rollup);
+    }
+
+    @Test
+    void everyIntakeWriteKeepsTheRollupEqualToARecount() {
+        // 08:00 et 20:00 depuis trois jours : les prises passées deviennent MISSED, l'horizon va à J+14
+        Long prescriptionId = tx.execute(s -> {
+            var p = prescription(patient("patient@pillpall.test"), doctor("docteur@pillpall.test"), "Doliprane",
+                    today.minusDays(3), today.plusDays(30));
+            prescriptions.save(doseAt(doseAt(p, 8, 0), 20, 0));
+            materializer.materialize(p);
+            return p.getId();
+        });
+        Long patientId = prescriptions.findById(prescriptionId).orElseThrow().getPatient().getId();
+        assertEquals(36, totals(patientId).getScheduled());
+
+        // Prises passées escaladées par les rappels, puis passées en MISSED
+        jdbc.update("UPDATE intake_events SET reminder_stage = 'ESCALATED', next_action_at = NULL " +
+                "WHERE prescription_id = ? AND scheduled_at < ?", prescriptionId, Timestamp.from(Instant.now()));
+        transitions.markMissedScheduledBefore(Instant.now());
+        var rows = intakes.findCalendarRows(patientId, Instant.EPOCH, Instant.now().plus(Duration.ofDays(30)));
+        long missed = rows.stream().filter(r -> r.getStatus() == IntakeEvent.Status.MISSED).count();
+        assertTrue(missed >= 6);
+        Long firstMissed = rows.stream().filter(r -> r.getStatus() == IntakeEvent.Status.MISSED).findFirst().orElseThrow().getId();
+        Long next = rows.stream().filter(r -> r.getStatus() == IntakeEvent.Status.PENDING).findFirst().orElseThrow().getId();
+
+        intakeService.confirm(firstMissed, "en retard");
+        var item = new IntakeController.ConfirmItem();
+        item.setIntakeId(next);
+        item.setNotes("hors ligne");
+        tx.executeWithoutResult(s -> intakeService.confirmBatch(patientId, List.of(item)));
+
+        var week = totals(patientId);
+        assertEquals(36, week.getScheduled());
+        assertEquals(2, week.getConfirmed());
+        assertEquals(missed - 1, week.getMissed());
+        // Environ trois jours de retard pour la première, au plus une demi-journée d'avance pour la suivante
+        assertTrue(week.getDelayMinutesTotal() > 2 * 24 * 60);
+        assertEquals(0, reconciler.reconcile(LocalDate.now(ZoneOffset.UTC)));
+
+        // Plus de prise du soir : les 20:00 PENDING à venir disparaissent, celle confirmée reste
+        tx.executeWithoutResult(s -> {
+            var p = prescriptions.findById(prescriptionId).orElseThrow();
+            p.getDoseTimes().removeIf(dt -> dt.getHour() == 20);
+            materializer.reschedule(p);
+        });
+        assertTrue(totals(patientId).getScheduled() < 36);
+        assertEquals(0, reconciler.reconcile(LocalDate.now(ZoneOffset.UTC)));
+
+        tx.executeWithoutResult(s -> prescriptionService.delete(prescriptionId,
+                prescriptions.findById(prescriptionId).orElseThrow().getDoctor()));
+        var none = totals(patientId);
+        assertEquals(0, none.getScheduled() + none.getConfirmed() + none.getMissed() + none.getDelayMinutesTotal());
+        assertEquals(0, reconciler.reconcile(LocalDate.now(ZoneOffset.UTC)));
+    }
+
+    @Test
+    void reconciliationRewritesOnlyTheWrongDays() {
+        Long patientId = tx.execute(s -> {
+            var p = prescription(patient("reconcile@pillpall.test"), doctor("medecin@pillpall.test"), "Kardegic",
+                    today.minusDays(5), today.plusDays(5));
+            prescriptions.save(doseAt(p, 9, 30));
+            materializer.materialize(p);
+            return p.getPatient().getId();
+        });
+
+        // Écritures hors application : un compte faussé, une ligne perdue, une ligne sans prise
+        jdbc.update("UPDATE patient_daily_adherence SET confirmed = confirmed + 5 WHERE patient_id = ? AND local_date = ?",
+                patientId, Date.valueOf(today.minusDays(2)));
+        jdbc.update("DELETE FROM patient_daily_adherence WHERE patient_id = ? AND local_date = ?",
+                patientId, Date.valueOf(today.plusDays(1)));
+        jdbc.update("INSERT INTO patient_daily_adherence (patient_id, local_date, scheduled, confirmed, missed, delay_minutes) " +
+                "VALUES (?, ?, 3, 0, 0, 0)", patientId, Date.valueOf(today.minusDays(20)));
+
+        assertEquals(3, reconciler.reconcile(LocalDate.now(ZoneOffset.UTC)));
+        assertEquals(0, reconciler.reconcile(LocalDate.now(ZoneOffset.UTC)));
+        var all = dailyAdherence.summarizeBetween(patientId, today.minusDays(30), today.plusDays(30));
+        assertEquals(11, all.getScheduled());
+        assertEquals(0, all.getConfirmed());
+    }
+
+    private PatientDailyAdherenceRepository.SummaryView totals(Long patientId) {
+        return dailyAdherence.summarizeBetween(patientId, today.minusDays(30), today.plusDays(30));
+    }
+}
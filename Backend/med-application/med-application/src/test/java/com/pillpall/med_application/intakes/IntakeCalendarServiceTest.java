@@ -0,0 +1,79 @@
+package com.pillpall.med_application.intakes;
+
+import com.pillpall.med_application.JpaTestSupport;
+import com.pillpall.med_application.prescriptions.DoseSchedule;
+import com.pillpall.med_application.prescriptions.Prescription;
+import com.pillpall.med_application.prescriptions.RecurrenceRule;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.time.*;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Import({IntakeCalendarService.class, IntakeEventWriter.class})
+class IntakeCalendarServiceTest extends JpaTestSupport {
+
+    @Autowired TestEntityManager em;
+    @Autowired EntityManagerFactory entityManagerFactory;
+    @Autowired IntakeCalendarService calendar;
+    @Autowired IntakeEventWriter writer;
+
+    private final LocalDate today = LocalDate.now(ZONE);
+    private Long patientId;
+    private Prescription prescription;
+
+    @BeforeEach
+    void setUp() {
+        var patient = patient("patient@pillpall.test");
+        patientId = patient.getId();
+
+        // Jours ouvrés à 08:00, sur deux mois : seuls les premiers jours sont écrits en base
+        prescription = prescription(patient, doctor("docteur@pillpall.test"), "Doliprane",
+                today.minusDays(2), today.plusDays(60));
+        prescription.setRecurrence(RecurrenceRule.builder().weekdayMask(RecurrenceRule.weekdayMask(Set.of(
+                DayOfWeek.MONDAY, DayOfWeek.TUESDAY, DayOfWeek.WEDNESDAY, DayOfWeek.THURSDAY, DayOfWeek.FRIDAY)))
+                .build());
+        prescriptions.saveAndFlush(doseAt(prescription, 8, 0));
+        writer.insertPending(prescription.getId(), DoseSchedule.of(prescription).list(today.minusDays(2), today.plusDays(6)));
+        em.getEntityManager().createQuery("UPDATE IntakeEvent e SET e.status = :status WHERE e.scheduledAt = " +
+                        "(SELECT MIN(x.scheduledAt) FROM IntakeEvent x WHERE x.scheduledAt >= :from)")
+                .setParameter("status", IntakeEvent.Status.CONFIRMED)
+                .setParameter("from", today.atStartOfDay(ZONE).toInstant())
+                .executeUpdate();
+        em.clear();
+    }
+
+    @Test
+    void calendarExtendsPastTheWrittenHorizonWithOutcomesMerged() {
+        var statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        var doses = calendar.calendar(patientId, ZONE, today, today.plusDays(40));
+
+        assertEquals(3, statistics.getPrepareStatementCount());
+        var expected = DoseSchedule.of(today.minusDays(2), today.plusDays(60), List.of(LocalTime.of(8, 0)),
+                prescription.getRecurrence(), ZONE).list(today, today.plusDays(40));
+        assertEquals(expected, doses.stream().map(IntakeCalendarService.CalendarDose::getScheduledAt).toList());
+        assertTrue(doses.stream().map(d -> d.getScheduledAt().atZone(ZONE).getDayOfWeek())
+                .noneMatch(d -> d == DayOfWeek.SATURDAY || d == DayOfWeek.SUNDAY));
+
+        // Première prise confirmée, puis les PENDING écrits jusqu'à J+6, puis des prises calculées seulement
+        assertEquals("CONFIRMED", doses.get(0).getStatus());
+        assertNotNull(doses.get(0).getEventId());
+        var horizon = today.plusDays(7).atStartOfDay(ZONE).toInstant();
+        assertTrue(doses.stream().filter(d -> d.getScheduledAt().isAfter(horizon))
+                .allMatch(d -> d.getEventId() == null && IntakeCalendarService.PLANNED.equals(d.getStatus())));
+        assertTrue(doses.stream().skip(1).filter(d -> d.getScheduledAt().isBefore(horizon))
+                .allMatch(d -> "PENDING".equals(d.getStatus())));
+
+        assertThrows(IllegalArgumentException.class, () -> calendar.calendar(patientId, ZONE, today, today.plusDays(200)));
+    }
+}
@@ -0,0 +1,39 @@
+package com.pillpall.med_application.intakes;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.pillpall.med_application.intakes.IntakeEventWriterTest.ONE_YEAR_THREE_DAILY;
+import static org.junit.jupiter.api.Assertions.*;
+
+// Banc d'essai, hors build : PILLPALL_BENCHMARK=true mvn test -Dtest=IntakeEventWriterBenchmark
+// Durée d'écriture d'une prescription d'un an (trois prises par jour) en lots, puis une prise par INSERT
+@EnabledIfEnvironmentVariable(named = "PILLPALL_BENCHMARK", matches = "true")
+class IntakeEventWriterBenchmark {
+
+    private static final int ROUNDS = 20;
+
+    @Test
+    void batchedInsertAgainstOneStatementPerRow() {
+        var roundTrips = new AtomicInteger();
+        long batched = 0, perRow = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            var jdbc = IntakeEventWriterTest.database(roundTrips);
+            var writer = new IntakeEventWriter(jdbc);
+            writer.batchSize = 1000;
+
+            long start = System.nanoTime();
+            writer.insertPending(7L, ONE_YEAR_THREE_DAILY);
+            batched += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            IntakeEventWriterTest.insertPerRow(jdbc, 8L, ONE_YEAR_THREE_DAILY);
+            perRow += System.nanoTime() - start;
+            assertEquals(2 + ONE_YEAR_THREE_DAILY.size(), roundTrips.get());
+        }
+        System.out.printf("%d events x %d rounds: batched %d ms, per row %d ms%n",
+                ONE_YEAR_THREE_DAILY.size(), ROUNDS, batched / 1_000_000, perRow / 1_000_000);
+    }
+}
@@ -0,0 +1,173 @@
+package com.pillpall.med_application.intakes;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntakeEventWriterTest {
+
+    // Prescription d'un an, trois prises par jour
+    static final List<Instant> ONE_YEAR_THREE_DAILY = IntStream.range(0, 365 * 3)
+            .mapToObj(i -> Instant.parse("2026-01-01T08:00:00Z").plus(Duration.ofHours(8L * i)))
+            .toList();
+
+    private final AtomicInteger roundTrips = new AtomicInteger();
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        jdbc = database(roundTrips);
+    }
+
+    // Base H2 neuve avec la table intake_events ; roundTrips compte les exécutions envoyées au serveur
+    static JdbcTemplate database(AtomicInteger roundTrips) {
+        return database(roundTrips, false);
+    }
+
+    // noRowCounts : les lots renvoient SUCCESS_NO_INFO au lieu du compte de chaque ligne
+    static JdbcTemplate database(AtomicInteger roundTrips, boolean noRowCounts) {
+        var h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:writer-" + UUID.randomUUID() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        var jdbc = new JdbcTemplate(countingDataSource(h2, roundTrips, noRowCounts));
+        jdbc.execute("CREATE SEQUENCE change_version_seq");
+        jdbc.execute("CREATE TABLE intake_events (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+                "prescription_id BIGINT NOT NULL, scheduled_at TIMESTAMP(6) WITH TIME ZONE NOT NULL, " +
+                "status VARCHAR(16) NOT NULL, confirmed_at TIMESTAMP(6) WITH TIME ZONE, notes TEXT, " +
+                "reminder_stage VARCHAR(16), next_action_at TIMESTAMP(6) WITH TIME ZONE, change_version BIGINT, " +
+                "version BIGINT DEFAULT 0 NOT NULL, " +
+                "CONSTRAINT uk_intake_events_prescription_scheduled UNIQUE (prescription_id, scheduled_at))");
+        roundTrips.set(0);
+        return jdbc;
+    }
+
+    @Test
+    void yearLongPrescriptionIsWrittenInAHandfulOfStatements() {
+        var writer = new IntakeEventWriter(jdbc);
+        writer.batchSize = 1000;
+
+        // 1 095 prises en lots de 1 000 : deux exécutions
+        assertEquals(ONE_YEAR_THREE_DAILY.size(), writer.insertPending(7L, ONE_YEAR_THREE_DAILY));
+        assertEquals(2, roundTrips.getAndSet(0));
+
+        // Référence : une insertion par prise, comme avec save() en IDENTITY
+        insertPerRow(jdbc, 8L, ONE_YEAR_THREE_DAILY);
+        assertEquals(ONE_YEAR_THREE_DAILY.size(), roundTrips.get());
+
+        assertEquals(ONE_YEAR_THREE_DAILY.size(), jdbc.queryForObject(
+                "SELECT COUNT(*) FROM intake_events WHERE prescription_id = 7 AND status = 'PENDING' " +
+                        "AND reminder_stage = 'NEW' AND next_action_at = scheduled_at", Integer.class));
+        assertEquals(ONE_YEAR_THREE_DAILY.get(0), jdbc.queryForObject(
+                "SELECT MIN(scheduled_at) FROM intake_events WHERE prescription_id = 7", OffsetDateTime.class).toInstant());
+    }
+
+    @Test
+    void replayingThePlanDoesNotDuplicateEvents() {
+        var writer = new IntakeEventWriter(jdbc);
+        writer.batchSize = 1000;
+        var week = ONE_YEAR_THREE_DAILY.subList(0, 21);
+
+        // Deux écritures concurrentes ou rejouées du même plan (horizon, modification, autre noeud) :
+        // seules les prises réellement insérées sont comptées
+        assertEquals(21, writer.insertPending(7L, week));
+        assertEquals(21, writer.insertPending(7L, ONE_YEAR_THREE_DAILY.subList(0, 42)));
+        assertEquals(0, writer.insertPending(7L, week));
+
+        assertEquals(42, jdbc.queryForObject("SELECT COUNT(*) FROM intake_events WHERE prescription_id = 7", Integer.class));
+    }
+
+    @Test
+    void rewrittenBatchesWithoutRowCountsAreCountedFromTheTable() {
+        // Comme le pilote Postgres avec reWriteBatchedInserts : SUCCESS_NO_INFO pour chaque ligne
+        var jdbc = database(new AtomicInteger(), true);
+        var writer = new IntakeEventWriter(jdbc);
+        writer.batchSize = 1000;
+        var week = ONE_YEAR_THREE_DAILY.subList(0, 21);
+
+        writer.insertPending(8L, week); // autre prescription, même plage
+        assertEquals(21, writer.insertPending(7L, week));
+        assertEquals(21, writer.insertPending(7L, ONE_YEAR_THREE_DAILY.subList(0, 42)));
+        assertEquals(0, writer.insertPending(7L, week));
+    }
+
+    @Test
+    void offlineConfirmationsAreAppliedInOneBatchWithTheirOwnTimes() {
+        var writer = new IntakeEventWriter(jdbc);
+        writer.batchSize = 1000;
+        writer.insertPending(7L, ONE_YEAR_THREE_DAILY.subList(0, 30));
+        List<Long> ids = jdbc.queryForList("SELECT id FROM intake_events ORDER BY id", Long.class);
+        roundTrips.set(0);
+
+        var items = ids.stream().map(id -> {
+            var item = new IntakeController.ConfirmItem();
+            item.setIntakeId(id);
+            item.setNotes("hors ligne");
+            return item;
+        }).toList();
+        Map<Long, Instant> confirmedAt = ids.stream().collect(Collectors.toMap(id -> id,
+                id -> Instant.parse("2026-01-01T08:00:00Z").plus(Duration.ofMinutes(id))));
+
+        int[] counts = writer.confirm(items, confirmedAt);
+        assertEquals(1, roundTrips.get());
+        assertTrue(Arrays.stream(counts).allMatch(c -> c == 1));
+        assertEquals(Instant.parse("2026-01-01T08:00:00Z").plus(Duration.ofMinutes(ids.get(3))), jdbc.queryForObject(
+                "SELECT confirmed_at FROM intake_events WHERE id = ?", OffsetDateTime.class, ids.get(3)).toInstant());
+
+        // Rejeu : déjà confirmées, rien n'est réécrit
+        assertTrue(Arrays.stream(writer.confirm(items, confirmedAt)).allMatch(c -> c == 0));
+    }
+
+    static void insertPerRow(JdbcTemplate jdbc, Long prescriptionId, List<Instant> times) {
+        for (Instant at : times) {
+            jdbc.update("INSERT INTO intake_events (prescription_id, scheduled_at, status) VALUES (?, ?, ?)",
+                    prescriptionId, at.atOffset(ZoneOffset.UTC), "PENDING");
+        }
+    }
+
+    // Compte les exécutions envoyées au serveur (executeUpdate / executeBatch)
+    private static javax.sql.DataSource countingDataSource(JdbcDataSource target, AtomicInteger roundTrips, boolean noRowCounts) {
+        return new DelegatingDataSource(target) {
+            @Override
+            public Connection getConnection() throws java.sql.SQLException {
+                Connection c = super.getConnection();
+                return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                        (proxy, m, args) -> {
+                            Object r = m.invoke(c, args);
+                            if (r instanceof PreparedStatement ps) {
+                                return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                                        (p2, m2, a2) -> {
+                                            if (m2.getName().equals("executeUpdate") || m2.getName().equals("executeBatch")) {
+                                                roundTrips.incrementAndGet();
+                                            }
+                                            Object result = m2.invoke(ps, a2);
+                                            if (noRowCounts && m2.getName().equals("executeBatch")) {
+                                                Arrays.fill((int[]) result, Statement.SUCCESS_NO_INFO);
+                                            }
+                                            return result;
+                                        });
+                            }
+                            return r;
+                        });
+            }
+        };
+    }
+}
@@ -0,0 +1,81 @@
+package com.pillpall.med_application.intakes;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pillpall.med_application.JpaTestSupport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Import({IntakeHistoryService.class, IntakeEventWriter.class, ObjectMapper.class})
+class IntakeHistoryServiceTest extends JpaTestSupport {
+
+    @Autowired IntakeHistoryService history;
+    @Autowired IntakeEventWriter writer;
+
+    private Long patientId;
+    private final Instant today = Instant.now().truncatedTo(ChronoUnit.DAYS);
+
+    @BeforeEach
+    void setUp() {
+        var patient = patient("patient@pillpall.test");
+        var doctor = doctor("docteur@pillpall.test");
+        patientId = patient.getId();
+
+        // Deux prescriptions aux mêmes heures : des égalités sur scheduled_at que seul l'id départage
+        // (la dernière, 30 jours avant, est hors fenêtre)
+        var times = IntStream.of(0, 1, 2, 3, 4, 30).mapToObj(i -> today.minus(Duration.ofDays(i))).toList();
+        for (String medication : List.of("Doliprane", "Spasfon")) {
+            var p = prescriptions.saveAndFlush(prescription(patient, doctor, medication,
+                    LocalDate.now().minusDays(10), LocalDate.now()));
+            writer.insertPending(p.getId(), times);
+        }
+    }
+
+    @Test
+    void pagesWalkTheWindowNewestFirstWithoutGapsOrRepeats() {
+        List<IntakeEventRepository.HistoryView> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            var page = history.page(patientId, 7, cursor, 3);
+            seen.addAll(page.getItems());
+            cursor = page.getNext();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(4, pages);
+        assertEquals(10, seen.size());
+        assertEquals(10, seen.stream().map(IntakeEventRepository.HistoryView::getId).distinct().count());
+        for (int i = 1; i < seen.size(); i++) {
+            var previous = seen.get(i - 1);
+            var current = seen.get(i);
+            assertTrue(current.getScheduledAt().isBefore(previous.getScheduledAt())
+                    || current.getScheduledAt().equals(previous.getScheduledAt()) && current.getId() < previous.getId());
+        }
+
+        // La fenêtre suit le paramètre days ; un jeton altéré est refusé
+        assertEquals(2, history.page(patientId, 1, null, null).getItems().size());
+        assertThrows(IllegalArgumentException.class, () -> history.page(patientId, 7, "pas-un-jeton", 3));
+    }
+
+    @Test
+    void streamWritesTheWholeWindowAsOneJsonArray() throws Exception {
+        var out = new ByteArrayOutputStream();
+        history.stream(patientId, 7, IntakeEventRepository.HistoryView::getMedicationName).writeTo(out);
+
+        var medications = new ObjectMapper().readValue(out.toByteArray(), String[].class);
+        assertEquals(10, medications.length);
+    }
+}
@@ -0,0 +1,95 @@
+package com.pillpall.med_application.intakes;
+
+import com.pillpall.med_application.notifications.ReminderPartitions;
+import com.pillpall.med_application.prescriptions.DoseTime;
+import com.pillpall.med_application.prescriptions.Prescription;
+import com.pillpall.med_application.prescriptions.PrescriptionRepository;
+import com.pillpall.med_application.sync.SyncTombstoneRepository;
+import com.pillpall.med_application.users.PatientProfile;
+import com.pillpall.med_application.users.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class IntakeMaterializerTest {
+
+    private final IntakeEventRepository intakes = mock(IntakeEventRepository.class);
+    private final IntakeEventWriter writer = mock(IntakeEventWriter.class);
+    private final LocalDate today = LocalDate.now(ZoneOffset.UTC);
+    private IntakeMaterializer materializer;
+    private Prescription prescription;
+
+    @BeforeEach
+    void setUp() {
+        when(writer.insertPending(anyLong(), anyList())).thenAnswer(inv -> inv.<List<?>>getArgument(1).size());
+        materializer = new IntakeMaterializer(mock(PrescriptionRepository.class), intakes, new IntakePlanner(), writer,
+                mock(AdherenceRollup.class), mock(ReminderPartitions.class), mock(SyncTombstoneRepository.class), mock(PlatformTransactionManager.class));
+        materializer.horizonDays = 14;
+
+        User user = new User();
+        user.setTimezone("UTC");
+        prescription = Prescription.builder().id(7L)
+                .patient(PatientProfile.builder().id(3L).user(user).build())
+                .medicationName("Doliprane")
+                .startDate(today.minusDays(10))
+                .endDate(today.plusDays(60))
+                .build();
+        prescription.setDoseTimes(List.of(
+                DoseTime.builder().prescription(prescription).hour(8).minute(0).build(),
+                DoseTime.builder().prescription(prescription).hour(20).minute(0).build()));
+    }
+
+    @Test
+    void onlyTheHorizonIsWrittenThenExtendedIncrementally() {
+        // Du début de la prescription à aujourd'hui + 14 : 25 jours x 2 prises, pas les 71 jours
+        assertEquals(50, materializer.materialize(prescription));
+        assertEquals(today.plusDays(14), prescription.getMaterializedUntil());
+
+        // Horizon déjà atteint : aucune écriture
+        assertEquals(0, materializer.materialize(prescription));
+        verify(writer, times(1)).insertPending(anyLong(), anyList());
+
+        // Un jour plus tard, seul le jour manquant est ajouté
+        prescription.setMaterializedUntil(today.plusDays(13));
+        assertEquals(2, materializer.materialize(prescription));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void editAppliesOnlyTheDiffToTheFutureWindow() {
+        prescription.setMaterializedUntil(today.plusDays(14));
+        Instant kept = today.plusDays(3).atTime(20, 0).toInstant(ZoneOffset.UTC);
+        Instant dropped = today.plusDays(3).atTime(12, 0).toInstant(ZoneOffset.UTC);
+        var stored = List.of(schedule(100L, dropped), schedule(101L, kept));
+        when(intakes.findScheduleByPrescriptionFrom(eq(7L), eq(IntakeEvent.Status.PENDING), any())).thenReturn(stored);
+        Instant before = Instant.now();
+
+        materializer.reschedule(prescription);
+
+        // L'heure qui n'est plus prescrite est supprimée, celle qui existe déjà n'est pas réécrite
+        verify(intakes).deleteByIdsAndStatus(List.of(100L), IntakeEvent.Status.PENDING);
+        ArgumentCaptor<List<Instant>> planned = ArgumentCaptor.forClass(List.class);
+        verify(writer).insertPending(eq(7L), planned.capture());
+        assertFalse(planned.getValue().contains(kept));
+        assertTrue(planned.getValue().stream().allMatch(at -> !at.isBefore(before)));
+        assertEquals(today.plusDays(14).atTime(20, 0).toInstant(ZoneOffset.UTC), planned.getValue().get(planned.getValue().size() - 1));
+        assertEquals(today.plusDays(14), prescription.getMaterializedUntil());
+    }
+
+    private static IntakeEventRepository.ScheduleView schedule(Long id, Instant at) {
+        var view = mock(IntakeEventRepository.ScheduleView.class);
+        when(view.getId()).thenReturn(id);
+        when(view.getScheduledAt()).thenReturn(at);
+        return view;
+    }
+}
@@ -0,0 +1,205 @@
+package com.pillpall.med_application.intakes;
+
+import com.pillpall.med_application.JpaTestSupport;
+import com.pillpall.med_application.notifications.ReminderWheel;
+import com.pillpall.med_application.sync.ChangeVersions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@Import({IntakeEventWriter.class, AdherenceRollup.class, ChangeVersions.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // chaque confirmation valide sa propre transaction, comme en production
+class IntakeServiceTest extends JpaTestSupport {
+
+    @Autowired IntakeEventRepository intakes;
+    @Autowired IntakeEventWriter writer;
+    @Autowired AdherenceRollup rollup;
+    @Autowired ChangeVersions versions;
+    @Autowired JdbcTemplate jdbc;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    private final ReminderWheel wheel = mock(ReminderWheel.class);
+    private final Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+    private IntakeService service;
+    private TransactionTemplate tx;
+    private Long patientId;
+    private List<Long> ids;
+    private Long otherPatientsIntake;
+
+    @BeforeEach
+    void setUp() {
+        service = new IntakeService(intakes, wheel, writer, versions, rollup, transactionManager);
+        tx = new TransactionTemplate(transactionManager);
+        String suffix = String.valueOf(System.nanoTime());
+        var doctor = doctor("docteur-" + suffix + "@pillpall.test");
+        var mine = prescriptions.save(doseAt(prescription(patient("patient-" + suffix + "@pillpall.test"), doctor,
+                "Doliprane", LocalDate.now().minusDays(1), LocalDate.now()), 8, 0));
+        var theirs = prescriptions.save(doseAt(prescription(patient("autre-" + suffix + "@pillpall.test"), doctor,
+                "Ventoline", LocalDate.now().minusDays(1), LocalDate.now()), 8, 0));
+        patientId = mine.getPatient().getId();
+        writer.insertPending(mine.getId(), IntStream.rangeClosed(1, 4).mapToObj(h -> now.minus(Duration.ofHours(h))).toList());
+        writer.insertPending(theirs.getId(), List.of(now.minus(Duration.ofHours(1))));
+        ids = jdbc.queryForList("SELECT id FROM intake_events WHERE prescription_id = ? ORDER BY id", Long.class, mine.getId());
+        otherPatientsIntake = jdbc.queryForObject("SELECT id FROM intake_events WHERE prescription_id = ?", Long.class, theirs.getId());
+    }
+
+    @Test
+    void batchReportsEachItemAndAppliesOnlyTheOwnedOnes() {
+        service.confirm(ids.get(0), "déjà prise");
+        Instant taken = now.minus(Duration.ofMinutes(50));
+        Instant future = now.plus(Duration.ofHours(3));
+        var items = List.of(
+                item(ids.get(1), taken, "hors ligne"),
+                item(ids.get(2), future, "horloge en avance"),
+                item(ids.get(2), taken, "doublon"),
+                item(ids.get(0), taken, "rejeu"),
+                item(otherPatientsIntake, taken, "pas à moi"),
+                item(Long.MAX_VALUE, taken, "inconnue"),
+                item(ids.get(3), taken, "  "));
+
+        var results = tx.execute(s -> service.confirmBatch(patientId, items));
+
+        assertEquals(List.of("CONFIRMED", "CONFIRMED", "CONFIRMED", "ALREADY_CONFIRMED", "NOT_FOUND", "NOT_FOUND", "CONFIRMED"),
+                results.stream().map(IntakeController.ConfirmResult::getResult).toList());
+        assertEquals(items.stream().map(IntakeController.ConfirmItem::getIntakeId).toList(),
+                results.stream().map(IntakeController.ConfirmResult::getIntakeId).toList());
+
+        // Heure du téléphone conservée ; une heure dans le futur est ramenée à maintenant sans toucher à la requête
+        assertTrue(Duration.between(taken, confirmedAt(ids.get(1))).abs().toMillis() < 1);
+        assertFalse(confirmedAt(ids.get(2)).isAfter(Instant.now()));
+        assertEquals(future, items.get(1).getConfirmedAt());
+
+        // L'id répété n'est écrit qu'une fois, avec les notes de sa première occurrence
+        assertEquals("horloge en avance", jdbc.queryForObject("SELECT notes FROM intake_events WHERE id = ?", String.class, ids.get(2)));
+        assertEquals(1, jdbc.queryForObject("SELECT version FROM intake_events WHERE id = ?", Long.class, ids.get(2)));
+
+        // Notes facultatives, comme pour la confirmation unitaire
+        assertEquals("CONFIRMED", status(ids.get(3)));
+
+        // La prise d'un autre patient n'est pas modifiée ; la prise déjà confirmée garde ses notes
+        assertEquals("PENDING", status(otherPatientsIntake));
+        assertEquals("déjà prise", jdbc.queryForObject("SELECT notes FROM intake_events WHERE id = ?", String.class, ids.get(0)));
+        verify(wheel).cancel(ids.get(1));
+        verify(wheel).cancel(ids.get(2));
+        verify(wheel, never()).cancel(otherPatientsIntake);
+        verify(wheel).cancel(ids.get(3));
+    }
+
+    @Test
+    void batchTakesThePreviousStatusFromTheLockedRow() throws Exception {
+        // Le passage en MISSED tient la prise (et son agrégat) pendant que la confirmation groupée arrive
+        Long id = ids.get(1);
+        var locked = new CountDownLatch(1);
+        var transition = Executors.newSingleThreadExecutor();
+        Future<?> missed = transition.submit(() -> tx.executeWithoutResult(s -> {
+            intakes.updateStatus(List.of(id), IntakeEvent.Status.PENDING, IntakeEvent.Status.MISSED);
+            rollup.apply(new AdherenceRollup.Changes().missed(patientId, ZONE, scheduledAt(id)));
+            locked.countDown();
+            try { Thread.sleep(300); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        }));
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+
+        var results = tx.execute(s -> service.confirmBatch(patientId, List.of(item(id, now, "hors ligne"))));
+        missed.get(5, TimeUnit.SECONDS);
+        transition.shutdown();
+
+        // Statut lu après le verrou : MISSED, l'écart retire le manqué au lieu de le laisser compté
+        assertEquals("CONFIRMED", results.get(0).getResult());
+        assertEquals(List.of(1L, 0L), jdbc.queryForList(
+                "SELECT SUM(confirmed) AS c, SUM(missed) AS m FROM patient_daily_adherence WHERE patient_id = ?", patientId)
+                .stream().flatMap(r -> List.of(((Number) r.get("c")).longValue(), ((Number) r.get("m")).longValue()).stream())
+                .toList());
+    }
+
+    @Test
+    void confirmRereadsAndRetriesWhenTheTickWroteTheIntakeMeanwhile() {
+        // Entre la lecture et l'écriture de la confirmation, le tick passe la prise en MISSED (autre transaction)
+        Long id = ids.get(1);
+        var interfering = spy(versions);
+        doAnswer(inv -> {
+            concurrently("UPDATE intake_events SET status = 'MISSED', next_action_at = NULL, version = version + 1 " +
+                    "WHERE id = " + id + " AND status = 'PENDING'");
+            return inv.callRealMethod();
+        }).when(interfering).next();
+
+        var ev = new IntakeService(intakes, wheel, writer, interfering, rollup, transactionManager).confirm(id, "en retard");
+
+        // Deuxième tentative sur la ligne relue : confirmée depuis MISSED, un manqué retiré de l'agrégat
+        verify(interfering, times(2)).next();
+        assertEquals(IntakeEvent.Status.CONFIRMED, ev.getStatus());
+        assertEquals("CONFIRMED", status(id));
+        assertEquals(2, jdbc.queryForObject("SELECT version FROM intake_events WHERE id = ?", Long.class, id));
+        assertEquals(-1, jdbc.queryForObject("SELECT SUM(missed) FROM patient_daily_adherence WHERE patient_id = ?",
+                Long.class, patientId));
+        verify(wheel).cancel(id);
+    }
+
+    @Test
+    void confirmGivesUpAfterTheLastAttempt() {
+        Long id = ids.get(1);
+        var interfering = spy(versions);
+        doAnswer(inv -> {
+            concurrently("UPDATE intake_events SET version = version + 1 WHERE id = " + id);
+            return inv.callRealMethod();
+        }).when(interfering).next();
+
+        var service = new IntakeService(intakes, wheel, writer, interfering, rollup, transactionManager);
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> service.confirm(id, "en retard"));
+
+        verify(interfering, times(IntakeService.CONFIRM_ATTEMPTS)).next();
+        assertEquals("PENDING", status(id));
+        verify(wheel, never()).cancel(id);
+    }
+
+    // Écriture validée par une autre connexion pendant la transaction en cours
+    private void concurrently(String sql) throws Exception {
+        var other = Executors.newSingleThreadExecutor();
+        try {
+            other.submit(() -> jdbc.update(sql)).get(5, TimeUnit.SECONDS);
+        } finally {
+            other.shutdown();
+        }
+    }
+
+    private static IntakeController.ConfirmItem item(Long id, Instant confirmedAt, String notes) {
+        var item = new IntakeController.ConfirmItem();
+        item.setIntakeId(id);
+        item.setConfirmedAt(confirmedAt);
+        item.setNotes(notes);
+        return item;
+    }
+
+    private Instant confirmedAt(Long id) {
+        return jdbc.queryForObject("SELECT confirmed_at FROM intake_events WHERE id = ?", OffsetDateTime.class, id).toInstant();
+    }
+
+    private Instant scheduledAt(Long id) {
+        return jdbc.queryForObject("SELECT scheduled_at FROM intake_events WHERE id = ?", OffsetDateTime.class, id).toInstant();
+    }
+
+    private String status(Long id) {
+        return jdbc.queryForObject("SELECT status FROM intake_events WHERE id = ?", String.class, id);
+    }
+}
@@ -0,0 +1,112 @@
+package com.pillpall.med_application.intakes;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// FOR UPDATE SKIP LOCKED n'est pas généré pour H2 : vérifié sur la base Postgres de storage.QueryPlanTest
+// (PILLPALL_PLAN_DB_URL). Les lignes du test sont validées puis supprimées ; leurs dates (1990) les tiennent
+// à l'écart de toute autre donnée
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=true",
+        "spring.flyway.postgresql.transactional-lock=false",
+        "spring.jpa.hibernate.ddl-auto=validate",
+        "spring.jpa.database-platform=org.hibernate.dialect.PostgreSQLDialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@EnabledIfEnvironmentVariable(named = "PILLPALL_PLAN_DB_URL", matches = ".+")
+@Import({IntakeTransitionService.class, AdherenceRollup.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class IntakeTransitionLockingTest {
+
+    private static final long BASE_ID = 910_000_000L;
+    private static final Instant BEFORE = Instant.parse("1990-01-02T00:00:00Z");
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> System.getenv("PILLPALL_PLAN_DB_URL"));
+        registry.add("spring.datasource.username", () -> System.getenv().getOrDefault("PILLPALL_PLAN_DB_USER", "postgres"));
+        registry.add("spring.datasource.password", () -> System.getenv().getOrDefault("PILLPALL_PLAN_DB_PASSWORD", ""));
+    }
+
+    @Autowired IntakeTransitionService transitions;
+    @Autowired JdbcTemplate jdbc;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    private List<Long> ids;
+
+    @BeforeEach
+    void setUp() {
+        cleanUp();
+        jdbc.update("INSERT INTO users (id, enabled, created_at, email, full_name, password, timezone) VALUES " +
+                "(?, true, now(), 'lock-patient@pillpall.test', 'Patient', 'x', 'UTC'), " +
+                "(?, true, now(), 'lock-docteur@pillpall.test', 'Docteur', 'x', 'UTC')", BASE_ID, BASE_ID + 1);
+        jdbc.update("INSERT INTO patient_profiles (id, user_id) VALUES (?, ?)", BASE_ID, BASE_ID);
+        jdbc.update("INSERT INTO doctor_profiles (id, user_id) VALUES (?, ?)", BASE_ID, BASE_ID + 1);
+        jdbc.update("INSERT INTO prescriptions (id, start_date, end_date, created_at, doctor_id, patient_id, medication_name) " +
+                "VALUES (?, date '1990-01-01', date '1990-01-01', now(), ?, ?, 'Doliprane')", BASE_ID, BASE_ID, BASE_ID);
+        for (int h = 0; h < 3; h++) {
+            jdbc.update("INSERT INTO intake_events (prescription_id, scheduled_at, status, reminder_stage, version) " +
+                    "VALUES (?, ?, 'PENDING', 'ESCALATED', 0)", BASE_ID, Timestamp.from(Instant.parse("1990-01-01T08:00:00Z").plusSeconds(3600L * h)));
+        }
+        ids = jdbc.queryForList("SELECT id FROM intake_events WHERE prescription_id = ? ORDER BY id", Long.class, BASE_ID);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        jdbc.update("DELETE FROM patient_daily_adherence WHERE patient_id = ?", BASE_ID);
+        jdbc.update("DELETE FROM intake_events WHERE prescription_id = ?", BASE_ID);
+        jdbc.update("DELETE FROM prescriptions WHERE id = ?", BASE_ID);
+        jdbc.update("DELETE FROM patient_profiles WHERE id = ?", BASE_ID);
+        jdbc.update("DELETE FROM doctor_profiles WHERE id = ?", BASE_ID);
+        jdbc.update("DELETE FROM users WHERE id IN (?, ?)", BASE_ID, BASE_ID + 1);
+    }
+
+    @Test
+    void rowsLockedByAConfirmationAreSkippedThenPickedUpOnTheNextPass() throws Exception {
+        // Confirmation en cours sur la deuxième prise : sa ligne reste verrouillée pendant le premier passage
+        var locked = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var confirmation = CompletableFuture.runAsync(() -> new TransactionTemplate(transactionManager).executeWithoutResult(s -> {
+            jdbc.queryForList("SELECT id FROM intake_events WHERE id = ? FOR UPDATE", Long.class, ids.get(1));
+            locked.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+        // Le passage n'attend pas le verrou : il saute la ligne et ne la compte pas
+        assertEquals(2, transitions.markMissedScheduledBefore(BEFORE));
+        assertEquals(List.of("MISSED", "PENDING", "MISSED"),
+                jdbc.queryForList("SELECT status FROM intake_events WHERE prescription_id = ? ORDER BY id", String.class, BASE_ID));
+
+        release.countDown();
+        confirmation.get(10, TimeUnit.SECONDS);
+        assertEquals(1, transitions.markMissedScheduledBefore(BEFORE));
+        assertEquals(3, jdbc.queryForObject("SELECT missed FROM patient_daily_adherence WHERE patient_id = ?", Integer.class, BASE_ID));
+    }
+}
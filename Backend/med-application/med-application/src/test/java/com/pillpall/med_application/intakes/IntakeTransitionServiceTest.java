@@ -0,0 +1,86 @@
+package com.pillpall.med_application.intakes;
+
+import com.pillpall.med_application.JpaTestSupport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@Import(IntakeEventWriter.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // chaque tranche valide sa propre transaction, comme en production
+class IntakeTransitionServiceTest extends JpaTestSupport {
+
+    @Autowired IntakeEventRepository intakes;
+    @Autowired IntakeEventWriter writer;
+    @Autowired JdbcTemplate jdbc;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    private final Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+    private List<Long> ids;
+
+    @BeforeEach
+    void setUp() {
+        String suffix = String.valueOf(System.nanoTime());
+        var p = prescriptions.save(doseAt(prescription(patient("patient-" + suffix + "@pillpall.test"),
+                doctor("docteur-" + suffix + "@pillpall.test"), "Doliprane", LocalDate.now().minusDays(1), LocalDate.now()), 8, 0));
+        writer.insertPending(p.getId(), IntStream.rangeClosed(1, 5).mapToObj(h -> now.minus(Duration.ofHours(6 - h))).toList());
+        ids = jdbc.queryForList("SELECT id FROM intake_events WHERE prescription_id = ? ORDER BY id", Long.class, p.getId());
+        jdbc.update("UPDATE intake_events SET reminder_stage = 'ESCALATED', next_action_at = NULL WHERE prescription_id = ?", p.getId());
+    }
+
+    @Test
+    void eachChunkCommitsAloneAndReturnsTheMarkedCount() {
+        // Tranches de deux ; l'agrégat échoue sur la seconde : la première reste validée, la seconde est annulée
+        var failing = mock(AdherenceRollup.class);
+        doNothing().doThrow(new IllegalStateException("panne")).when(failing).apply(any());
+        assertThrows(IllegalStateException.class, () -> service(failing).markMissedScheduledBefore(now));
+        assertEquals(List.of("MISSED", "MISSED", "PENDING", "PENDING", "PENDING"), statuses());
+
+        // Passage suivant : la reprise part des prises restantes, en deux tranches
+        var rollup = mock(AdherenceRollup.class);
+        assertEquals(3, service(rollup).markMissedScheduledBefore(now));
+        verify(rollup, times(2)).apply(any());
+        assertEquals(List.of("MISSED", "MISSED", "MISSED", "MISSED", "MISSED"), statuses());
+        assertEquals(0, service(rollup).markMissedScheduledBefore(now));
+    }
+
+    @Test
+    void intakesAreOnlyMarkedMissedOnceEscalated() {
+        // Roue en retard ou partition en cours de reprise : l'escalade de la troisième prise n'est pas encore passée
+        jdbc.update("UPDATE intake_events SET reminder_stage = 'REMINDED_4', next_action_at = ? WHERE id = ?",
+                Timestamp.from(now), ids.get(2));
+        service(mock(AdherenceRollup.class)).markMissedScheduledBefore(now);
+        assertEquals(List.of("MISSED", "MISSED", "PENDING", "MISSED", "MISSED"), statuses());
+
+        // Une fois l'étape ESCALATED atteinte, le passage suivant la prend
+        jdbc.update("UPDATE intake_events SET reminder_stage = 'ESCALATED', next_action_at = NULL WHERE id = ?", ids.get(2));
+        service(mock(AdherenceRollup.class)).markMissedScheduledBefore(now);
+        assertEquals(List.of("MISSED", "MISSED", "MISSED", "MISSED", "MISSED"), statuses());
+    }
+
+    private IntakeTransitionService service(AdherenceRollup rollup) {
+        var service = new IntakeTransitionService(intakes, rollup, transactionManager);
+        service.chunkSize = 2;
+        return service;
+    }
+
+    private List<String> statuses() {
+        return ids.stream().map(id -> jdbc.queryForObject("SELECT status FROM intake_events WHERE id = ?", String.class, id)).toList();
+    }
+}
@@ -0,0 +1,119 @@
+package com.pillpall.med_application.notifications;
+
+import com.pillpall.med_application.JpaTestSupport;
+import com.pillpall.med_application.intakes.PatientDailyAdherenceRepository;
+import com.pillpall.med_application.users.PatientProfile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DailySummaryJobTest extends JpaTestSupport {
+
+    @Autowired PatientDailyAdherenceRepository dailyAdherence;
+    @Autowired JdbcTemplate jdbc;
+
+    private final FcmBatchDispatcher fcm = mock(FcmBatchDispatcher.class);
+    private DailySummaryJob job;
+
+    @BeforeEach
+    void setUp() {
+        job = new DailySummaryJob(patients, dailyAdherence, fcm);
+        job.localTime = "20:00";
+        job.chunkSize = 1;
+        job.catchUpHours = 6;
+    }
+
+    @Test
+    void eachTimezoneIsDueFromItsOwnLocalEvening() {
+        Instant at = Instant.parse("2026-05-12T19:05:00Z"); // 20:05 à Casablanca (UTC+1), 04:05 à Tokyo
+
+        assertEquals(LocalDate.parse("2026-05-12"), job.dueDay(at, ZoneId.of("Africa/Casablanca")));
+        assertNull(job.dueDay(at, ZoneId.of("Asia/Tokyo"))); // résumé de la veille trop ancien
+        assertEquals(LocalDate.parse("2026-05-12"), job.dueDay(Instant.parse("2026-05-12T11:00:00Z"), ZoneId.of("Asia/Tokyo")));
+        // Toujours dû plus tard dans la soirée, jusqu'à catchUpHours après l'heure prévue
+        assertEquals(LocalDate.parse("2026-05-12"), job.dueDay(Instant.parse("2026-05-13T00:30:00Z"), ZoneId.of("Africa/Casablanca")));
+        assertNull(job.dueDay(Instant.parse("2026-05-13T01:30:00Z"), ZoneId.of("Africa/Casablanca")));
+        assertNull(job.dueDay(Instant.parse("2026-05-12T18:55:00Z"), ZoneId.of("Africa/Casablanca")));
+    }
+
+    @Test
+    void halfHourOffsetsAreDueAtTheirLocalTime() {
+        assertEquals(LocalDate.parse("2026-05-12"), job.dueDay(Instant.parse("2026-05-12T14:30:00Z"), ZoneId.of("Asia/Kolkata"))); // 20:00 IST
+    }
+
+    @Test
+    void summaryIsSentOncePerDayAndCaughtUpAfterAMissedSlot() {
+        // Fuseau du support de test (Europe/Paris, UTC+2 en mai) ; chunkSize = 1 : trois tranches
+        var first = pushTarget("premier@pillpall.test");
+        var second = pushTarget("second@pillpall.test");
+        var third = pushTarget("troisieme@pillpall.test");
+        jdbc.update("INSERT INTO patient_daily_adherence (patient_id, local_date, scheduled, confirmed, missed, delay_minutes) " +
+                "VALUES (?, date '2026-05-12', 4, 3, 1, 0)", first.getId());
+
+        // Créneau de 20:00 manqué (verrou, panne) : le passage de 21:45 envoie quand même
+        job.run(Instant.parse("2026-05-12T19:45:00Z"));
+        var messages = ArgumentCaptor.forClass(FcmMessage.class);
+        verify(fcm, times(3)).submit(isNull(), messages.capture(), any());
+        assertEquals(List.of("token-premier@pillpall.test", "token-second@pillpall.test", "token-troisieme@pillpall.test"),
+                messages.getAllValues().stream().map(FcmMessage::getToken).toList());
+        assertTrue(messages.getAllValues().get(0).getBody().contains("3 prises effectuées, 1 oubliées"));
+        assertTrue(messages.getAllValues().get(1).getBody().contains("0 prises effectuées, 0 oubliées"));
+        assertEquals(List.of(LocalDate.parse("2026-05-12")), summaryDates(first, second, third));
+
+        // Passages suivants de la soirée : rien de plus
+        job.run(Instant.parse("2026-05-12T20:00:00Z"));
+        job.run(Instant.parse("2026-05-12T22:15:00Z"));
+        verify(fcm, times(3)).submit(any(), any(), any());
+
+        // Le lendemain soir : nouveau résumé
+        job.run(Instant.parse("2026-05-13T18:00:00Z"));
+        verify(fcm, times(6)).submit(any(), any(), any());
+        assertEquals(List.of(LocalDate.parse("2026-05-13")), summaryDates(first, second, third));
+    }
+
+    @Test
+    void summaryDroppedBySaturationIsSentAgainOnTheNextPass() {
+        var first = pushTarget("premier@pillpall.test");
+        var second = pushTarget("second@pillpall.test");
+        var third = pushTarget("troisieme@pillpall.test");
+
+        // Le push du deuxième patient est abandonné par le dispatcher (file pleine, pipeline saturé)
+        doAnswer(inv -> {
+            if (inv.<FcmMessage>getArgument(1).getToken().equals("token-second@pillpall.test")) inv.<Runnable>getArgument(2).run();
+            return null;
+        }).when(fcm).submit(any(), any(), any());
+        job.run(Instant.parse("2026-05-12T18:15:00Z"));
+        verify(fcm, times(3)).submit(any(), any(), any());
+
+        // Seul ce patient est repris au passage suivant
+        reset(fcm);
+        job.run(Instant.parse("2026-05-12T18:30:00Z"));
+        var messages = ArgumentCaptor.forClass(FcmMessage.class);
+        verify(fcm).submit(isNull(), messages.capture(), any());
+        assertEquals("token-second@pillpall.test", messages.getValue().getToken());
+        assertEquals(List.of(LocalDate.parse("2026-05-12")), summaryDates(first, second, third));
+    }
+
+    private PatientProfile pushTarget(String email) {
+        var patient = patient(email);
+        patient.getUser().setDeviceToken("token-" + email);
+        users.save(patient.getUser());
+        return patient;
+    }
+
+    private List<LocalDate> summaryDates(PatientProfile... profiles) {
+        return jdbc.queryForList("SELECT DISTINCT last_summary_date FROM patient_profiles WHERE id IN (?, ?, ?)",
+                LocalDate.class, profiles[0].getId(), profiles[1].getId(), profiles[2].getId());
+    }
+}
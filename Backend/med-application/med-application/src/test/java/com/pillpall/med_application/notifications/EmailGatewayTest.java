@@ -0,0 +1,118 @@
+package com.pillpall.med_application.notifications;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import jakarta.mail.internet.InternetAddress;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmailGatewayTest {
+
+    @RegisterExtension
+    static GreenMailExtension smtp = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private static final int MESSAGES = 200;
+
+    private final CountingSocketFactory sockets = new CountingSocketFactory();
+
+    @Test
+    void batchIsSentOverPooledConnections() {
+        var mail = sender();
+        var gateway = new EmailGateway(mail);
+        gateway.poolSize = 2;
+        var batch = IntStream.range(0, MESSAGES)
+                .mapToObj(i -> new EmailMessage("contact" + i + "@pillpall.test", "Alerte patient", "Prise " + i))
+                .toList();
+
+        List<DeliveryOutcome> outcomes = gateway.sendAll(batch);
+
+        assertEquals(MESSAGES, outcomes.size());
+        assertTrue(outcomes.stream().allMatch(o -> o == DeliveryOutcome.SENT));
+        assertEquals(MESSAGES, smtp.getReceivedMessages().length);
+        assertEquals(1, sockets.opened.get(), "one SMTP session for the whole batch");
+
+        // Lot suivant : la connexion du pool est réutilisée
+        gateway.sendAll(batch.subList(0, 10));
+        assertEquals(1, sockets.opened.get());
+        gateway.stop();
+
+        // Référence : un SimpleMailMessage par session SMTP, comme avant
+        sockets.opened.set(0);
+        for (int i = 0; i < MESSAGES; i++) {
+            var m = new SimpleMailMessage();
+            m.setTo("contact" + i + "@pillpall.test"); m.setSubject("Alerte patient"); m.setText("Prise " + i);
+            mail.send(m);
+        }
+        assertEquals(MESSAGES, sockets.opened.get());
+    }
+
+    @Test
+    void smtpReplyCodesAreClassified() throws Exception {
+        var address = new InternetAddress("x@pillpall.test");
+        assertEquals(DeliveryOutcome.PERMANENT_FAILURE,
+                EmailGateway.classify(new SMTPAddressFailedException(address, "RCPT", 550, "no such user")));
+        assertEquals(DeliveryOutcome.TRANSIENT_FAILURE,
+                EmailGateway.classify(new SMTPAddressFailedException(address, "RCPT", 451, "try again later")));
+        assertEquals(DeliveryOutcome.TRANSIENT_FAILURE,
+                EmailGateway.classify(new jakarta.mail.MessagingException("connection reset")));
+    }
+
+    // Chaque session SMTP ouvre une socket via cette fabrique
+    private JavaMailSenderImpl sender() {
+        var mail = new JavaMailSenderImpl();
+        mail.setHost("localhost");
+        mail.setPort(ServerSetupTest.SMTP.getPort());
+        var props = new Properties();
+        props.put("mail.smtp.socketFactory", sockets);
+        mail.setJavaMailProperties(props);
+        return mail;
+    }
+
+    private static class CountingSocketFactory extends SocketFactory {
+        private final AtomicInteger opened = new AtomicInteger();
+
+        @Override
+        public Socket createSocket() {
+            opened.incrementAndGet();
+            return new Socket();
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            opened.incrementAndGet();
+            return new Socket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            opened.incrementAndGet();
+            return new Socket(host, port, localHost, localPort);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            opened.incrementAndGet();
+            return new Socket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            opened.incrementAndGet();
+            return new Socket(address, port, localAddress, localPort);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.pillpall.med_application.notifications;
+
+import com.twilio.exception.ApiException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class EscalationDigesterTest {
+
+    private final EmailGateway email = mock(EmailGateway.class);
+    private final SmsGateway sms = mock(SmsGateway.class);
+    private final NotificationPipeline pipeline = mock(NotificationPipeline.class);
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final NotificationAttemptRepository attempts = mock(NotificationAttemptRepository.class);
+    private final List<DeliveryOutcome> results = new ArrayList<>();
+    private EscalationDigester digester;
+
+    @BeforeEach
+    void setUp() {
+        doAnswer(inv -> { inv.<Runnable>getArgument(1).run(); return null; }).when(pipeline).execute(any(), any());
+        when(email.sendAll(anyList())).thenAnswer(inv -> inv.<List<?>>getArgument(0).stream()
+                .map(m -> DeliveryOutcome.SENT).toList());
+        digester = new EscalationDigester(email, sms, pipeline, meters, attempts);
+        digester.windowMinutes = 5;
+        digester.emailBatchSize = 50;
+        digester.recoverySeconds = 600;
+    }
+
+    @Test
+    void firstAlertIsSentAndLaterOnesAreMergedIntoOneDigest() {
+        digester.submit(NotificationChannel.EMAIL, "aidant@pillpall.test", "Alerte patient", "Doliprane", 1L, results::add);
+        digester.flush();
+        verify(email).sendAll(List.of(new EmailMessage("aidant@pillpall.test", "Alerte patient", "Doliprane")));
+
+        digester.submit(NotificationChannel.EMAIL, "aidant@pillpall.test", "Alerte patient", "Ventoline", 2L, results::add);
+        digester.submit(NotificationChannel.EMAIL, "aidant@pillpall.test", "Alerte patient", "Lasilix", 3L, results::add);
+        digester.flush(); // fenêtre encore ouverte : rien ne part
+        verify(email, times(1)).sendAll(anyList());
+
+        digester.stop(); // fin de fenêtre forcée
+        verify(email).sendAll(List.of(new EmailMessage("aidant@pillpall.test", "Alerte patient (2 alertes)", "Ventoline\n\nLasilix")));
+        assertEquals(List.of(DeliveryOutcome.SENT, DeliveryOutcome.SENT, DeliveryOutcome.SENT), results);
+        assertEquals(1.0, meters.counter("notifications.escalation.suppressed", "channel", "EMAIL", "reason", "digest").count());
+    }
+
+    @Test
+    void alertsHeldInAWindowStayRecoverableFromTheOutbox() {
+        Instant before = Instant.now();
+        digester.submit(NotificationChannel.EMAIL, "aidant@pillpall.test", "Alerte patient", "Doliprane", 1L, results::add);
+        verifyNoInteractions(attempts); // envoyée tout de suite
+
+        // Mise en attente : la tentative devient réclamable par l'outbox après la fenêtre et sa marge,
+        // au cas où le noeud s'arrêterait avant le récapitulatif
+        digester.submit(NotificationChannel.EMAIL, "aidant@pillpall.test", "Alerte patient", "Ventoline", 2L, results::add);
+        var deadline = ArgumentCaptor.forClass(Instant.class);
+        verify(attempts).markRetry(eq(2L), eq("digest"), deadline.capture());
+        assertFalse(deadline.getValue().isBefore(before.plus(Duration.ofMinutes(5)).plusSeconds(600)));
+
+        // Sans suivi : rien à reprendre
+        digester.submit(NotificationChannel.EMAIL, "aidant@pillpall.test", "Alerte patient", "Lasilix", null, results::add);
+        verifyNoMoreInteractions(attempts);
+    }
+
+    @Test
+    void smsOutcomeIsReportedAsIs() {
+        when(sms.send(eq("+212600000000"), anyString())).thenReturn(DeliveryOutcome.TRANSIENT_FAILURE);
+        when(sms.send(eq("+000"), anyString())).thenReturn(DeliveryOutcome.PERMANENT_FAILURE);
+        digester.submit(NotificationChannel.SMS, "+212600000000", null, "Alerte", 1L, results::add);
+        digester.submit(NotificationChannel.SMS, "+000", null, "Alerte", 2L, results::add);
+        digester.flush();
+        assertEquals(List.of(DeliveryOutcome.TRANSIENT_FAILURE, DeliveryOutcome.PERMANENT_FAILURE), results);
+    }
+
+    @Test
+    void twilioClientErrorsArePermanentExceptRateLimiting() {
+        assertEquals(DeliveryOutcome.PERMANENT_FAILURE,
+                SmsGateway.classify(new ApiException("The 'To' number is not a valid phone number.", 21211, null, 400, null)));
+        assertEquals(DeliveryOutcome.TRANSIENT_FAILURE,
+                SmsGateway.classify(new ApiException("Too Many Requests", 20429, null, 429, null)));
+        assertEquals(DeliveryOutcome.TRANSIENT_FAILURE,
+                SmsGateway.classify(new ApiException("Service Unavailable", 20500, null, 503, null)));
+        assertEquals(DeliveryOutcome.TRANSIENT_FAILURE, SmsGateway.classify(new IllegalStateException("connection reset")));
+    }
+}
@@ -0,0 +1,63 @@
+package com.pillpall.med_application.notifications;
+
+import com.pillpall.med_application.JpaTestSupport;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // deux transactions concurrentes, validées
+class EscalationLedgerRepositoryTest extends JpaTestSupport {
+
+    @Autowired EscalationLedgerRepository ledger;
+    @Autowired JdbcTemplate jdbc;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    @Test
+    void concurrentClaimsEscalateOnceWithoutFailingTheLoser() throws Exception {
+        long intakeId = System.nanoTime();
+        var tx = new TransactionTemplate(transactionManager);
+        var claimed = new CountDownLatch(1);
+        var commit = new CountDownLatch(1);
+
+        // Premier tick : réserve l'escalade et ne valide qu'après que le second a tenté la sienne
+        var first = CompletableFuture.supplyAsync(() -> tx.execute(s -> {
+            int n = ledger.claim(intakeId, "EMAIL", Instant.now());
+            claimed.countDown();
+            await(commit);
+            return n;
+        }));
+        assertTrue(claimed.await(10, TimeUnit.SECONDS));
+
+        // Second tick (autre noeud) : attend la validation du premier, n'insère rien, et sa transaction continue
+        var second = CompletableFuture.supplyAsync(() -> tx.execute(s -> {
+            int n = ledger.claim(intakeId, "EMAIL", Instant.now());
+            int other = ledger.claim(intakeId, "SMS", Instant.now());
+            return n * 10 + other;
+        }));
+        Thread.sleep(200);
+        commit.countDown();
+
+        assertEquals(1, first.get(10, TimeUnit.SECONDS));
+        assertEquals(1, second.get(10, TimeUnit.SECONDS)); // EMAIL : 0, SMS : 1, validé
+        assertEquals(2, jdbc.queryForObject("SELECT count(*) FROM escalation_ledger WHERE intake_event_id = ?", Integer.class, intakeId));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
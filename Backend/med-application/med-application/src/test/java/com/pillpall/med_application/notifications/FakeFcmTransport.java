@@ -0,0 +1,32 @@
+package com.pillpall.med_application.notifications;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Transport FCM local pour les tests de charge : aucun appel réseau. Les jetons « morts » répondent comme
+// un appareil désinstallé (UNREGISTERED), les jetons « en échec » comme une erreur passagère ; un lot peut
+// aussi échouer en entier (panne réseau, quota)
+class FakeFcmTransport implements FcmTransport {
+
+    final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    final Set<String> deadTokens = new HashSet<>();
+    final Set<String> failingTokens = new HashSet<>();
+    int failingBatch = -1;
+    long latencyMillis;
+
+    @Override
+    public List<Result> sendEach(List<FcmMessage> messages) throws Exception {
+        int batch = batchSizes.size();
+        batchSizes.add(messages.size());
+        if (latencyMillis > 0) Thread.sleep(latencyMillis);
+        if (batch == failingBatch) throw new IllegalStateException("FCM unavailable");
+
+        List<Result> results = new ArrayList<>(messages.size());
+        for (var m : messages) {
+            if (deadTokens.contains(m.getToken())) results.add(Result.invalidToken("Requested entity was not found."));
+            else if (failingTokens.contains(m.getToken())) results.add(Result.failed("Internal error"));
+            else results.add(Result.ok("projects/pillpall/messages/" + m.getToken()));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,111 @@
+package com.pillpall.med_application.notifications;
+
+import com.pillpall.med_application.JpaTestSupport;
+import com.pillpall.med_application.users.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class FcmGatewayTest extends JpaTestSupport {
+
+    @Autowired JdbcTemplate jdbc;
+
+    private final FakeFcmTransport transport = new FakeFcmTransport();
+    private FcmGateway gateway;
+
+    @BeforeEach
+    void setUp() {
+        gateway = new FcmGateway(transport, users);
+    }
+
+    @Test
+    void messagesAreSentInChunksOfFiveHundredWithOneResultEachInOrder() {
+        var results = gateway.sendAll(messages(1_234));
+
+        assertEquals(List.of(500, 500, 234), transport.batchSizes);
+        assertEquals(1_234, results.size());
+        assertEquals("projects/pillpall/messages/token-0", results.get(0).getMessageId());
+        assertEquals("projects/pillpall/messages/token-1233", results.get(1_233).getMessageId());
+    }
+
+    @Test
+    void invalidTokensAreClearedAndOtherFailuresAreKept() {
+        User dead = user("desinstalle@pillpall.test");
+        dead.setDeviceToken("token-3");
+        User flaky = user("instable@pillpall.test");
+        flaky.setDeviceToken("token-4");
+        User healthy = user("actif@pillpall.test");
+        healthy.setDeviceToken("token-600");
+        users.saveAllAndFlush(List.of(dead, flaky, healthy));
+        transport.deadTokens.add("token-3");
+        transport.failingTokens.add("token-4");
+        transport.failingBatch = 1; // tout le second lot échoue : ses jetons ne sont pas en cause
+
+        var results = gateway.sendAll(messages(700));
+
+        assertTrue(results.get(3).isTokenInvalid());
+        assertFalse(results.get(4).isSuccess());
+        assertFalse(results.get(4).isTokenInvalid());
+        assertEquals("FCM unavailable", results.get(600).getError());
+        assertTrue(results.get(0).isSuccess());
+
+        // Mise à jour en masse : lue en base, hors du contexte de persistance du test
+        assertNull(token(dead));
+        assertEquals("token-4", token(flaky));
+        assertEquals("token-600", token(healthy));
+    }
+
+    @Test
+    void dispatcherUnderLoadReportsEachResultOnItsAttempt() throws Exception {
+        var attempts = mock(NotificationAttemptRepository.class);
+        var pipeline = new NotificationPipeline(new SimpleMeterRegistry());
+        pipeline.queueCapacity = 10;
+        pipeline.fcmConcurrency = 4;
+        pipeline.emailConcurrency = 1;
+        pipeline.smsConcurrency = 1;
+        pipeline.offerTimeoutMillis = 10_000;
+        pipeline.start();
+        var dispatcher = new FcmBatchDispatcher(gateway, attempts, pipeline);
+        dispatcher.windowMillis = 50;
+        dispatcher.queueCapacity = 2_000;
+        dispatcher.offerTimeoutMillis = 10_000;
+        dispatcher.start();
+        transport.latencyMillis = 20;
+        transport.failingTokens.add("token-42");
+
+        List<FcmMessage> messages = messages(5_000);
+        for (int i = 0; i < messages.size(); i++) dispatcher.submit((long) i, messages.get(i));
+        dispatcher.stop();
+        pipeline.stop();
+
+        assertTrue(transport.batchSizes.stream().allMatch(n -> n <= FcmGateway.MAX_BATCH));
+        assertEquals(5_000, transport.batchSizes.stream().mapToInt(Integer::intValue).sum());
+        verify(attempts).markFailed(42L, "Internal error");
+        verify(attempts, times(1)).markFailed(anyLong(), anyString());
+        List<Long> sent = new ArrayList<>();
+        mockingDetails(attempts).getInvocations().stream()
+                .filter(i -> i.getMethod().getName().equals("markSent"))
+                .forEach(i -> sent.addAll(i.<List<Long>>getArgument(0)));
+        assertEquals(4_999, sent.size());
+        assertFalse(sent.contains(42L));
+    }
+
+    private String token(User user) {
+        return jdbc.queryForObject("SELECT device_token FROM users WHERE id = ?", String.class, user.getId());
+    }
+
+    private static List<FcmMessage> messages(int n) {
+        return IntStream.range(0, n).mapToObj(i -> new FcmMessage("token-" + i, "Rappel", "Doliprane", Map.of())).toList();
+    }
+}
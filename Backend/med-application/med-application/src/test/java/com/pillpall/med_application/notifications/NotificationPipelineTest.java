@@ -0,0 +1,109 @@
+package com.pillpall.med_application.notifications;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class NotificationPipelineTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private NotificationPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        // Un envoi FCM à la fois, une seule place en file
+        pipeline = new NotificationPipeline(meters);
+        pipeline.queueCapacity = 1;
+        pipeline.fcmConcurrency = 1;
+        pipeline.emailConcurrency = 1;
+        pipeline.smsConcurrency = 1;
+        pipeline.offerTimeoutMillis = 100;
+        pipeline.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        release.countDown();
+        pipeline.stop();
+    }
+
+    @Test
+    void saturatedChannelRejectsAfterTheOfferTimeoutInsteadOfBlocking() throws Exception {
+        var started = new CountDownLatch(1);
+        pipeline.execute(NotificationChannel.FCM, () -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        pipeline.execute(NotificationChannel.FCM, () -> await(release));
+
+        assertEquals(1.0, gauge("notifications.inflight", "FCM"));
+        assertEquals(1.0, gauge("notifications.queue.depth", "FCM"));
+        assertEquals(0.0, gauge("notifications.queue.depth", "EMAIL"));
+
+        long start = System.nanoTime();
+        assertThrows(RejectedExecutionException.class, () -> pipeline.execute(NotificationChannel.FCM, () -> { }));
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(waited >= 100 && waited < 2_000, waited + " ms");
+        assertEquals(1.0, meters.counter("notifications.rejected", "channel", "FCM").count());
+
+        // Les autres canaux ne sont pas touchés
+        var email = new CountDownLatch(1);
+        pipeline.execute(NotificationChannel.EMAIL, email::countDown);
+        assertTrue(email.await(5, TimeUnit.SECONDS));
+
+        release.countDown();
+        pipeline.execute(NotificationChannel.FCM, () -> { });
+    }
+
+    @Test
+    void saturatedFcmBatchesFallBackToTheOutbox() {
+        var attempts = mock(NotificationAttemptRepository.class);
+        var saturated = mock(NotificationPipeline.class);
+        doThrow(new RejectedExecutionException("FCM pipeline saturated")).when(saturated).execute(any(), any());
+        var dispatcher = new FcmBatchDispatcher(mock(FcmGateway.class), attempts, saturated);
+        dispatcher.queueCapacity = 10;
+        dispatcher.retryBaseSeconds = 30;
+        dispatcher.windowMillis = 60_000;
+        dispatcher.start();
+
+        var dropped = mock(Runnable.class);
+        dispatcher.submit(1L, message());
+        dispatcher.submit(null, message(), dropped);
+        dispatcher.submit(2L, message());
+        dispatcher.flush();
+
+        verify(attempts).markRetry(eq(1L), eq("backpressure"), any());
+        verify(attempts).markRetry(eq(2L), eq("backpressure"), any());
+        verifyNoMoreInteractions(attempts);
+        // Push sans suivi : son émetteur est prévenu de l'abandon
+        verify(dropped).run();
+    }
+
+    private double gauge(String name, String channel) {
+        return meters.get(name).tag("channel", channel).gauge().value();
+    }
+
+    private static FcmMessage message() {
+        return new FcmMessage("token", "Rappel", "Doliprane", Map.of());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
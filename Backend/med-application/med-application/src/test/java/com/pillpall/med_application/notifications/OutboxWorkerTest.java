@@ -0,0 +1,173 @@
+package com.pillpall.med_application.notifications;
+
+import com.pillpall.med_application.JpaTestSupport;
+import com.pillpall.med_application.intakes.IntakeEventRepository;
+import com.pillpall.med_application.intakes.IntakeEventWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@Import(IntakeEventWriter.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // réclamation et envoi dans leurs propres transactions
+class OutboxWorkerTest extends JpaTestSupport {
+
+    @Autowired IntakeEventRepository intakes;
+    @Autowired NotificationAttemptRepository attempts;
+    @Autowired IntakeEventWriter writer;
+    @Autowired JdbcTemplate jdbc;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    private final NotificationPipeline pipeline = mock(NotificationPipeline.class);
+    private final FcmGateway fcm = mock(FcmGateway.class);
+    private final Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+    private OutboxWorker worker;
+    private Long intakeId;
+
+    @BeforeEach
+    void setUp() {
+        jdbc.update("DELETE FROM notification_attempts");
+        String suffix = String.valueOf(System.nanoTime());
+        var p = prescriptions.save(doseAt(prescription(patient("patient-" + suffix + "@pillpall.test"),
+                doctor("docteur-" + suffix + "@pillpall.test"), "Doliprane", LocalDate.now(), LocalDate.now()), 8, 0));
+        writer.insertPending(p.getId(), List.of(now));
+        intakeId = jdbc.queryForObject("SELECT id FROM intake_events WHERE prescription_id = ?", Long.class, p.getId());
+
+        // Deux envois FCM démarrables, exécutés sur place
+        when(pipeline.idleWorkers(any())).thenReturn(0);
+        when(pipeline.idleWorkers(NotificationChannel.FCM)).thenReturn(2);
+        doAnswer(inv -> { inv.<Runnable>getArgument(1).run(); return null; }).when(pipeline).execute(any(), any());
+        worker = new OutboxWorker(attempts, pipeline, fcm, mock(EscalationDigester.class), transactionManager);
+        worker.batchSize = 2;
+        worker.leaseSeconds = 600;
+        worker.maxRetries = 3;
+        worker.retryBaseSeconds = 30;
+    }
+
+    @Test
+    void claimsDueRowsUnderALeaseAndLeavesTheOthers() {
+        Long due = outbox(now.minusSeconds(1));
+        Long later = outbox(now.plus(Duration.ofHours(1)));
+
+        var claim = worker.claim(NotificationChannel.FCM);
+
+        assertEquals(List.of(due), claim.getRows().stream().map(NotificationAttemptRepository.OutboxView::getId).toList());
+        var leased = attempts.findById(due).orElseThrow();
+        assertEquals(1, leased.getRetries());
+        assertEquals(0, Duration.between(claim.getLeaseUntil(), leased.getRetryAfter()).abs().toMillis());
+        assertFalse(leased.getRetryAfter().isBefore(now.plusSeconds(600)));
+        assertEquals(0, attempts.findById(later).orElseThrow().getRetries());
+        // Sous bail : pas réclamable une seconde fois
+        assertTrue(worker.claim(NotificationChannel.FCM).getRows().isEmpty());
+    }
+
+    @Test
+    void rowsOfADeadWorkerComeBackWhenTheLeaseExpires() {
+        Long id = outbox(now.minusSeconds(1));
+        worker.claim(NotificationChannel.FCM); // le worker s'arrête sans envoyer
+        assertTrue(worker.claim(NotificationChannel.FCM).getRows().isEmpty());
+
+        // Fin du bail
+        jdbc.update("UPDATE notification_attempts SET retry_after = ? WHERE id = ?", Timestamp.from(now.minusSeconds(1)), id);
+        var retaken = worker.claim(NotificationChannel.FCM);
+        assertEquals(1, retaken.getRows().size());
+        assertEquals(2, retaken.getRows().get(0).getRetries());
+    }
+
+    @Test
+    void aBatchWhoseLeaseExpiredBeforeDeliveryIsNotSent() {
+        outbox(now.minusSeconds(1));
+        var claim = worker.claim(NotificationChannel.FCM);
+
+        worker.deliver(NotificationChannel.FCM, new OutboxWorker.Claim(claim.getRows(), Instant.now().minusSeconds(1)));
+
+        verifyNoInteractions(fcm);
+    }
+
+    @Test
+    void transientFailuresBackOffExponentiallyThenFail() {
+        Long id = outbox(now.minusSeconds(1));
+        when(fcm.sendAll(anyList())).thenReturn(List.of(FcmTransport.Result.failed("Internal error")));
+
+        // Tentatives 1 et 2 : 30 s puis 60 s d'attente ; la troisième (maxRetries) est définitive
+        for (long delay : new long[]{30, 60}) {
+            worker.drain();
+            var a = attempts.findById(id).orElseThrow();
+            assertEquals(NotificationAttempt.Status.PENDING, a.getStatus());
+            long waited = Duration.between(Instant.now(), a.getRetryAfter()).toSeconds();
+            assertTrue(waited > delay - 5 && waited <= delay, waited + " s");
+            jdbc.update("UPDATE notification_attempts SET retry_after = ? WHERE id = ?", Timestamp.from(now.minusSeconds(1)), id);
+        }
+        worker.drain();
+        var a = attempts.findById(id).orElseThrow();
+        assertEquals(NotificationAttempt.Status.FAILED, a.getStatus());
+        assertEquals(3, a.getRetries());
+        verify(fcm, times(3)).sendAll(anyList());
+    }
+
+    @Test
+    void claimsNoMoreBatchesThanThePipelineCanStart() {
+        for (int i = 0; i < 7; i++) outbox(now.minusSeconds(10 - i));
+        when(fcm.sendAll(anyList())).thenAnswer(inv -> inv.<List<?>>getArgument(0).stream()
+                .map(m -> FcmTransport.Result.ok("id")).toList());
+
+        // Deux envois libres, lots de deux : quatre lignes seulement
+        worker.drain();
+        assertEquals(4, count(NotificationAttempt.Status.SENT));
+        assertEquals(3, count(NotificationAttempt.Status.PENDING));
+
+        // Canal occupé : rien n'est réclamé
+        when(pipeline.idleWorkers(NotificationChannel.FCM)).thenReturn(0);
+        worker.drain();
+        assertEquals(3, count(NotificationAttempt.Status.PENDING));
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM notification_attempts WHERE retries > 0 AND status = 'PENDING'", Integer.class));
+    }
+
+    @Test
+    void aRejectedBatchIsReleasedWithoutCountingAnAttempt() {
+        Long id = outbox(now.minusSeconds(1));
+        doThrow(new RejectedExecutionException("FCM pipeline saturated")).when(pipeline).execute(any(), any());
+
+        worker.drain();
+
+        var a = attempts.findById(id).orElseThrow();
+        assertEquals(0, a.getRetries());
+        assertFalse(a.getRetryAfter().isAfter(Instant.now()));
+        verifyNoInteractions(fcm);
+    }
+
+    private long count(NotificationAttempt.Status status) {
+        return attempts.findAll().stream().filter(a -> a.getStatus() == status).count();
+    }
+
+    private Long outbox(Instant retryAfter) {
+        return attempts.save(NotificationAttempt.builder()
+                .intakeEvent(intakes.findById(intakeId).orElseThrow())
+                .channel(NotificationChannel.FCM.name())
+                .success(false)
+                .details("queued")
+                .attemptAt(now)
+                .status(NotificationAttempt.Status.PENDING)
+                .retryAfter(retryAfter)
+                .recipient("device-token")
+                .title("Rappel de prise")
+                .body("Il est temps de prendre: Doliprane")
+                .build()).getId();
+    }
+}
@@ -0,0 +1,93 @@
+package com.pillpall.med_application.notifications;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReminderPartitionsTest {
+
+    // Plusieurs noeuds partagent une même base, comme plusieurs répliques du backend
+
+    private static final int COUNT = 16;
+
+    private JdbcDataSource dataSource;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:partitions-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE shedlock (name VARCHAR(64) PRIMARY KEY, lock_until TIMESTAMP(3) NOT NULL, " +
+                "locked_at TIMESTAMP(3) NOT NULL, locked_by VARCHAR(255) NOT NULL)");
+    }
+
+    @Test
+    void partitionsAreSplitBetweenNodesAndRebalancedWhenOneLeaves() {
+        var a = node();
+        var b = node();
+        var c = node();
+        var nodes = new ArrayList<>(List.of(a, b, c));
+
+        rounds(nodes);
+        assertCoveredOnce(nodes);
+        nodes.forEach(n -> assertTrue(n.owned().size() <= 6, "fair share of 16 over 3 nodes"));
+
+        b.stop();
+        nodes.remove(b);
+        rounds(nodes);
+        assertCoveredOnce(nodes);
+        assertEquals(8, a.owned().size());
+        assertEquals(8, c.owned().size());
+    }
+
+    @Test
+    void ownsFollowsPatientIdModulo() {
+        var a = node();
+        a.rebalance();
+        assertEquals(COUNT, a.owned().size());
+        assertTrue(a.owns(3L) && a.owns(3L + COUNT));
+    }
+
+    @Test
+    void aNodeCannotExtendALeaseTakenOverByAnotherNodeOnTheSameHost() {
+        var a = node();
+        a.rebalance();
+        var held = a.owned();
+
+        // a est en pause au-delà de son bail : b (même hôte) reprend toutes les partitions
+        jdbc.update("UPDATE shedlock SET lock_until = DATEADD('SECOND', -1, CURRENT_TIMESTAMP(3))");
+        var b = node();
+        b.rebalance();
+        assertEquals(held, b.owned());
+        String lockedBy = jdbc.queryForObject("SELECT locked_by FROM shedlock WHERE name = 'reminderPartition-0'", String.class);
+
+        // a reprend la main : la prolongation de ses anciens baux échoue, b les garde
+        a.rebalance();
+        assertTrue(Collections.disjoint(a.owned(), b.owned()), a.owned() + " / " + b.owned());
+        assertEquals(lockedBy, jdbc.queryForObject("SELECT locked_by FROM shedlock WHERE name = 'reminderPartition-0'", String.class));
+    }
+
+    private ReminderPartitions node() {
+        var n = new ReminderPartitions(jdbc);
+        n.count = COUNT;
+        n.leaseSeconds = 60;
+        return n;
+    }
+
+    private static void rounds(List<ReminderPartitions> nodes) {
+        for (int i = 0; i < 4; i++) nodes.forEach(ReminderPartitions::rebalance);
+    }
+
+    private static void assertCoveredOnce(List<ReminderPartitions> nodes) {
+        List<Integer> all = new ArrayList<>();
+        nodes.forEach(n -> all.addAll(n.owned()));
+        assertEquals(COUNT, all.size(), "each partition owned by exactly one node");
+        assertEquals(COUNT, new HashSet<>(all).size());
+    }
+}
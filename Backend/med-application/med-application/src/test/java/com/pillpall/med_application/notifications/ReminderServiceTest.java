@@ -0,0 +1,166 @@
+package com.pillpall.med_application.notifications;
+
+import com.pillpall.med_application.JpaTestSupport;
+import com.pillpall.med_application.intakes.IntakeEvent;
+import com.pillpall.med_application.intakes.IntakeEventRepository;
+import com.pillpall.med_application.intakes.IntakeEventWriter;
+import com.pillpall.med_application.intakes.IntakeTransitionService;
+import com.pillpall.med_application.users.Contact;
+import com.pillpall.med_application.users.ContactRepository;
+import com.pillpall.med_application.users.PatientProfile;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@Import(IntakeEventWriter.class)
+class ReminderServiceTest extends JpaTestSupport {
+
+    @Autowired EntityManagerFactory entityManagerFactory;
+    @Autowired IntakeEventRepository intakes;
+    @Autowired NotificationAttemptRepository attempts;
+    @Autowired ContactRepository contacts;
+    @Autowired EscalationLedgerRepository ledger;
+    @Autowired IntakeEventWriter writer;
+    @Autowired JdbcTemplate jdbc;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    private final FcmBatchDispatcher fcm = mock(FcmBatchDispatcher.class);
+    private final EscalationDigester digester = mock(EscalationDigester.class);
+    private final ReminderPartitions partitions = mock(ReminderPartitions.class);
+    private final Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+    private PatientProfile patient;
+    private Long prescriptionId;
+
+    @BeforeEach
+    void setUp() {
+        when(partitions.owned()).thenReturn(Set.of(0));
+        when(partitions.count()).thenReturn(1);
+        when(partitions.owns(anyLong())).thenReturn(true);
+
+        patient = patient("patient@pillpall.test");
+        patient.getUser().setDeviceToken("device-token");
+        users.save(patient.getUser());
+        contacts.save(Contact.builder().patient(patient).name("Proche").email("proche@pillpall.test").build());
+        prescriptionId = prescriptions.saveAndFlush(doseAt(prescription(patient, doctor("docteur@pillpall.test"),
+                "Doliprane", LocalDate.now().minusDays(1), LocalDate.now().plusDays(1)), 8, 0)).getId();
+    }
+
+    @Test
+    void staleReadCannotSendTheSameStageTwice() {
+        Long id = pending(now.minus(Duration.ofMinutes(1)));
+        // Lecture faite par un autre noeud (ou la roue) avant que ce tick n'avance l'étape
+        var staleRead = intakes.findDueReminders(now, 1, List.of(0L));
+
+        service(intakes).processReminders();
+        var lagging = mock(IntakeEventRepository.class, delegatesTo(intakes));
+        doReturn(staleRead).when(lagging).findDueReminders(any(), anyLong(), anyCollection());
+        service(lagging).processReminders();
+
+        verify(fcm, times(1)).submit(anyLong(), any());
+        assertEquals(1, attempts.count());
+        assertEquals(IntakeEvent.ReminderStage.REMINDED_1, intakes.findById(id).orElseThrow().getReminderStage());
+    }
+
+    @Test
+    void catchUpAfterDowntimeSkipsRemindersWhoseTimeHasPassed() {
+        // Noeud arrêté : une prise en retard de 40 minutes (rappels de 0, 15 et 30 minutes manqués),
+        // une autre déjà hors fenêtre
+        Long late = pending(now.minus(Duration.ofMinutes(40)));
+        Long expired = pending(now.minus(Duration.ofMinutes(90)));
+
+        service(intakes).processReminders();
+
+        // Un seul rappel pour la première, celui de 30 minutes ; le suivant reste à 45 minutes
+        verify(fcm, times(1)).submit(anyLong(), argThat(m -> m.getData().get("intakeIds").equals(String.valueOf(late))));
+        var lateEvent = intakes.findById(late).orElseThrow();
+        assertEquals(IntakeEvent.ReminderStage.REMINDED_3, lateEvent.getReminderStage());
+        assertEquals(lateEvent.getScheduledAt().plus(Duration.ofMinutes(45)), lateEvent.getNextActionAt());
+
+        // Escalade directe pour la seconde, sans « Il est temps de prendre »
+        var expiredEvent = intakes.findById(expired).orElseThrow();
+        assertEquals(IntakeEvent.ReminderStage.ESCALATED, expiredEvent.getReminderStage());
+        assertNull(expiredEvent.getNextActionAt());
+        verify(digester).submit(eq(NotificationChannel.EMAIL), eq("proche@pillpall.test"), any(), any(), anyLong(), any());
+        verifyNoMoreInteractions(fcm);
+
+        // Le tick suivant n'a plus rien à faire
+        service(intakes).processReminders();
+        verifyNoMoreInteractions(fcm);
+        assertEquals(2, attempts.count());
+    }
+
+    @Test
+    void closeDosesOfAPatientAreCoalescedFromTheFirstDueDose() {
+        // 07:59 et 08:01 de part et d'autre d'une frontière de 5 minutes : un seul push ; 08:04 ouvre un autre groupe
+        Instant boundary = Instant.ofEpochSecond(now.getEpochSecond() / 300 * 300).minus(Duration.ofMinutes(5));
+        Long first = pending(boundary.minus(Duration.ofMinutes(1)));
+        Long second = pending(boundary.plus(Duration.ofMinutes(1)));
+        Long third = pending(boundary.plus(Duration.ofMinutes(4)));
+
+        service(intakes).processReminders();
+
+        var pushes = ArgumentCaptor.forClass(FcmMessage.class);
+        verify(fcm, times(2)).submit(anyLong(), pushes.capture());
+        assertEquals(List.of(first + "," + second, String.valueOf(third)),
+                pushes.getAllValues().stream().map(m -> m.getData().get("intakeIds")).toList());
+        assertEquals(2, attempts.count());
+    }
+
+    @Test
+    void tickStatementCountDoesNotGrowWithPendingEvents() {
+        var statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        long[] perTick = new long[2];
+        int[] pending = {1_000, 10_000};
+        // Trois prises dues à quelques secondes d'écart, regroupées : un push par tick
+        Instant slot = now.minus(Duration.ofMinutes(5));
+        int day = 1;
+        for (int run = 0; run < pending.length; run++) {
+            // Prises à venir (non dues), plus les trois prises dues
+            int from = day;
+            writer.insertPending(prescriptionId, IntStream.range(0, pending[run] - (run == 0 ? 0 : pending[run - 1]))
+                    .mapToObj(i -> now.plus(Duration.ofDays(from)).plus(Duration.ofMinutes(i))).toList());
+            day += 30;
+            for (int k = 0; k < 3; k++) pending(slot.plusSeconds(run * 30L + k * 10L));
+
+            statistics.clear();
+            service(intakes).processReminders();
+            perTick[run] = statistics.getPrepareStatementCount();
+        }
+        assertEquals(perTick[0], perTick[1]);
+    }
+
+    private ReminderService service(IntakeEventRepository repository) {
+        var service = new ReminderService(repository, attempts, fcm, contacts, mock(IntakeTransitionService.class),
+                transactionManager, partitions, ledger, digester);
+        service.intakeWindowMinutes = 60;
+        service.coalesceMinutes = 5;
+        return service;
+    }
+
+    // Prise PENDING encore à l'étape NEW, due depuis son heure prévue
+    private Long pending(Instant scheduledAt) {
+        writer.insertPending(prescriptionId, List.of(scheduledAt));
+        return jdbc.queryForObject("SELECT id FROM intake_events WHERE prescription_id = ? AND scheduled_at = ?",
+                Long.class, prescriptionId, Timestamp.from(scheduledAt));
+    }
+}
@@ -0,0 +1,94 @@
+package com.pillpall.med_application.notifications;
+
+import com.pillpall.med_application.JpaTestSupport;
+import com.pillpall.med_application.intakes.IntakeEventRepository;
+import com.pillpall.med_application.intakes.IntakeEventWriter;
+import com.pillpall.med_application.intakes.IntakeTransitionService;
+import com.pillpall.med_application.users.ContactRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+// Banc d'essai, hors build : PILLPALL_BENCHMARK=true mvn test -Dtest=ReminderTickBenchmark
+// Requêtes et durée d'un tick de rappels de 1 000 à 1 000 000 prises PENDING, dont un nombre fixe de prises dues
+@Import(IntakeEventWriter.class)
+@EnabledIfEnvironmentVariable(named = "PILLPALL_BENCHMARK", matches = "true")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReminderTickBenchmark extends JpaTestSupport {
+
+    private static final int[] PENDING = {1_000, 10_000, 100_000, 1_000_000};
+    private static final int DUE_PER_TICK = 5;
+
+    @Autowired EntityManagerFactory entityManagerFactory;
+    @Autowired IntakeEventRepository intakes;
+    @Autowired NotificationAttemptRepository attempts;
+    @Autowired ContactRepository contacts;
+    @Autowired EscalationLedgerRepository ledger;
+    @Autowired IntakeEventWriter writer;
+    @Autowired JdbcTemplate jdbc;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    @Test
+    void tickCostStaysFlatAsPendingEventsGrow() {
+        var partitions = mock(ReminderPartitions.class);
+        when(partitions.owned()).thenReturn(Set.of(0));
+        when(partitions.count()).thenReturn(1);
+        when(partitions.owns(anyLong())).thenReturn(true);
+        var service = new ReminderService(intakes, attempts, mock(FcmBatchDispatcher.class), contacts,
+                mock(IntakeTransitionService.class), transactionManager, partitions, ledger, mock(EscalationDigester.class));
+        service.intakeWindowMinutes = 60;
+        service.coalesceMinutes = 5;
+
+        var patient = patient("benchmark@pillpall.test");
+        patient.getUser().setDeviceToken("device-token");
+        users.save(patient.getUser());
+        Long prescriptionId = prescriptions.save(doseAt(prescription(patient, doctor("docteur-benchmark@pillpall.test"),
+                "Doliprane", LocalDate.now(), LocalDate.now().plusYears(3)), 8, 0)).getId();
+
+        var statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Instant now = Instant.now();
+        Map<Integer, Long> statements = new LinkedHashMap<>();
+        int written = 0;
+        for (int run = 0; run < PENDING.length; run++) {
+            // Prises à venir jusqu'au volume visé, puis un lot de prises dues à dix minutes d'écart (chacune son
+            // push) ; celles du tour précédent sont confirmées pour ne pas redevenir dues pendant l'insertion
+            jdbc.update("UPDATE intake_events SET status = 'CONFIRMED' WHERE scheduled_at < ?", Timestamp.from(now));
+            int from = written;
+            writer.insertPending(prescriptionId, IntStream.range(from, PENDING[run])
+                    .mapToObj(i -> now.plus(Duration.ofDays(1)).plus(Duration.ofMinutes(i))).toList());
+            written = PENDING[run];
+            int r = run;
+            writer.insertPending(prescriptionId, IntStream.range(0, DUE_PER_TICK)
+                    .mapToObj(i -> now.minus(Duration.ofMinutes(10L * i + 1)).minusSeconds(r)).toList());
+
+            statistics.clear();
+            long start = System.nanoTime();
+            service.processReminders();
+            long elapsed = System.nanoTime() - start;
+            statements.put(PENDING[run], statistics.getPrepareStatementCount());
+            System.out.printf("%,9d pending: %d statements, %d ms%n",
+                    PENDING[run], statistics.getPrepareStatementCount(), elapsed / 1_000_000);
+        }
+        assertEquals(1, statements.values().stream().distinct().count(), statements.toString());
+    }
+}
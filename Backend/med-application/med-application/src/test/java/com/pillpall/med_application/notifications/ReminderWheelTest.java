@@ -0,0 +1,84 @@
+package com.pillpall.med_application.notifications;
+
+import com.pillpall.med_application.JpaTestSupport;
+import com.pillpall.med_application.intakes.IntakeEventRepository;
+import com.pillpall.med_application.intakes.IntakeEventWriter;
+import com.pillpall.med_application.sync.ChangeVersionMarkRepository;
+import com.pillpall.med_application.sync.ChangeVersions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+@Import({IntakeEventWriter.class, ChangeVersions.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // chaque écriture valide sa propre transaction, comme en production
+class ReminderWheelTest extends JpaTestSupport {
+
+    @Autowired IntakeEventRepository intakes;
+    @Autowired IntakeEventWriter writer;
+    @Autowired ChangeVersions versions;
+    @Autowired ChangeVersionMarkRepository marks;
+    @Autowired JdbcTemplate jdbc;
+
+    private final ReminderService reminders = mock(ReminderService.class);
+    private final Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+    private ReminderWheel wheel;
+    private Long prescriptionId;
+
+    @BeforeEach
+    void setUp() {
+        marks.deleteAllInBatch(); // repères des tests précédents (même base)
+        String suffix = String.valueOf(System.nanoTime());
+        prescriptionId = prescriptions.save(doseAt(prescription(patient("patient-" + suffix + "@pillpall.test"),
+                doctor("docteur-" + suffix + "@pillpall.test"), "Doliprane", LocalDate.now().minusDays(1), LocalDate.now()), 8, 0)).getId();
+        wheel = new ReminderWheel(intakes, reminders, marks);
+        wheel.intakeWindowMinutes = 60;
+        wheel.horizonHours = 6;
+        wheel.workers = 1;
+        wheel.safetyLagSeconds = 60;
+        wheel.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        wheel.stop();
+    }
+
+    @Test
+    void intakeCommittedLateWithALowerIdAndVersionIsStillLoaded() {
+        // Repère réglé : tout ce qui le précède est chargé au premier passage
+        marks.mark(now.minus(Duration.ofMinutes(2)));
+        wheel.reload();
+
+        // Une transaction lente prend sa version ; une autre écrit ensuite sa prise et valide la première
+        long slowVersion = versions.next();
+        writer.insertPending(prescriptionId, List.of(now.minus(Duration.ofMinutes(10))));
+        Long fast = jdbc.queryForObject("SELECT MAX(id) FROM intake_events WHERE prescription_id = ?", Long.class, prescriptionId);
+        marks.mark(now); // encore dans la marge : le point de reprise reste au repère réglé
+        wheel.reload();
+        verify(reminders, timeout(2000)).fire(fast);
+
+        // La transaction lente valide enfin, avec un id et une version plus bas que ceux déjà chargés
+        jdbc.update("INSERT INTO intake_events (id, prescription_id, scheduled_at, status, reminder_stage, next_action_at, " +
+                        "change_version, version) VALUES (?, ?, ?, 'PENDING', 'NEW', ?, ?, 0)", fast - 1_000_000, prescriptionId,
+                Timestamp.from(now.minus(Duration.ofMinutes(5))), Timestamp.from(now.minus(Duration.ofMinutes(5))), slowVersion);
+        wheel.reload();
+
+        // Rattrapage immédiat de la prise tardive ; la prise déjà chargée n'est pas replanifiée
+        verify(reminders, timeout(2000)).fire(fast - 1_000_000);
+        verify(reminders, times(1)).fire(fast);
+    }
+}
@@ -0,0 +1,66 @@
+package com.pillpall.med_application.notifications;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private static final Instant T0 = Instant.parse("2026-01-01T08:00:00Z");
+
+    private final List<String> fired = new ArrayList<>();
+    private final TimingWheel wheel = new TimingWheel(1000, Clock.fixed(T0, ZoneOffset.UTC), Runnable::run);
+
+    @Test
+    void firesEachTimerAtItsTickAcrossLevels() {
+        wheel.schedule(T0.plusSeconds(5), () -> fired.add("5s"));
+        wheel.schedule(T0.plus(Duration.ofMinutes(15)), () -> fired.add("15m"));
+        wheel.schedule(T0.plus(Duration.ofHours(5)), () -> fired.add("5h"));
+        wheel.schedule(T0.plus(Duration.ofDays(10)), () -> fired.add("10d"));
+
+        wheel.advanceTo(T0.plusSeconds(4).toEpochMilli());
+        assertEquals(List.of(), fired);
+        wheel.advanceTo(T0.plusSeconds(5).toEpochMilli());
+        assertEquals(List.of("5s"), fired);
+
+        wheel.advanceTo(T0.plus(Duration.ofMinutes(15)).minusSeconds(1).toEpochMilli());
+        assertEquals(List.of("5s"), fired);
+        wheel.advanceTo(T0.plus(Duration.ofMinutes(15)).toEpochMilli());
+        assertEquals(List.of("5s", "15m"), fired);
+
+        wheel.advanceTo(T0.plus(Duration.ofHours(5)).toEpochMilli());
+        assertEquals(List.of("5s", "15m", "5h"), fired);
+
+        wheel.advanceTo(T0.plus(Duration.ofDays(10)).minusSeconds(1).toEpochMilli());
+        assertEquals(3, fired.size());
+        wheel.advanceTo(T0.plus(Duration.ofDays(10)).toEpochMilli());
+        assertEquals(List.of("5s", "15m", "5h", "10d"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelledTimerNeverFires() {
+        var t = wheel.schedule(T0.plus(Duration.ofMinutes(30)), () -> fired.add("30m"));
+        wheel.schedule(T0.plus(Duration.ofMinutes(45)), () -> fired.add("45m"));
+
+        assertTrue(t.cancel());
+        assertFalse(t.cancel());
+        wheel.advanceTo(T0.plus(Duration.ofHours(1)).toEpochMilli());
+
+        assertEquals(List.of("45m"), fired);
+    }
+
+    @Test
+    void pastDeadlineRunsImmediately() {
+        wheel.schedule(T0.minusSeconds(30), () -> fired.add("late"));
+        assertEquals(List.of("late"), fired);
+        assertEquals(0, wheel.size());
+    }
+}
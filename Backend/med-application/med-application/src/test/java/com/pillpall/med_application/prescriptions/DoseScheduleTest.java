@@ -0,0 +1,122 @@
+package com.pillpall.med_application.prescriptions;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DoseScheduleTest {
+
+    private static final List<LocalTime> TIMES = List.of(
+            LocalTime.of(0, 0), LocalTime.of(0, 30), LocalTime.of(1, 30), LocalTime.of(2, 0),
+            LocalTime.of(2, 30), LocalTime.of(3, 0), LocalTime.of(8, 0), LocalTime.of(23, 30));
+
+    @Test
+    void dailyTimesResolveDstGapsAndOverlapsLikeZonedDateTime() {
+        // Heure d'été classique, à minuit (Sao Paulo 2018), d'une demi-heure (Lord Howe), suspendue pendant
+        // le ramadan (Casablanca), fuseau fixe
+        for (String id : List.of("Europe/Paris", "America/New_York", "America/Sao_Paulo", "Australia/Lord_Howe",
+                "Africa/Casablanca", "UTC")) {
+            ZoneId zone = ZoneId.of(id);
+            LocalDate start = LocalDate.of(2018, 1, 1);
+            LocalDate end = LocalDate.of(2019, 12, 31);
+
+            List<Instant> expected = new ArrayList<>();
+            for (LocalDate d = start; !d.isAfter(end); d = d.plusDays(1)) {
+                for (LocalTime t : TIMES) expected.add(ZonedDateTime.of(d, t, zone).toInstant());
+            }
+            var schedule = DoseSchedule.of(start, end, TIMES, null, zone);
+            assertEquals(expected, schedule.list(start, end), id);
+        }
+    }
+
+    @Test
+    void weekdaysAndTaperingSelectTheDoses() {
+        ZoneId zone = ZoneId.of("Europe/Paris");
+        LocalDate monday = LocalDate.of(2024, 3, 4);
+        var rule = RecurrenceRule.builder()
+                .weekdayMask(RecurrenceRule.weekdayMask(Set.of(DayOfWeek.MONDAY, DayOfWeek.TUESDAY, DayOfWeek.WEDNESDAY,
+                        DayOfWeek.THURSDAY, DayOfWeek.FRIDAY)))
+                .taperDays(7)
+                .build();
+        var schedule = DoseSchedule.of(monday, monday.plusDays(27),
+                List.of(LocalTime.of(20, 0), LocalTime.of(8, 0), LocalTime.of(14, 0)), rule, zone);
+
+        var doses = schedule.list(monday, monday.plusDays(27));
+        // 5 jours ouvrés par semaine ; 3, 2, puis 1 prise par jour (au moins une reste la dernière semaine)
+        assertEquals(5 * 3 + 5 * 2 + 5 + 5, doses.size());
+        assertTrue(doses.stream().map(at -> at.atZone(zone).getDayOfWeek())
+                .noneMatch(d -> d == DayOfWeek.SATURDAY || d == DayOfWeek.SUNDAY));
+        // La deuxième semaine garde les heures les plus tôt
+        assertEquals(List.of(LocalTime.of(8, 0), LocalTime.of(14, 0)),
+                schedule.list(monday.plusDays(7), monday.plusDays(7)).stream()
+                        .map(at -> at.atZone(zone).toLocalTime()).toList());
+    }
+
+    @Test
+    void hourlyRecurrenceCountsElapsedTimeAcrossDst() {
+        ZoneId zone = ZoneId.of("Europe/Paris");
+        LocalDate start = LocalDate.of(2024, 3, 30);
+        var rule = RecurrenceRule.builder().kind(RecurrenceRule.Kind.EVERY_N_HOURS).intervalHours(8).build();
+        var schedule = DoseSchedule.of(start, start.plusDays(2), List.of(LocalTime.of(22, 0)), rule, zone);
+
+        var doses = schedule.list(start, start.plusDays(2));
+        // 22:00 le 30, puis toutes les 8 h réelles : le passage à l'heure d'été décale l'heure affichée
+        assertEquals(ZonedDateTime.of(start, LocalTime.of(22, 0), zone).toInstant(), doses.get(0));
+        for (int i = 1; i < doses.size(); i++) {
+            assertEquals(Duration.ofHours(8), Duration.between(doses.get(i - 1), doses.get(i)));
+        }
+        assertEquals(LocalTime.of(7, 0), doses.get(1).atZone(zone).toLocalTime());
+        // Dernière prise le dernier jour local de la prescription
+        assertEquals(start.plusDays(2), doses.get(doses.size() - 1).atZone(zone).toLocalDate());
+        assertEquals(7, doses.size());
+
+        // Une fenêtre au milieu reprend sur la grille des 8 h
+        var window = schedule.occurrences(doses.get(2).minusSeconds(1), doses.get(4).plusSeconds(1));
+        List<Instant> inWindow = new ArrayList<>();
+        while (window.next()) inWindow.add(Instant.ofEpochSecond(window.epochSecond()));
+        assertEquals(doses.subList(2, 5), inWindow);
+
+        assertThrows(IllegalArgumentException.class, () -> DoseSchedule.of(start, start,
+                List.of(LocalTime.of(8, 0), LocalTime.of(20, 0)), rule, zone));
+    }
+
+    @Test
+    void cursorAllocatesNothingPerDose() {
+        ZoneId zone = ZoneId.of("Europe/Paris");
+        LocalDate start = LocalDate.of(2025, 1, 1);
+        var schedule = DoseSchedule.of(start, start.plusYears(10),
+                List.of(LocalTime.of(8, 0), LocalTime.of(12, 0), LocalTime.of(18, 0), LocalTime.of(22, 0)), null, zone);
+        var cursor = schedule.occurrences(start, start.plusYears(10));
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        // Premier passage pour charger les règles du fuseau, puis mesure
+        long count = drain(cursor, schedule, start);
+        long before = threads.getThreadAllocatedBytes(thread);
+        drain(cursor, schedule, start);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        // ~14 600 prises ; un Instant par prise dépasserait déjà 350 Ko. Restent les 20 transitions du fuseau
+        assertEquals(14_612, count);
+        assertTrue(allocated < 64 * 1024, "allocated " + allocated + " bytes");
+    }
+
+    private static long drain(DoseSchedule.Cursor cursor, DoseSchedule schedule, LocalDate start) {
+        cursor.reset(start.atStartOfDay(ZoneOffset.UTC).toEpochSecond(),
+                start.plusYears(11).atStartOfDay(ZoneOffset.UTC).toEpochSecond());
+        long count = 0;
+        long last = Long.MIN_VALUE;
+        while (cursor.next()) {
+            assertTrue(cursor.epochSecond() > last);
+            last = cursor.epochSecond();
+            count++;
+        }
+        return count;
+    }
+}
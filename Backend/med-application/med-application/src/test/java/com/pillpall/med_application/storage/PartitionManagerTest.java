@@ -0,0 +1,42 @@
+package com.pillpall.med_application.storage;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionManagerTest {
+
+    private final YearMonth october = YearMonth.of(2026, 10);
+
+    @Test
+    void createsOnlyTheMissingUpcomingMonths() {
+        var existing = Set.of("intake_events_p2026_10", "intake_events_p2026_11", "intake_events_default");
+        assertEquals(List.of(YearMonth.of(2026, 12), YearMonth.of(2027, 1)),
+                PartitionManager.missing("intake_events", existing, october, 3));
+        assertEquals("notification_attempts_p2027_01", PartitionManager.partitionName("notification_attempts", YearMonth.of(2027, 1)));
+    }
+
+    @Test
+    void detachesMonthsOlderThanRetentionButNeverTheDefaultPartition() {
+        var existing = Set.of("intake_events_p2024_09", "intake_events_p2024_10", "intake_events_p2026_10",
+                "intake_events_default", "notification_attempts_p2020_01");
+        assertEquals(List.of("intake_events_p2024_09"), PartitionManager.expired("intake_events", existing, october, 24));
+    }
+
+    @Test
+    void doesNothingOutsidePostgres() {
+        var h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:partitions-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        var manager = new PartitionManager(new JdbcTemplate(h2));
+        manager.monthsAhead = 3;
+        manager.retentionMonths = 24;
+        assertDoesNotThrow(manager::maintain);
+    }
+}
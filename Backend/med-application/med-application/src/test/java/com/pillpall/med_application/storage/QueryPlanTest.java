@@ -0,0 +1,237 @@
+package com.pillpall.med_application.storage;
+
+import com.pillpall.med_application.intakes.IntakeEvent;
+import com.pillpall.med_application.intakes.IntakeEventRepository;
+import com.pillpall.med_application.intakes.PatientDailyAdherenceRepository;
+import com.pillpall.med_application.ml.AnomalyDetectionRepository;
+import com.pillpall.med_application.notifications.NotificationAttemptRepository;
+import com.pillpall.med_application.prescriptions.PrescriptionRepository;
+import com.pillpall.med_application.sync.SyncTombstoneRepository;
+import com.pillpall.med_application.users.ContactRepository;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Régression de plans sur une vraie base Postgres, migrée par Flyway :
+//   PILLPALL_PLAN_DB_URL=jdbc:postgresql://localhost:5432/pillpall_plans [PILLPALL_PLAN_DB_USER, PILLPALL_PLAN_DB_PASSWORD]
+// Chaque requête chaude est exécutée, son SQL capturé puis expliqué en plan générique (sans valeur de paramètre)
+// avec enable_seqscan=off. Sur une grosse table, un Seq Scan ou un parcours d'index sans Index Cond (index entier
+// lu puis filtré, ce que le planificateur choisit faute de mieux) signifie qu'aucun index ne sert la requête
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=true",
+        "spring.flyway.postgresql.transactional-lock=false",
+        "spring.jpa.hibernate.ddl-auto=validate",
+        "spring.jpa.database-platform=org.hibernate.dialect.PostgreSQLDialect",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.pillpall.med_application.storage.QueryPlanTest$CapturedSql"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@EnabledIfEnvironmentVariable(named = "PILLPALL_PLAN_DB_URL", matches = ".+")
+class QueryPlanTest {
+
+    private static final Pattern HOT_TABLE_SCAN = Pattern.compile(
+            "(Seq Scan|Index Scan|Index Scan Backward|Index Only Scan) (using \\S+ )?on " +
+            "(intake_events|notification_attempts|anomalies|sync_tombstones|contacts|patient_daily_adherence)(_p\\d{4}_\\d{2}|_default)? ");
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> System.getenv("PILLPALL_PLAN_DB_URL"));
+        registry.add("spring.datasource.username", () -> System.getenv().getOrDefault("PILLPALL_PLAN_DB_USER", "postgres"));
+        registry.add("spring.datasource.password", () -> System.getenv().getOrDefault("PILLPALL_PLAN_DB_PASSWORD", ""));
+    }
+
+    @Autowired DataSource dataSource;
+    @Autowired IntakeEventRepository intakes;
+    @Autowired NotificationAttemptRepository attempts;
+    @Autowired PrescriptionRepository prescriptions;
+    @Autowired SyncTombstoneRepository tombstones;
+    @Autowired AnomalyDetectionRepository anomalies;
+    @Autowired ContactRepository contacts;
+    @Autowired PatientDailyAdherenceRepository dailyAdherence;
+
+    private JdbcTemplate jdbc;
+    private final Instant now = Instant.now();
+    private final PageRequest page = PageRequest.of(0, 500);
+
+    // Volumes proches de la production (historique surtout CONFIRMED/MISSED, peu de PENDING) pour que les
+    // statistiques départagent les index ; annulé avec la transaction du test
+    private static final String SEED = """
+            INSERT INTO users (id, enabled, created_at, email, full_name, password, timezone)
+            SELECT 900000000 + g, true, now(), 'plan' || g || '@pillpall.test', 'Plan ' || g, 'x', 'UTC'
+            FROM generate_series(1, 2000) g;
+            INSERT INTO patient_profiles (id, user_id) SELECT 900000000 + g, 900000000 + g FROM generate_series(1, 1900) g;
+            INSERT INTO doctor_profiles (id, user_id) SELECT 900000000 + g, 900000000 + g FROM generate_series(1901, 2000) g;
+            INSERT INTO prescriptions (id, start_date, end_date, created_at, doctor_id, patient_id, medication_name, change_version)
+            SELECT 900000000 + g, current_date - 60, current_date + 30, now(), 900001901 + g % 100, 900000001 + g % 1900,
+                   'Med ' || g, nextval('change_version_seq')
+            FROM generate_series(0, 3999) g;
+            INSERT INTO dose_times (prescription_id, hour, minute)
+            SELECT 900000000 + g % 4000, 8 + (g / 4000) * 12, 0 FROM generate_series(0, 7999) g;
+            INSERT INTO intake_events (prescription_id, scheduled_at, status, reminder_stage, next_action_at, change_version, version)
+            SELECT 900000000 + g % 4000, now() - (g / 4000) * interval '1 day' + (g % 4000) * interval '1 second',
+                   CASE WHEN g < 8000 THEN 'PENDING' WHEN g % 10 = 0 THEN 'MISSED' ELSE 'CONFIRMED' END,
+                   'NEW', CASE WHEN g < 8000 THEN now() + (g % 4000) * interval '1 second' END,
+                   nextval('change_version_seq'), 0
+            FROM generate_series(0, 199999) g;
+            INSERT INTO notification_attempts (intake_event_id, success, attempt_at, channel, status, retry_after)
+            SELECT id, status <> 'PENDING', scheduled_at, 'FCM', CASE WHEN status = 'PENDING' THEN 'PENDING' ELSE 'SENT' END,
+                   CASE WHEN status = 'PENDING' THEN scheduled_at END
+            FROM intake_events WHERE prescription_id >= 900000000;
+            INSERT INTO patient_daily_adherence (patient_id, local_date, scheduled, confirmed, missed, delay_minutes)
+            SELECT 900000001 + g % 1900, current_date - g / 1900, 4, 3, 1, 25 FROM generate_series(0, 189999) g;
+            INSERT INTO anomalies (patient_id, type, severity, detected_at, resolved)
+            SELECT 900000001 + g % 1900, 'SUDDEN_STOP', 'LOW', now() - g * interval '1 hour', g % 20 = 0
+            FROM generate_series(0, 19999) g;
+            INSERT INTO contacts (patient_id, name) SELECT 900000001 + g % 1900, 'Contact ' || g FROM generate_series(0, 3799) g;
+            INSERT INTO sync_tombstones (change_version, entity_type, entity_id, patient_id, deleted_at)
+            SELECT nextval('change_version_seq'), 'INTAKE', g, 900000001 + g % 1900, now() FROM generate_series(0, 19999) g;
+            ANALYZE;
+            """;
+
+    @BeforeEach
+    void setUp() {
+        // Même connexion que la transaction du test : données et réglages ne valent que pour elle
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute(SEED);
+        jdbc.execute("SET LOCAL enable_seqscan = off");
+        jdbc.execute("SET LOCAL plan_cache_mode = force_generic_plan");
+    }
+
+    @Test
+    void reminderPathUsesThePartialPendingIndexes() {
+        assertIndexed("findDueReminders", () -> intakes.findDueReminders(now, 16, List.of(0L, 1L)));
+        assertIndexed("findDueReminder", () -> intakes.findDueReminder(1L, now));
+        assertIndexed("findDuePatientReminders", () -> intakes.findDuePatientReminders(1L, now));
+        assertUses("findPendingScheduleBetween", "idx_intake_events_pending_scheduled",
+                () -> intakes.findPendingScheduleBetween(now, now.plusSeconds(3600)));
+        assertUses("findPendingScheduleChangedSince", "idx_intake_events_pending_scheduled",
+                () -> intakes.findPendingScheduleChangedSince(0L, now, now));
+        assertUses("lockPendingIdsScheduledBefore", "idx_intake_events_pending_scheduled",
+                () -> intakes.lockPendingIdsScheduledBefore(now, 0L, page));
+        assertUses("lockOutbox", "idx_notification_attempts_outbox", () -> attempts.lockOutbox("FCM", now, page));
+        assertIndexed("contacts.findByPatientId", () -> contacts.findByPatientId(1L));
+    }
+
+    @Test
+    void patientReadsUseAnIndex() {
+        assertIndexed("findHistoryPage", () -> intakes.findHistoryPage(1L, now, now, Long.MAX_VALUE, page));
+        assertIndexed("findHistory", () -> intakes.findHistory(1L, now));
+        assertIndexed("findUpcoming", () -> intakes.findUpcoming(1L, now, now));
+        assertIndexed("findActiveViews", () -> prescriptions.findActiveViews(1L, LocalDate.now()));
+        assertIndexed("findScheduleViews", () -> prescriptions.findScheduleViews(1L, LocalDate.now(), LocalDate.now().plusDays(30)));
+        assertIndexed("findCalendarRows", () -> intakes.findCalendarRows(1L, now, now.plusSeconds(30 * 86_400)));
+        assertUses("findDoseTimes", "idx_dose_times_prescription", () -> prescriptions.findDoseTimes(List.of(1L, 2L)));
+        assertIndexed("findScheduleByPrescriptionFrom",
+                () -> intakes.findScheduleByPrescriptionFrom(1L, IntakeEvent.Status.PENDING, now));
+        assertIndexed("findRollupRowsForPatients", () -> intakes.findRollupRowsForPatients(List.of(1L, 2L), now, now));
+        assertIndexed("findScheduledAtByPrescriptionBetween",
+                () -> intakes.findScheduledAtByPrescriptionBetween(1L, now, now));
+        assertIndexed("summarize", () -> dailyAdherence.summarize(1L, LocalDate.now(), LocalDate.now()));
+        assertIndexed("summarizeBetween", () -> dailyAdherence.summarizeBetween(1L, LocalDate.now(), LocalDate.now()));
+        assertIndexed("findByPatientIdInAndLocalDate",
+                () -> dailyAdherence.findByPatientIdInAndLocalDate(List.of(1L, 2L), LocalDate.now()));
+        assertIndexed("intakes.findChangedSince", () -> intakes.findChangedSince(1L, 0L, page));
+        assertIndexed("prescriptions.findChangedSince", () -> prescriptions.findChangedSince(1L, 0L, page));
+        assertIndexed("tombstones.findChangedSince", () -> tombstones.findChangedSince(1L, 0L, page));
+        assertUses("findByIntakeEventId", "idx_notification_attempts_intake_event", () -> attempts.findByIntakeEventId(1L));
+        assertUses("findByPatientIdAndResolvedFalse", "idx_anomalies_patient_unresolved",
+                () -> anomalies.findByPatientIdAndResolvedFalse(1L));
+        assertIndexed("findAnomaliesByPatientIdAndDateRange",
+                () -> anomalies.findAnomaliesByPatientIdAndDateRange(1L, now, now));
+    }
+
+    @Test
+    void writesByPrescriptionUseAnIndex() {
+        assertIndexed("attempts.deleteByPrescriptionId", () -> attempts.deleteByPrescriptionId(1L));
+        assertIndexed("intakes.deleteByPrescriptionId", () -> intakes.deleteByPrescriptionId(1L));
+        assertIndexed("updateStatus",
+                () -> intakes.updateStatus(List.of(1L), IntakeEvent.Status.PENDING, IntakeEvent.Status.MISSED));
+    }
+
+    private void assertIndexed(String query, Runnable call) {
+        for (String plan : plans(query, call)) {
+            assertTrue(fullScans(plan).isEmpty(), query + " falls back to a full scan:\n" + plan);
+        }
+    }
+
+    // Un autre index avec condition peut suffire à éviter le parcours complet tout en lisant bien plus de lignes
+    // (ex: plage sur la seconde colonne d'un index composite) : les requêtes servies par un index dédié le nomment
+    private void assertUses(String query, String index, Runnable call) {
+        for (String plan : plans(query, call)) {
+            assertTrue(fullScans(plan).isEmpty(), query + " falls back to a full scan:\n" + plan);
+            assertTrue(plan.contains(" " + index + " "), query + " no longer uses " + index + ":\n" + plan);
+        }
+    }
+
+    private List<String> plans(String query, Runnable call) {
+        CapturedSql.statements.clear();
+        call.run();
+        assertFalse(CapturedSql.statements.isEmpty(), query + " did not reach the database");
+        return CapturedSql.statements.stream().map(sql -> sql + "\n" + explain(sql)).toList();
+    }
+
+    // Parcours des grosses tables sans condition d'index : les lignes de détail d'un noeud sont plus indentées
+    // que lui et ne commencent pas par "->". Un Bitmap Heap Scan porte toujours la condition de ses index
+    static List<String> fullScans(String plan) {
+        var lines = plan.split("\n");
+        List<String> full = new ArrayList<>();
+        for (int i = 0; i < lines.length; i++) {
+            if (!HOT_TABLE_SCAN.matcher(lines[i]).find()) continue;
+            int indent = lines[i].indexOf(lines[i].trim());
+            boolean indexCond = false;
+            for (int j = i + 1; j < lines.length; j++) {
+                String detail = lines[j].trim();
+                if (lines[j].indexOf(detail) <= indent || detail.startsWith("->")) break;
+                indexCond |= detail.startsWith("Index Cond:");
+            }
+            if (lines[i].contains("Seq Scan") || !indexCond) full.add(lines[i].trim());
+        }
+        return full;
+    }
+
+    // Les paramètres JDBC (?) deviennent ceux d'une requête préparée ($1, $2...) ; le plan générique ne dépend
+    // pas de leurs valeurs, ils sont passés à NULL
+    private String explain(String sql) {
+        var prepared = new StringBuilder();
+        int params = 0;
+        for (char c : sql.toCharArray()) {
+            if (c == '?') prepared.append('$').append(++params);
+            else prepared.append(c);
+        }
+        jdbc.execute("PREPARE hot_query AS " + prepared);
+        try {
+            String args = params == 0 ? "" : "(" + String.join(", ", Collections.nCopies(params, "NULL")) + ")";
+            return String.join("\n", jdbc.queryForList("EXPLAIN EXECUTE hot_query" + args, String.class));
+        } finally {
+            jdbc.execute("DEALLOCATE hot_query");
+        }
+    }
+
+    public static class CapturedSql implements StatementInspector {
+        static final List<String> statements = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            statements.add(sql);
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.pillpall.med_application.sync;
+
+import com.pillpall.med_application.JpaTestSupport;
+import com.pillpall.med_application.intakes.IntakeEvent;
+import com.pillpall.med_application.intakes.IntakeEventRepository;
+import com.pillpall.med_application.intakes.IntakeEventWriter;
+import com.pillpall.med_application.prescriptions.Prescription;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Import({SyncService.class, SyncMaintenance.class, ChangeVersions.class, IntakeEventWriter.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // chaque écriture valide sa propre transaction, comme en production
+class SyncServiceTest extends JpaTestSupport {
+
+    @Autowired SyncService sync;
+    @Autowired SyncMaintenance maintenance;
+    @Autowired ChangeVersions versions;
+    @Autowired IntakeEventWriter writer;
+    @Autowired IntakeEventRepository intakes;
+    @Autowired SyncTombstoneRepository tombstones;
+    @Autowired ChangeVersionMarkRepository marks;
+    @Autowired PlatformTransactionManager transactionManager;
+    @Autowired EntityManagerFactory entityManagerFactory;
+
+    private TransactionTemplate tx;
+    private Long patientId;
+    private Long prescriptionId;
+
+    @BeforeEach
+    void setUp() {
+        tx = new TransactionTemplate(transactionManager);
+        marks.deleteAllInBatch(); // repères des tests précédents (même base)
+        String suffix = String.valueOf(System.nanoTime());
+        var prescription = prescription(patient("patient-" + suffix + "@pillpall.test"), doctor("docteur-" + suffix + "@pillpall.test"),
+                "Doliprane", LocalDate.parse("2026-05-01"), LocalDate.parse("2026-05-31"));
+        prescription.setChangeVersion(versions.next());
+        prescriptions.saveAndFlush(doseAt(prescription, 8, 0));
+        patientId = prescription.getPatient().getId();
+        prescriptionId = prescription.getId();
+
+        writer.insertPending(prescriptionId, IntStream.range(0, 5)
+                .mapToObj(i -> Instant.parse("2026-05-01T08:00:00Z").plus(Duration.ofDays(i))).toList());
+    }
+
+    @Test
+    void pagesThroughChangesThenReturnsOnlyNewWritesAndDeletions() {
+        var first = settled(0);
+        assertTrue(first.isHasMore());
+        assertEquals(1, first.getPrescriptions().size());
+        assertEquals(3, first.getIntakes().size());
+        assertEquals(first.getIntakes().get(2).getVersion(), first.getCursor());
+
+        var second = settled(first.getCursor());
+        assertFalse(second.isHasMore());
+        assertEquals(0, second.getPrescriptions().size());
+        assertEquals(2, second.getIntakes().size());
+
+        // Rien de neuf : réponse vide, curseur inchangé
+        var idle = settled(second.getCursor());
+        assertTrue(idle.getIntakes().isEmpty() && idle.getDeleted().isEmpty());
+        assertEquals(second.getCursor(), idle.getCursor());
+
+        // Une prise passe en MISSED, une autre est supprimée : seules ces deux lignes reviennent
+        Long missed = first.getIntakes().get(0).getId();
+        Long removed = first.getIntakes().get(1).getId();
+        tx.executeWithoutResult(s -> {
+            intakes.updateStatus(List.of(missed), IntakeEvent.Status.PENDING, IntakeEvent.Status.MISSED);
+            tombstones.recordIntakes(List.of(removed), IntakeEvent.Status.PENDING.name(), Instant.now());
+            intakes.deleteByIdsAndStatus(List.of(removed), IntakeEvent.Status.PENDING);
+        });
+
+        var delta = settled(idle.getCursor());
+        assertEquals(List.of(missed), delta.getIntakes().stream().map(SyncController.IntakeChange::getId).toList());
+        assertEquals(IntakeEvent.Status.MISSED, delta.getIntakes().get(0).getStatus());
+        assertEquals(List.of(removed), delta.getDeleted().stream().map(SyncController.Deletion::getId).toList());
+        assertTrue(delta.getCursor() > idle.getCursor());
+    }
+
+    @Test
+    void cursorWaitsForAnOlderVersionStillInFlight() throws Exception {
+        Instant t = Instant.now();
+        marks.mark(t.minus(Duration.ofMinutes(20)));
+        var start = sync.changesSince(patientId, 0, null, t);
+        List<Long> ids = start.getIntakes().stream().map(SyncController.IntakeChange::getId).toList();
+
+        // A prend sa version puis reste ouverte ; B prend la suivante et valide tout de suite
+        var taken = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var writerA = Executors.newSingleThreadExecutor();
+        var a = writerA.submit(() -> tx.executeWithoutResult(s -> {
+            intakes.updateStatus(List.of(ids.get(0)), IntakeEvent.Status.PENDING, IntakeEvent.Status.MISSED);
+            taken.countDown();
+            try { release.await(5, TimeUnit.SECONDS); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        }));
+        assertTrue(taken.await(5, TimeUnit.SECONDS));
+        tx.executeWithoutResult(s -> intakes.updateStatus(List.of(ids.get(1)), IntakeEvent.Status.PENDING, IntakeEvent.Status.MISSED));
+        marks.mark(t);
+
+        // Dans la marge : B est renvoyée mais le curseur ne passe pas la version encore en cours de A
+        var during = sync.changesSince(patientId, start.getCursor(), null, t.plusSeconds(1));
+        assertEquals(List.of(ids.get(1)), during.getIntakes().stream().map(SyncController.IntakeChange::getId).toList());
+        assertFalse(during.isHasMore());
+
+        release.countDown();
+        a.get(5, TimeUnit.SECONDS);
+        writerA.shutdown();
+
+        // Après la marge : A arrive avec B, et le curseur passe les deux
+        var after = sync.changesSince(patientId, during.getCursor(), null, t.plus(Duration.ofHours(1)));
+        var versionsOf = after.getIntakes().stream().collect(Collectors.toMap(
+                SyncController.IntakeChange::getId, SyncController.IntakeChange::getVersion));
+        assertEquals(Set.of(ids.get(0), ids.get(1)), versionsOf.keySet());
+        assertTrue(versionsOf.get(ids.get(0)) < versionsOf.get(ids.get(1)));
+        assertTrue(during.getCursor() < versionsOf.get(ids.get(0)));
+        assertEquals(versionsOf.get(ids.get(1)), after.getCursor());
+    }
+
+    @Test
+    void tombstonesBeyondRetentionArePurgedAndOlderCursorsResync() {
+        Instant now = Instant.now();
+        var first = settled(0);
+        Long removed = first.getIntakes().get(0).getId();
+        tx.executeWithoutResult(s -> {
+            tombstones.recordIntakes(List.of(removed), IntakeEvent.Status.PENDING.name(), now);
+            intakes.deleteByIdsAndStatus(List.of(removed), IntakeEvent.Status.PENDING);
+        });
+        long tombstone = tombstones.findChangedSince(patientId, 0, PageRequest.of(0, 10)).get(0).getChangeVersion();
+
+        // Repère posé après la suppression, daté d'avant la rétention : la trace part à la purge
+        marks.mark(now.minus(Duration.ofDays(365)));
+        maintenance.purge(now);
+        assertTrue(tombstones.findById(tombstone).isEmpty());
+
+        // Un curseur d'avant le repère ne verrait pas la suppression : synchronisation complète demandée
+        var stale = sync.changesSince(patientId, first.getCursor(), 3, now);
+        assertTrue(stale.isResync());
+        assertEquals(0, stale.getCursor());
+        assertTrue(stale.getIntakes().isEmpty());
+
+        // Première synchronisation : pas concernée
+        assertFalse(sync.changesSince(patientId, 0, 3, now).isResync());
+    }
+
+    @Test
+    void doseTimesOfAPageAreReadWithThePageNotPerPrescription() {
+        var patient = prescriptions.findById(prescriptionId).orElseThrow().getPatient();
+        var doctor = prescriptions.findById(prescriptionId).orElseThrow().getDoctor();
+        for (int i = 0; i < 4; i++) {
+            var p = doseAt(doseAt(prescription(patient, doctor, "Kardegic " + i, LocalDate.parse("2026-05-01"),
+                    LocalDate.parse("2026-05-31")), 8, 0), 20, 0);
+            p.setChangeVersion(versions.next());
+            prescriptions.saveAndFlush(p);
+        }
+        var statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        var page = settled(0, 10);
+        assertEquals(5, page.getPrescriptions().size());
+        assertEquals(2, page.getPrescriptions().get(4).getDoseTimes().size());
+        // Chargées par le JOIN FETCH de la page : aucun chargement paresseux, prescription par prescription
+        assertEquals(0, statistics.getCollectionStatistics(Prescription.class.getName() + ".doseTimes").getFetchCount());
+    }
+
+    // Repère posé maintenant, lu une fois la marge (60 s par défaut) écoulée : toutes les écritures validées sont derrière le curseur
+    private SyncController.SyncResponse settled(long since) {
+        return settled(since, 3);
+    }
+
+    private SyncController.SyncResponse settled(long since, int limit) {
+        marks.mark(Instant.now());
+        return sync.changesSince(patientId, since, limit, Instant.now().plus(Duration.ofHours(1)));
+    }
+}
@@ -0,0 +1,90 @@
+package com.pillpall.med_application.users;
+
+import com.pillpall.med_application.JpaTestSupport;
+import com.pillpall.med_application.config.SecondLevelCacheConfig;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Chaque appel de repository dans sa propre transaction, comme depuis les contrôleurs : le cache de
+// second niveau n'est alimenté qu'au commit
+@Import({SecondLevelCacheConfig.class, ReferenceDataCache.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReferenceDataCacheTest extends JpaTestSupport {
+
+    @Autowired EntityManagerFactory entityManagerFactory;
+    @Autowired ReferenceDataCache referenceDataCache;
+    @Autowired SpecialtyRepository specialties;
+    @Autowired RoleRepository roles;
+
+    private Statistics statistics;
+    private final String suffix = UUID.randomUUID().toString();
+    private Specialty specialty;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        specialty = specialties.save(Specialty.builder().name("Cardiologie " + suffix).build());
+        var role = roles.save(new Role(null, "ROLE_DOCTOR_" + suffix));
+        var u = new User();
+        u.setEmail("docteur-" + suffix + "@pillpall.test");
+        u.setPassword("x");
+        u.setFullName("Dr " + suffix);
+        u.setRoles(Set.of(role));
+        user = users.save(u);
+        doctors.save(DoctorProfile.builder().user(user).specialty(specialty).build());
+    }
+
+    @Test
+    void repeatedReferenceLookupsDoNotReachTheDatabase() {
+        readAll();
+
+        statistics.clear();
+        var doctor = readAll();
+
+        // Seul l'utilisateur (non mis en cache) est relu : ses rôles, le médecin et les listes viennent du cache
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(specialty.getName(), doctor.getSpecialty().getName());
+        var stats = referenceDataCache.statistics();
+        assertTrue(stats.get(ReferenceDataCache.SPECIALTY_QUERIES).getHits() > 0);
+        assertTrue(stats.get(ReferenceDataCache.ROLE_QUERIES).getHits() > 0);
+        assertTrue(stats.get(ReferenceDataCache.USER_ROLES).getHits() > 0);
+        assertEquals(1.0, stats.get(ReferenceDataCache.SPECIALTY_QUERIES).getHitRatio());
+    }
+
+    @Test
+    void evictionDropsCachedSpecialtiesAndDoctorLookups() {
+        readAll();
+
+        specialty.setName("Cardiologie pédiatrique " + suffix);
+        specialties.save(specialty);
+        referenceDataCache.evictSpecialties();
+        var doctor = doctors.findByUserId(user.getId()).orElseThrow();
+        referenceDataCache.evictDoctor(doctor.getId());
+
+        statistics.clear();
+        assertTrue(specialties.findAll().stream().anyMatch(s -> s.getName().equals(specialty.getName())));
+        assertEquals(specialty.getName(), doctors.findByUserId(user.getId()).orElseThrow().getSpecialty().getName());
+        assertEquals(1, statistics.getQueryRegionStatistics(ReferenceDataCache.SPECIALTY_QUERIES).getMissCount());
+        assertEquals(1, statistics.getQueryRegionStatistics(ReferenceDataCache.DOCTOR_QUERIES).getMissCount());
+    }
+
+    private DoctorProfile readAll() {
+        specialties.findAll();
+        roles.findByName("ROLE_DOCTOR_" + suffix).orElseThrow();
+        users.findByEmail(user.getEmail()).orElseThrow();
+        return doctors.findByUserId(user.getId()).orElseThrow();
+    }
+}